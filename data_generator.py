@@ -8,7 +8,9 @@ Produces page_view and ad_click events to Kafka topics with realistic scenarios:
 """
 
 import json
+import os
 import random
+import sys
 import time
 from datetime import datetime, timedelta
 from kafka import KafkaProducer
@@ -193,10 +195,46 @@ def send_events_in_order(producer, page_views, ad_clicks):
     print("\n✓ All events sent successfully!")
 
 
+def write_events_jsonl(path, page_views, ad_clicks):
+    """Write events in processing time order to a JSONL file for the processor's file source."""
+    all_events = [('page_views', pv) for pv in page_views] + [('ad_clicks', click) for click in ad_clicks]
+    all_events.sort(key=lambda x: x[1]['processing_time'])
+
+    with open(path, 'w') as f:
+        for topic, event in all_events:
+            event_copy = {k: v for k, v in event.items() if k != 'processing_time'}
+            f.write(json.dumps({'topic': topic, 'key': event['user_id'], 'value': event_copy}) + '\n')
+
+    print(f"✓ Wrote {len(all_events)} events to {path}")
+
+
+def write_backfill_files(directory, page_views, ad_clicks):
+    """Write one file per topic, one event per line, for the processor's offline backfill."""
+    os.makedirs(directory, exist_ok=True)
+    for topic, events in (('ad_clicks', ad_clicks), ('page_views', page_views)):
+        with open(os.path.join(directory, f'{topic}.jsonl'), 'w') as f:
+            for event in events:
+                f.write(json.dumps({k: v for k, v in event.items() if k != 'processing_time'}) + '\n')
+
+    print(f"✓ Wrote {len(ad_clicks)} ad clicks and {len(page_views)} page views to {directory}")
+
+
 def main():
     """Main function to generate and send test data."""
     print("🚀 Starting data generator for streaming challenge...")
 
+    # --jsonl <path>: write a file for source.file.path instead of producing to Kafka
+    if len(sys.argv) == 3 and sys.argv[1] == '--jsonl':
+        page_views, ad_clicks = generate_test_data()
+        write_events_jsonl(sys.argv[2], page_views, ad_clicks)
+        return
+
+    # --backfill <dir>: write ad_clicks.jsonl and page_views.jsonl for the offline backfill
+    if len(sys.argv) == 3 and sys.argv[1] == '--backfill':
+        page_views, ad_clicks = generate_test_data()
+        write_backfill_files(sys.argv[2], page_views, ad_clicks)
+        return
+
     # Create producer
     producer = create_producer()
 
@@ -0,0 +1,186 @@
+package com.ebay.challenge.streamprocessor.backfill;
+
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.ebay.challenge.streamprocessor.source.PartitionedRecords;
+import com.ebay.challenge.streamprocessor.state.AttributionRule;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Offline attribution of historical events, without watermarks or join state:
+ * - reads an ad_clicks and a page_views file (one event JSON per line, as produced to the topics)
+ * - partitions both by murmur2 of user_id, so a user's events are in one partition
+ * - per partition on a ForkJoinPool: sort clicks and page views by (user, event time) and merge-join them,
+ *   the attributed click is the one {@link AttributionRule} prefers, like the streaming join
+ * - bulk-loads the result into the output table in large transactions
+ *
+ * Gives the same rows as the streaming job over the same events, as long as the streaming job dropped nothing as late.
+ * A page view which occurs more than once is written once (first occurrence).
+ */
+@Slf4j
+public class Backfill {
+
+    /**
+     * Ties on event time: the preferred click (smallest click_id) sorts last and wins the merge
+     */
+    private static final Comparator<AdClickEvent> CLICKS_BY_USER_AND_TIME = Comparator
+            .comparing(AdClickEvent::getUserId)
+            .thenComparing(AdClickEvent::getEventTime)
+            .thenComparing(AdClickEvent::getClickId, Comparator.reverseOrder());
+
+    private static final Comparator<PageViewEvent> PAGE_VIEWS_BY_USER_AND_TIME = Comparator
+            .comparing(PageViewEvent::getUserId)
+            .thenComparing(PageViewEvent::getEventTime);
+
+    private final ObjectMapper objectMapper;
+    private final int partitions;
+    private final int parallelism;
+    private final int batchSize;
+
+    public Backfill(ObjectMapper objectMapper, int partitions, int parallelism, int batchSize) {
+        if (partitions <= 0 || parallelism <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException(
+                    "partitions, parallelism and batch size must be positive: %d, %d, %d"
+                            .formatted(partitions, parallelism, batchSize));
+        }
+        this.objectMapper = objectMapper;
+        this.partitions = partitions;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    public BackfillStats run(Path adClicks, Path pageViews, OutputSink sink) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        log.info("Backfill of {} and {} ({} partitions, parallelism {})", adClicks, pageViews, partitions, parallelism);
+
+        List<List<AdClickEvent>> clicksByPartition = newPartitions();
+        List<List<PageViewEvent>> pageViewsByPartition = newPartitions();
+        long malformed = read(adClicks, AdClickEvent.class,
+                click -> clicksByPartition.get(partitionFor(click.getUserId())).add(click));
+        malformed += read(pageViews, PageViewEvent.class,
+                pageView -> pageViewsByPartition.get(partitionFor(pageView.getUserId())).add(pageView));
+        long clicks = clicksByPartition.stream().mapToLong(List::size).sum();
+
+        List<Callable<List<AttributedPageView>>> joins = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            List<AdClickEvent> partitionClicks = clicksByPartition.get(partition);
+            List<PageViewEvent> partitionPageViews = pageViewsByPartition.get(partition);
+            joins.add(() -> join(partitionClicks, partitionPageViews));
+        }
+
+        long written = 0;
+        long attributed = 0;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Partitions are joined in parallel, the single SQLite connection loads them one after the other
+            for (Future<List<AttributedPageView>> joined : pool.invokeAll(joins)) {
+                List<AttributedPageView> result = joined.get();
+                for (int from = 0; from < result.size(); from += batchSize) {
+                    sink.writeAll(result.subList(from, Math.min(result.size(), from + batchSize)));
+                }
+                written += result.size();
+                attributed += result.stream().filter(view -> view.getAttributedClickId() != null).count();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Backfill join failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        BackfillStats stats = new BackfillStats(
+                clicks, written, attributed, malformed, System.currentTimeMillis() - start);
+        log.info("Backfill done: {} clicks, {} page views ({} attributed), {} malformed lines in {} ms",
+                stats.clicks(), stats.pageViews(), stats.attributed(), stats.malformed(), stats.durationMillis());
+        return stats;
+    }
+
+    /**
+     * Sort-merge join of one partition. Clicks are consumed in order, so the click last passed with
+     * event time <= the page view's is the most recent one of the user; attributed if within the window.
+     */
+    static List<AttributedPageView> join(List<AdClickEvent> clicks, List<PageViewEvent> pageViews) {
+        clicks.sort(CLICKS_BY_USER_AND_TIME);
+        pageViews.sort(PAGE_VIEWS_BY_USER_AND_TIME);
+
+        List<AttributedPageView> result = new ArrayList<>(pageViews.size());
+        Set<String> seenPageViews = new HashSet<>();
+        int next = 0;
+        AdClickEvent last = null;
+        for (PageViewEvent pageView : pageViews) {
+            while (next < clicks.size()) {
+                AdClickEvent click = clicks.get(next);
+                int byUser = click.getUserId().compareTo(pageView.getUserId());
+                if (byUser > 0 || (byUser == 0 && click.getEventTime().isAfter(pageView.getEventTime()))) {
+                    break;
+                }
+                last = click;
+                next++;
+            }
+            if (!seenPageViews.add(pageView.getEventId())) {
+                continue;
+            }
+            AdClickEvent attributed = last != null
+                    && last.getUserId().equals(pageView.getUserId())
+                    && AttributionRule.isWithinWindow(last.getEventTime(), pageView.getEventTime())
+                    ? last : null;
+            result.add(AttributedPageView.builder()
+                    .pageViewId(pageView.getEventId())
+                    .userId(pageView.getUserId())
+                    .eventTime(pageView.getEventTime())
+                    .url(pageView.getUrl())
+                    .attributedCampaignId(attributed != null ? attributed.getCampaignId() : null)
+                    .attributedClickId(attributed != null ? attributed.getClickId() : null)
+                    .build());
+        }
+        return result;
+    }
+
+    private <T> long read(Path file, Class<T> type, Consumer<T> target) throws IOException {
+        long malformed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    target.accept(objectMapper.readValue(line, type));
+                } catch (IOException e) {
+                    malformed++;
+                    log.warn("Skipping malformed line in {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        return malformed;
+    }
+
+    private int partitionFor(String userId) {
+        return PartitionedRecords.partitionFor(userId, partitions);
+    }
+
+    private <T> List<List<T>> newPartitions() {
+        List<List<T>> lists = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            lists.add(new ArrayList<>());
+        }
+        return lists;
+    }
+}
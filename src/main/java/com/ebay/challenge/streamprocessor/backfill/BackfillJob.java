@@ -0,0 +1,56 @@
+package com.ebay.challenge.streamprocessor.backfill;
+
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Batch mode: runs a {@link Backfill} of `backfill.ad-clicks` and `backfill.page-views` into the output
+ * database at startup and exits. The listener containers are not started when `backfill.page-views` is set.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "backfill.page-views")
+@RequiredArgsConstructor
+public class BackfillJob implements ApplicationRunner {
+
+    private final OutputSink outputSink;
+    private final ObjectMapper objectMapper;
+    private final ApplicationContext context;
+
+    @Value("${backfill.ad-clicks}")
+    private String adClicks;
+
+    @Value("${backfill.page-views}")
+    private String pageViews;
+
+    @Value("${backfill.partitions:64}")
+    private int partitions;
+
+    /**
+     * 0: available processors
+     */
+    @Value("${backfill.parallelism:0}")
+    private int parallelism;
+
+    @Value("${backfill.batch-size:50000}")
+    private int batchSize;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        new Backfill(objectMapper, partitions, threads, batchSize)
+                .run(Path.of(adClicks), Path.of(pageViews), outputSink);
+        System.exit(SpringApplication.exit(context, () -> 0));
+    }
+}
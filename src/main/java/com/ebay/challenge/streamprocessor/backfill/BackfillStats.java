@@ -0,0 +1,16 @@
+package com.ebay.challenge.streamprocessor.backfill;
+
+/**
+ * Outcome of a {@link Backfill} run.
+ *
+ * @param clicks     clicks read
+ * @param pageViews  distinct page views written
+ * @param attributed page views with an attributed click
+ * @param malformed  lines which could not be parsed (skipped)
+ */
+public record BackfillStats(long clicks, long pageViews, long attributed, long malformed, long durationMillis) {
+
+    public double pageViewsPerSecond() {
+        return durationMillis == 0 ? pageViews : pageViews * 1000.0 / durationMillis;
+    }
+}
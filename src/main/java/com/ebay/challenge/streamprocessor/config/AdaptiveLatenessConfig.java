@@ -0,0 +1,45 @@
+package com.ebay.challenge.streamprocessor.config;
+
+import com.ebay.challenge.streamprocessor.state.AdaptiveLateness;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Adaptive allowed lateness for the WatermarkTracker.
+ *
+ * Only active with `watermark.adaptive.enabled=true`, otherwise `watermark.allowed-lateness-minutes` is used as is.
+ */
+@Configuration
+@ConditionalOnProperty(name = "watermark.adaptive.enabled", havingValue = "true")
+public class AdaptiveLatenessConfig {
+
+    @Value("${watermark.adaptive.quantile:0.999}")
+    private double quantile;
+
+    @Value("${watermark.adaptive.min-lateness-seconds:5}")
+    private long minLatenessSeconds;
+
+    @Value("${watermark.adaptive.max-lateness-minutes:10}")
+    private long maxLatenessMinutes;
+
+    @Value("${watermark.adaptive.min-samples:1000}")
+    private long minSamples;
+
+    @Value("${watermark.adaptive.window-size:100000}")
+    private long windowSize;
+
+    @Bean
+    public AdaptiveLateness adaptiveLateness() {
+        return new AdaptiveLateness(
+                quantile,
+                Duration.ofSeconds(minLatenessSeconds),
+                Duration.ofMinutes(maxLatenessMinutes),
+                minSamples,
+                windowSize
+        );
+    }
+}
@@ -0,0 +1,45 @@
+package com.ebay.challenge.streamprocessor.config;
+
+import com.ebay.challenge.streamprocessor.state.ApproximateEventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.EventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.ExactEventDeduplicator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Input de-duplication on event_id / click_id, selected by `state.dedup.mode`:
+ * - none: off (default); clicks are still de-duplicated by click_id in ClickStateStore
+ * - exact: ids in hash sets
+ * - approximate: ids in cuckoo filters, ~2 bytes per id, rare false positives drop a new event
+ */
+@Slf4j
+@Configuration
+public class DeduplicationConfig {
+
+    @Value("${state.dedup.mode:none}")
+    private String mode;
+
+    @Value("${state.dedup.bucket-seconds:60}")
+    private long bucketSeconds;
+
+    @Value("${state.dedup.expected-ids-per-bucket:10000}")
+    private long expectedIdsPerBucket;
+
+    @Bean
+    public EventDeduplicator eventDeduplicator() {
+        Duration bucketWidth = Duration.ofSeconds(bucketSeconds);
+        EventDeduplicator deduplicator = switch (mode) {
+            case "none" -> EventDeduplicator.NONE;
+            case "exact" -> new ExactEventDeduplicator(bucketWidth);
+            case "approximate" -> new ApproximateEventDeduplicator(bucketWidth, expectedIdsPerBucket);
+            default -> throw new IllegalArgumentException(
+                    "Unknown state.dedup.mode '" + mode + "', expected none, exact or approximate");
+        };
+        log.info("Input de-duplication: {} (bucket width {})", mode, bucketWidth);
+        return deduplicator;
+    }
+}
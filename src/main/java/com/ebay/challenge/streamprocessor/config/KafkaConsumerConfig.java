@@ -1,19 +1,26 @@
 package com.ebay.challenge.streamprocessor.config;
 
+import com.ebay.challenge.streamprocessor.consumer.PartitionRebalanceListener;
+import com.ebay.challenge.streamprocessor.state.StateChangelog;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -39,6 +46,27 @@ public class KafkaConsumerConfig {
     @Value("${kafka.consumer.concurrency:3}")
     private int concurrency;
 
+    @Value("${kafka.consumer.lanes.enabled:false}")
+    private boolean lanesEnabled;
+
+    @Value("${kafka.consumer.lanes.count:8}")
+    private int laneCount;
+
+    @Value("${kafka.consumer.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    /**
+     * Events come from a file (FileSourceJob), the listener containers are not started
+     */
+    @Value("${source.file.path:}")
+    private String fileSourcePath;
+
+    /**
+     * Batch backfill (BackfillJob), the listener containers are not started
+     */
+    @Value("${backfill.page-views:}")
+    private String backfillPageViews;
+
     @Bean
     public ObjectMapper objectMapper() {
         ObjectMapper mapper = new ObjectMapper();
@@ -66,7 +94,9 @@ public class KafkaConsumerConfig {
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
 
         // Performance and reliability
-        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 100);
+        // With keyed lanes, the container waits until a poll is fully acknowledged before the next one,
+        // so each poll must carry enough records to keep all lanes busy
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, lanesEnabled ? 100 * laneCount : 100);
         props.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, 300000); // 5 minutes
         props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 30000); // 30 seconds
         props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, 10000); // 10 seconds
@@ -81,12 +111,48 @@ public class KafkaConsumerConfig {
         return props;
     }
 
+    /**
+     * With the state changelog, the changelog is flushed before every offset commit:
+     * offsets are only committed once the state changes of their records are written.
+     * A failed changelog write fails the commit (see {@link StateChangelog#flush}).
+     */
+    private ConsumerFactory<String, String> consumerFactory(ObjectProvider<StateChangelog> changelog) {
+        DefaultKafkaConsumerFactory<String, String> factory = new DefaultKafkaConsumerFactory<>(consumerConfigs());
+        changelog.ifAvailable(stateChangelog ->
+                factory.addPostProcessor(consumer -> flushingBeforeCommit(consumer, stateChangelog)));
+        return factory;
+    }
+
+    /**
+     * The container commits through the consumer (commitSync / commitAsync), so these calls flush first.
+     * Once per commit, not per record.
+     */
+    @SuppressWarnings("unchecked")
+    private static Consumer<String, String> flushingBeforeCommit(
+            Consumer<String, String> consumer,
+            StateChangelog changelog
+    ) {
+        return (Consumer<String, String>) Proxy.newProxyInstance(
+                Consumer.class.getClassLoader(),
+                new Class<?>[]{Consumer.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("commit")) {
+                        changelog.flush();
+                    }
+                    try {
+                        return method.invoke(consumer, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
     /**
      * Consumer factory for ad click events.
      */
     @Bean
-    public ConsumerFactory<String, String> adClickConsumerFactory() {
-        return new DefaultKafkaConsumerFactory<>(consumerConfigs());
+    public ConsumerFactory<String, String> adClickConsumerFactory(ObjectProvider<StateChangelog> changelog) {
+        return consumerFactory(changelog);
     }
 
     /**
@@ -94,11 +160,14 @@ public class KafkaConsumerConfig {
      * Configured for concurrent processing with manual acknowledgment.
      */
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> adClickListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, String> adClickListenerContainerFactory(
+            ConsumerFactory<String, String> adClickConsumerFactory,
+            PartitionRebalanceListener rebalanceListener
+    ) {
         ConcurrentKafkaListenerContainerFactory<String, String> factory =
             new ConcurrentKafkaListenerContainerFactory<>();
 
-        factory.setConsumerFactory(adClickConsumerFactory());
+        factory.setConsumerFactory(adClickConsumerFactory);
 
         // Concurrency: one thread per partition (up to configured max)
         factory.setConcurrency(concurrency);
@@ -106,9 +175,23 @@ public class KafkaConsumerConfig {
         // Manual acknowledgment for offset control
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
 
+        // Keyed lanes acknowledge out of order: commit only up to the lowest fully processed offset.
+        // Not for the reorder buffer, which acknowledges in order itself: asyncAcks would pause the consumer
+        // until the buffer released the whole poll
+        factory.getContainerProperties().setAsyncAcks(lanesEnabled);
+
         // Preserve partition ordering within each partition
         factory.getContainerProperties().setMissingTopicsFatal(false);
 
+        // Prepare partition state (e.g. restore from changelog) before consuming
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+
+        factory.setAutoStartup(fileSourcePath.isBlank() && backfillPageViews.isBlank());
+
+        if (virtualThreads) {
+            factory.getContainerProperties().setListenerTaskExecutor(virtualThreadExecutor("ad-click-"));
+        }
+
         return factory;
     }
 
@@ -116,8 +199,8 @@ public class KafkaConsumerConfig {
      * Consumer factory for page view events.
      */
     @Bean
-    public ConsumerFactory<String, String> pageViewConsumerFactory() {
-        return new DefaultKafkaConsumerFactory<>(consumerConfigs());
+    public ConsumerFactory<String, String> pageViewConsumerFactory(ObjectProvider<StateChangelog> changelog) {
+        return consumerFactory(changelog);
     }
 
     /**
@@ -125,11 +208,14 @@ public class KafkaConsumerConfig {
      * Configured for concurrent processing with manual acknowledgment.
      */
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> pageViewListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, String> pageViewListenerContainerFactory(
+            ConsumerFactory<String, String> pageViewConsumerFactory,
+            PartitionRebalanceListener rebalanceListener
+    ) {
         ConcurrentKafkaListenerContainerFactory<String, String> factory =
             new ConcurrentKafkaListenerContainerFactory<>();
 
-        factory.setConsumerFactory(pageViewConsumerFactory());
+        factory.setConsumerFactory(pageViewConsumerFactory);
 
         // Concurrency: one thread per partition (up to configured max)
         factory.setConcurrency(concurrency);
@@ -137,9 +223,33 @@ public class KafkaConsumerConfig {
         // Manual acknowledgment for offset control
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
 
+        // Keyed lanes acknowledge out of order: commit only up to the lowest fully processed offset.
+        // Not for the reorder buffer, which acknowledges in order itself: asyncAcks would pause the consumer
+        // until the buffer released the whole poll
+        factory.getContainerProperties().setAsyncAcks(lanesEnabled);
+
         // Preserve partition ordering within each partition
         factory.getContainerProperties().setMissingTopicsFatal(false);
 
+        // Prepare partition state (e.g. restore from changelog) before consuming
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+
+        factory.setAutoStartup(fileSourcePath.isBlank() && backfillPageViews.isBlank());
+
+        if (virtualThreads) {
+            factory.getContainerProperties().setListenerTaskExecutor(virtualThreadExecutor("page-view-"));
+        }
+
         return factory;
     }
+
+    /**
+     * Runs the consumer threads, and so record processing and the sink write, on virtual threads.
+     * Blocking on SQLite or on a per-user lock then parks the virtual thread, not a platform thread.
+     */
+    private SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        return executor;
+    }
 }
@@ -0,0 +1,32 @@
+package com.ebay.challenge.streamprocessor.config;
+
+import com.ebay.challenge.streamprocessor.consumer.KeyedLaneExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Keyed sub-partition parallelism.
+ *
+ * Only active with `kafka.consumer.lanes.enabled=true`. The lanes are shared by both listeners,
+ * so clicks and page views of one user are also processed on the same lane.
+ */
+@Configuration
+@ConditionalOnProperty(name = "kafka.consumer.lanes.enabled", havingValue = "true")
+public class KeyedLanesConfig {
+
+    @Value("${kafka.consumer.lanes.count:8}")
+    private int laneCount;
+
+    @Value("${kafka.consumer.lanes.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${kafka.consumer.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    @Bean(destroyMethod = "close")
+    public KeyedLaneExecutor keyedLaneExecutor() {
+        return new KeyedLaneExecutor(laneCount, queueCapacity, virtualThreads);
+    }
+}
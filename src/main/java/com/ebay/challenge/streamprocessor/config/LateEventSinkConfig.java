@@ -0,0 +1,74 @@
+package com.ebay.challenge.streamprocessor.config;
+
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.output.AsyncLateEventSink;
+import com.ebay.challenge.streamprocessor.output.KafkaLateEventWriter;
+import com.ebay.challenge.streamprocessor.output.LateEventSink;
+import com.ebay.challenge.streamprocessor.output.LateEventWriter;
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Side output for late events, selected by `late-events.mode`:
+ * - none: dropped, only counted in metrics
+ * - sqlite: `late_events` table next to the attributed page views (default)
+ * - kafka: dead-letter topic `late-events.topic`
+ */
+@Slf4j
+@Configuration
+public class LateEventSinkConfig {
+
+    @Value("${late-events.mode:sqlite}")
+    private String mode;
+
+    @Value("${late-events.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${late-events.batch-size:500}")
+    private int batchSize;
+
+    @Value("${late-events.topic:late_events_dlq}")
+    private String topic;
+
+    @Value("${kafka.bootstrap-servers:localhost:29092}")
+    private String bootstrapServers;
+
+    /**
+     * Closed on shutdown (inferred from AsyncLateEventSink being AutoCloseable), which closes the writer.
+     */
+    @Bean
+    public LateEventSink lateEventSink(OutputSink outputSink, ObjectMapper objectMapper, Metrics metrics) {
+        LateEventWriter writer = switch (mode) {
+            case "none" -> null;
+            case "sqlite" -> outputSink::writeLateEvents;
+            case "kafka" -> new KafkaLateEventWriter(kafkaTemplate(), objectMapper, topic);
+            default -> throw new IllegalArgumentException(
+                    "Unknown late-events.mode '" + mode + "', expected none, sqlite or kafka");
+        };
+        log.info("Late event side output: {} (queue capacity {}, batch size {})", mode, queueCapacity, batchSize);
+        return writer == null
+                ? LateEventSink.NONE
+                : new AsyncLateEventSink(writer, metrics, queueCapacity, batchSize);
+    }
+
+    private KafkaTemplate<String, String> kafkaTemplate() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 20);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(props));
+    }
+}
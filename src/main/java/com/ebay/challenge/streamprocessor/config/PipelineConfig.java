@@ -0,0 +1,59 @@
+package com.ebay.challenge.streamprocessor.config;
+
+import com.ebay.challenge.streamprocessor.consumer.PartitionFlowControl;
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.ebay.challenge.streamprocessor.pipeline.EventPipeline;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Staged decode -> join -> sink pipeline.
+ *
+ * Only active with `pipeline.enabled=true`. Takes precedence over keyed lanes.
+ */
+@Configuration
+@ConditionalOnProperty(name = "pipeline.enabled", havingValue = "true")
+public class PipelineConfig {
+
+    @Value("${pipeline.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${pipeline.decode-threads:4}")
+    private int decodeThreads;
+
+    @Value("${pipeline.join-threads:3}")
+    private int joinThreads;
+
+    @Value("${pipeline.sink-batch-size:500}")
+    private int sinkBatchSize;
+
+    @Value("${kafka.consumer.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public EventPipeline eventPipeline(
+            JoinEngine joinEngine,
+            OutputSink outputSink,
+            ObjectMapper objectMapper,
+            PartitionFlowControl flowControl,
+            Metrics metrics
+    ) {
+        return new EventPipeline(
+                joinEngine,
+                outputSink,
+                objectMapper,
+                flowControl,
+                metrics,
+                bufferSize,
+                decodeThreads,
+                joinThreads,
+                sinkBatchSize,
+                virtualThreads
+        );
+    }
+}
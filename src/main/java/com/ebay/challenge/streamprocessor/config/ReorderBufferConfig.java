@@ -0,0 +1,32 @@
+package com.ebay.challenge.streamprocessor.config;
+
+import com.ebay.challenge.streamprocessor.consumer.ReorderBuffer;
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Per-partition event-time reorder buffer in front of the JoinEngine.
+ *
+ * Only active with `kafka.consumer.reorder.enabled=true`, and only used for inline processing
+ * (keyed lanes and the pipeline take precedence).
+ */
+@Configuration
+@ConditionalOnProperty(name = "kafka.consumer.reorder.enabled", havingValue = "true")
+public class ReorderBufferConfig {
+
+    @Value("${kafka.consumer.reorder.max-delay-ms:5000}")
+    private long maxDelayMs;
+
+    @Value("${kafka.consumer.reorder.max-events:10000}")
+    private int maxEvents;
+
+    @Bean
+    public ReorderBuffer reorderBuffer(JoinEngine joinEngine) {
+        return new ReorderBuffer(joinEngine, Duration.ofMillis(maxDelayMs), maxEvents);
+    }
+}
@@ -0,0 +1,125 @@
+package com.ebay.challenge.streamprocessor.config;
+
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.EventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.KafkaStateChangelog;
+import com.ebay.challenge.streamprocessor.state.StateChangelog;
+import com.ebay.challenge.streamprocessor.state.StateRestorer;
+import com.ebay.challenge.streamprocessor.state.UserKeyFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Changelog-backed join state.
+ *
+ * Only active with `state.changelog.enabled=true`:
+ * - Every mutation of ClickStateStore / EmittedPageViewStore is written to a compacted topic
+ * - On partition assignment, the state of that partition is restored from the topic
+ *
+ * The changelog topic must have at least as many partitions as the input topics.
+ */
+@Configuration
+@ConditionalOnProperty(name = "state.changelog.enabled", havingValue = "true")
+public class StateChangelogConfig {
+
+    @Value("${kafka.bootstrap-servers:localhost:29092}")
+    private String bootstrapServers;
+
+    @Value("${state.changelog.topic:stream-processor-state-changelog}")
+    private String topic;
+
+    @Value("${state.changelog.partitions:3}")
+    private int partitions;
+
+    @Value("${state.changelog.restore-threads:4}")
+    private int restoreThreads;
+
+    @Value("${state.changelog.restore-batch-size:5000}")
+    private int restoreBatchSize;
+
+    @Bean
+    public KafkaAdmin kafkaAdmin() {
+        return new KafkaAdmin(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers));
+    }
+
+    @Bean
+    public NewTopic stateChangelogTopic() {
+        return TopicBuilder.name(topic)
+                .partitions(partitions)
+                .compact()
+                .build();
+    }
+
+    @Bean
+    public StateChangelog stateChangelog(ObjectMapper objectMapper) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+
+        // Durable and ordered per key, batched for throughput
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+
+        KafkaTemplate<String, String> template =
+                new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(props));
+        return new KafkaStateChangelog(template, objectMapper, topic);
+    }
+
+    @Bean(destroyMethod = "close")
+    public StateRestorer stateRestorer(
+            ClickStateStore clickStore,
+            EmittedPageViewStore pageViewStore,
+            UserKeyFilter userKeyFilter,
+            EventDeduplicator deduplicator,
+            ObjectMapper objectMapper,
+            Metrics metrics
+    ) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+
+        // Restore consumers read assigned partitions directly - no group, no commits
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+
+        // Batched replay
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, restoreBatchSize);
+        props.put(ConsumerConfig.FETCH_MAX_BYTES_CONFIG, 50 * 1024 * 1024);
+        props.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, 10 * 1024 * 1024);
+
+        return new StateRestorer(
+                clickStore,
+                pageViewStore,
+                userKeyFilter,
+                deduplicator,
+                new DefaultKafkaConsumerFactory<>(props),
+                objectMapper,
+                metrics,
+                topic,
+                restoreThreads
+        );
+    }
+}
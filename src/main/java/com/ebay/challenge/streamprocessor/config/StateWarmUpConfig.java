@@ -0,0 +1,83 @@
+package com.ebay.challenge.streamprocessor.config;
+
+import com.ebay.challenge.streamprocessor.consumer.StateWarmUp;
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.state.PartitionStateReleaser;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Startup warm-up which rebuilds join state from the input topics.
+ *
+ * Only active with `state.warm-up.enabled=true`.
+ */
+@Configuration
+@ConditionalOnProperty(name = "state.warm-up.enabled", havingValue = "true")
+public class StateWarmUpConfig {
+
+    @Value("${kafka.bootstrap-servers:localhost:29092}")
+    private String bootstrapServers;
+
+    @Value("${kafka.consumer.group-id:stream-processor-group}")
+    private String groupId;
+
+    @Value("${kafka.topics.ad-clicks:ad_clicks}")
+    private String adClicksTopic;
+
+    @Value("${kafka.topics.page-views:page_views}")
+    private String pageViewsTopic;
+
+    @Value("${state.warm-up.threads:4}")
+    private int warmUpThreads;
+
+    @Value("${state.warm-up.batch-size:5000}")
+    private int batchSize;
+
+    @Bean(destroyMethod = "close")
+    public StateWarmUp stateWarmUp(
+            JoinEngine joinEngine,
+            PartitionStateReleaser stateReleaser,
+            WatermarkTracker watermarkTracker,
+            ObjectMapper objectMapper,
+            Metrics metrics
+    ) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+
+        // Same group to read the committed offsets, but partitions are assigned manually:
+        // the warm-up consumer never joins the group and never commits
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+
+        // Full speed replay
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchSize);
+        props.put(ConsumerConfig.FETCH_MAX_BYTES_CONFIG, 50 * 1024 * 1024);
+        props.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, 10 * 1024 * 1024);
+
+        return new StateWarmUp(
+                joinEngine,
+                stateReleaser,
+                new DefaultKafkaConsumerFactory<>(props),
+                objectMapper,
+                metrics,
+                watermarkTracker.getAllowedLateness(),
+                adClicksTopic,
+                pageViewsTopic,
+                warmUpThreads
+        );
+    }
+}
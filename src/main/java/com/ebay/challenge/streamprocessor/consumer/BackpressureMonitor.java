@@ -0,0 +1,124 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pauses consumption when join state exceeds its limits, with high / low watermarks.
+ *
+ * State (ClickStateStore / EmittedPageViewStore size):
+ * - State is only evicted when the join watermark, the min of both streams, advances
+ * - So above the high mark, on every partition the stream that is ahead in event time is paused,
+ *   which lets the other stream catch up and the watermark (and eviction) move on
+ * - Never both streams of a partition: that could stop the watermark for good
+ * - Below the low mark (both stores) all state pauses are lifted
+ *
+ * The sink queue is not checked here: the pipeline pauses both streams itself while its ring is
+ * more than 3/4 full (`pipeline.buffer-size`), see {@link com.ebay.challenge.streamprocessor.pipeline.EventPipeline}.
+ *
+ * Only active with `backpressure.enabled=true`.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "backpressure.enabled", havingValue = "true")
+public class BackpressureMonitor {
+
+    static final String STATE_REASON = "state-memory";
+
+    private final ClickStateStore clickStore;
+    private final EmittedPageViewStore pageViewStore;
+    private final WatermarkTracker watermarkTracker;
+    private final PartitionFlowControl flowControl;
+
+    private final long clickStateHigh;
+    private final long clickStateLow;
+    private final long pageViewStateHigh;
+    private final long pageViewStateLow;
+
+    private boolean statePressure;
+
+    /**
+     * partition -> stream currently paused for state pressure
+     */
+    private final Map<Integer, StreamType> statePaused = new HashMap<>();
+
+    public BackpressureMonitor(
+            ClickStateStore clickStore,
+            EmittedPageViewStore pageViewStore,
+            WatermarkTracker watermarkTracker,
+            PartitionFlowControl flowControl,
+            @Value("${backpressure.click-state.high:1000000}") long clickStateHigh,
+            @Value("${backpressure.click-state.low:750000}") long clickStateLow,
+            @Value("${backpressure.page-view-state.high:1000000}") long pageViewStateHigh,
+            @Value("${backpressure.page-view-state.low:750000}") long pageViewStateLow
+    ) {
+        this.clickStore = clickStore;
+        this.pageViewStore = pageViewStore;
+        this.watermarkTracker = watermarkTracker;
+        this.flowControl = flowControl;
+        this.clickStateHigh = clickStateHigh;
+        this.clickStateLow = clickStateLow;
+        this.pageViewStateHigh = pageViewStateHigh;
+        this.pageViewStateLow = pageViewStateLow;
+        log.info("Initialized BackpressureMonitor (clicks {}/{}, page views {}/{})",
+                clickStateHigh, clickStateLow, pageViewStateHigh, pageViewStateLow);
+    }
+
+    @Scheduled(fixedDelayString = "${backpressure.check-interval-ms:1000}")
+    public void check() {
+        long clicks = clickStore.getTotalClickCount();
+        long pageViews = pageViewStore.size();
+
+        if (!statePressure && (clicks >= clickStateHigh || pageViews >= pageViewStateHigh)) {
+            log.warn("State above high watermark (clicks={}, page views={}), pausing streams ahead in event time",
+                    clicks, pageViews);
+            statePressure = true;
+        } else if (statePressure && clicks <= clickStateLow && pageViews <= pageViewStateLow) {
+            log.info("State below low watermark (clicks={}, page views={}), resuming", clicks, pageViews);
+            statePressure = false;
+        }
+
+        Map<Integer, StreamType> desired = statePressure ? streamsAhead() : Map.of();
+
+        // The stream ahead can change while paused: resume before pausing the other one
+        statePaused.entrySet().removeIf(entry -> {
+            if (entry.getValue() != desired.get(entry.getKey())) {
+                flowControl.resumePartition(STATE_REASON, entry.getValue(), entry.getKey());
+                return true;
+            }
+            return false;
+        });
+        desired.forEach((partition, stream) -> {
+            if (statePaused.putIfAbsent(partition, stream) == null) {
+                flowControl.pausePartition(STATE_REASON, stream, partition);
+            }
+        });
+    }
+
+    /**
+     * For every partition where both streams were seen, the one with the later max event time
+     */
+    private Map<Integer, StreamType> streamsAhead() {
+        Map<Integer, StreamType> ahead = new HashMap<>();
+        for (Integer partition : watermarkTracker.getActivePartitions()) {
+            Instant clicksMax = watermarkTracker.getMaxEventTime(StreamType.AD_CLICKS, partition);
+            Instant pageViewsMax = watermarkTracker.getMaxEventTime(StreamType.PAGE_VIEWS, partition);
+            if (clicksMax == null || pageViewsMax == null || clicksMax.equals(pageViewsMax)) {
+                continue;
+            }
+            ahead.put(partition, clicksMax.isAfter(pageViewsMax) ? StreamType.AD_CLICKS : StreamType.PAGE_VIEWS);
+        }
+        return ahead;
+    }
+}
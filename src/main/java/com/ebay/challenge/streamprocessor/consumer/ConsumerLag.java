@@ -0,0 +1,143 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Consumer lag of this instance:
+ * - max records lag from the client metrics of the listener containers (load shedding)
+ * - log-end offsets of the assigned partitions, sampled with an admin client every
+ *   `metrics.lag.interval-ms`; MetricsRegistry derives the per-partition offset lag from them
+ *   and the highest processed offsets
+ *
+ * Sampling is asynchronous and at most one request is in flight, so a slow broker
+ * neither blocks the scheduler nor the listener threads.
+ */
+@Slf4j
+@Component
+public class ConsumerLag {
+
+    private static final String FETCH_METRICS_GROUP = "consumer-fetch-manager-metrics";
+    private static final String RECORDS_LAG_MAX = "records-lag-max";
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final Metrics metrics;
+    private final String bootstrapServers;
+    private final Map<String, StreamType> streamsByTopic;
+
+    private final AtomicBoolean sampling = new AtomicBoolean();
+
+    /**
+     * Created on the first sample with assigned partitions, so file sources and backfills never connect
+     */
+    private volatile Admin admin;
+
+    public ConsumerLag(
+            KafkaListenerEndpointRegistry registry,
+            Metrics metrics,
+            @Value("${kafka.bootstrap-servers:localhost:29092}") String bootstrapServers,
+            @Value("${kafka.topics.ad-clicks:ad_clicks}") String adClicksTopic,
+            @Value("${kafka.topics.page-views:page_views}") String pageViewsTopic
+    ) {
+        this.registry = registry;
+        this.metrics = metrics;
+        this.bootstrapServers = bootstrapServers;
+        this.streamsByTopic = Map.of(
+                adClicksTopic, StreamType.AD_CLICKS,
+                pageViewsTopic, StreamType.PAGE_VIEWS
+        );
+    }
+
+    /**
+     * Max lag in records of any assigned partition, over all listener containers.
+     * The client reports it over its recent fetches; 0 before the first fetch.
+     */
+    public long maxRecordsLag() {
+        double max = 0;
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            for (Map<MetricName, ? extends Metric> clientMetrics : container.metrics().values()) {
+                for (var entry : clientMetrics.entrySet()) {
+                    MetricName name = entry.getKey();
+                    // The client-level metric, not the per-topic / per-partition ones
+                    if (RECORDS_LAG_MAX.equals(name.name())
+                            && FETCH_METRICS_GROUP.equals(name.group())
+                            && !name.tags().containsKey("topic")
+                            && entry.getValue().metricValue() instanceof Double lag
+                            && !lag.isNaN()) {
+                        max = Math.max(max, lag);
+                    }
+                }
+            }
+        }
+        return (long) max;
+    }
+
+    /**
+     * Request the log-end offsets of all assigned input partitions; skipped while the previous request runs.
+     */
+    @Scheduled(fixedDelayString = "${metrics.lag.interval-ms:5000}")
+    public void sampleLogEndOffsets() {
+        Map<TopicPartition, OffsetSpec> request = new HashMap<>();
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            Collection<TopicPartition> assigned = container.getAssignedPartitions();
+            if (assigned != null) {
+                assigned.stream()
+                        .filter(tp -> streamsByTopic.containsKey(tp.topic()))
+                        .forEach(tp -> request.put(tp, OffsetSpec.latest()));
+            }
+        }
+        if (request.isEmpty() || !sampling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            admin().listOffsets(request).all().whenComplete((offsets, error) -> {
+                sampling.set(false);
+                if (error != null) {
+                    log.debug("Could not sample log-end offsets: {}", error.getMessage());
+                    return;
+                }
+                offsets.forEach((tp, info) ->
+                        metrics.onLogEndOffset(streamsByTopic.get(tp.topic()), tp.partition(), info.offset()));
+            });
+        } catch (RuntimeException e) {
+            sampling.set(false);
+            log.debug("Could not sample log-end offsets: {}", e.getMessage());
+        }
+    }
+
+    private Admin admin() {
+        if (admin == null) {
+            admin = Admin.create(Map.of(
+                    AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                    AdminClientConfig.CLIENT_ID_CONFIG, "stream-processor-lag",
+                    AdminClientConfig.DEFAULT_API_TIMEOUT_MS_CONFIG, 10_000
+            ));
+        }
+        return admin;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (admin != null) {
+            admin.close();
+        }
+    }
+}
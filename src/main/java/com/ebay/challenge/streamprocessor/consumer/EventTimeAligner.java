@@ -0,0 +1,160 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps ad_clicks and page_views of a partition close in event time.
+ *
+ * - The two topics are consumed by independent containers, during catch-up one can run far ahead
+ * - The join watermark follows the slower one, so state grows on the faster side and page views
+ *   are emitted unattributed and updated later
+ * - A stream whose max event time is ahead of the other by more than `max-skew` is paused on that
+ *   partition, and resumed once the skew is down to half of it
+ * - If the lagging stream makes no progress for `idle-timeout` (nothing left to read), the pause is
+ *   lifted and not taken again until the lagging stream moves
+ *
+ * Only active with `kafka.consumer.alignment.enabled=true`.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "kafka.consumer.alignment.enabled", havingValue = "true")
+public class EventTimeAligner {
+
+    static final String PAUSE_REASON = "event-time-skew";
+
+    private final WatermarkTracker watermarkTracker;
+    private final PartitionFlowControl flowControl;
+    private final Duration maxSkew;
+    private final Duration resumeSkew;
+    private final Duration idleTimeout;
+    private final Clock clock;
+
+    /**
+     * partition -> current pause
+     */
+    private final Map<Integer, Pause> paused = new HashMap<>();
+
+    /**
+     * partition -> max event time of the lagging stream when its pause was released for being idle
+     */
+    private final Map<Integer, Instant> idleReleased = new HashMap<>();
+
+    @Autowired
+    public EventTimeAligner(
+            WatermarkTracker watermarkTracker,
+            PartitionFlowControl flowControl,
+            @Value("${kafka.consumer.alignment.max-skew-seconds:300}") long maxSkewSeconds,
+            @Value("${kafka.consumer.alignment.idle-timeout-ms:10000}") long idleTimeoutMs
+    ) {
+        this(watermarkTracker, flowControl, Duration.ofSeconds(maxSkewSeconds), Duration.ofMillis(idleTimeoutMs),
+                Clock.systemUTC());
+    }
+
+    EventTimeAligner(
+            WatermarkTracker watermarkTracker,
+            PartitionFlowControl flowControl,
+            Duration maxSkew,
+            Duration idleTimeout,
+            Clock clock
+    ) {
+        this.watermarkTracker = watermarkTracker;
+        this.flowControl = flowControl;
+        this.maxSkew = maxSkew;
+        this.resumeSkew = maxSkew.dividedBy(2);
+        this.idleTimeout = idleTimeout;
+        this.clock = clock;
+        log.info("Initialized EventTimeAligner (max skew {}, idle timeout {})", maxSkew, idleTimeout);
+    }
+
+    @Scheduled(fixedDelayString = "${kafka.consumer.alignment.check-interval-ms:200}")
+    public void check() {
+        for (Integer partition : watermarkTracker.getActivePartitions()) {
+            Instant clicksMax = watermarkTracker.getMaxEventTime(StreamType.AD_CLICKS, partition);
+            Instant pageViewsMax = watermarkTracker.getMaxEventTime(StreamType.PAGE_VIEWS, partition);
+            if (clicksMax == null || pageViewsMax == null) {
+                // Nothing to align against yet
+                continue;
+            }
+            Pause pause = paused.get(partition);
+            if (pause == null) {
+                maybePause(partition, clicksMax, pageViewsMax);
+            } else {
+                maybeResume(partition, pause, clicksMax, pageViewsMax);
+            }
+        }
+    }
+
+    private void maybePause(int partition, Instant clicksMax, Instant pageViewsMax) {
+        StreamType ahead = clicksMax.isAfter(pageViewsMax) ? StreamType.AD_CLICKS : StreamType.PAGE_VIEWS;
+        Instant laggingMax = ahead == StreamType.AD_CLICKS ? pageViewsMax : clicksMax;
+        Duration skew = Duration.between(clicksMax, pageViewsMax).abs();
+        if (skew.compareTo(maxSkew) <= 0) {
+            idleReleased.remove(partition);
+            return;
+        }
+
+        Instant releasedAt = idleReleased.get(partition);
+        if (releasedAt != null && !laggingMax.isAfter(releasedAt)) {
+            // Lagging stream still idle since the last release
+            return;
+        }
+        idleReleased.remove(partition);
+
+        log.debug("Partition {}: {} is {} ahead in event time, pausing it", partition, ahead.topicName, skew);
+        paused.put(partition, new Pause(ahead, laggingMax, clock.instant()));
+        flowControl.pausePartition(PAUSE_REASON, ahead, partition);
+    }
+
+    private void maybeResume(int partition, Pause pause, Instant clicksMax, Instant pageViewsMax) {
+        Instant aheadMax = pause.stream == StreamType.AD_CLICKS ? clicksMax : pageViewsMax;
+        Instant laggingMax = pause.stream == StreamType.AD_CLICKS ? pageViewsMax : clicksMax;
+        Instant now = clock.instant();
+
+        if (laggingMax.isAfter(pause.laggingMax)) {
+            pause.laggingMax = laggingMax;
+            pause.lastProgressAt = now;
+        }
+
+        if (Duration.between(laggingMax, aheadMax).compareTo(resumeSkew) <= 0) {
+            log.debug("Partition {}: {} caught up, resuming {}",
+                    partition, otherThan(pause.stream).topicName, pause.stream.topicName);
+        } else if (Duration.between(pause.lastProgressAt, now).compareTo(idleTimeout) >= 0) {
+            log.info("Partition {}: {} made no progress for {}, resuming {} anyway",
+                    partition, otherThan(pause.stream).topicName, idleTimeout, pause.stream.topicName);
+            idleReleased.put(partition, laggingMax);
+        } else {
+            return;
+        }
+        paused.remove(partition);
+        flowControl.resumePartition(PAUSE_REASON, pause.stream, partition);
+    }
+
+    private static StreamType otherThan(StreamType stream) {
+        return stream == StreamType.AD_CLICKS ? StreamType.PAGE_VIEWS : StreamType.AD_CLICKS;
+    }
+
+    private static final class Pause {
+        final StreamType stream;
+        Instant laggingMax;
+        Instant lastProgressAt;
+
+        Pause(StreamType stream, Instant laggingMax, Instant lastProgressAt) {
+            this.stream = stream;
+            this.laggingMax = laggingMax;
+            this.lastProgressAt = lastProgressAt;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans records of a Kafka partition out to a fixed number of single-threaded lanes.
+ *
+ * - The lane is chosen by hashing the key (user_id), so all records of a user run in order on one lane
+ * - Different users run in parallel, which lifts the one-thread-per-partition limit
+ * - Each lane has a bounded queue; a full queue blocks the submitting consumer thread (backpressure)
+ * - Lanes can run on virtual threads (`kafka.consumer.virtual-threads`)
+ */
+@Slf4j
+public class KeyedLaneExecutor implements AutoCloseable {
+
+    private final List<ThreadPoolExecutor> lanes;
+
+    public KeyedLaneExecutor(int laneCount, int queueCapacity) {
+        this(laneCount, queueCapacity, false);
+    }
+
+    public KeyedLaneExecutor(int laneCount, int queueCapacity, boolean virtualThreads) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("Lane count must be positive: " + laneCount);
+        }
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            String name = "lane-" + i;
+            lanes.add(new ThreadPoolExecutor(
+                    1, 1,
+                    0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    virtualThreads
+                            ? Thread.ofVirtual().name(name).factory()
+                            : Thread.ofPlatform().name(name).daemon(true).factory(),
+                    KeyedLaneExecutor::blockUntilQueued
+            ));
+        }
+        log.info("Initialized KeyedLaneExecutor with {} lanes (queue capacity {}, virtual threads {})",
+                laneCount, queueCapacity, virtualThreads);
+    }
+
+    /**
+     * Run the task on the lane of the key. Tasks with equal keys run in submission order.
+     */
+    public void execute(String key, Runnable task) {
+        lanes.get(laneOf(key)).execute(task);
+    }
+
+    public int laneOf(String key) {
+        // Spread the hash bits, String.hashCode clusters for similar ids like user_1, user_2
+        int h = key == null ? 0 : key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return Math.floorMod(h, lanes.size());
+    }
+
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * Finish queued tasks, then stop the lanes.
+     */
+    @Override
+    public void close() {
+        lanes.forEach(ThreadPoolExecutor::shutdown);
+        for (ThreadPoolExecutor lane : lanes) {
+            try {
+                if (!lane.awaitTermination(30, TimeUnit.SECONDS)) {
+                    log.warn("Lane did not drain in time, {} tasks dropped", lane.shutdownNow().size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.shutdownNow();
+            }
+        }
+    }
+
+    private static void blockUntilQueued(Runnable task, ThreadPoolExecutor lane) {
+        if (lane.isShutdown()) {
+            throw new RejectedExecutionException("Lane is shut down");
+        }
+        try {
+            lane.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for lane capacity", e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.engine.LoadShedding;
+import com.ebay.challenge.streamprocessor.pipeline.EventPipeline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Switches JoinEngine into {@link LoadShedding} when the backlog passes its SLO, with high / low watermarks.
+ *
+ * - lag: max records lag of any assigned partition (consumer client metrics)
+ * - queue: records in flight in the pipeline plus events held by the reorder buffer, if enabled
+ * - on when either is above its high mark, off once both are below their low marks
+ *
+ * Only active with `load-shedding.enabled=true`.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "load-shedding.enabled", havingValue = "true")
+public class LoadSheddingMonitor {
+
+    private final LoadShedding loadShedding;
+    private final LongSupplier lag;
+    private final LongSupplier queueDepth;
+
+    private final long lagHigh;
+    private final long lagLow;
+    private final long queueHigh;
+    private final long queueLow;
+
+    @Autowired
+    public LoadSheddingMonitor(
+            LoadShedding loadShedding,
+            ConsumerLag consumerLag,
+            Optional<EventPipeline> pipeline,
+            Optional<ReorderBuffer> reorderBuffer,
+            @Value("${load-shedding.lag.high:100000}") long lagHigh,
+            @Value("${load-shedding.lag.low:10000}") long lagLow,
+            @Value("${load-shedding.queue.high:6000}") long queueHigh,
+            @Value("${load-shedding.queue.low:1000}") long queueLow
+    ) {
+        this(loadShedding,
+                consumerLag::maxRecordsLag,
+                () -> pipeline.map(EventPipeline::getInFlight).orElse(0L)
+                        + reorderBuffer.map(ReorderBuffer::size).orElse(0),
+                lagHigh, lagLow, queueHigh, queueLow);
+    }
+
+    LoadSheddingMonitor(
+            LoadShedding loadShedding,
+            LongSupplier lag,
+            LongSupplier queueDepth,
+            long lagHigh,
+            long lagLow,
+            long queueHigh,
+            long queueLow
+    ) {
+        this.loadShedding = loadShedding;
+        this.lag = lag;
+        this.queueDepth = queueDepth;
+        this.lagHigh = lagHigh;
+        this.lagLow = lagLow;
+        this.queueHigh = queueHigh;
+        this.queueLow = queueLow;
+        log.info("Initialized LoadSheddingMonitor (lag {}/{}, queue {}/{})", lagHigh, lagLow, queueHigh, queueLow);
+    }
+
+    @Scheduled(fixedDelayString = "${load-shedding.check-interval-ms:1000}")
+    public void check() {
+        long currentLag = lag.getAsLong();
+        long currentQueue = queueDepth.getAsLong();
+
+        if (currentLag >= lagHigh || currentQueue >= queueHigh) {
+            loadShedding.activate("lag=" + currentLag + ", queue=" + currentQueue);
+        } else if (currentLag <= lagLow && currentQueue <= queueLow) {
+            loadShedding.deactivate();
+        }
+    }
+}
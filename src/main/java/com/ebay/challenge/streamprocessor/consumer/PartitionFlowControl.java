@@ -0,0 +1,178 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pause / resume of the listener containers, shared by everything that needs backpressure.
+ *
+ * - A whole stream (container) or a single partition of a stream can be paused
+ * - Several independent reasons (e.g. a full pipeline, memory pressure) can hold a pause at the same time;
+ *   it is applied with the first reason and lifted when the last one is removed
+ * - Pausing takes effect on the next poll; records already polled are still delivered
+ * - Paused time per partition is reported to Metrics
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PartitionFlowControl {
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final Metrics metrics;
+
+    /**
+     * Serializes transitions, so a pause and a resume never interleave on the containers
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<StreamType, Set<String>> streamReasons = new HashMap<>();
+    private final Map<StreamType, List<TopicPartition>> streamPausedPartitions = new HashMap<>();
+    private final Map<String, Set<String>> partitionReasons = new HashMap<>();
+
+    /**
+     * Pause both streams for the given reason. Idempotent per reason.
+     */
+    public void pauseAll(String reason) {
+        for (StreamType stream : StreamType.values()) {
+            pauseStream(reason, stream);
+        }
+    }
+
+    /**
+     * Remove a pause reason from both streams.
+     */
+    public void resumeAll(String reason) {
+        for (StreamType stream : StreamType.values()) {
+            resumeStream(reason, stream);
+        }
+    }
+
+    public void pauseStream(String reason, StreamType stream) {
+        lock.lock();
+        try {
+            Set<String> reasons = streamReasons.computeIfAbsent(stream, s -> new HashSet<>());
+            if (reasons.add(reason) && reasons.size() == 1) {
+                log.info("Pausing {} ({})", stream.topicName, reason);
+                MessageListenerContainer container = containerOf(stream);
+                if (container != null) {
+                    container.pause();
+                    List<TopicPartition> assigned = assignedPartitions(container);
+                    streamPausedPartitions.put(stream, assigned);
+                    assigned.forEach(tp -> metrics.onPartitionPaused(stream.logicalPartition(tp.partition())));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void resumeStream(String reason, StreamType stream) {
+        lock.lock();
+        try {
+            Set<String> reasons = streamReasons.get(stream);
+            if (reasons != null && reasons.remove(reason) && reasons.isEmpty()) {
+                log.info("Resuming {} ({} cleared)", stream.topicName, reason);
+                MessageListenerContainer container = containerOf(stream);
+                if (container != null) {
+                    container.resume();
+                }
+                streamPausedPartitions.getOrDefault(stream, List.of())
+                        .forEach(tp -> metrics.onPartitionResumed(stream.logicalPartition(tp.partition())));
+                streamPausedPartitions.remove(stream);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pause one partition of a stream. A no-op for the container if the partition is not assigned here.
+     */
+    public void pausePartition(String reason, StreamType stream, int partition) {
+        lock.lock();
+        try {
+            String logicalPartition = stream.logicalPartition(partition);
+            Set<String> reasons = partitionReasons.computeIfAbsent(logicalPartition, p -> new HashSet<>());
+            if (reasons.add(reason) && reasons.size() == 1) {
+                log.info("Pausing {} ({})", logicalPartition, reason);
+                topicPartitionOf(stream, partition).ifPresent(tp -> containerOf(stream).pausePartition(tp));
+                metrics.onPartitionPaused(logicalPartition);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void resumePartition(String reason, StreamType stream, int partition) {
+        lock.lock();
+        try {
+            String logicalPartition = stream.logicalPartition(partition);
+            Set<String> reasons = partitionReasons.get(logicalPartition);
+            if (reasons != null && reasons.remove(reason) && reasons.isEmpty()) {
+                log.info("Resuming {} ({} cleared)", logicalPartition, reason);
+                topicPartitionOf(stream, partition).ifPresent(tp -> containerOf(stream).resumePartition(tp));
+                metrics.onPartitionResumed(logicalPartition);
+                partitionReasons.remove(logicalPartition);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isPaused() {
+        lock.lock();
+        try {
+            return streamReasons.values().stream().anyMatch(reasons -> !reasons.isEmpty())
+                    || !partitionReasons.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isPaused(StreamType stream, int partition) {
+        lock.lock();
+        try {
+            return !streamReasons.getOrDefault(stream, Set.of()).isEmpty()
+                    || partitionReasons.containsKey(stream.logicalPartition(partition));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private MessageListenerContainer containerOf(StreamType stream) {
+        String listenerId = stream == StreamType.AD_CLICKS
+                ? StreamConsumer.AD_CLICKS_LISTENER_ID
+                : StreamConsumer.PAGE_VIEWS_LISTENER_ID;
+        return registry.getListenerContainer(listenerId);
+    }
+
+    private Optional<TopicPartition> topicPartitionOf(StreamType stream, int partition) {
+        MessageListenerContainer container = containerOf(stream);
+        if (container == null) {
+            return Optional.empty();
+        }
+        return assignedPartitions(container).stream()
+                .filter(tp -> tp.partition() == partition)
+                .findFirst();
+    }
+
+    private static List<TopicPartition> assignedPartitions(MessageListenerContainer container) {
+        Collection<TopicPartition> assigned = container.getAssignedPartitions();
+        return assigned == null ? List.of() : List.copyOf(assigned);
+    }
+}
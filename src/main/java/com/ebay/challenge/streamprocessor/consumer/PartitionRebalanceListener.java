@@ -0,0 +1,148 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.state.PartitionStateInitializer;
+import com.ebay.challenge.streamprocessor.state.PartitionStateReleaser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rebalance hooks shared by the ad click and page view listener containers.
+ *
+ * onPartitionsAssigned runs on the consumer thread before the first poll of the new assignment,
+ * so blocking here keeps the container from processing a partition until its state is ready.
+ *
+ * State is keyed by partition number, shared by both topics. Both containers are in one group,
+ * but partitions are assigned per topic, so ad_clicks_N and page_views_N may be owned by different instances.
+ * - before the offset commit of a revoke: buffered events are processed and the changelog is flushed
+ * - after the commit (or when partitions are lost): the partitions are only marked for release, since an eager
+ *   rebalance revokes everything and hands most of it straight back
+ * - once no consumer of this instance is between revoke and assignment, the state of partition N is released
+ *   if neither topic's partition N is owned any more, and initialized again if it comes back later
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PartitionRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    /**
+     * Changelog restore and/or warm-up, depending on configuration
+     */
+    private final ObjectProvider<PartitionStateInitializer> stateInitializers;
+
+    private final PartitionStateReleaser stateReleaser;
+
+    /**
+     * Only present when `kafka.consumer.reorder.enabled` is set
+     */
+    private final ObjectProvider<ReorderBuffer> reorderBuffer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Set<TopicPartition> owned = new HashSet<>();
+    private final Set<Integer> pendingRelease = new HashSet<>();
+
+    /**
+     * Consumers between a revoke and the following assignment
+     */
+    private final Set<Consumer<?, ?>> rebalancing = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        List<Integer> released;
+        lock.lock();
+        try {
+            owned.addAll(partitions);
+            rebalancing.remove(consumer);
+            released = releasable();
+        } finally {
+            lock.unlock();
+        }
+        release(released);
+
+        if (partitions.isEmpty()) {
+            return;
+        }
+        List<Integer> partitionNumbers = partitionNumbers(partitions);
+        stateInitializers.orderedStream().forEach(initializer -> {
+            log.info("Initializing state ({}) before consuming {}",
+                    initializer.getClass().getSimpleName(), partitions);
+            initializer.initialize(partitionNumbers);
+        });
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        reorderBuffer.ifAvailable(buffer -> partitionNumbers(partitions).forEach(buffer::flushPartition));
+        stateReleaser.flush();
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        revoked(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        // Offsets cannot be committed any more, the new owner replays what was not committed
+        revoked(consumer, partitions);
+    }
+
+    private void revoked(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            owned.removeAll(partitions);
+            pendingRelease.addAll(partitionNumbers(partitions));
+            rebalancing.add(consumer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pending partitions of which neither topic is owned, once no consumer is rebalancing (called under the lock).
+     */
+    private List<Integer> releasable() {
+        if (!rebalancing.isEmpty()) {
+            return List.of();
+        }
+        List<Integer> released = pendingRelease.stream()
+                .filter(partition -> owned.stream().noneMatch(tp -> tp.partition() == partition))
+                .toList();
+        pendingRelease.clear();
+        return released;
+    }
+
+    private void release(List<Integer> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        log.info("Releasing state of partitions {} which are no longer assigned", partitions);
+        stateReleaser.release(partitions);
+        stateInitializers.orderedStream().forEach(initializer -> initializer.release(partitions));
+    }
+
+    private static List<Integer> partitionNumbers(Collection<TopicPartition> partitions) {
+        return partitions.stream()
+                .map(TopicPartition::partition)
+                .distinct()
+                .toList();
+    }
+}
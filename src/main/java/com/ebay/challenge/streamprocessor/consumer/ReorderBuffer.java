@@ -0,0 +1,282 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Small per-partition buffer that releases clicks and page views to the JoinEngine in event-time order.
+ *
+ * - Out-of-order input otherwise emits a page view before its click arrived, and rewrites it later
+ * - Events of both topics of a partition wait in one queue ordered by event time (clicks first on ties)
+ * - An event is released once the partition has seen an event `max-delay` later, or when more than
+ *   `max-events` are buffered, or after `max-delay` of wall-clock time (so the tail of the input is not held)
+ * - Per topic partition, only the highest processed offset below the lowest one still buffered is acknowledged.
+ *   The container commits that and keeps polling (no asyncAcks, which would pause it until the buffer
+ *   released the whole poll); buffered records are redelivered after a restart
+ * - A released event that fails in the engine is retried with backoff like in the keyed lanes; after
+ *   MAX_ATTEMPTS it is logged and skipped, like the default error handler once its retries are exhausted.
+ *   If interrupted while retrying, it is not acknowledged and so is redelivered after a restart
+ * - Consecutive released events of one topic go to the engine as one batch, so a burst of a user's
+ *   page views (or clicks) is joined in one pass; a failing batch is retried event by event
+ */
+@Slf4j
+public class ReorderBuffer {
+
+    private static final Comparator<Entry> EVENT_TIME_ORDER = Comparator
+            .comparing(Entry::eventTime)
+            .thenComparing(entry -> !(entry.event() instanceof AdClickEvent))
+            .thenComparingLong(Entry::sequence);
+
+    static final int MAX_ATTEMPTS = StreamConsumer.LANE_MAX_ATTEMPTS;
+    private static final long RETRY_BACKOFF_MS = 100;
+
+    private final JoinEngine joinEngine;
+    private final Duration maxDelay;
+    private final int maxEvents;
+
+    private final Map<Integer, PartitionBuffer> partitions = new ConcurrentHashMap<>();
+
+    public ReorderBuffer(JoinEngine joinEngine, Duration maxDelay, int maxEvents) {
+        if (maxEvents < 1) {
+            throw new IllegalArgumentException("Reorder buffer needs room for at least one event: " + maxEvents);
+        }
+        this.joinEngine = joinEngine;
+        this.maxDelay = maxDelay;
+        this.maxEvents = maxEvents;
+        log.info("Initialized ReorderBuffer (max delay {}, max events per partition {})", maxDelay, maxEvents);
+    }
+
+    public void add(AdClickEvent click, Acknowledgment acknowledgment) {
+        add(click.getPartition(), click.getEventTime(), click.getOffset(), click, acknowledgment);
+    }
+
+    public void add(PageViewEvent pageView, Acknowledgment acknowledgment) {
+        add(pageView.getPartition(), pageView.getEventTime(), pageView.getOffset(), pageView, acknowledgment);
+    }
+
+    /**
+     * Release events that waited longer than the max delay in wall-clock time.
+     */
+    @Scheduled(fixedDelayString = "${kafka.consumer.reorder.flush-interval-ms:500}")
+    public void flushExpired() {
+        long cutoff = System.nanoTime() - maxDelay.toNanos();
+        partitions.values().forEach(buffer -> buffer.release(entry -> entry.bufferedAtNanos() - cutoff <= 0));
+    }
+
+    /**
+     * Release everything buffered for a partition, e.g. before the partition is revoked.
+     */
+    public void flushPartition(int partition) {
+        PartitionBuffer buffer = partitions.get(partition);
+        if (buffer != null) {
+            buffer.release(entry -> true);
+        }
+    }
+
+    /**
+     * Events buffered over all partitions.
+     */
+    public int size() {
+        return partitions.values().stream().mapToInt(PartitionBuffer::size).sum();
+    }
+
+    private void add(int partition, Instant eventTime, long offset, Object event, Acknowledgment acknowledgment) {
+        partitions.computeIfAbsent(partition, p -> new PartitionBuffer())
+                .add(eventTime, offset, event, acknowledgment);
+    }
+
+    /**
+     * Events of one topic, released one after the other.
+     *
+     * @return the events which are done (processed, or skipped after MAX_ATTEMPTS) and can be acknowledged
+     */
+    private List<Entry> process(List<Entry> run) {
+        if (run.size() > 1) {
+            try {
+                if (run.getFirst().event() instanceof AdClickEvent) {
+                    joinEngine.processClicks(run.stream().map(entry -> (AdClickEvent) entry.event()).toList());
+                } else {
+                    joinEngine.processPageViews(run.stream().map(entry -> (PageViewEvent) entry.event()).toList());
+                }
+                return run;
+            } catch (Exception e) {
+                // Clicks in state and sink writes are idempotent, and the engine undid the de-duplication marks
+                // of the batch: processing the events again isolates the failing one
+                log.warn("Batch of {} reordered events failed in the join engine, processing one by one",
+                        run.size(), e);
+            }
+        }
+        return run.stream().filter(this::process).toList();
+    }
+
+    /**
+     * @return false if interrupted before the event was processed
+     */
+    private boolean process(Entry entry) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (entry.event() instanceof AdClickEvent click) {
+                    joinEngine.processClick(click);
+                } else {
+                    joinEngine.processPageView((PageViewEvent) entry.event());
+                }
+                return true;
+            } catch (Exception e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    log.error("Skipping reordered event {} after {} attempts in the join engine",
+                            entry.event(), attempt, e);
+                    return true;
+                }
+                log.warn("Reordered event {} failed in the join engine (attempt {}): {}",
+                        entry.event(), attempt, e.getMessage());
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    // Shutting down: leave unacknowledged, it is redelivered after restart
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Both listener containers and the flush add and release concurrently, under one lock per partition.
+     * Releasing under the lock keeps the engine calls of a partition in event-time order.
+     */
+    private final class PartitionBuffer {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final PriorityQueue<Entry> queue = new PriorityQueue<>(EVENT_TIME_ORDER);
+        private final OffsetTracker clickOffsets = new OffsetTracker();
+        private final OffsetTracker pageViewOffsets = new OffsetTracker();
+        private Instant maxEventTime = Instant.MIN;
+        private long sequence;
+
+        void add(Instant eventTime, long offset, Object event, Acknowledgment acknowledgment) {
+            lock.lock();
+            try {
+                Entry added = new Entry(eventTime, sequence++, System.nanoTime(), offset, event, acknowledgment);
+                offsetsOf(added).buffered(offset);
+                queue.add(added);
+                if (eventTime.isAfter(maxEventTime)) {
+                    maxEventTime = eventTime;
+                }
+                Instant releaseBefore = maxEventTime.minus(maxDelay);
+                release(entry -> queue.size() > maxEvents || !entry.eventTime().isAfter(releaseBefore));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(Predicate<Entry> releasable) {
+            lock.lock();
+            try {
+                List<Entry> run = new ArrayList<>();
+                while (!queue.isEmpty() && releasable.test(queue.peek())) {
+                    Entry entry = queue.poll();
+                    if (!run.isEmpty() && isClick(entry) != isClick(run.getFirst())) {
+                        processAndAcknowledge(run);
+                        run = new ArrayList<>();
+                    }
+                    run.add(entry);
+                }
+                if (!run.isEmpty()) {
+                    processAndAcknowledge(run);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void processAndAcknowledge(List<Entry> run) {
+            OffsetTracker offsets = offsetsOf(run.getFirst());
+            // An event not done stays buffered in its tracker, which holds the committed offset below it
+            process(run).forEach(entry -> offsets.processed(entry.offset(), entry.acknowledgment()));
+            offsets.acknowledge();
+        }
+
+        private OffsetTracker offsetsOf(Entry entry) {
+            return isClick(entry) ? clickOffsets : pageViewOffsets;
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Offsets of one topic partition. Events are released in event-time order, not in offset order, so a
+     * processed record is acknowledged only once no lower offset is buffered: the committed offset never
+     * passes a record which was not processed yet.
+     */
+    private static final class OffsetTracker {
+
+        /**
+         * offset -> buffered events with it (a redelivered record can be added again)
+         */
+        private final TreeMap<Long, Integer> buffered = new TreeMap<>();
+
+        /**
+         * offset -> acknowledgment, processed but not yet acknowledged
+         */
+        private final TreeMap<Long, Acknowledgment> processed = new TreeMap<>();
+
+        void buffered(long offset) {
+            buffered.merge(offset, 1, Integer::sum);
+        }
+
+        void processed(long offset, Acknowledgment acknowledgment) {
+            buffered.computeIfPresent(offset, (o, count) -> count == 1 ? null : count - 1);
+            processed.put(offset, acknowledgment);
+        }
+
+        /**
+         * Acknowledge the highest processed offset below the lowest buffered one, if any.
+         */
+        void acknowledge() {
+            NavigableMap<Long, Acknowledgment> committable =
+                    buffered.isEmpty() ? processed : processed.headMap(buffered.firstKey(), false);
+            if (!committable.isEmpty()) {
+                // Commits everything up to it
+                committable.lastEntry().getValue().acknowledge();
+                committable.clear();
+            }
+        }
+    }
+
+    private static boolean isClick(Entry entry) {
+        return entry.event() instanceof AdClickEvent;
+    }
+
+    private record Entry(
+            Instant eventTime,
+            long sequence,
+            long bufferedAtNanos,
+            long offset,
+            Object event,
+            Acknowledgment acknowledgment
+    ) {
+    }
+}
@@ -0,0 +1,307 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.PartitionStateReleaser;
+import com.ebay.challenge.streamprocessor.state.PartitionStateInitializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Startup warm-up: rebuilds ClickStateStore and EmittedPageViewStore by re-reading the tail of the
+ * input topics, as a lighter alternative to the state changelog.
+ * <p>
+ * For every assigned partition:
+ * - committed event time = event time of the last committed record (min over both topics)
+ * - ad_clicks are rewound to committed event time - (ATTRIBUTION_WINDOW + allowed lateness),
+ *   which covers every click that eviction would still keep
+ * - page_views are rewound to committed event time - allowed lateness, the page views which
+ *   are not finalized by the watermark yet
+ * - records up to the committed offsets are replayed through JoinEngine with sink writes suppressed
+ * <p>
+ * Rewind offsets come from offsetsForTimes on the record timestamps. A record is produced after its
+ * event happened, so its timestamp is never before its event time and no needed record is skipped.
+ * Normal processing then continues from the committed offsets.
+ * <p>
+ * A failed warm-up drops the partially replayed state of its partition and is not cached,
+ * so the next assignment of the partition warms it up again from clean state.
+ */
+@Slf4j
+public class StateWarmUp implements PartitionStateInitializer, AutoCloseable {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    /**
+     * Progress is reported once per this many replayed records
+     */
+    private static final long PROGRESS_INTERVAL = 1000;
+
+    private final JoinEngine joinEngine;
+    private final PartitionStateReleaser stateReleaser;
+    private final ConsumerFactory<String, String> consumerFactory;
+    private final ObjectMapper objectMapper;
+    private final Metrics metrics;
+    private final Duration allowedLateness;
+    private final String adClicksTopic;
+    private final String pageViewsTopic;
+    private final ExecutorService warmUpPool;
+
+    /**
+     * partition -> warm-up in progress or done
+     */
+    private final Map<Integer, CompletableFuture<Void>> warmUps = new ConcurrentHashMap<>();
+
+    public StateWarmUp(
+            JoinEngine joinEngine,
+            PartitionStateReleaser stateReleaser,
+            ConsumerFactory<String, String> consumerFactory,
+            ObjectMapper objectMapper,
+            Metrics metrics,
+            Duration allowedLateness,
+            String adClicksTopic,
+            String pageViewsTopic,
+            int warmUpThreads
+    ) {
+        this.joinEngine = joinEngine;
+        this.stateReleaser = stateReleaser;
+        this.consumerFactory = consumerFactory;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.allowedLateness = allowedLateness;
+        this.adClicksTopic = adClicksTopic;
+        this.pageViewsTopic = pageViewsTopic;
+        this.warmUpPool = Executors.newFixedThreadPool(warmUpThreads, r -> {
+            Thread t = new Thread(r, "state-warm-up");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Warm up the given partitions in parallel and wait until all of them are done.
+     * Partitions which were already warmed up by this instance are skipped.
+     */
+    @Override
+    public void initialize(Collection<Integer> partitions) {
+        List<CompletableFuture<Void>> pending = partitions.stream()
+                .map(this::warmUpOnce)
+                .toList();
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * @return completes once the partition is warmed up and, if that failed, forgotten
+     */
+    private CompletableFuture<Void> warmUpOnce(int partition) {
+        CompletableFuture<Void> warmUp = warmUps.computeIfAbsent(
+                partition,
+                p -> CompletableFuture.runAsync(() -> warmUpPartition(p), warmUpPool)
+        );
+        // Not cached when failed, so the next assignment retries it
+        return warmUp.whenComplete((v, e) -> {
+            if (e != null) {
+                warmUps.remove(partition, warmUp);
+            }
+        });
+    }
+
+    @Override
+    public void release(Collection<Integer> partitions) {
+        partitions.forEach(warmUps::remove);
+    }
+
+    public Set<Integer> getWarmedUpPartitions() {
+        return Set.copyOf(warmUps.keySet());
+    }
+
+    private void warmUpPartition(int partition) {
+        try {
+            replayPartition(partition);
+        } catch (RuntimeException e) {
+            // The retry replays the partition from the beginning
+            stateReleaser.release(List.of(partition));
+            log.error("Failed to warm up partition {}", partition, e);
+            throw e;
+        }
+    }
+
+    private void replayPartition(int partition) {
+        long startNanos = System.nanoTime();
+        TopicPartition clicksTp = new TopicPartition(adClicksTopic, partition);
+        TopicPartition pageViewsTp = new TopicPartition(pageViewsTopic, partition);
+
+        try (Consumer<String, String> consumer = consumerFactory.createConsumer()) {
+            Map<TopicPartition, OffsetAndMetadata> committed =
+                    consumer.committed(Set.of(clicksTp, pageViewsTp));
+            long clicksCommitted = committedOffset(committed, clicksTp);
+            long pageViewsCommitted = committedOffset(committed, pageViewsTp);
+
+            Instant committedEventTime = earliest(
+                    lastEventTime(consumer, clicksTp, clicksCommitted,
+                            value -> decodeClick(value, partition).getEventTime()),
+                    lastEventTime(consumer, pageViewsTp, pageViewsCommitted,
+                            value -> decodePageView(value, partition).getEventTime())
+            );
+            if (committedEventTime == null) {
+                log.info("Nothing to warm up for partition {}: no committed offsets", partition);
+                metrics.onWarmUpProgress(partition, 0, 0, true);
+                return;
+            }
+
+            Instant pageViewsFrom = committedEventTime.minus(allowedLateness);
+            Instant clicksFrom = pageViewsFrom.minus(ClickStateStore.ATTRIBUTION_WINDOW);
+
+            long clicksStart = offsetForTime(consumer, clicksTp, clicksFrom, clicksCommitted);
+            long pageViewsStart = offsetForTime(consumer, pageViewsTp, pageViewsFrom, pageViewsCommitted);
+
+            long clicksTotal = clicksCommitted - clicksStart;
+            long total = clicksTotal + (pageViewsCommitted - pageViewsStart);
+            metrics.onWarmUpProgress(partition, 0, total, false);
+
+            // Clicks first, so every replayed page view sees the best click available before the restart
+            replay(consumer, clicksTp, clicksStart, clicksCommitted,
+                    value -> joinEngine.replayClick(decodeClick(value, partition)),
+                    replayed -> metrics.onWarmUpProgress(partition, replayed, total, false));
+            replay(consumer, pageViewsTp, pageViewsStart, pageViewsCommitted,
+                    value -> joinEngine.replayPageView(decodePageView(value, partition)),
+                    replayed -> metrics.onWarmUpProgress(partition, clicksTotal + replayed, total, false));
+
+            metrics.onWarmUpProgress(partition, total, total, true);
+            log.info(
+                    "Warmed up partition {} from {} (clicks from offset {}, page views from offset {}): {} records in {} ms",
+                    partition, committedEventTime, clicksStart, pageViewsStart, total,
+                    Duration.ofNanos(System.nanoTime() - startNanos).toMillis()
+            );
+        }
+    }
+
+    private void replay(
+            Consumer<String, String> consumer,
+            TopicPartition tp,
+            long fromOffset,
+            long toOffset,
+            java.util.function.Consumer<String> processor,
+            LongConsumer onProgress
+    ) {
+        if (fromOffset >= toOffset) {
+            return;
+        }
+        consumer.assign(List.of(tp));
+        consumer.seek(tp, fromOffset);
+
+        long replayed = 0;
+        while (consumer.position(tp) < toOffset) {
+            for (ConsumerRecord<String, String> record : consumer.poll(POLL_TIMEOUT)) {
+                if (record.offset() >= toOffset) {
+                    break;
+                }
+                processor.accept(record.value());
+                replayed++;
+                if (replayed % PROGRESS_INTERVAL == 0) {
+                    onProgress.accept(replayed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Event time of the last record before the committed offset, or null if there is none.
+     */
+    private Instant lastEventTime(
+            Consumer<String, String> consumer,
+            TopicPartition tp,
+            long committedOffset,
+            Function<String, Instant> eventTimeReader
+    ) {
+        if (committedOffset <= 0) {
+            return null;
+        }
+        consumer.assign(List.of(tp));
+        consumer.seek(tp, committedOffset - 1);
+
+        Instant eventTime = null;
+        while (consumer.position(tp) < committedOffset) {
+            for (ConsumerRecord<String, String> record : consumer.poll(POLL_TIMEOUT)) {
+                if (record.offset() < committedOffset) {
+                    eventTime = eventTimeReader.apply(record.value());
+                }
+            }
+        }
+        return eventTime;
+    }
+
+    private long offsetForTime(Consumer<String, String> consumer, TopicPartition tp, Instant time, long committedOffset) {
+        if (committedOffset <= 0) {
+            return committedOffset;
+        }
+        OffsetAndTimestamp found = consumer.offsetsForTimes(Map.of(tp, time.toEpochMilli())).get(tp);
+        if (found == null) {
+            return committedOffset;
+        }
+        return Math.min(found.offset(), committedOffset);
+    }
+
+    private static long committedOffset(Map<TopicPartition, OffsetAndMetadata> committed, TopicPartition tp) {
+        OffsetAndMetadata offset = committed.get(tp);
+        return offset != null ? offset.offset() : 0;
+    }
+
+    private static Instant earliest(Instant a, Instant b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.isBefore(b) ? a : b;
+    }
+
+    private AdClickEvent decodeClick(String value, int partition) {
+        try {
+            AdClickEvent click = objectMapper.readValue(value, AdClickEvent.class);
+            click.setPartition(partition);
+            return click;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode ad click during warm-up", e);
+        }
+    }
+
+    private PageViewEvent decodePageView(String value, int partition) {
+        try {
+            PageViewEvent pageView = objectMapper.readValue(value, PageViewEvent.class);
+            pageView.setPartition(partition);
+            return pageView;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode page view during warm-up", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        warmUpPool.shutdownNow();
+    }
+}
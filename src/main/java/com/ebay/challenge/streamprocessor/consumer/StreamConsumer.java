@@ -1,8 +1,12 @@
 package com.ebay.challenge.streamprocessor.consumer;
 
 import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.LatencyStage;
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
 import com.ebay.challenge.streamprocessor.model.AdClickEvent;
 import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.pipeline.EventPipeline;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,11 +15,26 @@ import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
+import java.util.Optional;
+
 /**
  * Kafka consumer that processes page view and ad click events.
  *
  * Uses Spring Kafka's concurrent message listener containers for partition-aware processing.
  * Implements manual offset commit after successful processing for at-least-once delivery.
+ *
+ * With keyed lanes enabled (`kafka.consumer.lanes.enabled=true`) records are handed to a
+ * {@link KeyedLaneExecutor} instead of being processed on the consumer thread:
+ * - per-user order is kept, users of one partition are processed in parallel
+ * - acks arrive out of order; the container (asyncAcks) only commits up to the lowest offset
+ *   for which every record is acknowledged
+ *
+ * With the pipeline enabled (`pipeline.enabled=true`) records are only handed to the {@link EventPipeline},
+ * which decodes, joins, writes and acknowledges them on its own stages.
+ *
+ * With the reorder buffer enabled (`kafka.consumer.reorder.enabled=true`, inline processing only) records are
+ * decoded on the consumer thread and handed to the {@link ReorderBuffer}, which releases them to the join
+ * engine in event-time order and acknowledges up to the lowest offset it still holds.
  */
 @Slf4j
 @Component
@@ -24,6 +43,23 @@ public class StreamConsumer {
 
     private final JoinEngine joinEngine;
     private final ObjectMapper objectMapper;
+    private final Optional<KeyedLaneExecutor> keyedLanes;
+    private final Optional<EventPipeline> pipeline;
+    private final Optional<ReorderBuffer> reorderBuffer;
+    private final Metrics metrics;
+
+    /**
+     * Listener container ids, used to pause / resume consumption (see PartitionFlowControl)
+     */
+    public static final String AD_CLICKS_LISTENER_ID = "ad-clicks";
+    public static final String PAGE_VIEWS_LISTENER_ID = "page-views";
+
+    /**
+     * Attempts per record in a lane before it is logged and skipped,
+     * same as the container's default error handler (1 + 9 retries)
+     */
+    static final int LANE_MAX_ATTEMPTS = 10;
+    private static final long LANE_RETRY_BACKOFF_MS = 100;
 
     /**
      * Consume ad click events from Kafka.
@@ -38,27 +74,33 @@ public class StreamConsumer {
      * - Handle errors appropriately
      */
     @KafkaListener(
+        id = AD_CLICKS_LISTENER_ID,
         topics = "${kafka.topics.ad-clicks:ad_clicks}",
         groupId = "${kafka.consumer.group-id:stream-processor-group}",
         containerFactory = "adClickListenerContainerFactory"
     )
     public void consumeAdClick(ConsumerRecord<String, String> record, Acknowledgment acknowledgment) {
+        if (pipeline.isPresent()) {
+            pipeline.get().submit(StreamType.AD_CLICKS, record, acknowledgment);
+            return;
+        }
+        if (keyedLanes.isPresent()) {
+            processInLane(keyedLanes.get(), record, acknowledgment, StreamType.AD_CLICKS, this::processAdClick);
+            return;
+        }
         try {
             log.debug("Received ad click from partition {} at offset {}",
                 record.partition(), record.offset());
 
-            // TODO: Parse the JSON record value to AdClickEvent
-            AdClickEvent click = objectMapper.readValue(record.value(), AdClickEvent.class);
-
-            // TODO: Set partition and offset metadata on the event
-            click.setPartition(record.partition());
-            click.setOffset(record.offset());
+            if (reorderBuffer.isPresent()) {
+                // Acknowledged by the buffer once no lower offset is held
+                reorderBuffer.get().add(decodeAdClick(record), acknowledgment);
+            } else {
+                processAdClick(record);
 
-            // TODO: Process the click through the join engine
-            joinEngine.processClick(click);
-
-            // TODO: Acknowledge the offset after successful processing
-            acknowledgment.acknowledge();
+                // TODO: Acknowledge the offset after successful processing
+                acknowledgment.acknowledge();
+            }
 
             log.debug("Successfully processed ad click from partition {} offset {}",
                 record.partition(), record.offset());
@@ -84,23 +126,31 @@ public class StreamConsumer {
      * - Handle errors appropriately
      */
     @KafkaListener(
+        id = PAGE_VIEWS_LISTENER_ID,
         topics = "${kafka.topics.page-views:page_views}",
         groupId = "${kafka.consumer.group-id:stream-processor-group}",
         containerFactory = "pageViewListenerContainerFactory"
     )
     public void consumePageView(ConsumerRecord<String, String> record, Acknowledgment acknowledgment) {
+        if (pipeline.isPresent()) {
+            pipeline.get().submit(StreamType.PAGE_VIEWS, record, acknowledgment);
+            return;
+        }
+        if (keyedLanes.isPresent()) {
+            processInLane(keyedLanes.get(), record, acknowledgment, StreamType.PAGE_VIEWS, this::processPageView);
+            return;
+        }
         try {
             log.debug("Received page view from partition {} at offset {}",
                 record.partition(), record.offset());
 
-            PageViewEvent pageView = objectMapper.readValue(record.value(), PageViewEvent.class);
-
-            pageView.setPartition(record.partition());
-            pageView.setOffset(record.offset());
-
-            joinEngine.processPageView(pageView);
+            if (reorderBuffer.isPresent()) {
+                reorderBuffer.get().add(decodePageView(record), acknowledgment);
+            } else {
+                processPageView(record);
 
-            acknowledgment.acknowledge();
+                acknowledgment.acknowledge();
+            }
 
             log.debug("Successfully processed page view from partition {} offset {}",
                 record.partition(), record.offset());
@@ -112,4 +162,93 @@ public class StreamConsumer {
             throw new RuntimeException("Failed to process page view", e);
         }
     }
+
+    /**
+     * Entry point for records that do not come from the listener containers (see EventSourceRunner).
+     */
+    public void consume(StreamType stream, ConsumerRecord<String, String> record, Acknowledgment acknowledgment) {
+        if (stream == StreamType.AD_CLICKS) {
+            consumeAdClick(record, acknowledgment);
+        } else {
+            consumePageView(record, acknowledgment);
+        }
+    }
+
+    private void processAdClick(ConsumerRecord<String, String> record) throws Exception {
+        // Process the click through the join engine
+        joinEngine.processClick(decodeAdClick(record));
+    }
+
+    private void processPageView(ConsumerRecord<String, String> record) throws Exception {
+        joinEngine.processPageView(decodePageView(record));
+    }
+
+    private AdClickEvent decodeAdClick(ConsumerRecord<String, String> record) throws Exception {
+        long start = System.nanoTime();
+        // Parse the JSON record value to AdClickEvent
+        AdClickEvent click = objectMapper.readValue(record.value(), AdClickEvent.class);
+        metrics.onLatency(LatencyStage.DECODE, record.partition(), System.nanoTime() - start);
+
+        // Set partition and offset metadata on the event
+        click.setPartition(record.partition());
+        click.setOffset(record.offset());
+        return click;
+    }
+
+    private PageViewEvent decodePageView(ConsumerRecord<String, String> record) throws Exception {
+        long start = System.nanoTime();
+        PageViewEvent pageView = objectMapper.readValue(record.value(), PageViewEvent.class);
+        metrics.onLatency(LatencyStage.DECODE, record.partition(), System.nanoTime() - start);
+
+        pageView.setPartition(record.partition());
+        pageView.setOffset(record.offset());
+        return pageView;
+    }
+
+    /**
+     * Hand the record to the lane of its key (user_id, see data_generator.py).
+     *
+     * Exceptions cannot be rethrown to the container from a lane, so the lane retries itself.
+     * After LANE_MAX_ATTEMPTS the record is logged and acknowledged, like the container's
+     * default error handler does once its retries are exhausted.
+     */
+    private void processInLane(
+            KeyedLaneExecutor lanes,
+            ConsumerRecord<String, String> record,
+            Acknowledgment acknowledgment,
+            StreamType stream,
+            RecordProcessor processor
+    ) {
+        lanes.execute(record.key(), () -> {
+            for (int attempt = 1; attempt <= LANE_MAX_ATTEMPTS; attempt++) {
+                try {
+                    processor.process(record);
+                    acknowledgment.acknowledge();
+                    return;
+                } catch (Exception e) {
+                    if (attempt == LANE_MAX_ATTEMPTS) {
+                        log.error("Skipping {} from partition {} offset {} after {} attempts: {}",
+                                stream, record.partition(), record.offset(), attempt, record.value(), e);
+                        metrics.onFailedEventSkipped(stream);
+                        acknowledgment.acknowledge();
+                        return;
+                    }
+                    log.warn("Error processing {} from partition {} offset {} (attempt {}): {}",
+                            stream, record.partition(), record.offset(), attempt, e.getMessage());
+                    try {
+                        Thread.sleep(LANE_RETRY_BACKOFF_MS);
+                    } catch (InterruptedException ie) {
+                        // Shutting down: leave unacknowledged, it is redelivered after restart
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface RecordProcessor {
+        void process(ConsumerRecord<String, String> record) throws Exception;
+    }
 }
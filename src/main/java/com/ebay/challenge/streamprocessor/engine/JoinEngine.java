@@ -1,13 +1,24 @@
 package com.ebay.challenge.streamprocessor.engine;
 
+import com.ebay.challenge.streamprocessor.jfr.AttributionLookupEvent;
+import com.ebay.challenge.streamprocessor.jfr.ClickProcessingEvent;
+import com.ebay.challenge.streamprocessor.jfr.EvictionEvent;
+import com.ebay.challenge.streamprocessor.jfr.PageViewProcessingEvent;
+import com.ebay.challenge.streamprocessor.jfr.UpdateFanOutEvent;
+import com.ebay.challenge.streamprocessor.metrics.LatencyStage;
 import com.ebay.challenge.streamprocessor.metrics.Metrics;
 import com.ebay.challenge.streamprocessor.model.AdClickEvent;
 import com.ebay.challenge.streamprocessor.model.AttributedPageView;
 import com.ebay.challenge.streamprocessor.model.PageViewEvent;
 import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.output.LateEvent;
+import com.ebay.challenge.streamprocessor.output.LateEventSink;
 import com.ebay.challenge.streamprocessor.output.OutputSink;
 import com.ebay.challenge.streamprocessor.state.ClickStateStore;
 import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.EventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.HotKeyTracker;
+import com.ebay.challenge.streamprocessor.state.UserKeyFilter;
 import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,9 +26,22 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * Core join engine implementing `emit immediately, update later if needed`.
+ * <p>
+ * Hot paths emit JFR events (package jfr), disabled unless a recording enables them
+ * (`jfr/stream-processor.jfc`); fields are only filled when an event will be committed.
  */
 @Slf4j
 @Component
@@ -27,44 +51,235 @@ public class JoinEngine {
     private final ClickStateStore clickStore;
     private final EmittedPageViewStore emittedPageViewStore;
     private final WatermarkTracker watermarkTracker;
+    private final UserKeyFilter userKeyFilter;
+    private final HotKeyTracker hotKeyTracker;
+    private final EventDeduplicator deduplicator;
+    private final LoadShedding loadShedding;
     private final OutputSink outputSink;
+    private final LateEventSink lateEventSink;
     private final Metrics metrics;
 
 
     /**
      * Process an ad click event.
      * - Update watermark
-     * - Drop if too late
+     * - Drop if too late (to the late event side output)
      * - Store click
-     * - Try updating already emitted page views
+     * - Try updating already emitted page views (skipped under load shedding)
+     * - If it fails, its de-duplication mark is undone, so a redelivery or retry processes it again
      */
     public void processClick(AdClickEvent click) {
+        processClick(click, outputSink::write);
+    }
+
+    /**
+     * Same as {@link #processClick(AdClickEvent)}, but updates go to the given emitter instead of the sink
+     * (e.g. the pipeline, which batches sink writes).
+     */
+    public void processClick(AdClickEvent click, Consumer<AttributedPageView> emitter) {
+        ClickProcessingEvent event = new ClickProcessingEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            updateWithClick(click, emitter);
+        } finally {
+            metrics.onLatency(LatencyStage.PROCESS_CLICK, click.getPartition(), System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.partition = click.getPartition();
+                event.clicks = 1;
+                event.users = 1;
+                event.commit();
+            }
+        }
+    }
+
+    private void updateWithClick(AdClickEvent click, Consumer<AttributedPageView> emitter) {
+        List<AdClickEvent> firstSeen = new ArrayList<>(1);
+        try {
+            if (admitClick(click, firstSeen::add) && needsUpdatePass(click)) {
+                updateEmittedPageViews(click, emitter);
+            }
+        } catch (RuntimeException e) {
+            // Redelivered or retried by a lane, its own id must not make it a duplicate
+            forgetClicks(firstSeen);
+            throw e;
+        }
+    }
+
+    private void updateEmittedPageViews(AdClickEvent click, Consumer<AttributedPageView> emitter) {
+        Instant joinWatermark = watermarkTracker.getWatermark(click.getPartition());
+        UpdateFanOutEvent event = new UpdateFanOutEvent();
+        event.begin();
+        int[] scanned = new int[1];
+        int pvUpdates = emittedPageViewStore.tryUpdateWithClick(
+                click,
+                joinWatermark,
+                emitter,
+                count -> scanned[0] = count
+        );
+        commitFanOut(event, click.getPartition(), 1, scanned[0], pvUpdates);
+        if (pvUpdates > 0) {
+            metrics.onPageViewUpdated(pvUpdates);
+        }
+    }
+
+    /**
+     * Process clicks of one partition which arrived together (no page views in between),
+     * e.g. released at once by the reorder buffer.
+     * - Each click is admitted in order like in {@link #processClick}
+     * - The emitted page views of a user are then updated in one pass for all of their clicks
+     * - The batch counts as arriving at once: the watermark after the batch finalizes page views,
+     *   and a page view gets only its final update
+     * - The batch duration is recorded as the latency of each click, divided evenly
+     * - If the batch fails, the de-duplication marks of its clicks are undone, so it can be processed again
+     */
+    public void processClicks(List<AdClickEvent> clicks) {
+        processClicks(clicks, outputSink::write);
+    }
+
+    /**
+     * Same as {@link #processClicks(List)}, but updates go to the given emitter instead of the sink.
+     */
+    public void processClicks(List<AdClickEvent> clicks, Consumer<AttributedPageView> emitter) {
+        ClickProcessingEvent event = new ClickProcessingEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            updateWithClicks(clicks, emitter);
+        } finally {
+            recordBatchLatency(LatencyStage.PROCESS_CLICK, clicks, AdClickEvent::getPartition, start);
+            if (!clicks.isEmpty() && event.shouldCommit()) {
+                event.partition = clicks.getFirst().getPartition();
+                event.clicks = clicks.size();
+                event.users = distinctUsers(clicks, AdClickEvent::getUserId);
+                event.commit();
+            }
+        }
+    }
+
+    private void updateWithClicks(List<AdClickEvent> clicks, Consumer<AttributedPageView> emitter) {
+        List<AdClickEvent> firstSeen = new ArrayList<>(clicks.size());
+        try {
+            updateWithClicks(clicks, firstSeen, emitter);
+        } catch (RuntimeException e) {
+            // All or nothing: the batch is processed again, its own ids must not make its clicks duplicates
+            forgetClicks(firstSeen);
+            throw e;
+        }
+    }
+
+    private void updateWithClicks(
+            List<AdClickEvent> clicks,
+            List<AdClickEvent> firstSeen,
+            Consumer<AttributedPageView> emitter
+    ) {
+        Map<String, List<AdClickEvent>> clicksPerUser = new LinkedHashMap<>();
+        for (AdClickEvent click : clicks) {
+            if (admitClick(click, firstSeen::add) && needsUpdatePass(click)) {
+                clicksPerUser.computeIfAbsent(click.getUserId(), userId -> new ArrayList<>()).add(click);
+            }
+        }
+        for (List<AdClickEvent> userClicks : clicksPerUser.values()) {
+            Instant joinWatermark = watermarkTracker.getWatermark(userClicks.getFirst().getPartition());
+            UpdateFanOutEvent event = new UpdateFanOutEvent();
+            event.begin();
+            int[] scanned = new int[1];
+            int pvUpdates = emittedPageViewStore.tryUpdateWithClicks(
+                    userClicks, joinWatermark, emitter, count -> scanned[0] = count);
+            commitFanOut(event, userClicks.getFirst().getPartition(), userClicks.size(), scanned[0], pvUpdates);
+            if (pvUpdates > 0) {
+                metrics.onPageViewUpdated(pvUpdates);
+            }
+        }
+    }
+
+    private void commitFanOut(UpdateFanOutEvent event, int partition, int clicks, int scanned, int updates) {
+        if (event.shouldCommit()) {
+            event.partition = partition;
+            event.users = 1;
+            event.clicks = clicks;
+            event.pageViewsScanned = scanned;
+            event.updates = updates;
+            event.commit();
+        }
+    }
+
+    /**
+     * Dedup, late check and store.
+     *
+     * @param onFirstSeen receives the click once it passed de-duplication
+     * @return false if the click was dropped
+     */
+    private boolean admitClick(AdClickEvent click, Consumer<AdClickEvent> onFirstSeen) {
         metrics.onClickReceived();
+        metrics.onOffsetProcessed(StreamType.AD_CLICKS, click.getPartition(), click.getOffset());
+
+        if (!deduplicator.firstSeen(StreamType.AD_CLICKS, click.getPartition(), click.getClickId(), click.getEventTime())) {
+            metrics.onDuplicateDropped(StreamType.AD_CLICKS);
+            return false;
+        }
+        onFirstSeen.accept(click);
+        if (!acceptClick(click)) {
+            metrics.onLateEventDropped(StreamType.AD_CLICKS, click.getPartition());
+            lateEventSink.submit(LateEvent.of(click, watermarkTracker.getWatermark(click.getPartition())));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether emitted page views have to be checked for the click (user filter, load shedding).
+     */
+    private boolean needsUpdatePass(AdClickEvent click) {
+        if (!mightHavePageViews(click)) {
+            return false;
+        }
+        if (loadShedding.isActive()) {
+            metrics.onCorrectionSkipped(StreamType.AD_CLICKS);
+            return false;
+        }
+        return true;
+    }
 
+    /**
+     * Replay an ad click to rebuild state only (e.g. warm-up after restart).
+     * Same join semantics as {@link #processClick}, but nothing is written to the sink.
+     */
+    public void replayClick(AdClickEvent click) {
+        deduplicator.firstSeen(StreamType.AD_CLICKS, click.getPartition(), click.getClickId(), click.getEventTime());
+        if (!acceptClick(click) || !mightHavePageViews(click)) {
+            return;
+        }
+        Instant joinWatermark = watermarkTracker.getWatermark(click.getPartition());
+        emittedPageViewStore.tryUpdateWithClick(click, joinWatermark, updated -> { });
+    }
+
+    private boolean acceptClick(AdClickEvent click) {
         int partition = click.getPartition();
         Instant eventTime = click.getEventTime();
         watermarkTracker.updateWatermark(StreamType.AD_CLICKS, partition,
                 eventTime
         );
         if (watermarkTracker.isTooLate(partition, eventTime)) {
-            log.warn(
+            // debug only: under a lateness storm this runs for every event
+            log.debug(
                     "Dropping late ad click {} (partition={}, eventTime={})",
                     click.getClickId(), StreamType.AD_CLICKS.logicalPartition(partition), eventTime
             );
-            return;
+            return false;
         }
         clickStore.addClick(click);
-        metrics.onClickStateSizeUpdated(clickStore.getTotalClickCount());
-
-        Instant joinWatermark = watermarkTracker.getWatermark(partition);
-        int pvUpdates = emittedPageViewStore.tryUpdateWithClick(
-                click,
-                joinWatermark,
-                outputSink::write
-        );
-        if (pvUpdates > 0) {
-            metrics.onPageViewUpdated(pvUpdates);
+        userKeyFilter.recordClick(partition, click.getUserId());
+        if (hotKeyTracker.recordClick(partition, click.getUserId())) {
+            hotKeyTracker.onClicksCapped(clickStore.capClicks(click.getUserId(), hotKeyTracker.getMaxClicksPerUser()));
         }
+        return true;
+    }
+
+    private boolean mightHavePageViews(AdClickEvent click) {
+        boolean mightContain = userKeyFilter.mightHavePageViews(click.getPartition(), click.getUserId());
+        metrics.onUserFilterLookup(mightContain);
+        return mightContain;
     }
 
 
@@ -72,12 +287,195 @@ public class JoinEngine {
      * Process a page view event.
      *
      * - Update watermark
-     * - Drop if too late
+     * - Drop if too late (to the late event side output)
      * - Emit immediately
-     * - Record for possible future updates
+     * - Record for possible future updates (skipped under load shedding)
+     * - If it fails, its de-duplication mark is undone, so a redelivery or retry processes it again
      */
     public void processPageView(PageViewEvent pageView) {
+        processPageView(pageView, outputSink::write);
+    }
+
+    /**
+     * Same as {@link #processPageView(PageViewEvent)}, but the result goes to the given emitter instead of the sink.
+     */
+    public void processPageView(PageViewEvent pageView, Consumer<AttributedPageView> emitter) {
+        PageViewProcessingEvent event = new PageViewProcessingEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            emitOne(pageView, emitter);
+        } finally {
+            metrics.onLatency(LatencyStage.PROCESS_PAGE_VIEW, pageView.getPartition(), System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.partition = pageView.getPartition();
+                event.pageViews = 1;
+                event.users = 1;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Process page views of one partition which arrived together (no clicks in between),
+     * e.g. released at once by the reorder buffer.
+     * Same result as {@link #processPageView} for each in order, but the clicks of a user are
+     * looked up once for all of their page views ({@link ClickStateStore#findAttributableClicks}).
+     * The batch duration is recorded as the latency of each page view, divided evenly.
+     * If the batch fails, the de-duplication marks of its page views are undone, so it can be processed again.
+     */
+    public void processPageViews(List<PageViewEvent> pageViews) {
+        processPageViews(pageViews, outputSink::write);
+    }
+
+    /**
+     * Same as {@link #processPageViews(List)}, but the results go to the given emitter instead of the sink.
+     */
+    public void processPageViews(List<PageViewEvent> pageViews, Consumer<AttributedPageView> emitter) {
+        PageViewProcessingEvent event = new PageViewProcessingEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            emitAll(pageViews, emitter);
+        } finally {
+            recordBatchLatency(LatencyStage.PROCESS_PAGE_VIEW, pageViews, PageViewEvent::getPartition, start);
+            if (!pageViews.isEmpty() && event.shouldCommit()) {
+                event.partition = pageViews.getFirst().getPartition();
+                event.pageViews = pageViews.size();
+                event.users = distinctUsers(pageViews, PageViewEvent::getUserId);
+                event.commit();
+            }
+        }
+    }
+
+    private void emitOne(PageViewEvent pageView, Consumer<AttributedPageView> emitter) {
+        List<PageViewEvent> firstSeen = new ArrayList<>(1);
+        try {
+            if (admitPageView(pageView, firstSeen::add)) {
+                emit(pageView, findAttributableClick(pageView), emitter);
+            }
+        } catch (RuntimeException e) {
+            // See updateWithClick
+            forgetPageViews(firstSeen);
+            throw e;
+        }
+    }
+
+    private void emitAll(List<PageViewEvent> pageViews, Consumer<AttributedPageView> emitter) {
+        List<PageViewEvent> firstSeen = new ArrayList<>(pageViews.size());
+        try {
+            emitAll(pageViews, firstSeen, emitter);
+        } catch (RuntimeException e) {
+            // All or nothing, see updateWithClicks
+            forgetPageViews(firstSeen);
+            throw e;
+        }
+    }
+
+    private void emitAll(
+            List<PageViewEvent> pageViews,
+            List<PageViewEvent> firstSeen,
+            Consumer<AttributedPageView> emitter
+    ) {
+        Map<String, List<PageViewEvent>> pageViewsPerUser = new LinkedHashMap<>();
+        List<PageViewEvent> admitted = new ArrayList<>(pageViews.size());
+        for (PageViewEvent pageView : pageViews) {
+            if (admitPageView(pageView, firstSeen::add)) {
+                admitted.add(pageView);
+                pageViewsPerUser.computeIfAbsent(pageView.getUserId(), userId -> new ArrayList<>()).add(pageView);
+            }
+        }
+        Map<PageViewEvent, AdClickEvent> attributed = new IdentityHashMap<>();
+        pageViewsPerUser.forEach((userId, userPageViews) -> findAttributableClicks(userId, userPageViews, attributed));
+        for (PageViewEvent pageView : admitted) {
+            emit(pageView, attributed.get(pageView), emitter);
+        }
+    }
+
+    /**
+     * Undo the de-duplication marks of clicks whose processing failed, so a retry is not dropped as a duplicate.
+     */
+    private void forgetClicks(List<AdClickEvent> clicks) {
+        clicks.forEach(click -> deduplicator.forget(
+                StreamType.AD_CLICKS, click.getPartition(), click.getClickId(), click.getEventTime()));
+    }
+
+    /**
+     * Same as {@link #forgetClicks} for page views.
+     */
+    private void forgetPageViews(List<PageViewEvent> pageViews) {
+        pageViews.forEach(pageView -> deduplicator.forget(
+                StreamType.PAGE_VIEWS, pageView.getPartition(), pageView.getEventId(), pageView.getEventTime()));
+    }
+
+    /**
+     * Dedup and late check.
+     *
+     * @param onFirstSeen receives the page view once it passed de-duplication
+     * @return false if the page view was dropped
+     */
+    private boolean admitPageView(PageViewEvent pageView, Consumer<PageViewEvent> onFirstSeen) {
         metrics.onPageViewReceived();
+        metrics.onOffsetProcessed(StreamType.PAGE_VIEWS, pageView.getPartition(), pageView.getOffset());
+
+        if (!deduplicator.firstSeen(
+                StreamType.PAGE_VIEWS, pageView.getPartition(), pageView.getEventId(), pageView.getEventTime())) {
+            log.debug("Dropping duplicate page view {}", pageView.getEventId());
+            metrics.onDuplicateDropped(StreamType.PAGE_VIEWS);
+            return false;
+        }
+        onFirstSeen.accept(pageView);
+        if (!acceptPageView(pageView)) {
+            metrics.onLateEventDropped(StreamType.PAGE_VIEWS, pageView.getPartition());
+            lateEventSink.submit(LateEvent.of(pageView, watermarkTracker.getWatermark(pageView.getPartition())));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Emit immediately, record for possible future updates (skipped under load shedding).
+     */
+    private void emit(PageViewEvent pageView, AdClickEvent click, Consumer<AttributedPageView> emitter) {
+        AttributedPageView attributedPageView =
+                buildAttributedPageView(pageView, click);
+        emitter.accept(attributedPageView);
+        metrics.onPageViewEmitted();
+        metrics.onLatency(
+                LatencyStage.EVENT_TO_EMIT,
+                pageView.getPartition(),
+                (System.currentTimeMillis() - pageView.getEventTime().toEpochMilli()) * 1_000_000
+        );
+
+        if (loadShedding.isActive()) {
+            metrics.onCorrectionSkipped(StreamType.PAGE_VIEWS);
+        } else {
+            recordEmittedPageView(pageView, click);
+        }
+
+        log.info(
+                "Emitted attributed page view {} immediately (user={}, click={})",
+                pageView.getEventId(),
+                pageView.getUserId(),
+                click != null ? click.getClickId() : "none"
+        );
+    }
+
+    /**
+     * Replay a page view to rebuild state only (e.g. warm-up after restart).
+     * The page view is attributed and recorded for updates, but nothing is written to the sink.
+     */
+    public void replayPageView(PageViewEvent pageView) {
+        deduplicator.firstSeen(
+                StreamType.PAGE_VIEWS, pageView.getPartition(), pageView.getEventId(), pageView.getEventTime());
+        if (!acceptPageView(pageView)) {
+            return;
+        }
+        AdClickEvent click = findAttributableClick(pageView);
+        recordEmittedPageView(pageView, click);
+    }
+
+    private boolean acceptPageView(PageViewEvent pageView) {
         int partition = pageView.getPartition();
 
         Instant pvEventTime = pageView.getEventTime();
@@ -87,32 +485,94 @@ public class JoinEngine {
         );
 
         if (watermarkTracker.isTooLate(partition, pvEventTime)) {
-            log.warn(
+            log.debug(
                     "Dropping late page view {} (partition={}, eventTime={})",
                     pageView.getEventId(), StreamType.PAGE_VIEWS.logicalPartition(partition), pvEventTime
             );
+            return false;
+        }
+        hotKeyTracker.recordPageView(partition, pageView.getUserId());
+        return true;
+    }
+
+    /**
+     * Click lookup, short-circuited when the user filter knows the user has no clicks.
+     */
+    private AdClickEvent findAttributableClick(PageViewEvent pageView) {
+        boolean mightContain = userKeyFilter.mightHaveClicks(pageView.getPartition(), pageView.getUserId());
+        metrics.onUserFilterLookup(mightContain);
+        if (!mightContain) {
+            return null;
+        }
+        AttributionLookupEvent event = new AttributionLookupEvent();
+        event.begin();
+        AdClickEvent click = clickStore.findAttributableClick(
+                pageView.getUserId(),
+                pageView.getEventTime()
+        );
+        if (event.shouldCommit()) {
+            event.partition = pageView.getPartition();
+            event.users = 1;
+            event.pageViews = 1;
+            event.attributed = click != null ? 1 : 0;
+            event.commit();
+        }
+        return click;
+    }
+
+    /**
+     * Bulk click lookup for the page views of one user, short-circuited like {@link #findAttributableClick}.
+     */
+    private void findAttributableClicks(
+            String userId,
+            List<PageViewEvent> pageViews,
+            Map<PageViewEvent, AdClickEvent> attributed
+    ) {
+        boolean mightContain = userKeyFilter.mightHaveClicks(pageViews.getFirst().getPartition(), userId);
+        for (int i = 0; i < pageViews.size(); i++) {
+            metrics.onUserFilterLookup(mightContain);
+        }
+        if (!mightContain) {
             return;
         }
-        AdClickEvent click =
-                clickStore.findAttributableClick(
-                        pageView.getUserId(),
-                        pageView.getEventTime()
-                );
+        AttributionLookupEvent event = new AttributionLookupEvent();
+        event.begin();
+        List<PageViewEvent> byTime = pageViews.stream()
+                .sorted(Comparator.comparing(PageViewEvent::getEventTime))
+                .toList();
+        List<AdClickEvent> clicks = clickStore.findAttributableClicks(
+                userId,
+                byTime.stream().map(PageViewEvent::getEventTime).toList()
+        );
+        for (int i = 0; i < byTime.size(); i++) {
+            attributed.put(byTime.get(i), clicks.get(i));
+        }
+        if (event.shouldCommit()) {
+            event.partition = pageViews.getFirst().getPartition();
+            event.users = 1;
+            event.pageViews = pageViews.size();
+            event.attributed = (int) clicks.stream().filter(Objects::nonNull).count();
+            event.commit();
+        }
+    }
 
-        AttributedPageView attributedPageView =
-                buildAttributedPageView(pageView, click);
-        outputSink.write(attributedPageView);
-        metrics.onPageViewEmitted();
+    private static <T> int distinctUsers(List<T> events, Function<T, String> userId) {
+        return (int) events.stream().map(userId).distinct().count();
+    }
 
-        emittedPageViewStore.recordEmittedPageView(pageView, click);
-        metrics.onPageViewStateSizeUpdated(emittedPageViewStore.size());
+    private <T> void recordBatchLatency(LatencyStage stage, List<T> events, ToIntFunction<T> partition, long start) {
+        if (events.isEmpty()) {
+            return;
+        }
+        long perEvent = (System.nanoTime() - start) / events.size();
+        for (T event : events) {
+            metrics.onLatency(stage, partition.applyAsInt(event), perEvent);
+        }
+    }
 
-        log.info(
-                "Emitted attributed page view {} immediately (user={}, click={})",
-                pageView.getEventId(),
-                pageView.getUserId(),
-                click != null ? click.getClickId() : "none"
-        );
+    private void recordEmittedPageView(PageViewEvent pageView, AdClickEvent click) {
+        emittedPageViewStore.recordEmittedPageView(pageView, click);
+        userKeyFilter.recordPageView(pageView.getPartition(), pageView.getUserId());
     }
 
 
@@ -125,17 +585,36 @@ public class JoinEngine {
             }
             Instant clickCutoff =
                     watermark.minus(ClickStateStore.ATTRIBUTION_WINDOW);
+            EvictionEvent event = new EvictionEvent();
+            event.begin();
 
             int clicksEvicted =
-                    clickStore.evictOldClicks(clickCutoff);
-            int pvEvicted = emittedPageViewStore.evictFinalizedPageViews(watermark);
+                    clickStore.evictOldClicks(partition, clickCutoff);
+            int pvEvicted = emittedPageViewStore.evictFinalizedPageViews(
+                    partition,
+                    watermark,
+                    metrics::onPageViewsFinalOnFirstWrite
+            );
+            metrics.onPageViewsFinalized(pvEvicted);
+            deduplicator.expire(partition, watermark);
             if (pvEvicted > 0 || clicksEvicted > 0) {
                 log.debug(
                         "Eviction of partition {}: pageViews={}, clicks={}",
                         partition, pvEvicted, clicksEvicted
                 );
-                metrics.onPageViewStateSizeUpdated(emittedPageViewStore.size());
-                metrics.onClickStateSizeUpdated(clickStore.getTotalClickCount());
+            }
+            // Rotate user filters, so users without state drop out
+            userKeyFilter.rebuild(
+                    partition,
+                    () -> clickStore.getUserIds(partition),
+                    () -> emittedPageViewStore.getUserIds(partition)
+            );
+            if (event.shouldCommit()) {
+                event.partition = partition;
+                event.users = clickStore.getUserCount(partition);
+                event.clicksEvicted = clicksEvicted;
+                event.pageViewsEvicted = pvEvicted;
+                event.commit();
             }
         }
     }
@@ -0,0 +1,45 @@
+package com.ebay.challenge.streamprocessor.engine;
+
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Degraded mode of JoinEngine under overload: first emits stay fast, corrections are given up.
+ * While active:
+ * - clicks are stored (later page views still attribute to them), but not matched against emitted page views
+ * - emitted page views are not recorded for updates, so EmittedPageViewStore stops growing
+ *
+ * Switched by {@link com.ebay.challenge.streamprocessor.consumer.LoadSheddingMonitor} (`load-shedding.enabled`),
+ * never active otherwise.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LoadShedding {
+
+    private final Metrics metrics;
+
+    private volatile boolean active;
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void activate(String reason) {
+        if (!active) {
+            active = true;
+            metrics.onLoadSheddingChanged(true);
+            log.warn("Load shedding on ({}): late updates are skipped", reason);
+        }
+    }
+
+    public void deactivate() {
+        if (active) {
+            active = false;
+            metrics.onLoadSheddingChanged(false);
+            log.info("Load shedding off, back to emit-and-update");
+        }
+    }
+}
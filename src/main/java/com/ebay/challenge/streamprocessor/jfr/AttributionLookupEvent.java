@@ -0,0 +1,37 @@
+package com.ebay.challenge.streamprocessor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Click lookup in ClickStateStore for the page views of one user.
+ * Not emitted when the user filter short-circuits the lookup.
+ */
+@Name(AttributionLookupEvent.NAME)
+@Label("Attribution Lookup")
+@Description("Click state lookup for the page views of one user")
+@Category({"Stream Processor", "Join Engine"})
+@Enabled(false)
+@StackTrace(false)
+public class AttributionLookupEvent extends Event {
+
+    public static final String NAME = "streamprocessor.AttributionLookup";
+
+    @Label("Partition")
+    public int partition;
+
+    @Label("Users")
+    public int users;
+
+    @Label("Page Views")
+    public int pageViews;
+
+    @Label("Attributed")
+    @Description("Page views a click was found for")
+    public int attributed;
+}
@@ -0,0 +1,33 @@
+package com.ebay.challenge.streamprocessor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JoinEngine.processClick / processClicks: admission, store and update fan-out of one click or batch.
+ */
+@Name(ClickProcessingEvent.NAME)
+@Label("Click Processing")
+@Description("One click or batch of clicks through the join engine")
+@Category({"Stream Processor", "Join Engine"})
+@Enabled(false)
+@StackTrace(false)
+public class ClickProcessingEvent extends Event {
+
+    public static final String NAME = "streamprocessor.ClickProcessing";
+
+    @Label("Partition")
+    public int partition;
+
+    @Label("Clicks")
+    public int clicks;
+
+    @Label("Users")
+    @Description("Distinct users of the clicks")
+    public int users;
+}
@@ -0,0 +1,36 @@
+package com.ebay.challenge.streamprocessor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One partition of a JoinEngine.evictFinalizedState run, including the user filter rebuild.
+ */
+@Name(EvictionEvent.NAME)
+@Label("Eviction")
+@Description("Eviction of finalized state of one partition")
+@Category({"Stream Processor", "State"})
+@Enabled(false)
+@StackTrace(false)
+public class EvictionEvent extends Event {
+
+    public static final String NAME = "streamprocessor.Eviction";
+
+    @Label("Partition")
+    public int partition;
+
+    @Label("Users")
+    @Description("Users with clicks left in the partition")
+    public int users;
+
+    @Label("Clicks Evicted")
+    public int clicksEvicted;
+
+    @Label("Page Views Evicted")
+    public int pageViewsEvicted;
+}
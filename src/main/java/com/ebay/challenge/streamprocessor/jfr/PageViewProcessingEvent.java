@@ -0,0 +1,33 @@
+package com.ebay.challenge.streamprocessor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JoinEngine.processPageView / processPageViews: admission, attribution and emit of one page view or batch.
+ */
+@Name(PageViewProcessingEvent.NAME)
+@Label("Page View Processing")
+@Description("One page view or batch of page views through the join engine")
+@Category({"Stream Processor", "Join Engine"})
+@Enabled(false)
+@StackTrace(false)
+public class PageViewProcessingEvent extends Event {
+
+    public static final String NAME = "streamprocessor.PageViewProcessing";
+
+    @Label("Partition")
+    public int partition;
+
+    @Label("Page Views")
+    public int pageViews;
+
+    @Label("Users")
+    @Description("Distinct users of the page views")
+    public int users;
+}
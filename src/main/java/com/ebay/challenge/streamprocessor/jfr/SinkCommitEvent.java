@@ -0,0 +1,31 @@
+package com.ebay.challenge.streamprocessor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One OutputSink write or batch commit, including waiting for the sink lock.
+ * The sink is shared, so not per partition.
+ */
+@Name(SinkCommitEvent.NAME)
+@Label("Sink Commit")
+@Description("One write or batch commit of attributed page views to SQLite")
+@Category({"Stream Processor", "Output"})
+@Enabled(false)
+@StackTrace(false)
+public class SinkCommitEvent extends Event {
+
+    public static final String NAME = "streamprocessor.SinkCommit";
+
+    @Label("Rows")
+    public int rows;
+
+    @Label("Users")
+    @Description("Distinct users of the rows")
+    public int users;
+}
@@ -0,0 +1,40 @@
+package com.ebay.challenge.streamprocessor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * EmittedPageViewStore.tryUpdateWithClick(s): late clicks of one user against the emitted page views,
+ * including the sink writes of the updates when they are written inline.
+ */
+@Name(UpdateFanOutEvent.NAME)
+@Label("Update Fan-Out")
+@Description("Update pass of emitted page views for the clicks of one user")
+@Category({"Stream Processor", "Join Engine"})
+@Enabled(false)
+@StackTrace(false)
+public class UpdateFanOutEvent extends Event {
+
+    public static final String NAME = "streamprocessor.UpdateFanOut";
+
+    @Label("Partition")
+    public int partition;
+
+    @Label("Users")
+    public int users;
+
+    @Label("Clicks")
+    public int clicks;
+
+    @Label("Page Views Scanned")
+    @Description("Emitted page views of the user within the attribution windows of the clicks, not finalized")
+    public int pageViewsScanned;
+
+    @Label("Updates")
+    public int updates;
+}
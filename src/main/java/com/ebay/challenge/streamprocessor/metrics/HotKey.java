@@ -0,0 +1,13 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+/**
+ * A heavy hitter among the user ids of one stream partition.
+ *
+ * @param estimatedCount events of the user over the current and previous window, never undercounted
+ * @param share          estimatedCount relative to all events of the stream partition in these windows
+ */
+public record HotKey(
+        String userId,
+        long estimatedCount,
+        double share
+) {}
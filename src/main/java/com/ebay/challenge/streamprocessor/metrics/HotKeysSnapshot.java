@@ -0,0 +1,16 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import java.util.List;
+
+/**
+ * Heavy hitters and key skew (`state.hot-keys`), exposed on /metrics/hot-keys.
+ *
+ * @param maxClicksPerUser retained clicks per user, 0 when not capped
+ * @param clicksCapped     clicks dropped from state by the cap
+ */
+public record HotKeysSnapshot(
+        boolean enabled,
+        long maxClicksPerUser,
+        long clicksCapped,
+        List<PartitionHotKeys> partitions
+) {}
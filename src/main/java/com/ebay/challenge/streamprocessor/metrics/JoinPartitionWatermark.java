@@ -2,9 +2,22 @@ package com.ebay.challenge.streamprocessor.metrics;
 
 import java.time.Instant;
 
+/**
+ * Event time and progress of one partition; null while unknown.
+ *
+ * @param pageViewsOffsetLag           log-end offset minus the next offset to process
+ * @param pageViewsEventTimeLagMillis  wall clock minus the max event time
+ * @param crossTopicSkewMillis         ad_clicks max event time minus page_views max event time
+ */
 public record JoinPartitionWatermark(
     int partition,
     Instant pageViewsMaxEventTime,
     Instant adClicksMaxEventTime,
-    Instant joinWatermark
-) {}
\ No newline at end of file
+    Instant joinWatermark,
+    long allowedLatenessMillis,
+    Long pageViewsOffsetLag,
+    Long adClicksOffsetLag,
+    Long pageViewsEventTimeLagMillis,
+    Long adClicksEventTimeLagMillis,
+    Long crossTopicSkewMillis
+) {}
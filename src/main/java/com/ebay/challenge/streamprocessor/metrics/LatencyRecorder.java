@@ -0,0 +1,102 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram of one stage and partition (HdrHistogram-style log-linear buckets).
+ *
+ * - Microseconds, 128 linear buckets, then 64 per power of two: any value within 1.6% relative error
+ * - Fixed size (~1700 buckets up to one hour, longer values are clamped), recording is one atomic
+ *   increment and allocates nothing
+ * - Two bucket arrays: writers record into the active one, {@link #flip()} swaps them and summarizes
+ *   the completed interval. A sample recorded while the interval flips can be lost.
+ *
+ * Any number of writers, one reader (the interval flip).
+ */
+final class LatencyRecorder {
+
+    private static final int LINEAR_BUCKETS = 128;
+    private static final int SUB_BUCKETS = LINEAR_BUCKETS / 2;
+    static final long MAX_MICROS = 60L * 60 * 1_000_000;
+    private static final int BUCKETS = indexOf(MAX_MICROS) + 1;
+
+    private volatile AtomicLongArray active = new AtomicLongArray(BUCKETS);
+    private AtomicLongArray spare = new AtomicLongArray(BUCKETS);
+
+    void record(long micros) {
+        active.incrementAndGet(indexOf(Math.max(0, Math.min(micros, MAX_MICROS))));
+    }
+
+    /**
+     * Start a new interval.
+     *
+     * @return stats of the completed interval, null if nothing was recorded
+     */
+    LatencyStats flip(LatencyStage stage, int partition) {
+        for (int i = 0; i < BUCKETS; i++) {
+            spare.set(i, 0);
+        }
+        AtomicLongArray completed = active;
+        active = spare;
+        spare = completed;
+
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        int highest = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = completed.get(i);
+            total += counts[i];
+            if (counts[i] > 0) {
+                highest = i;
+            }
+        }
+        if (total == 0) {
+            return null;
+        }
+        return new LatencyStats(
+                stage,
+                partition,
+                total,
+                quantile(counts, total, 0.5),
+                quantile(counts, total, 0.99),
+                quantile(counts, total, 0.999),
+                valueOf(highest)
+        );
+    }
+
+    private static long quantile(long[] counts, long total, double quantile) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return MAX_MICROS;
+    }
+
+    /**
+     * Values below 128 have their own bucket, above the 7 most significant bits select one of the
+     * 64 buckets of their power of two.
+     */
+    static int indexOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - 6;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((micros >> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Highest value of the bucket
+     */
+    static long valueOf(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long top = SUB_BUCKETS + (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,27 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+/**
+ * Stages with a latency histogram.
+ */
+public enum LatencyStage {
+    /**
+     * JSON of a record to an event
+     */
+    DECODE,
+    /**
+     * JoinEngine.processClick, including sink writes of the updates when processed inline
+     */
+    PROCESS_CLICK,
+    /**
+     * JoinEngine.processPageView, including the sink write when processed inline
+     */
+    PROCESS_PAGE_VIEW,
+    /**
+     * One OutputSink write or batch write; the sink is shared, so not per partition
+     */
+    SINK_WRITE,
+    /**
+     * Wall-clock time of the first emit minus the page view's event time
+     */
+    EVENT_TO_EMIT
+}
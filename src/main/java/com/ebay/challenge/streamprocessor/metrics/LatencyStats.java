@@ -0,0 +1,17 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+/**
+ * Latency of one stage and partition over the last completed interval (`metrics.latency.interval-ms`).
+ *
+ * @param partition -1 for stages that are not per partition (SINK_WRITE)
+ * @param count     samples in the interval
+ */
+public record LatencyStats(
+        LatencyStage stage,
+        int partition,
+        long count,
+        long p50Micros,
+        long p99Micros,
+        long p999Micros,
+        long maxMicros
+) {}
@@ -0,0 +1,16 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+/**
+ * Load shedding (`load-shedding.enabled`): time spent degraded and corrections given up.
+ *
+ * @param sheddingMillis       total time in load shedding, including the current period
+ * @param clickUpdatesSkipped  clicks that were not matched against emitted page views
+ * @param pageViewsNotTracked  emitted page views not recorded for later updates
+ */
+public record LoadSheddingStats(
+        boolean active,
+        long activations,
+        long sheddingMillis,
+        long clickUpdatesSkipped,
+        long pageViewsNotTracked
+) {}
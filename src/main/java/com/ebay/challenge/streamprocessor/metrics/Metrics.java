@@ -1,5 +1,7 @@
 package com.ebay.challenge.streamprocessor.metrics;
 
+import com.ebay.challenge.streamprocessor.model.StreamType;
+
 /**
  * Lightweight metrics API used by JoinEngine and exposed via /metrics.
  */
@@ -14,9 +16,85 @@ public interface Metrics {
 
     void onPageViewUpdated(int updates);
 
-    void onClickStateSizeUpdated(long size);
+    /**
+     * Page views evicted from state, their attribution can no longer change
+     */
+    void onPageViewsFinalized(int finalized);
+
+    /**
+     * Finalized page views that were never updated: the first write had the final attribution
+     */
+    void onPageViewsFinalOnFirstWrite(int finalOnFirstWrite);
+
+    /**
+     * Event dropped for being behind the join watermark
+     */
+    void onLateEventDropped(StreamType stream, int partition);
+
+    /**
+     * Late events written by the side output (`late-events.mode`)
+     */
+    void onLateEventsPersisted(int persisted);
+
+    /**
+     * Late events the side output lost: queue full or write failed
+     */
+    void onLateEventsDiscarded(int discarded);
+
+    /**
+     * Event dropped by the de-duplication stage (`state.dedup.mode`)
+     */
+    void onDuplicateDropped(StreamType stream);
+
+    /**
+     * Record given up after its retries failed (undecodable, or failing in the join engine)
+     */
+    void onFailedEventSkipped(StreamType stream);
+
+    /**
+     * Load shedding switched on / off
+     */
+    void onLoadSheddingChanged(boolean active);
+
+    /**
+     * A correction given up under load shedding: an update pass of a click (AD_CLICKS)
+     * or a page view not recorded for updates (PAGE_VIEWS)
+     */
+    void onCorrectionSkipped(StreamType stream);
+
+    /**
+     * @param mightContain false when the user filter short-circuited a state lookup
+     */
+    void onUserFilterLookup(boolean mightContain);
+
+    /**
+     * @param partition -1 for stages that are not per partition
+     * @param nanos     duration of the stage (event time to emit: millisecond precision)
+     */
+    void onLatency(LatencyStage stage, int partition, long nanos);
+
+    /**
+     * An event was taken up by the join engine (hot path, keep it cheap)
+     *
+     * @param offset offset of the event in its input topic partition
+     */
+    void onOffsetProcessed(StreamType stream, int partition, long offset);
+
+    /**
+     * Log-end offset of an assigned input partition, sampled off the hot path
+     */
+    void onLogEndOffset(StreamType stream, int partition, long logEndOffset);
+
+    void onStateRestored(int partition, long records, long durationMillis);
+
+    void onWarmUpProgress(int partition, long replayed, long total, boolean completed);
+
+    /**
+     * @param logicalPartition e.g. ad_clicks_0
+     */
+    void onPartitionPaused(String logicalPartition);
 
-    void onPageViewStateSizeUpdated(long size);
+    void onPartitionResumed(String logicalPartition);
 
     MetricsSnapshot snapshot();
 }
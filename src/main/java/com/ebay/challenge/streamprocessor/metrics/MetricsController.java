@@ -1,8 +1,11 @@
 package com.ebay.challenge.streamprocessor.metrics;
 
+import com.ebay.challenge.streamprocessor.state.HotKeyTracker;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * REST endpoint exposing processor metrics.
@@ -14,9 +17,37 @@ import org.springframework.web.bind.annotation.RestController;
 public class MetricsController {
 
     private final MetricsRegistry metricsRegistry;
+    private final PrometheusWriter prometheusWriter;
+    private final MetricsStream metricsStream;
+    private final HotKeyTracker hotKeyTracker;
 
     @GetMapping("/metrics")
     public MetricsSnapshot metrics() {
         return metricsRegistry.snapshot();
     }
+
+    /**
+     * Same snapshot pushed as Server-Sent Events (`metrics` events), one per `metrics.stream.interval-ms`
+     * shared by all subscribers. Used by the dashboard.
+     */
+    @GetMapping(value = "/metrics/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        return metricsStream.subscribe();
+    }
+
+    /**
+     * Same metrics in the Prometheus text format, for scraping.
+     */
+    @GetMapping(value = "/metrics/prometheus", produces = PrometheusWriter.CONTENT_TYPE)
+    public String prometheus() {
+        return prometheusWriter.write(metricsRegistry.snapshot());
+    }
+
+    /**
+     * Top user ids per stream partition (`state.hot-keys.enabled`).
+     */
+    @GetMapping("/metrics/hot-keys")
+    public HotKeysSnapshot hotKeys() {
+        return hotKeyTracker.snapshot();
+    }
 }
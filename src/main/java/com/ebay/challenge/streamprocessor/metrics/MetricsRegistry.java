@@ -1,54 +1,104 @@
 package com.ebay.challenge.streamprocessor.metrics;
 
 import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
 import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
 import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * MetricsRegistry which holds metrics for UI
+ *
+ * Callbacks run on the hot path of every listener thread, so they avoid shared writes:
+ * - counters are striped (LongAdder), summed at snapshot time
+ * - state sizes are read from the stores at snapshot time instead of being pushed per event
+ * - event callbacks do not read the clock; lastUpdatedAt advances at snapshot time when the
+ *   event counters moved since the previous snapshot (rare events like restores still set it directly)
+ * - latencies go to a histogram per stage and partition ({@link LatencyRecorder}); the snapshot shows the
+ *   last completed interval of `metrics.latency.interval-ms`
+ * - the highest processed offset per partition is a max kept with a CAS, uncontended as partitions are
+ *   processed by one thread at a time; offset and event-time lag are derived at snapshot time
  */
 @Component
 @RequiredArgsConstructor
 public class MetricsRegistry implements Metrics {
 
     private final WatermarkTracker watermarkTracker;
+    private final ClickStateStore clickStore;
+    private final EmittedPageViewStore emittedPageViewStore;
 
-    private final AtomicLong clicksReceived = new AtomicLong();
-    private final AtomicLong pageViewsReceived = new AtomicLong();
-    private final AtomicLong pageViewsEmitted = new AtomicLong();
-    private final AtomicLong pageViewsUpdated = new AtomicLong();
+    private final LongAdder clicksReceived = new LongAdder();
+    private final LongAdder pageViewsReceived = new LongAdder();
+    private final LongAdder pageViewsEmitted = new LongAdder();
+    private final LongAdder pageViewsUpdated = new LongAdder();
+    private final LongAdder pageViewsFinalized = new LongAdder();
+    private final LongAdder pageViewsFinalOnFirstWrite = new LongAdder();
 
-    private final AtomicLong clickStateSize = new AtomicLong();
-    private final AtomicLong pageViewStateSize = new AtomicLong();
+    private final LongAdder lateClicksDropped = new LongAdder();
+    private final LongAdder latePageViewsDropped = new LongAdder();
+    private final LongAdder lateEventsPersisted = new LongAdder();
+    private final LongAdder lateEventsDiscarded = new LongAdder();
+    private final LongAdder duplicateClicksDropped = new LongAdder();
+    private final LongAdder duplicatePageViewsDropped = new LongAdder();
+    private final LongAdder failedClicksSkipped = new LongAdder();
+    private final LongAdder failedPageViewsSkipped = new LongAdder();
 
-    private final AtomicReference<Instant> lastUpdatedAt =
-            new AtomicReference<>(Instant.now());
+    private final PauseTime loadShedding = new PauseTime();
+    private final LongAdder clickUpdatesSkipped = new LongAdder();
+    private final LongAdder pageViewsNotTracked = new LongAdder();
+
+    private final LongAdder userFilterHits = new LongAdder();
+    private final LongAdder userFilterMisses = new LongAdder();
+
+    private final Map<Integer, StateRestoreStats> stateRestores = new ConcurrentHashMap<>();
+    private final Map<Integer, WarmUpProgress> warmUps = new ConcurrentHashMap<>();
+    private final Map<String, PauseTime> pauses = new ConcurrentHashMap<>();
+    private final Map<Integer, LateCounts> lateEvents = new ConcurrentHashMap<>();
+
+    private final Map<StreamType, Map<Integer, PartitionOffsets>> offsets = newOffsets();
+
+    private final Map<LatencyStage, Map<Integer, LatencyRecorder>> latencyRecorders = newLatencyRecorders();
+    private volatile List<LatencyStats> latencies = List.of();
+
+    private volatile Instant lastUpdatedAt = Instant.now();
+
+    /**
+     * Sum of the event counters at the previous snapshot, guarded by snapshotLock
+     */
+    private long eventsSeen;
+    private final ReentrantLock snapshotLock = new ReentrantLock();
 
 
     @Override
     public void onClickReceived() {
-        clicksReceived.incrementAndGet();
-        touch();
+        clicksReceived.increment();
     }
 
     @Override
     public void onPageViewReceived() {
-        pageViewsReceived.incrementAndGet();
-        touch();
+        pageViewsReceived.increment();
     }
 
     @Override
     public void onPageViewEmitted() {
-        pageViewsEmitted.incrementAndGet();
-        touch();
+        pageViewsEmitted.increment();
     }
 
     @Override
@@ -56,39 +106,247 @@ public class MetricsRegistry implements Metrics {
         if (updates <= 0) {
             return;
         }
-        pageViewsUpdated.addAndGet(updates);
+        pageViewsUpdated.add(updates);
+    }
+
+    @Override
+    public void onPageViewsFinalized(int finalized) {
+        if (finalized <= 0) {
+            return;
+        }
+        pageViewsFinalized.add(finalized);
+    }
+
+    @Override
+    public void onPageViewsFinalOnFirstWrite(int finalOnFirstWrite) {
+        if (finalOnFirstWrite <= 0) {
+            return;
+        }
+        pageViewsFinalOnFirstWrite.add(finalOnFirstWrite);
+    }
+
+    @Override
+    public void onLateEventDropped(StreamType stream, int partition) {
+        LateCounts counts = lateEvents.computeIfAbsent(partition, p -> new LateCounts());
+        if (stream == StreamType.AD_CLICKS) {
+            lateClicksDropped.increment();
+            counts.clicks.increment();
+        } else {
+            latePageViewsDropped.increment();
+            counts.pageViews.increment();
+        }
+    }
+
+    @Override
+    public void onLateEventsPersisted(int persisted) {
+        lateEventsPersisted.add(persisted);
+    }
+
+    @Override
+    public void onLateEventsDiscarded(int discarded) {
+        lateEventsDiscarded.add(discarded);
+    }
+
+    @Override
+    public void onDuplicateDropped(StreamType stream) {
+        if (stream == StreamType.AD_CLICKS) {
+            duplicateClicksDropped.increment();
+        } else {
+            duplicatePageViewsDropped.increment();
+        }
+    }
+
+    @Override
+    public void onFailedEventSkipped(StreamType stream) {
+        if (stream == StreamType.AD_CLICKS) {
+            failedClicksSkipped.increment();
+        } else {
+            failedPageViewsSkipped.increment();
+        }
+    }
+
+    @Override
+    public void onLoadSheddingChanged(boolean active) {
+        if (active) {
+            loadShedding.pause();
+        } else {
+            loadShedding.resume();
+        }
         touch();
     }
 
     @Override
-    public void onClickStateSizeUpdated(long size) {
-        clickStateSize.set(size);
+    public void onCorrectionSkipped(StreamType stream) {
+        if (stream == StreamType.AD_CLICKS) {
+            clickUpdatesSkipped.increment();
+        } else {
+            pageViewsNotTracked.increment();
+        }
+    }
+
+    @Override
+    public void onUserFilterLookup(boolean mightContain) {
+        if (mightContain) {
+            userFilterHits.increment();
+        } else {
+            userFilterMisses.increment();
+        }
+    }
+
+    @Override
+    public void onLatency(LatencyStage stage, int partition, long nanos) {
+        latencyRecorders.get(stage)
+                .computeIfAbsent(partition, p -> new LatencyRecorder())
+                .record(nanos / 1000);
+    }
+
+    @Override
+    public void onOffsetProcessed(StreamType stream, int partition, long offset) {
+        offsets.get(stream)
+                .computeIfAbsent(partition, p -> new PartitionOffsets())
+                .processed(offset);
+    }
+
+    @Override
+    public void onLogEndOffset(StreamType stream, int partition, long logEndOffset) {
+        offsets.get(stream)
+                .computeIfAbsent(partition, p -> new PartitionOffsets())
+                .logEnd = logEndOffset;
+    }
+
+    /**
+     * Completes the latency interval, the snapshot shows it until the next one.
+     */
+    @Scheduled(fixedRateString = "${metrics.latency.interval-ms:10000}")
+    public void rollLatencyInterval() {
+        List<LatencyStats> completed = new ArrayList<>();
+        latencyRecorders.forEach((stage, recorders) -> recorders.forEach((partition, recorder) -> {
+            LatencyStats stats = recorder.flip(stage, partition);
+            if (stats != null) {
+                completed.add(stats);
+            }
+        }));
+        completed.sort(Comparator.comparing(LatencyStats::stage).thenComparingInt(LatencyStats::partition));
+        latencies = List.copyOf(completed);
+    }
+
+    @Override
+    public void onStateRestored(int partition, long records, long durationMillis) {
+        double recordsPerSecond = durationMillis > 0
+                ? records * 1000.0 / durationMillis
+                : records;
+        stateRestores.put(
+                partition,
+                new StateRestoreStats(partition, records, durationMillis, recordsPerSecond, Instant.now())
+        );
         touch();
     }
 
     @Override
-    public void onPageViewStateSizeUpdated(long size) {
-        pageViewStateSize.set(size);
+    public void onWarmUpProgress(int partition, long replayed, long total, boolean completed) {
+        warmUps.put(partition, new WarmUpProgress(partition, replayed, total, completed));
         touch();
     }
 
 
+    @Override
+    public void onPartitionPaused(String logicalPartition) {
+        pauses.computeIfAbsent(logicalPartition, p -> new PauseTime()).pause();
+        touch();
+    }
+
+    @Override
+    public void onPartitionResumed(String logicalPartition) {
+        PauseTime pauseTime = pauses.get(logicalPartition);
+        if (pauseTime != null) {
+            pauseTime.resume();
+            touch();
+        }
+    }
+
+
     @Override
     public MetricsSnapshot snapshot() {
+        sampleLastUpdatedAt();
+        List<PartitionStateBytes> stateBytes = buildStateBytes();
 
         return new MetricsSnapshot(
-                clicksReceived.get(),
-                pageViewsReceived.get(),
-                pageViewsEmitted.get(),
-                pageViewsUpdated.get(),
-                clickStateSize.get(),
-                pageViewStateSize.get(),
+                clicksReceived.sum(),
+                pageViewsReceived.sum(),
+                pageViewsEmitted.sum(),
+                pageViewsUpdated.sum(),
+                pageViewsFinalized.sum(),
+                pageViewsFinalOnFirstWrite.sum(),
+                lateClicksDropped.sum(),
+                latePageViewsDropped.sum(),
+                lateEventsPersisted.sum(),
+                lateEventsDiscarded.sum(),
+                duplicateClicksDropped.sum(),
+                duplicatePageViewsDropped.sum(),
+                failedClicksSkipped.sum(),
+                failedPageViewsSkipped.sum(),
+                loadSheddingStats(),
+                userFilterHits.sum(),
+                userFilterMisses.sum(),
+                clickStore.getTotalClickCount(),
+                emittedPageViewStore.size(),
+                stateBytes.stream().mapToLong(PartitionStateBytes::clickStateBytes).sum(),
+                stateBytes.stream().mapToLong(PartitionStateBytes::pageViewStateBytes).sum(),
+                stateBytes.stream().mapToLong(PartitionStateBytes::watermarkStateBytes).sum(),
+                stateBytes,
                 buildJoinWatermarks(),
-                lastUpdatedAt.get()
+                stateRestores.values().stream()
+                        .sorted(Comparator.comparingInt(StateRestoreStats::partition))
+                        .toList(),
+                warmUps.values().stream()
+                        .sorted(Comparator.comparingInt(WarmUpProgress::partition))
+                        .toList(),
+                pauses.entrySet().stream()
+                        .map(entry -> entry.getValue().toStats(entry.getKey()))
+                        .sorted(Comparator.comparing(PartitionPauseStats::partition))
+                        .toList(),
+                lateEvents.entrySet().stream()
+                        .map(entry -> new PartitionLateEvents(
+                                entry.getKey(),
+                                entry.getValue().clicks.sum(),
+                                entry.getValue().pageViews.sum()))
+                        .sorted(Comparator.comparingInt(PartitionLateEvents::partition))
+                        .toList(),
+                latencies,
+                lastUpdatedAt
         );
     }
 
 
+    /**
+     * Estimates maintained by the stores, no heap walking.
+     */
+    private List<PartitionStateBytes> buildStateBytes() {
+        Map<Integer, Long> clickBytes = clickStore.getRetainedBytesPerPartition();
+        Map<Integer, Long> pageViewBytes = emittedPageViewStore.getRetainedBytesPerPartition();
+        Set<Integer> partitions = new TreeSet<>(watermarkTracker.getActivePartitions());
+        partitions.addAll(clickBytes.keySet());
+        partitions.addAll(pageViewBytes.keySet());
+        return partitions.stream()
+                .map(partition -> new PartitionStateBytes(
+                        partition,
+                        clickBytes.getOrDefault(partition, 0L),
+                        pageViewBytes.getOrDefault(partition, 0L),
+                        watermarkTracker.getRetainedBytes(partition)))
+                .toList();
+    }
+
+    private LoadSheddingStats loadSheddingStats() {
+        PartitionPauseStats time = loadShedding.toStats("load-shedding");
+        return new LoadSheddingStats(
+                time.paused(),
+                time.pauseCount(),
+                time.pausedMillis(),
+                clickUpdatesSkipped.sum(),
+                pageViewsNotTracked.sum()
+        );
+    }
+
     /**
      * This method is just used for UI reports
      *
@@ -110,6 +368,7 @@ public class MetricsRegistry implements Metrics {
                     }
                 });
 
+        Instant now = Instant.now();
         return watermarkTracker.getActivePartitions()
                 .stream()
                 .sorted()
@@ -118,17 +377,34 @@ public class MetricsRegistry implements Metrics {
                     if (joinWm.equals(Instant.MIN)) {
                         joinWm = null;
                     }
+                    Instant pvMax = pvMaxByPartition.get(partition);
+                    Instant clickMax = clickMaxByPartition.get(partition);
 
                     return new JoinPartitionWatermark(
                             partition,
-                            pvMaxByPartition.get(partition),
-                            clickMaxByPartition.get(partition),
-                            joinWm
+                            pvMax,
+                            clickMax,
+                            joinWm,
+                            watermarkTracker.getAllowedLateness(partition).toMillis(),
+                            offsetLag(StreamType.PAGE_VIEWS, partition),
+                            offsetLag(StreamType.AD_CLICKS, partition),
+                            millisBetween(pvMax, now),
+                            millisBetween(clickMax, now),
+                            millisBetween(pvMax, clickMax)
                     );
                 })
                 .toList();
     }
 
+    private Long offsetLag(StreamType stream, int partition) {
+        PartitionOffsets partitionOffsets = offsets.get(stream).get(partition);
+        return partitionOffsets == null ? null : partitionOffsets.lag();
+    }
+
+    private static Long millisBetween(Instant from, Instant to) {
+        return from == null || to == null ? null : Duration.between(from, to).toMillis();
+    }
+
     private static TopicPartition getTopicPartition(String logicalPartitionId) {
         int idx = logicalPartitionId.lastIndexOf('_');
         String topic = logicalPartitionId.substring(0, idx);
@@ -142,7 +418,114 @@ public class MetricsRegistry implements Metrics {
     }
 
 
+    /**
+     * A partition can be paused for several reasons at once (e.g. whole container and the partition itself),
+     * so pauses nest and the time counts from the first pause to the last resume.
+     * Also times load shedding periods.
+     */
+    private static final class PauseTime {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int depth;
+        private long pauseCount;
+        private long pausedMillis;
+        private long pausedSince;
+
+        void pause() {
+            lock.lock();
+            try {
+                if (depth++ == 0) {
+                    pauseCount++;
+                    pausedSince = System.currentTimeMillis();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void resume() {
+            lock.lock();
+            try {
+                if (depth > 0 && --depth == 0) {
+                    pausedMillis += System.currentTimeMillis() - pausedSince;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        PartitionPauseStats toStats(String partition) {
+            lock.lock();
+            try {
+                long current = depth > 0 ? System.currentTimeMillis() - pausedSince : 0;
+                return new PartitionPauseStats(partition, pauseCount, pausedMillis + current, depth > 0);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class LateCounts {
+        private final LongAdder clicks = new LongAdder();
+        private final LongAdder pageViews = new LongAdder();
+    }
+
+    /**
+     * Offsets of one input partition, -1 while unknown:
+     * - processed: highest offset taken up by the join engine (events of lanes may finish out of order)
+     * - logEnd: next offset to be written, sampled by ConsumerLag
+     */
+    private static final class PartitionOffsets {
+        private final AtomicLong processed = new AtomicLong(-1);
+        private volatile long logEnd = -1;
+
+        void processed(long offset) {
+            long current = processed.get();
+            while (offset > current && !processed.compareAndSet(current, offset)) {
+                current = processed.get();
+            }
+        }
+
+        Long lag() {
+            long processedOffset = processed.get();
+            long end = logEnd;
+            if (processedOffset < 0 || end < 0) {
+                return null;
+            }
+            return Math.max(0, end - processedOffset - 1);
+        }
+    }
+
+    private static Map<StreamType, Map<Integer, PartitionOffsets>> newOffsets() {
+        Map<StreamType, Map<Integer, PartitionOffsets>> offsets = new EnumMap<>(StreamType.class);
+        for (StreamType stream : StreamType.values()) {
+            offsets.put(stream, new ConcurrentHashMap<>());
+        }
+        return offsets;
+    }
+
+    private static Map<LatencyStage, Map<Integer, LatencyRecorder>> newLatencyRecorders() {
+        Map<LatencyStage, Map<Integer, LatencyRecorder>> recorders = new EnumMap<>(LatencyStage.class);
+        for (LatencyStage stage : LatencyStage.values()) {
+            recorders.put(stage, new ConcurrentHashMap<>());
+        }
+        return recorders;
+    }
+
+    private void sampleLastUpdatedAt() {
+        long events = clicksReceived.sum() + pageViewsReceived.sum() + pageViewsFinalized.sum()
+                + lateEventsPersisted.sum() + lateEventsDiscarded.sum();
+        snapshotLock.lock();
+        try {
+            if (events != eventsSeen) {
+                eventsSeen = events;
+                touch();
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
     private void touch() {
-        lastUpdatedAt.set(Instant.now());
+        lastUpdatedAt = Instant.now();
     }
 }
@@ -15,11 +15,41 @@ public record MetricsSnapshot(
         long pageViewsReceived,
         long pageViewsEmitted,
         long pageViewsUpdated,
+        long pageViewsFinalized,
+        long pageViewsFinalOnFirstWrite,
+
+        long lateClicksDropped,
+        long latePageViewsDropped,
+        long lateEventsPersisted,
+        long lateEventsDiscarded,
+        long duplicateClicksDropped,
+        long duplicatePageViewsDropped,
+        long failedClicksSkipped,
+        long failedPageViewsSkipped,
+
+        LoadSheddingStats loadShedding,
+
+        long userFilterHits,
+        long userFilterMisses,
 
         long clickStateSize,
         long pageViewStateSize,
 
+        long clickStateBytes,
+        long pageViewStateBytes,
+        long watermarkStateBytes,
+        List<PartitionStateBytes> stateBytes,
+
         List<JoinPartitionWatermark> joinWatermarks,
 
+        List<StateRestoreStats> stateRestores,
+        List<WarmUpProgress> warmUps,
+
+        List<PartitionPauseStats> partitionPauses,
+
+        List<PartitionLateEvents> lateEventsPerPartition,
+
+        List<LatencyStats> latencies,
+
         Instant lastUpdatedAt
 ) {}
@@ -0,0 +1,150 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes metrics to dashboards over Server-Sent Events (`/metrics/stream`).
+ * <p>
+ * - One snapshot per `metrics.stream.interval-ms`, serialized once and sent to all subscribers,
+ *   so its cost does not depend on the number of open dashboards
+ * - Nothing is built while there are no subscribers
+ * - A new subscriber gets the last published snapshot right away
+ * - Sent from an own thread: a slow client holds up the other subscribers, not the shared scheduler
+ */
+@Slf4j
+@Component
+public class MetricsStream {
+
+    static final String EVENT_NAME = "metrics";
+
+    private final Metrics metrics;
+    private final ObjectMapper objectMapper;
+    private final long intervalMillis;
+
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Serializes sends: an emitter must not be written to concurrently
+     */
+    private final ReentrantLock sendLock = new ReentrantLock();
+
+    /**
+     * JSON of the last snapshot sent, null while nobody is subscribed. Guarded by sendLock.
+     */
+    private String lastSnapshot;
+
+    private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("metrics-stream").daemon(true).factory());
+
+    public MetricsStream(
+            Metrics metrics,
+            ObjectMapper objectMapper,
+            @Value("${metrics.stream.interval-ms:1000}") long intervalMillis
+    ) {
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        publisher.scheduleWithFixedDelay(this::publish, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Initialized MetricsStream (interval={} ms)", intervalMillis);
+    }
+
+    /**
+     * @return an emitter without timeout, removed once the client disconnects
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onError(e -> subscribers.remove(emitter));
+        sendLock.lock();
+        try {
+            if (lastSnapshot == null || send(emitter, lastSnapshot)) {
+                subscribers.add(emitter);
+            }
+        } finally {
+            sendLock.unlock();
+        }
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Build, serialize and send one snapshot to all subscribers.
+     */
+    void publish() {
+        try {
+            if (subscribers.isEmpty()) {
+                clearLastSnapshot();
+                return;
+            }
+            String json = objectMapper.writeValueAsString(metrics.snapshot());
+            sendLock.lock();
+            try {
+                lastSnapshot = json;
+                for (SseEmitter emitter : subscribers) {
+                    if (!send(emitter, json)) {
+                        subscribers.remove(emitter);
+                    }
+                }
+            } finally {
+                sendLock.unlock();
+            }
+        } catch (Exception e) {
+            // Keep the schedule alive
+            log.warn("Failed to publish metrics", e);
+        }
+    }
+
+    /**
+     * Not sent to a later subscriber, it would be stale by then.
+     */
+    private void clearLastSnapshot() {
+        sendLock.lock();
+        try {
+            lastSnapshot = null;
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the client is gone
+     */
+    private boolean send(SseEmitter emitter, String json) {
+        try {
+            emitter.send(SseEmitter.event().name(EVENT_NAME).data(json, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping metrics subscriber: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        publisher.shutdownNow();
+        subscribers.forEach(SseEmitter::complete);
+        subscribers.clear();
+    }
+}
@@ -0,0 +1,17 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+
+import java.util.List;
+
+/**
+ * Top user ids of one stream partition, most events first.
+ *
+ * @param events all events of the stream partition over the current and previous window
+ */
+public record PartitionHotKeys(
+        StreamType stream,
+        int partition,
+        long events,
+        List<HotKey> topKeys
+) {}
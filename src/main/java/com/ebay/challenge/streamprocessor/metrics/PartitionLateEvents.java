@@ -0,0 +1,10 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+/**
+ * Events of one partition dropped for being behind the join watermark.
+ */
+public record PartitionLateEvents(
+        int partition,
+        long lateClicks,
+        long latePageViews
+) {}
@@ -0,0 +1,13 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+/**
+ * Backpressure pauses of one logical partition (e.g. ad_clicks_0).
+ *
+ * @param pausedMillis total paused time, including the current pause
+ */
+public record PartitionPauseStats(
+        String partition,
+        long pauseCount,
+        long pausedMillis,
+        boolean paused
+) {}
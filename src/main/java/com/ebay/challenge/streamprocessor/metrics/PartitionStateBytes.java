@@ -0,0 +1,11 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+/**
+ * Estimated retained bytes of the join state of one partition.
+ */
+public record PartitionStateBytes(
+        int partition,
+        long clickStateBytes,
+        long pageViewStateBytes,
+        long watermarkStateBytes
+) {}
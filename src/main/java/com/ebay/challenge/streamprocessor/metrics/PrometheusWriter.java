@@ -0,0 +1,327 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Renders a {@link MetricsSnapshot} in the Prometheus text exposition format (version 0.0.4),
+ * which OpenMetrics scrapers accept as well.
+ *
+ * - counters end in _total, stream / partition / stage are labels
+ * - event times and watermarks are gauges in epoch seconds, lags in seconds or offsets; absent while unknown
+ * - latency quantiles are gauges of the last completed interval, not a cumulative summary
+ *
+ * Scrapes render into one reused buffer, numbers are appended without formatting,
+ * so a scrape of thousands of partitions costs the snapshot plus one String copy.
+ * The snapshot reads counters and gauges without taking locks of the hot path.
+ */
+@Component
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String PREFIX = "stream_processor_";
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final StringBuilder out = new StringBuilder(16 * 1024);
+    private boolean labelOpen;
+
+    public String write(MetricsSnapshot snapshot) {
+        lock.lock();
+        try {
+            out.setLength(0);
+            writeCounters(snapshot);
+            writeLoadShedding(snapshot.loadShedding());
+            writeState(snapshot);
+            writeWatermarks(snapshot);
+            writeLateEventsPerPartition(snapshot);
+            writePauses(snapshot);
+            writeRestores(snapshot);
+            writeLatencies(snapshot);
+            if (snapshot.lastUpdatedAt() != null) {
+                header("last_updated_timestamp_seconds", "gauge", "Last time a counter moved");
+                sample("last_updated_timestamp_seconds").end(snapshot.lastUpdatedAt());
+            }
+            return out.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeCounters(MetricsSnapshot s) {
+        header("events_received_total", "counter", "Events received from the input topics");
+        sample("events_received_total").label("stream", "ad_clicks").end(s.clicksReceived());
+        sample("events_received_total").label("stream", "page_views").end(s.pageViewsReceived());
+
+        header("page_views_emitted_total", "counter", "Page views written for the first time");
+        sample("page_views_emitted_total").end(s.pageViewsEmitted());
+        header("page_views_updated_total", "counter", "Page views rewritten with a better attribution");
+        sample("page_views_updated_total").end(s.pageViewsUpdated());
+        header("page_views_finalized_total", "counter", "Page views whose attribution can no longer change");
+        sample("page_views_finalized_total").end(s.pageViewsFinalized());
+        header("page_views_final_on_first_write_total", "counter", "Finalized page views that were never updated");
+        sample("page_views_final_on_first_write_total").end(s.pageViewsFinalOnFirstWrite());
+
+        header("late_events_dropped_total", "counter", "Events behind the join watermark");
+        sample("late_events_dropped_total").label("stream", "ad_clicks").end(s.lateClicksDropped());
+        sample("late_events_dropped_total").label("stream", "page_views").end(s.latePageViewsDropped());
+        header("late_events_side_output_total", "counter", "Late events by outcome of the side output");
+        sample("late_events_side_output_total").label("result", "persisted").end(s.lateEventsPersisted());
+        sample("late_events_side_output_total").label("result", "discarded").end(s.lateEventsDiscarded());
+
+        header("duplicates_dropped_total", "counter", "Replayed events dropped by the deduplicator");
+        sample("duplicates_dropped_total").label("stream", "ad_clicks").end(s.duplicateClicksDropped());
+        sample("duplicates_dropped_total").label("stream", "page_views").end(s.duplicatePageViewsDropped());
+
+        header("failed_events_skipped_total", "counter", "Records given up after their retries failed");
+        sample("failed_events_skipped_total").label("stream", "ad_clicks").end(s.failedClicksSkipped());
+        sample("failed_events_skipped_total").label("stream", "page_views").end(s.failedPageViewsSkipped());
+
+        header("user_filter_lookups_total", "counter", "State lookups by user filter result");
+        sample("user_filter_lookups_total").label("result", "hit").end(s.userFilterHits());
+        sample("user_filter_lookups_total").label("result", "miss").end(s.userFilterMisses());
+    }
+
+    private void writeLoadShedding(LoadSheddingStats shedding) {
+        header("load_shedding_active", "gauge", "1 while late updates are shed");
+        sample("load_shedding_active").end(shedding.active() ? 1 : 0);
+        header("load_shedding_activations_total", "counter", "Times load shedding was entered");
+        sample("load_shedding_activations_total").end(shedding.activations());
+        header("load_shedding_seconds_total", "counter", "Time spent in load shedding");
+        sample("load_shedding_seconds_total").endMillis(shedding.sheddingMillis());
+        header("load_shedding_skipped_total", "counter", "Corrections given up while shedding");
+        sample("load_shedding_skipped_total").label("kind", "click_update").end(shedding.clickUpdatesSkipped());
+        sample("load_shedding_skipped_total").label("kind", "page_view_tracking").end(shedding.pageViewsNotTracked());
+    }
+
+    private void writeState(MetricsSnapshot s) {
+        header("state_entries", "gauge", "Entries held in join state");
+        sample("state_entries").label("store", "clicks").end(s.clickStateSize());
+        sample("state_entries").label("store", "page_views").end(s.pageViewStateSize());
+        header("state_bytes", "gauge", "Estimated retained bytes of join state per partition");
+        for (PartitionStateBytes bytes : s.stateBytes()) {
+            sample("state_bytes").label("partition", bytes.partition())
+                    .label("store", "clicks").end(bytes.clickStateBytes());
+            sample("state_bytes").label("partition", bytes.partition())
+                    .label("store", "page_views").end(bytes.pageViewStateBytes());
+            sample("state_bytes").label("partition", bytes.partition())
+                    .label("store", "watermarks").end(bytes.watermarkStateBytes());
+        }
+    }
+
+    private void writeWatermarks(MetricsSnapshot s) {
+        header("max_event_time_seconds", "gauge", "Max event time seen per stream and partition");
+        for (JoinPartitionWatermark wm : s.joinWatermarks()) {
+            if (wm.adClicksMaxEventTime() != null) {
+                sample("max_event_time_seconds").label("partition", wm.partition())
+                        .label("stream", "ad_clicks").end(wm.adClicksMaxEventTime());
+            }
+            if (wm.pageViewsMaxEventTime() != null) {
+                sample("max_event_time_seconds").label("partition", wm.partition())
+                        .label("stream", "page_views").end(wm.pageViewsMaxEventTime());
+            }
+        }
+        header("join_watermark_seconds", "gauge", "Join watermark per partition");
+        for (JoinPartitionWatermark wm : s.joinWatermarks()) {
+            if (wm.joinWatermark() != null) {
+                sample("join_watermark_seconds").label("partition", wm.partition()).end(wm.joinWatermark());
+            }
+        }
+        header("allowed_lateness_seconds", "gauge", "Allowed lateness in effect per partition");
+        for (JoinPartitionWatermark wm : s.joinWatermarks()) {
+            sample("allowed_lateness_seconds").label("partition", wm.partition()).endMillis(wm.allowedLatenessMillis());
+        }
+        header("offset_lag", "gauge", "Log-end offset minus the next offset to process");
+        for (JoinPartitionWatermark wm : s.joinWatermarks()) {
+            if (wm.adClicksOffsetLag() != null) {
+                sample("offset_lag").label("partition", wm.partition())
+                        .label("stream", "ad_clicks").end(wm.adClicksOffsetLag());
+            }
+            if (wm.pageViewsOffsetLag() != null) {
+                sample("offset_lag").label("partition", wm.partition())
+                        .label("stream", "page_views").end(wm.pageViewsOffsetLag());
+            }
+        }
+        header("event_time_lag_seconds", "gauge", "Wall clock minus the max event time");
+        for (JoinPartitionWatermark wm : s.joinWatermarks()) {
+            if (wm.adClicksEventTimeLagMillis() != null) {
+                sample("event_time_lag_seconds").label("partition", wm.partition())
+                        .label("stream", "ad_clicks").endMillis(wm.adClicksEventTimeLagMillis());
+            }
+            if (wm.pageViewsEventTimeLagMillis() != null) {
+                sample("event_time_lag_seconds").label("partition", wm.partition())
+                        .label("stream", "page_views").endMillis(wm.pageViewsEventTimeLagMillis());
+            }
+        }
+        header("cross_topic_skew_seconds", "gauge", "ad_clicks minus page_views max event time");
+        for (JoinPartitionWatermark wm : s.joinWatermarks()) {
+            if (wm.crossTopicSkewMillis() != null) {
+                sample("cross_topic_skew_seconds").label("partition", wm.partition()).endMillis(wm.crossTopicSkewMillis());
+            }
+        }
+    }
+
+    private void writeLateEventsPerPartition(MetricsSnapshot s) {
+        header("partition_late_events_total", "counter", "Late events per stream and partition");
+        for (PartitionLateEvents late : s.lateEventsPerPartition()) {
+            sample("partition_late_events_total").label("partition", late.partition())
+                    .label("stream", "ad_clicks").end(late.lateClicks());
+            sample("partition_late_events_total").label("partition", late.partition())
+                    .label("stream", "page_views").end(late.latePageViews());
+        }
+    }
+
+    private void writePauses(MetricsSnapshot s) {
+        header("partition_paused", "gauge", "1 while a logical partition is paused by backpressure");
+        for (PartitionPauseStats pause : s.partitionPauses()) {
+            sample("partition_paused").label("partition", pause.partition()).end(pause.paused() ? 1 : 0);
+        }
+        header("partition_pauses_total", "counter", "Backpressure pauses per logical partition");
+        for (PartitionPauseStats pause : s.partitionPauses()) {
+            sample("partition_pauses_total").label("partition", pause.partition()).end(pause.pauseCount());
+        }
+        header("partition_paused_seconds_total", "counter", "Time paused per logical partition");
+        for (PartitionPauseStats pause : s.partitionPauses()) {
+            sample("partition_paused_seconds_total").label("partition", pause.partition()).endMillis(pause.pausedMillis());
+        }
+    }
+
+    private void writeRestores(MetricsSnapshot s) {
+        header("state_restore_records", "gauge", "Records of the last changelog restore per partition");
+        for (StateRestoreStats restore : s.stateRestores()) {
+            sample("state_restore_records").label("partition", restore.partition()).end(restore.recordsRestored());
+        }
+        header("state_restore_duration_seconds", "gauge", "Duration of the last changelog restore per partition");
+        for (StateRestoreStats restore : s.stateRestores()) {
+            sample("state_restore_duration_seconds").label("partition", restore.partition()).endMillis(restore.durationMillis());
+        }
+        header("warm_up_records", "gauge", "Warm-up progress per partition");
+        for (WarmUpProgress warmUp : s.warmUps()) {
+            sample("warm_up_records").label("partition", warmUp.partition())
+                    .label("kind", "replayed").end(warmUp.recordsReplayed());
+            sample("warm_up_records").label("partition", warmUp.partition())
+                    .label("kind", "expected").end(warmUp.recordsTotal());
+        }
+        header("warm_up_completed", "gauge", "1 once the warm-up of a partition completed");
+        for (WarmUpProgress warmUp : s.warmUps()) {
+            sample("warm_up_completed").label("partition", warmUp.partition()).end(warmUp.completed() ? 1 : 0);
+        }
+    }
+
+    private void writeLatencies(MetricsSnapshot s) {
+        header("latency_seconds", "gauge", "Latency quantiles of the last interval per stage and partition");
+        for (LatencyStats latency : s.latencies()) {
+            latencySample(latency, "0.5").endMicros(latency.p50Micros());
+            latencySample(latency, "0.99").endMicros(latency.p99Micros());
+            latencySample(latency, "0.999").endMicros(latency.p999Micros());
+            latencySample(latency, "1").endMicros(latency.maxMicros());
+        }
+        header("latency_samples", "gauge", "Samples of the last interval per stage and partition");
+        for (LatencyStats latency : s.latencies()) {
+            stageSample("latency_samples", latency).end(latency.count());
+        }
+    }
+
+    private PrometheusWriter latencySample(LatencyStats latency, String quantile) {
+        return stageSample("latency_seconds", latency).label("quantile", quantile);
+    }
+
+    private PrometheusWriter stageSample(String name, LatencyStats latency) {
+        sample(name).label("stage", latency.stage().name().toLowerCase(Locale.ROOT));
+        // -1 is the sink, which is not partition-affine
+        return latency.partition() < 0 ? this : label("partition", latency.partition());
+    }
+
+    private void header(String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    // Sample lines: sample(name).label(..)...end(value), labels are closed by end
+
+    private PrometheusWriter sample(String name) {
+        out.append(PREFIX).append(name);
+        labelOpen = false;
+        return this;
+    }
+
+    private PrometheusWriter label(String name, int value) {
+        labelSeparator(name).append(value).append('"');
+        return this;
+    }
+
+    private PrometheusWriter label(String name, String value) {
+        StringBuilder b = labelSeparator(name);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> b.append("\\\\");
+                case '"' -> b.append("\\\"");
+                case '\n' -> b.append("\\n");
+                default -> b.append(c);
+            }
+        }
+        b.append('"');
+        return this;
+    }
+
+    private StringBuilder labelSeparator(String name) {
+        out.append(labelOpen ? ',' : '{').append(name).append("=\"");
+        labelOpen = true;
+        return out;
+    }
+
+    private void end(long value) {
+        closeLabels().append(value).append('\n');
+    }
+
+    private void endMillis(long millis) {
+        closeLabels();
+        if (millis < 0) {
+            out.append('-');
+        }
+        out.append(Math.abs(millis / 1000)).append('.');
+        appendFraction(millis % 1000, 3);
+        out.append('\n');
+    }
+
+    private void endMicros(long micros) {
+        closeLabels().append(micros / 1_000_000).append('.');
+        appendFraction(micros % 1_000_000, 6);
+        out.append('\n');
+    }
+
+    private void end(Instant instant) {
+        endMillis(instant.toEpochMilli());
+    }
+
+    private StringBuilder closeLabels() {
+        if (labelOpen) {
+            out.append('}');
+            labelOpen = false;
+        }
+        return out.append(' ');
+    }
+
+    /**
+     * Zero-padded fraction digits, e.g. 5 with 3 digits is "005".
+     */
+    private void appendFraction(long fraction, int digits) {
+        long abs = Math.abs(fraction);
+        for (long scale = pow10(digits - 1); scale > 1 && abs < scale; scale /= 10) {
+            out.append('0');
+        }
+        out.append(abs);
+    }
+
+    private static long pow10(int exponent) {
+        long value = 1;
+        for (int i = 0; i < exponent; i++) {
+            value *= 10;
+        }
+        return value;
+    }
+}
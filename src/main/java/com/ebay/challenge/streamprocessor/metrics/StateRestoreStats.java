@@ -0,0 +1,14 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import java.time.Instant;
+
+/**
+ * Result of the last state restore of a partition from the changelog.
+ */
+public record StateRestoreStats(
+    int partition,
+    long recordsRestored,
+    long durationMillis,
+    double recordsPerSecond,
+    Instant restoredAt
+) {}
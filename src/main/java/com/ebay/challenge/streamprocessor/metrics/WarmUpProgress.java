@@ -0,0 +1,11 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+/**
+ * Progress of the startup warm-up (state rebuild from input topics) of a partition.
+ */
+public record WarmUpProgress(
+    int partition,
+    long recordsReplayed,
+    long recordsTotal,
+    boolean completed
+) {}
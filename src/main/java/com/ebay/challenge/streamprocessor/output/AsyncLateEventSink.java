@@ -0,0 +1,98 @@
+package com.ebay.challenge.streamprocessor.output;
+
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Late event side output with a bounded queue, drained in batches by one writer thread.
+ *
+ * - submit only enqueues; when the queue is full the event is discarded and counted,
+ *   so a lateness storm never slows down the join
+ * - a failed batch is logged and discarded (late events are best effort, input offsets are not held back)
+ */
+@Slf4j
+public class AsyncLateEventSink implements LateEventSink, AutoCloseable {
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final BlockingQueue<LateEvent> queue;
+    private final LateEventWriter writer;
+    private final Metrics metrics;
+    private final int batchSize;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public AsyncLateEventSink(LateEventWriter writer, Metrics metrics, int queueCapacity, int batchSize) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = writer;
+        this.metrics = metrics;
+        this.batchSize = batchSize;
+        this.writerThread = Thread.ofPlatform()
+                .name("late-events-writer")
+                .daemon(true)
+                .start(this::drainLoop);
+    }
+
+    @Override
+    public void submit(LateEvent lateEvent) {
+        if (!queue.offer(lateEvent)) {
+            metrics.onLateEventsDiscarded(1);
+        }
+    }
+
+    /**
+     * Events waiting to be written.
+     */
+    public int queued() {
+        return queue.size();
+    }
+
+    private void drainLoop() {
+        List<LateEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                LateEvent first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<LateEvent> batch) {
+        try {
+            writer.writeAll(batch);
+            metrics.onLateEventsPersisted(batch.size());
+        } catch (Exception e) {
+            log.error("Failed to write {} late events, discarding them", batch.size(), e);
+            metrics.onLateEventsDiscarded(batch.size());
+        }
+    }
+
+    /**
+     * Stop accepting new work, write what is queued and close the writer.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        try {
+            writerThread.join();
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.ebay.challenge.streamprocessor.output;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes late events to a dead-letter topic, keyed by user_id.
+ * The value is the {@link LateEvent} as JSON (stream, partition, offset, watermark and the original event).
+ * The template is owned by the writer: closing the writer closes its producer.
+ */
+@RequiredArgsConstructor
+public class KafkaLateEventWriter implements LateEventWriter {
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final String topic;
+
+    @Override
+    public void writeAll(List<LateEvent> lateEvents) throws Exception {
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[lateEvents.size()];
+        for (int i = 0; i < lateEvents.size(); i++) {
+            LateEvent lateEvent = lateEvents.get(i);
+            sends[i] = kafkaTemplate.send(topic, lateEvent.userId(), objectMapper.writeValueAsString(lateEvent));
+        }
+        CompletableFuture.allOf(sends).join();
+    }
+
+    @Override
+    public void close() {
+        kafkaTemplate.getProducerFactory().reset();
+    }
+}
@@ -0,0 +1,36 @@
+package com.ebay.challenge.streamprocessor.output;
+
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+
+import java.time.Instant;
+
+/**
+ * An event dropped for being behind the join watermark, kept for the late event side output.
+ *
+ * @param eventId   click_id or event_id
+ * @param watermark join watermark of the partition when the event was dropped
+ * @param event     the original AdClickEvent / PageViewEvent, serialized only by the writer
+ */
+public record LateEvent(
+        StreamType stream,
+        int partition,
+        long offset,
+        String eventId,
+        String userId,
+        Instant eventTime,
+        Instant watermark,
+        Object event
+) {
+
+    public static LateEvent of(AdClickEvent click, Instant watermark) {
+        return new LateEvent(StreamType.AD_CLICKS, click.getPartition(), click.getOffset(),
+                click.getClickId(), click.getUserId(), click.getEventTime(), watermark, click);
+    }
+
+    public static LateEvent of(PageViewEvent pageView, Instant watermark) {
+        return new LateEvent(StreamType.PAGE_VIEWS, pageView.getPartition(), pageView.getOffset(),
+                pageView.getEventId(), pageView.getUserId(), pageView.getEventTime(), watermark, pageView);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ebay.challenge.streamprocessor.output;
+
+/**
+ * Side output for events dropped as late by JoinEngine (`late-events.mode`).
+ *
+ * Called on the processing thread, so implementations must not block.
+ */
+public interface LateEventSink {
+
+    LateEventSink NONE = lateEvent -> {
+        // dropped, only counted in metrics
+    };
+
+    void submit(LateEvent lateEvent);
+}
@@ -0,0 +1,19 @@
+package com.ebay.challenge.streamprocessor.output;
+
+import java.util.List;
+
+/**
+ * Destination of the late event side output, called with batches from the writer thread of {@link AsyncLateEventSink}.
+ */
+@FunctionalInterface
+public interface LateEventWriter extends AutoCloseable {
+
+    void writeAll(List<LateEvent> lateEvents) throws Exception;
+
+    /**
+     * Release the resources of the destination, called once the writer thread has stopped.
+     */
+    @Override
+    default void close() {
+    }
+}
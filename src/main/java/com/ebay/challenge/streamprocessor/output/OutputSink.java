@@ -1,16 +1,22 @@
 package com.ebay.challenge.streamprocessor.output;
 
+import com.ebay.challenge.streamprocessor.jfr.SinkCommitEvent;
+import com.ebay.challenge.streamprocessor.metrics.LatencyStage;
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
 import com.ebay.challenge.streamprocessor.model.AttributedPageView;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.sql.*;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Output sink that writes attributed page views to SQLite database.
@@ -29,10 +35,28 @@ public class OutputSink {
 
     private Connection connection;
     private PreparedStatement insertStatement;
+    private PreparedStatement insertLateEventStatement;
     private final ObjectMapper objectMapper;
     private final AtomicLong writeCount = new AtomicLong(0);
 
+    /**
+     * null when constructed without metrics (tests, backfill); write latency includes waiting for the lock
+     */
+    private final Metrics metrics;
+
+    /**
+     * Guards the shared connection and prepared statement.
+     * Not a monitor: virtual threads waiting for the sink are unmounted instead of pinned.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
     public OutputSink() {
+        this((Metrics) null);
+    }
+
+    @Autowired
+    public OutputSink(Metrics metrics) {
+        this.metrics = metrics;
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
     }
@@ -60,6 +84,12 @@ public class OutputSink {
                 """;
         insertStatement = connection.prepareStatement(insertSql);
 
+        insertLateEventStatement = connection.prepareStatement("""
+                INSERT INTO late_events
+                (stream, partition, offset, event_id, user_id, event_time, watermark, json_data)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                """);
+
         log.info("Output sink initialized successfully");
     }
 
@@ -77,9 +107,26 @@ public class OutputSink {
                 )
                 """;
 
+        // Late event side output (late-events.mode=sqlite), append only
+        String createLateEventsTableSql = """
+                CREATE TABLE IF NOT EXISTS late_events (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    stream TEXT NOT NULL,
+                    partition INTEGER NOT NULL,
+                    offset INTEGER NOT NULL,
+                    event_id TEXT,
+                    user_id TEXT,
+                    event_time TEXT NOT NULL,
+                    watermark TEXT NOT NULL,
+                    json_data TEXT NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+                """;
+
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(createTableSql);
             log.info("Table 'attributed_page_views' created or already exists");
+            stmt.execute(createLateEventsTableSql);
         }
     }
 
@@ -96,18 +143,14 @@ public class OutputSink {
      *
      * @param attributedPageView the attributed page view to write
      */
-    public synchronized void write(AttributedPageView attributedPageView) {
+    public void write(AttributedPageView attributedPageView) {
+        SinkCommitEvent event = new SinkCommitEvent();
+        event.begin();
+        long start = System.nanoTime();
+        writeLock.lock();
         try {
             log.info("Call Output sink");
-            String jsonData = objectMapper.writeValueAsString(attributedPageView);
-
-            insertStatement.setString(1, attributedPageView.getPageViewId());
-            insertStatement.setString(2, attributedPageView.getUserId());
-            insertStatement.setString(3, attributedPageView.getEventTime().toString());
-            insertStatement.setString(4, attributedPageView.getUrl());
-            insertStatement.setString(5, attributedPageView.getAttributedCampaignId());
-            insertStatement.setString(6, attributedPageView.getAttributedClickId());
-            insertStatement.setString(7, jsonData);
+            bind(attributedPageView);
 
             insertStatement.executeUpdate();
             long count = writeCount.incrementAndGet();
@@ -118,6 +161,122 @@ public class OutputSink {
         } catch (Exception e) {
             log.error("Failed to write attributed page view: {}", attributedPageView.getPageViewId(), e);
             throw new RuntimeException("Database write failed", e);
+        } finally {
+            writeLock.unlock();
+            recordWriteLatency(start);
+            if (event.shouldCommit()) {
+                event.rows = 1;
+                event.users = 1;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Write several attributed page views in one transaction.
+     * Same idempotent INSERT OR REPLACE as {@link #write}, but a single commit for the whole batch.
+     *
+     * @param attributedPageViews page views in emit order, later entries win for the same page_view_id
+     */
+    public void writeAll(List<AttributedPageView> attributedPageViews) {
+        if (attributedPageViews.isEmpty()) {
+            return;
+        }
+        SinkCommitEvent event = new SinkCommitEvent();
+        event.begin();
+        long start = System.nanoTime();
+        writeLock.lock();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                for (AttributedPageView attributedPageView : attributedPageViews) {
+                    bind(attributedPageView);
+                    insertStatement.addBatch();
+                }
+                insertStatement.executeBatch();
+                connection.commit();
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            long count = writeCount.addAndGet(attributedPageViews.size());
+
+            log.debug("Written {} attributed page views in one batch (total writes: {})",
+                    attributedPageViews.size(), count);
+
+        } catch (Exception e) {
+            log.error("Failed to write batch of {} attributed page views", attributedPageViews.size(), e);
+            throw new RuntimeException("Database batch write failed", e);
+        } finally {
+            writeLock.unlock();
+            recordWriteLatency(start);
+            if (event.shouldCommit()) {
+                event.rows = attributedPageViews.size();
+                event.users = (int) attributedPageViews.stream().map(AttributedPageView::getUserId).distinct().count();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Append late events in one transaction, on the same connection as the page views.
+     * Not idempotent: a late event redelivered after a restart is stored again.
+     *
+     * @param lateEvents late events from the side output
+     */
+    public void writeLateEvents(List<LateEvent> lateEvents) throws Exception {
+        if (lateEvents.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                for (LateEvent lateEvent : lateEvents) {
+                    insertLateEventStatement.setString(1, lateEvent.stream().topicName);
+                    insertLateEventStatement.setInt(2, lateEvent.partition());
+                    insertLateEventStatement.setLong(3, lateEvent.offset());
+                    insertLateEventStatement.setString(4, lateEvent.eventId());
+                    insertLateEventStatement.setString(5, lateEvent.userId());
+                    insertLateEventStatement.setString(6, lateEvent.eventTime().toString());
+                    insertLateEventStatement.setString(7, lateEvent.watermark().toString());
+                    insertLateEventStatement.setString(8, objectMapper.writeValueAsString(lateEvent.event()));
+                    insertLateEventStatement.addBatch();
+                }
+                insertLateEventStatement.executeBatch();
+                connection.commit();
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            log.debug("Written {} late events", lateEvents.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void bind(AttributedPageView attributedPageView) throws Exception {
+        String jsonData = objectMapper.writeValueAsString(attributedPageView);
+
+        insertStatement.setString(1, attributedPageView.getPageViewId());
+        insertStatement.setString(2, attributedPageView.getUserId());
+        insertStatement.setString(3, attributedPageView.getEventTime().toString());
+        insertStatement.setString(4, attributedPageView.getUrl());
+        insertStatement.setString(5, attributedPageView.getAttributedCampaignId());
+        insertStatement.setString(6, attributedPageView.getAttributedClickId());
+        insertStatement.setString(7, jsonData);
+    }
+
+    /**
+     * The sink is shared by all partitions, so its latency is recorded under partition -1.
+     */
+    private void recordWriteLatency(long start) {
+        if (metrics != null) {
+            metrics.onLatency(LatencyStage.SINK_WRITE, -1, System.nanoTime() - start);
         }
     }
 
@@ -136,6 +295,9 @@ public class OutputSink {
             if (insertStatement != null) {
                 insertStatement.close();
             }
+            if (insertLateEventStatement != null) {
+                insertLateEventStatement.close();
+            }
             if (connection != null) {
                 connection.close();
             }
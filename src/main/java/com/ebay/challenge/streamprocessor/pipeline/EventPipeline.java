@@ -0,0 +1,425 @@
+package com.ebay.challenge.streamprocessor.pipeline;
+
+import com.ebay.challenge.streamprocessor.consumer.PartitionFlowControl;
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.LatencyStage;
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Staged decode -> join -> sink pipeline over one preallocated ring buffer (Disruptor-style).
+ * <p>
+ * Every record gets a sequence number and a slot; the stages advance over the same slots:
+ * - decode: a pool of workers, worker w parses the JSON of sequences w, w + n, w + 2n, ...
+ * - join: partition-affine workers, each walks all sequences in order and joins the partitions it owns,
+ *   so events of one partition (both topics) are joined in the order they were consumed
+ * - sink: one thread writes the results of consecutive slots in one SQLite transaction,
+ *   then acknowledges their records and frees the slots
+ * <p>
+ * Offsets are acknowledged in sequence order, only after the sink write, so at-least-once is kept.
+ * Failures: the sink retries until the write succeeds, the join retries up to JOIN_MAX_ATTEMPTS and then
+ * skips the record (counted as failed and skipped), undecodable records are skipped right away.
+ * Backpressure: submit blocks when the ring is full, and the listener containers are paused while
+ * the ring is more than 3/4 full and resumed once it is drained below 1/4.
+ */
+@Slf4j
+public class EventPipeline implements AutoCloseable {
+
+    static final String PAUSE_REASON = "pipeline";
+
+    private static final long SINK_RETRY_BACKOFF_MS = 1000;
+    static final int JOIN_MAX_ATTEMPTS = 10;
+    private static final long JOIN_RETRY_BACKOFF_MS = 100;
+
+    private final JoinEngine joinEngine;
+    private final OutputSink outputSink;
+    private final ObjectMapper objectMapper;
+    private final PartitionFlowControl flowControl;
+    private final Metrics metrics;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final int decodeWorkers;
+    private final int joinWorkers;
+    private final int sinkBatchSize;
+    private final long pauseAbove;
+    private final long resumeBelow;
+    private final ThreadFactory threadFactory;
+
+    /**
+     * Next sequence to hand out to a producer (consumer thread)
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * Per join worker, the next sequence it will look at. Every join worker reads every slot
+     * (if only to skip it), so the sink frees a slot only after all of them have passed it.
+     */
+    private final AtomicLongArray joinCursors;
+
+    /**
+     * All sequences below this one are written, acknowledged and their slots are free
+     */
+    private volatile long completed;
+
+    private final ReentrantLock flowLock = new ReentrantLock();
+    private boolean paused;
+
+    private volatile boolean running;
+    private final List<Thread> threads = new ArrayList<>();
+
+    public EventPipeline(
+            JoinEngine joinEngine,
+            OutputSink outputSink,
+            ObjectMapper objectMapper,
+            PartitionFlowControl flowControl,
+            Metrics metrics,
+            int bufferSize,
+            int decodeWorkers,
+            int joinWorkers,
+            int sinkBatchSize,
+            boolean virtualThreads
+    ) {
+        if (decodeWorkers < 1 || joinWorkers < 1 || sinkBatchSize < 1) {
+            throw new IllegalArgumentException("Pipeline needs at least one worker per stage and a positive batch size");
+        }
+        this.joinEngine = joinEngine;
+        this.outputSink = outputSink;
+        this.objectMapper = objectMapper;
+        this.flowControl = flowControl;
+        this.metrics = metrics;
+
+        // Power of two, so the slot index is a mask instead of a modulo
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.decodeWorkers = decodeWorkers;
+        this.joinWorkers = joinWorkers;
+        this.joinCursors = new AtomicLongArray(joinWorkers);
+        this.sinkBatchSize = Math.min(sinkBatchSize, capacity);
+        this.pauseAbove = capacity * 3L / 4;
+        this.resumeBelow = capacity / 4L;
+        this.threadFactory = virtualThreads
+                ? Thread.ofVirtual().factory()
+                : Thread.ofPlatform().daemon(true).factory();
+
+        log.info("Initialized EventPipeline (ring size={}, decode workers={}, join workers={}, sink batch size={})",
+                capacity, decodeWorkers, joinWorkers, this.sinkBatchSize);
+    }
+
+    public void start() {
+        running = true;
+        for (int w = 0; w < decodeWorkers; w++) {
+            int worker = w;
+            startThread("pipeline-decode-" + w, () -> runDecode(worker));
+        }
+        for (int w = 0; w < joinWorkers; w++) {
+            int worker = w;
+            startThread("pipeline-join-" + w, () -> runJoin(worker));
+        }
+        startThread("pipeline-sink", this::runSink);
+    }
+
+    /**
+     * Called from the consumer thread. Blocks while the ring is full.
+     */
+    public void submit(StreamType type, ConsumerRecord<String, String> record, Acknowledgment acknowledgment) {
+        long sequence = claimed.getAndIncrement();
+        if (sequence + 1 - completed >= pauseAbove) {
+            updateFlow();
+        }
+
+        // Wait until the sink has freed the slot of the previous lap
+        long wrapPoint = sequence - slots.length;
+        for (int spins = 0; wrapPoint >= completed; spins++) {
+            if (!running) {
+                throw new IllegalStateException("Pipeline is closed");
+            }
+            idle(spins);
+        }
+
+        Slot slot = slots[index(sequence)];
+        slot.type = type;
+        slot.record = record;
+        slot.acknowledgment = acknowledgment;
+        slot.published = sequence;
+    }
+
+    /**
+     * Number of records submitted but not yet written and acknowledged.
+     */
+    public long getInFlight() {
+        return claimed.get() - completed;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    private void runDecode(int worker) {
+        for (long sequence = worker; ; sequence += decodeWorkers) {
+            Slot slot = slots[index(sequence)];
+            for (int spins = 0; slot.published != sequence; spins++) {
+                if (!running) {
+                    return;
+                }
+                idle(spins);
+            }
+            slot.event = decode(slot);
+            slot.decoded = sequence;
+        }
+    }
+
+    private Object decode(Slot slot) {
+        ConsumerRecord<String, String> record = slot.record;
+        try {
+            long start = System.nanoTime();
+            if (slot.type == StreamType.AD_CLICKS) {
+                AdClickEvent click = objectMapper.readValue(record.value(), AdClickEvent.class);
+                metrics.onLatency(LatencyStage.DECODE, record.partition(), System.nanoTime() - start);
+                click.setPartition(record.partition());
+                click.setOffset(record.offset());
+                return click;
+            }
+            PageViewEvent pageView = objectMapper.readValue(record.value(), PageViewEvent.class);
+            metrics.onLatency(LatencyStage.DECODE, record.partition(), System.nanoTime() - start);
+            pageView.setPartition(record.partition());
+            pageView.setOffset(record.offset());
+            return pageView;
+        } catch (Exception e) {
+            // Deterministic, retrying cannot help: skipped, but still acknowledged in order by the sink
+            log.error("Skipping undecodable record from {}-{} offset {}: {}",
+                    record.topic(), record.partition(), record.offset(), record.value(), e);
+            metrics.onFailedEventSkipped(slot.type);
+            return null;
+        }
+    }
+
+    private void runJoin(int worker) {
+        for (long sequence = 0; ; sequence++) {
+            Slot slot = slots[index(sequence)];
+            for (int spins = 0; slot.decoded != sequence; spins++) {
+                if (!running) {
+                    return;
+                }
+                idle(spins);
+            }
+            if (Math.floorMod(slot.record.partition(), joinWorkers) == worker) {
+                if (!join(slot)) {
+                    // Closed while the join was failing: never reaches the sink, redelivered after restart
+                    return;
+                }
+                slot.joined = sequence;
+            }
+            joinCursors.set(worker, sequence + 1);
+        }
+    }
+
+    /**
+     * Retried with backoff like the keyed lanes (the engine undoes the de-duplication mark of a failed event),
+     * skipped after JOIN_MAX_ATTEMPTS. The slot is acknowledged by the sink either way.
+     *
+     * @return false if closed while retrying
+     */
+    private boolean join(Slot slot) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (slot.event instanceof AdClickEvent click) {
+                    joinEngine.processClick(click, slot.outputs::add);
+                } else if (slot.event instanceof PageViewEvent pageView) {
+                    joinEngine.processPageView(pageView, slot.outputs::add);
+                }
+                return true;
+            } catch (Exception e) {
+                // Results of the failed attempt are produced again
+                slot.outputs.clear();
+                if (attempt == JOIN_MAX_ATTEMPTS) {
+                    log.error("Error joining {} from partition {} offset {}, skipping after {} attempts",
+                            slot.type, slot.record.partition(), slot.record.offset(), attempt, e);
+                    metrics.onFailedEventSkipped(slot.type);
+                    return true;
+                }
+                if (!running) {
+                    return false;
+                }
+                log.warn("Error joining {} from partition {} offset {} (attempt {}): {}",
+                        slot.type, slot.record.partition(), slot.record.offset(), attempt, e.getMessage());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(JOIN_RETRY_BACKOFF_MS));
+            }
+        }
+    }
+
+    private void runSink() {
+        List<AttributedPageView> batch = new ArrayList<>();
+        long next = 0;
+        while (true) {
+            Slot first = slots[index(next)];
+            for (int spins = 0; first.joined != next; spins++) {
+                if (!running) {
+                    return;
+                }
+                idle(spins);
+            }
+
+            // Take whatever else is already joined, without waiting for more
+            long end = next + 1;
+            while (end - next < sinkBatchSize && slots[index(end)].joined == end) {
+                end++;
+            }
+            for (int spins = 0; minJoinCursor() < end; spins++) {
+                if (!running) {
+                    return;
+                }
+                idle(spins);
+            }
+            for (long sequence = next; sequence < end; sequence++) {
+                batch.addAll(slots[index(sequence)].outputs);
+            }
+
+            if (!writeWithRetry(batch)) {
+                // Closed while the sink was failing: leave unacknowledged, redelivered after restart
+                return;
+            }
+            for (long sequence = next; sequence < end; sequence++) {
+                Slot slot = slots[index(sequence)];
+                slot.acknowledgment.acknowledge();
+                slot.clear();
+            }
+            batch.clear();
+
+            completed = end;
+            next = end;
+            if (paused) {
+                updateFlow();
+            }
+        }
+    }
+
+    private boolean writeWithRetry(List<AttributedPageView> batch) {
+        while (true) {
+            try {
+                outputSink.writeAll(batch);
+                return true;
+            } catch (Exception e) {
+                // The ring fills up and consumption pauses until the sink recovers
+                log.error("Sink write of {} page views failed, retrying in {} ms",
+                        batch.size(), SINK_RETRY_BACKOFF_MS, e);
+                if (!running) {
+                    return false;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(SINK_RETRY_BACKOFF_MS));
+            }
+        }
+    }
+
+    /**
+     * Pause above the high mark, resume below the low mark.
+     * Under a lock, so a pause from a producer and a resume from the sink cannot be reordered.
+     */
+    private void updateFlow() {
+        flowLock.lock();
+        try {
+            long inFlight = getInFlight();
+            if (!paused && inFlight >= pauseAbove) {
+                paused = true;
+                flowControl.pauseAll(PAUSE_REASON);
+            } else if (paused && inFlight <= resumeBelow) {
+                paused = false;
+                flowControl.resumeAll(PAUSE_REASON);
+            }
+        } finally {
+            flowLock.unlock();
+        }
+    }
+
+    /**
+     * Stop all stages. Records not yet written stay unacknowledged and are redelivered.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread thread : threads) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.info("EventPipeline stopped ({} records in flight)", getInFlight());
+    }
+
+    private void startThread(String name, Runnable task) {
+        Thread thread = threadFactory.newThread(task);
+        thread.setName(name);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private long minJoinCursor() {
+        long min = Long.MAX_VALUE;
+        for (int w = 0; w < joinWorkers; w++) {
+            min = Math.min(min, joinCursors.get(w));
+        }
+        return min;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+
+    /**
+     * Spin briefly (the next stage is usually only a few slots behind), then back off
+     */
+    private static void idle(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Preallocated and reused on every lap of the ring.
+     * Plain fields are published to the next stage by the volatile write of its stamp.
+     */
+    private static final class Slot {
+        StreamType type;
+        ConsumerRecord<String, String> record;
+        Acknowledgment acknowledgment;
+        Object event;
+        final List<AttributedPageView> outputs = new ArrayList<>(2);
+
+        volatile long published = -1;
+        volatile long decoded = -1;
+        volatile long joined = -1;
+
+        void clear() {
+            type = null;
+            record = null;
+            acknowledgment = null;
+            event = null;
+            outputs.clear();
+        }
+    }
+}
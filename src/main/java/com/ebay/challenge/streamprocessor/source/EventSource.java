@@ -0,0 +1,31 @@
+package com.ebay.challenge.streamprocessor.source;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Where ad clicks and page views come from when they are not consumed by the Kafka listener containers
+ * (benchmarks, replay jobs).
+ *
+ * Records look like Kafka records (topic, partition, offset, user_id key and the JSON value),
+ * so {@link EventSourceRunner} feeds them through the same StreamConsumer path as the listeners:
+ * inline, keyed lanes, reorder buffer or pipeline.
+ */
+public interface EventSource extends AutoCloseable {
+
+    /**
+     * Hand all records to the handler, in offset order per partition, and return once the source is exhausted.
+     * Called on a single thread.
+     */
+    void run(BiConsumer<StreamType, ConsumerRecord<String, String>> handler) throws Exception;
+
+    /**
+     * Stop a running source early.
+     */
+    @Override
+    default void close() throws Exception {
+        // nothing to release
+    }
+}
@@ -0,0 +1,152 @@
+package com.ebay.challenge.streamprocessor.source;
+
+import com.ebay.challenge.streamprocessor.consumer.StreamConsumer;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs an {@link EventSource} through StreamConsumer, the same path as the Kafka listeners.
+ *
+ * - partition-aware like the listener containers: a partition always goes to the same worker thread
+ *   (partition % threads), so records of a partition are processed in order
+ * - a bounded queue per worker blocks the source when processing falls behind
+ * - finished when every record was acknowledged, also those acknowledged later by lanes,
+ *   the reorder buffer or the pipeline
+ * - a record that throws is logged, counted and skipped (there is no redelivery outside of Kafka)
+ */
+@Slf4j
+@Component
+public class EventSourceRunner {
+
+    private static final Runnable END = () -> { };
+
+    private final StreamConsumer streamConsumer;
+    private final int threads;
+    private final int queueCapacity;
+
+    public EventSourceRunner(
+            StreamConsumer streamConsumer,
+            @Value("${source.threads:3}") int threads,
+            @Value("${source.queue-capacity:10000}") int queueCapacity
+    ) {
+        this.streamConsumer = streamConsumer;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public SourceRunStats run(EventSource source) throws Exception {
+        long startedAt = System.nanoTime();
+        Progress progress = new Progress();
+
+        List<BlockingQueue<Runnable>> queues = new ArrayList<>(threads);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            workers.add(Thread.ofPlatform().name("source-worker-" + i).start(() -> work(queue)));
+        }
+
+        try {
+            source.run((stream, record) -> {
+                progress.submitted();
+                put(queues.get(record.partition() % threads), () -> process(stream, record, progress));
+            });
+        } finally {
+            queues.forEach(queue -> put(queue, END));
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+        progress.awaitAcknowledged();
+
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        SourceRunStats stats = new SourceRunStats(progress.records.get(), progress.failed.get(), durationMillis);
+        log.info("Source finished: {} records ({} failed) in {} ms, {} records/s",
+                stats.records(), stats.failed(), stats.durationMillis(), Math.round(stats.recordsPerSecond()));
+        return stats;
+    }
+
+    private void process(StreamType stream, ConsumerRecord<String, String> record, Progress progress) {
+        Acknowledgment acknowledgment = progress::acknowledged;
+        try {
+            streamConsumer.consume(stream, record, acknowledgment);
+        } catch (Exception e) {
+            log.error("Skipping {} record from partition {} offset {}", stream.topicName,
+                    record.partition(), record.offset(), e);
+            progress.failed.incrementAndGet();
+            acknowledgment.acknowledge();
+        }
+    }
+
+    private static void work(BlockingQueue<Runnable> queue) {
+        try {
+            for (Runnable task = queue.take(); task != END; task = queue.take()) {
+                task.run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void put(BlockingQueue<Runnable> queue, Runnable task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while handing a record to a worker", e);
+        }
+    }
+
+    private static final class Progress {
+        private final AtomicLong records = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition allAcknowledged = lock.newCondition();
+        private long outstanding;
+
+        void submitted() {
+            records.incrementAndGet();
+            lock.lock();
+            try {
+                outstanding++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void acknowledged() {
+            lock.lock();
+            try {
+                if (--outstanding == 0) {
+                    allAcknowledged.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void awaitAcknowledged() throws InterruptedException {
+            lock.lock();
+            try {
+                while (outstanding > 0) {
+                    allAcknowledged.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ebay.challenge.streamprocessor.source;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads both streams from one JSONL file, one record per line in delivery order:
+ *
+ *   {"topic": "ad_clicks", "key": "user_1", "value": {"user_id": "user_1", ...}}
+ *
+ * - topic: ad_clicks or page_views
+ * - key: optional, defaults to value.user_id
+ *
+ * `python data_generator.py --jsonl events.jsonl` writes this format instead of producing to Kafka.
+ */
+@Slf4j
+public class FileEventSource implements EventSource {
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final PartitionedRecords partitioner;
+    private volatile boolean closed;
+
+    public FileEventSource(Path path, int partitions, ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = objectMapper;
+        this.partitioner = new PartitionedRecords(partitions);
+    }
+
+    @Override
+    public void run(BiConsumer<StreamType, ConsumerRecord<String, String>> handler) throws Exception {
+        log.info("Reading events from {}", path);
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while (!closed && (line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode envelope = objectMapper.readTree(line);
+                StreamType stream = streamOf(envelope.path("topic").asText(), lineNumber);
+                JsonNode value = envelope.path("value");
+                String key = envelope.hasNonNull("key")
+                        ? envelope.get("key").asText()
+                        : value.path("user_id").asText();
+                handler.accept(stream, partitioner.next(stream, key, value.toString()));
+            }
+        }
+    }
+
+    private StreamType streamOf(String topic, long lineNumber) {
+        for (StreamType stream : StreamType.values()) {
+            if (stream.topicName.equals(topic)) {
+                return stream;
+            }
+        }
+        throw new IllegalArgumentException(
+                "Unknown topic '" + topic + "' in " + path + " line " + lineNumber + ", expected ad_clicks or page_views");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
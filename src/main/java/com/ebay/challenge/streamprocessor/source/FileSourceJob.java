@@ -0,0 +1,39 @@
+package com.ebay.challenge.streamprocessor.source;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Processes a JSONL file (see {@link FileEventSource}) at startup instead of consuming Kafka.
+ * The listener containers are not started when `source.file.path` is set; the dashboard stays up afterwards.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "source.file.path")
+@RequiredArgsConstructor
+public class FileSourceJob implements ApplicationRunner {
+
+    private final EventSourceRunner runner;
+    private final ObjectMapper objectMapper;
+
+    @Value("${source.file.path}")
+    private String path;
+
+    @Value("${source.file.partitions:3}")
+    private int partitions;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        try (FileEventSource source = new FileEventSource(Path.of(path), partitions, objectMapper)) {
+            runner.run(source);
+        }
+    }
+}
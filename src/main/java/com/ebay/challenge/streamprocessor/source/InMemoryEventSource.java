@@ -0,0 +1,43 @@
+package com.ebay.challenge.streamprocessor.source;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Events held in memory, delivered in the order they were added (tests, benchmarks without a broker).
+ */
+public class InMemoryEventSource implements EventSource {
+
+    private final PartitionedRecords partitioner;
+    private final List<StreamType> streams = new ArrayList<>();
+    private final List<ConsumerRecord<String, String>> records = new ArrayList<>();
+
+    public InMemoryEventSource(int partitions) {
+        this.partitioner = new PartitionedRecords(partitions);
+    }
+
+    /**
+     * @param key   user_id, decides the partition
+     * @param value event JSON, as it would be in the topic
+     */
+    public InMemoryEventSource add(StreamType stream, String key, String value) {
+        streams.add(stream);
+        records.add(partitioner.next(stream, key, value));
+        return this;
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    @Override
+    public void run(BiConsumer<StreamType, ConsumerRecord<String, String>> handler) {
+        for (int i = 0; i < records.size(); i++) {
+            handler.accept(streams.get(i), records.get(i));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.ebay.challenge.streamprocessor.source;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded read of both input topics, e.g. for replay jobs:
+ * - all partitions are assigned directly (no group, nothing committed)
+ * - starts at the first record with timestamp >= from (or the beginning), ends at the end offsets seen at start
+ *
+ * Live processing stays with the listener containers in StreamConsumer.
+ */
+@Slf4j
+public class KafkaEventSource implements EventSource {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final ConsumerFactory<String, String> consumerFactory;
+    private final Map<String, StreamType> streamsByTopic;
+    private final Instant from;
+    private volatile boolean closed;
+
+    /**
+     * @param from null to start at the beginning of the topics
+     */
+    public KafkaEventSource(
+            ConsumerFactory<String, String> consumerFactory,
+            String adClicksTopic,
+            String pageViewsTopic,
+            Instant from
+    ) {
+        this.consumerFactory = consumerFactory;
+        this.streamsByTopic = Map.of(adClicksTopic, StreamType.AD_CLICKS, pageViewsTopic, StreamType.PAGE_VIEWS);
+        this.from = from;
+    }
+
+    @Override
+    public void run(BiConsumer<StreamType, ConsumerRecord<String, String>> handler) {
+        try (Consumer<String, String> consumer = consumerFactory.createConsumer()) {
+            List<TopicPartition> partitions = streamsByTopic.keySet().stream()
+                    .flatMap(topic -> consumer.partitionsFor(topic).stream()
+                            .map(info -> new TopicPartition(topic, info.partition())))
+                    .toList();
+            consumer.assign(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            seekToStart(consumer, partitions);
+
+            Set<TopicPartition> remaining = new HashSet<>(partitions);
+            remaining.removeIf(tp -> consumer.position(tp) >= endOffsets.get(tp));
+            log.info("Reading {} up to end offsets {}", partitions, endOffsets);
+
+            while (!remaining.isEmpty() && !closed) {
+                for (ConsumerRecord<String, String> record : consumer.poll(POLL_TIMEOUT)) {
+                    TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+                    if (record.offset() < endOffsets.get(tp)) {
+                        handler.accept(streamsByTopic.get(record.topic()), record);
+                    }
+                }
+                remaining.removeIf(tp -> consumer.position(tp) >= endOffsets.get(tp));
+            }
+        }
+    }
+
+    private void seekToStart(Consumer<String, String> consumer, List<TopicPartition> partitions) {
+        if (from == null) {
+            consumer.seekToBeginning(partitions);
+            return;
+        }
+        Map<TopicPartition, Long> timestamps = partitions.stream()
+                .collect(Collectors.toMap(tp -> tp, tp -> from.toEpochMilli()));
+        Map<TopicPartition, OffsetAndTimestamp> offsets = consumer.offsetsForTimes(timestamps);
+        for (TopicPartition tp : partitions) {
+            OffsetAndTimestamp offset = offsets.get(tp);
+            if (offset == null) {
+                // Nothing at or after from
+                consumer.seekToEnd(List.of(tp));
+            } else {
+                consumer.seek(tp, offset.offset());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
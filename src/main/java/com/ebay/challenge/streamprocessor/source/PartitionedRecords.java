@@ -0,0 +1,41 @@
+package com.ebay.challenge.streamprocessor.source;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Turns events of a source without partitions into Kafka-like records:
+ * - partition from the key like Kafka's default partitioner (murmur2 of user_id), so a file
+ *   is split the same way as when data_generator.py produces it (also used by the backfill)
+ * - offsets counted per stream and partition
+ */
+public final class PartitionedRecords {
+
+    private final int partitions;
+    private final Map<StreamType, long[]> nextOffsets = new EnumMap<>(StreamType.class);
+
+    PartitionedRecords(int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive: " + partitions);
+        }
+        this.partitions = partitions;
+        for (StreamType stream : StreamType.values()) {
+            nextOffsets.put(stream, new long[partitions]);
+        }
+    }
+
+    ConsumerRecord<String, String> next(StreamType stream, String key, String value) {
+        int partition = partitionFor(key, partitions);
+        long offset = nextOffsets.get(stream)[partition]++;
+        return new ConsumerRecord<>(stream.topicName, partition, offset, key, value);
+    }
+
+    public static int partitionFor(String key, int partitions) {
+        return Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % partitions;
+    }
+}
@@ -0,0 +1,17 @@
+package com.ebay.challenge.streamprocessor.source;
+
+/**
+ * Result of running an {@link EventSource} to completion.
+ *
+ * @param failed records that threw in processing and were skipped
+ */
+public record SourceRunStats(
+        long records,
+        long failed,
+        long durationMillis
+) {
+
+    public double recordsPerSecond() {
+        return durationMillis > 0 ? records * 1000.0 / durationMillis : records;
+    }
+}
@@ -0,0 +1,148 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allowed lateness derived from the observed out-of-orderness instead of a static value.
+ *
+ * - Per stream and partition, a {@link DelaySketch} over `maxEventTimeSeen - eventTime`
+ * - The lateness of a stream is the configured quantile (e.g. p99.9) of its delays, within [min, max]
+ * - The lateness of a partition is the larger of its two streams, as the join watermark covers both
+ * - Until a stream has `minSamples` delays the static lateness is used
+ * - The quantile is recomputed every `RECOMPUTE_EVERY` samples, reads are a volatile load
+ *
+ * A growing lateness does not move the join watermark back: {@link WatermarkTracker} holds it at its highest value,
+ * as state behind it was already evicted. It only slows the watermark down until event times catch up.
+ */
+@Slf4j
+public class AdaptiveLateness {
+
+    static final int RECOMPUTE_EVERY = 256;
+
+    /**
+     * Estimated retained size of the delays of one stream partition without its key:
+     * map entry, StreamDelays, its lock, the sketch and the lateness
+     */
+    private static final long STREAM_DELAYS =
+            StateSizes.MAP_ENTRY + 40 + StateSizes.LOCK + DelaySketch.RETAINED_BYTES + 24;
+
+    private final double quantile;
+    private final Duration minLateness;
+    private final Duration maxLateness;
+    private final long minSamples;
+    private final long windowSize;
+
+    /**
+     * logicalPartitionId -> delays of that stream and partition
+     */
+    private final ConcurrentHashMap<String, StreamDelays> delays = new ConcurrentHashMap<>();
+
+    public AdaptiveLateness(
+            double quantile,
+            Duration minLateness,
+            Duration maxLateness,
+            long minSamples,
+            long windowSize
+    ) {
+        if (quantile <= 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be in (0, 1]: " + quantile);
+        }
+        if (minLateness.compareTo(maxLateness) > 0) {
+            throw new IllegalArgumentException("Min lateness " + minLateness + " is above max " + maxLateness);
+        }
+        this.quantile = quantile;
+        this.minLateness = minLateness;
+        this.maxLateness = maxLateness;
+        this.minSamples = minSamples;
+        this.windowSize = windowSize;
+        log.info("Initialized AdaptiveLateness (quantile={}, min={}, max={}, min samples={}, window={})",
+                quantile, minLateness, maxLateness, minSamples, windowSize);
+    }
+
+    /**
+     * Record how far behind the max event time seen an event arrived (0 when it advanced the max).
+     */
+    public void recordDelay(StreamType stream, int partition, long delayMillis) {
+        delays.computeIfAbsent(stream.logicalPartition(partition), p -> new StreamDelays(windowSize))
+                .add(delayMillis);
+    }
+
+    /**
+     * @param fallback used for a stream that has not seen enough events yet
+     */
+    public Duration getLateness(int partition, Duration fallback) {
+        Duration clicks = latenessOf(StreamType.AD_CLICKS.logicalPartition(partition), fallback);
+        Duration pageViews = latenessOf(StreamType.PAGE_VIEWS.logicalPartition(partition), fallback);
+        return clicks.compareTo(pageViews) >= 0 ? clicks : pageViews;
+    }
+
+    public void removePartition(int partition) {
+        for (StreamType stream : StreamType.values()) {
+            delays.remove(stream.logicalPartition(partition));
+        }
+    }
+
+    /**
+     * Estimated retained bytes of the delays of a partition (both streams), computed from fixed sizes.
+     */
+    public long getRetainedBytes(int partition) {
+        long bytes = 0;
+        for (StreamType stream : StreamType.values()) {
+            String logicalPartition = stream.logicalPartition(partition);
+            if (delays.containsKey(logicalPartition)) {
+                bytes += STREAM_DELAYS + StateSizes.of(logicalPartition);
+            }
+        }
+        return bytes;
+    }
+
+    public Duration getMaxLateness() {
+        return maxLateness;
+    }
+
+    private Duration latenessOf(String logicalPartition, Duration fallback) {
+        StreamDelays streamDelays = delays.get(logicalPartition);
+        Duration lateness = streamDelays == null ? null : streamDelays.lateness;
+        return lateness != null ? lateness : fallback;
+    }
+
+    private final class StreamDelays {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final DelaySketch sketch;
+        private long sinceRecompute;
+
+        /**
+         * null until minSamples delays were seen
+         */
+        volatile Duration lateness;
+
+        StreamDelays(long windowSize) {
+            this.sketch = new DelaySketch(windowSize);
+        }
+
+        void add(long delayMillis) {
+            lock.lock();
+            try {
+                sketch.add(delayMillis);
+                if (++sinceRecompute >= RECOMPUTE_EVERY && sketch.count() >= minSamples) {
+                    sinceRecompute = 0;
+                    lateness = clamp(Duration.ofMillis(sketch.quantile(quantile)));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Duration clamp(Duration value) {
+            if (value.compareTo(minLateness) < 0) {
+                return minLateness;
+            }
+            return value.compareTo(maxLateness) > 0 ? maxLateness : value;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Approximate de-duplication with a cuckoo filter per bucket, about 2 bytes per id.
+ * <p>
+ * A false positive (about 0.012% per filter) drops a new event as a duplicate. When a bucket holds
+ * more ids than expected, another filter of twice the size is chained to it, so the number of
+ * filters (and the false positive rate) only grows logarithmically.
+ */
+public class ApproximateEventDeduplicator extends TimeBucketedDeduplicator<List<CuckooFilter>> {
+
+    private final long expectedIdsPerBucket;
+
+    public ApproximateEventDeduplicator(Duration bucketWidth, long expectedIdsPerBucket) {
+        super(bucketWidth);
+        this.expectedIdsPerBucket = expectedIdsPerBucket;
+    }
+
+    @Override
+    List<CuckooFilter> newBucket() {
+        List<CuckooFilter> filters = new ArrayList<>(1);
+        filters.add(new CuckooFilter(expectedIdsPerBucket));
+        return filters;
+    }
+
+    @Override
+    boolean addIfAbsent(List<CuckooFilter> bucket, String eventId) {
+        for (CuckooFilter filter : bucket) {
+            if (filter.mightContain(eventId)) {
+                return false;
+            }
+        }
+        if (!bucket.get(bucket.size() - 1).add(eventId)) {
+            long capacity = expectedIdsPerBucket << Math.min(bucket.size(), 16);
+            CuckooFilter next = new CuckooFilter(capacity);
+            next.add(eventId);
+            bucket.add(next);
+        }
+        return true;
+    }
+
+    /**
+     * The id went to the newest filter that did not contain it yet, so the newest filter containing it is searched first
+     */
+    @Override
+    void remove(List<CuckooFilter> bucket, String eventId) {
+        for (int i = bucket.size() - 1; i >= 0; i--) {
+            if (bucket.get(i).remove(eventId)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    long sizeOf(List<CuckooFilter> bucket) {
+        long size = 0;
+        for (CuckooFilter filter : bucket) {
+            size += filter.size();
+        }
+        return size;
+    }
+}
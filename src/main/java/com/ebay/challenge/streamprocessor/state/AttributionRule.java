@@ -0,0 +1,46 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+
+import java.time.Instant;
+import java.util.Comparator;
+
+/**
+ * Last-touch attribution, shared by the streaming stores and the batch backfill so both pick the same click:
+ * - the click is of the same user, not after the page view and at most ATTRIBUTION_WINDOW before it
+ * - of those, the most recent click wins; on equal event time the smallest click_id
+ *
+ * The tie-break makes the result independent of arrival order.
+ */
+public final class AttributionRule {
+
+    /**
+     * Most preferred click first
+     */
+    public static final Comparator<AdClickEvent> PREFERENCE = Comparator
+            .comparing(AdClickEvent::getEventTime, Comparator.reverseOrder())
+            .thenComparing(AdClickEvent::getClickId);
+
+    private AttributionRule() {
+    }
+
+    public static boolean isWithinWindow(Instant clickTime, Instant pageViewTime) {
+        return !clickTime.isAfter(pageViewTime)
+                && !clickTime.isBefore(pageViewTime.minus(ClickStateStore.ATTRIBUTION_WINDOW));
+    }
+
+    /**
+     * @param currentTime    event time of the click currently attributed, null if none
+     * @param currentClickId its click_id, null if unknown (e.g. restored from the changelog)
+     * @return true if the candidate click is preferred over the current one
+     */
+    public static boolean isPreferred(Instant clickTime, String clickId, Instant currentTime, String currentClickId) {
+        if (currentTime == null) {
+            return true;
+        }
+        if (!clickTime.equals(currentTime)) {
+            return clickTime.isAfter(currentTime);
+        }
+        return currentClickId != null && clickId.compareTo(currentClickId) < 0;
+    }
+}
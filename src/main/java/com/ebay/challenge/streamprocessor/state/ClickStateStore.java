@@ -2,23 +2,36 @@ package com.ebay.challenge.streamprocessor.state;
 
 import com.ebay.challenge.streamprocessor.model.AdClickEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Stores ad click events partitioned by user_id for efficient windowed joins.
  * <p>
  * Thread-safe implementation with per-user locking for fine-grained concurrency.
+ * Per-user locks are ReentrantLocks rather than monitors, so virtual threads waiting for a user
+ * are unmounted instead of pinning their carrier thread.
  * Implements state eviction to prevent unbounded memory growth.
  * <p>
+ * Retained bytes are estimated per partition ({@link StateSizes}), updated on every add and removal.
+ * <p>
  * TODO: Implement thread-safe state storage and retrieval
  */
 @Slf4j
@@ -29,19 +42,45 @@ public class ClickStateStore {
     public static final Duration ATTRIBUTION_WINDOW = Duration.ofMinutes(30);
 
     // Hint: Consider using ConcurrentHashMap and TreeSet for thread-safe, sorted storage
-    private final ConcurrentMap<String, TreeSet<AdClickEvent>> clicksPerUser = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, UserClicks> clicksPerUser = new ConcurrentHashMap<>();
 
     private final AtomicLong totalClicks = new AtomicLong(0);
 
+    /**
+     * partition -> users with clicks in state, so listing them does not visit (and lock) every user
+     */
+    private final ConcurrentMap<Integer, Set<String>> usersPerPartition = new ConcurrentHashMap<>();
+
+    /**
+     * partition -> estimated retained bytes of its clicks and users
+     */
+    private final ConcurrentMap<Integer, LongAdder> retainedBytes = new ConcurrentHashMap<>();
+
+    private final StateChangelog changelog;
+
+    public ClickStateStore() {
+        this(StateChangelog.NO_OP);
+    }
+
+    public ClickStateStore(StateChangelog changelog) {
+        this.changelog = changelog;
+    }
+
+    /**
+     * Changelog is only present when `state.changelog.enabled` is set.
+     */
+    @Autowired
+    public ClickStateStore(ObjectProvider<StateChangelog> changelog) {
+        this(changelog.getIfAvailable(() -> StateChangelog.NO_OP));
+    }
+
     /**
      * We guarantee deterministic ordering here:
      * <p>
      * Here we ensure that clicks with same timestamp are not accidentally
-     * dropped by the TreeSet
+     * dropped by the TreeSet, and the first click in the window is the one {@link AttributionRule} prefers
      */
-    private static final Comparator<AdClickEvent> CLICKS_ORDER_MOST_RECENT_FIRST = Comparator
-            .comparing(AdClickEvent::getEventTime, Comparator.reverseOrder())
-            .thenComparing(AdClickEvent::getClickId);
+    private static final Comparator<AdClickEvent> CLICKS_ORDER_MOST_RECENT_FIRST = AttributionRule.PREFERENCE;
 
     /**
      * Add a click event to the state store.
@@ -50,31 +89,92 @@ public class ClickStateStore {
      * - Store clicks sorted by event time (most recent first)
      * - Handle concurrent access properly
      * <p>
-     * Here we need to synchronize on TreeSet as ConcurrentHashMap makes access to the map thread-safe, not access to
+     * Here we need to lock the TreeSet as ConcurrentHashMap makes access to the map thread-safe, not access to
      * the objects stored inside it.
      * Multiple threads can safely:
      * add/remove entries
      * call compute, get, put
+     * The lock is taken outside of computeIfAbsent, so no thread ever blocks while holding a map bin.
      *
      * @param click the ad click event
      */
     public void addClick(AdClickEvent click) {
         log.debug("Adding click {} for user {}", click.getClickId(), click.getUserId());
-        clicksPerUser.compute(click.getUserId(), (userId, set) -> {
-            if (set == null) {
-                set = new TreeSet<>(CLICKS_ORDER_MOST_RECENT_FIRST);
-            }
+        if (insert(click)) {
+            changelog.clickAdded(click);
+        }
+    }
 
-            // we make sure that all TreeSet mutations are synchronized
+    /**
+     * Add a click replayed from the state changelog. The change is not written back to the changelog.
+     *
+     * @param click the restored ad click event
+     */
+    public void restoreClick(AdClickEvent click) {
+        insert(click);
+    }
+
+    private boolean insert(AdClickEvent click) {
+        while (true) {
+            UserClicks userClicks = clicksPerUser.computeIfAbsent(click.getUserId(), userId -> new UserClicks());
+
+            // we make sure that all TreeSet mutations happen under the lock
             // safe under concurrent listeners
-            synchronized (set) {
-                boolean added = set.add(click);
+            userClicks.lock.lock();
+            try {
+                if (userClicks.retired) {
+                    // Eviction removed this entry after we looked it up, retry with a fresh one
+                    continue;
+                }
+                boolean added = userClicks.clicks.add(click);
                 if (added) {
                     totalClicks.incrementAndGet();
+                    long bytes = StateSizes.TREE_ENTRY + StateSizes.of(click);
+                    if (userClicks.clicks.size() == 1) {
+                        // New entry, accounted to the partition of the user. The key is counted on its own:
+                        // it outlives the click it came from
+                        userClicks.partition = click.getPartition();
+                        usersOf(click.getPartition()).add(click.getUserId());
+                        bytes += StateSizes.USER_CLICKS + StateSizes.of(click.getUserId());
+                    }
+                    bytesOf(click.getPartition()).add(bytes);
                 }
+                return added;
+            } finally {
+                userClicks.lock.unlock();
             }
-            return set;
-        });
+        }
+    }
+
+    /**
+     * Keep only the most recent clicks of a user (`state.hot-keys.max-clicks-per-user`), e.g. of a bot.
+     * Dropped clicks are written to the changelog as evictions.
+     *
+     * @param maxClicks clicks to retain
+     * @return number of clicks dropped
+     */
+    public int capClicks(String userId, long maxClicks) {
+        UserClicks userClicks = clicksPerUser.get(userId);
+        if (userClicks == null) {
+            return 0;
+        }
+        int dropped = 0;
+        userClicks.lock.lock();
+        try {
+            while (userClicks.clicks.size() > maxClicks) {
+                AdClickEvent oldest = userClicks.clicks.pollLast();
+                dropped++;
+                totalClicks.decrementAndGet();
+                bytesOf(oldest.getPartition()).add(-(StateSizes.TREE_ENTRY + StateSizes.of(oldest)));
+                changelog.clickEvicted(oldest);
+            }
+        } finally {
+            userClicks.lock.unlock();
+        }
+        if (dropped > 0) {
+            log.debug("Capped clicks of user {}, dropped {}", userId, dropped);
+        }
+        return dropped;
     }
 
     /**
@@ -88,9 +188,7 @@ public class ClickStateStore {
             AdClickEvent click,
             Instant pageViewTime
     ) {
-        Instant windowStart = pageViewTime.minus(ATTRIBUTION_WINDOW);
-        Instant t = click.getEventTime();
-        return !t.isAfter(pageViewTime) && !t.isBefore(windowStart);
+        return AttributionRule.isWithinWindow(click.getEventTime(), pageViewTime);
     }
 
     /**
@@ -106,17 +204,59 @@ public class ClickStateStore {
      */
     public AdClickEvent findAttributableClick(String userId, Instant pageViewTime) {
         log.debug("Finding attributable click for user {} at time {}", userId, pageViewTime);
-        TreeSet<AdClickEvent> clicks = clicksPerUser.get(userId);
-        if (clicks == null || clicks.isEmpty()) {
+        UserClicks userClicks = clicksPerUser.get(userId);
+        if (userClicks == null) {
             return null;
         }
-        synchronized (clicks) {
-            return clicks.stream()
+        userClicks.lock.lock();
+        try {
+            return userClicks.clicks.stream()
                     .filter(c -> isClickWithinAttributionWindow(c, pageViewTime)
                     ).findFirst().orElse(null);
+        } finally {
+            userClicks.lock.unlock();
         }
     }
 
+    /**
+     * Bulk variant of {@link #findAttributableClick} for several page views of one user (e.g. a session burst).
+     * <p>
+     * - One lock acquisition and one merge pass over the user's clicks
+     * - Page views are visited latest first, so the position in the clicks (most recent first) only moves forward
+     *
+     * @param userId        the user ID
+     * @param pageViewTimes page view event times, sorted ascending
+     * @return the attributable click per page view (same index), null where none
+     */
+    public List<AdClickEvent> findAttributableClicks(String userId, List<Instant> pageViewTimes) {
+        AdClickEvent[] attributed = new AdClickEvent[pageViewTimes.size()];
+        UserClicks userClicks = clicksPerUser.get(userId);
+        if (userClicks == null || attributed.length == 0) {
+            return Arrays.asList(attributed);
+        }
+        userClicks.lock.lock();
+        try {
+            Iterator<AdClickEvent> clicks = userClicks.clicks.iterator();
+            AdClickEvent candidate = clicks.hasNext() ? clicks.next() : null;
+            for (int i = attributed.length - 1; i >= 0 && candidate != null; i--) {
+                Instant pageViewTime = pageViewTimes.get(i);
+                if (i > 0 && pageViewTimes.get(i - 1).isAfter(pageViewTime)) {
+                    throw new IllegalArgumentException("Page view times must be sorted ascending: " + pageViewTimes);
+                }
+                // Clicks after this page view are after all earlier ones too
+                while (candidate != null && candidate.getEventTime().isAfter(pageViewTime)) {
+                    candidate = clicks.hasNext() ? clicks.next() : null;
+                }
+                if (candidate != null && isClickWithinAttributionWindow(candidate, pageViewTime)) {
+                    attributed[i] = candidate;
+                }
+            }
+        } finally {
+            userClicks.lock.unlock();
+        }
+        return Arrays.asList(attributed);
+    }
+
     /**
      * Evict old clicks that are beyond the retention window.
      * Prevents unbounded memory growth.
@@ -129,34 +269,106 @@ public class ClickStateStore {
      * @return number of clicks evicted
      */
     public int evictOldClicks(Instant cutoffTime) {
+        int evicted = 0;
+        for (int partition : usersPerPartition.keySet()) {
+            evicted += evict(partition, cutoffTime, true);
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} old clicks which happened before {}", evicted, cutoffTime);
+        }
+        return evicted;
+    }
+
+    /**
+     * Same as {@link #evictOldClicks(Instant)}, limited to one partition (each partition has its own watermark).
+     */
+    public int evictOldClicks(int partition, Instant cutoffTime) {
+        int evicted = evict(partition, cutoffTime, true);
+        if (evicted > 0) {
+            log.debug("Evicted {} old clicks of partition {} which happened before {}", evicted, partition, cutoffTime);
+        }
+        return evicted;
+    }
+
+    /**
+     * Drop all clicks of a partition which is no longer assigned to this instance.
+     * Not written to the changelog: the new owner restores the partition from it.
+     *
+     * @return number of clicks removed
+     */
+    public int removePartition(int partition) {
+        int removed = evict(partition, Instant.MAX, false);
+        usersPerPartition.remove(partition);
+        retainedBytes.remove(partition);
+        return removed;
+    }
+
+    /**
+     * Only the users indexed for the partition are visited (and locked), and their clicks are walked
+     * oldest first, up to the first one which is not older than the cutoff.
+     */
+    private int evict(int partition, Instant cutoffTime, boolean writeChangelog) {
 
         int evicted = 0;
 
-        for (var entry : clicksPerUser.entrySet()) {
-            TreeSet<AdClickEvent> set = entry.getValue();
-            synchronized (set) {
-                Iterator<AdClickEvent> it = set.iterator();
+        for (String userId : usersPerPartition.getOrDefault(partition, Set.of())) {
+            UserClicks userClicks = clicksPerUser.get(userId);
+            if (userClicks == null) {
+                continue;
+            }
+            TreeSet<AdClickEvent> set = userClicks.clicks;
+            userClicks.lock.lock();
+            try {
+                Iterator<AdClickEvent> it = set.descendingIterator();
                 while (it.hasNext()) {
                     AdClickEvent click = it.next();
-                    if (click.getEventTime().isBefore(cutoffTime)) {
-                        log.debug("Removing click_id {} event_time = {} cut_off time = {}, partition {} ", click.getClickId(),
-                                click.getEventTime(), cutoffTime, click.getPartition());
-                        it.remove();
-                        evicted++;
-                        totalClicks.decrementAndGet();
+                    if (!click.getEventTime().isBefore(cutoffTime)) {
+                        break;
+                    }
+                    log.debug("Removing click_id {} event_time = {}, partition {} ", click.getClickId(),
+                            click.getEventTime(), click.getPartition());
+                    it.remove();
+                    evicted++;
+                    totalClicks.decrementAndGet();
+                    bytesOf(click.getPartition()).add(-(StateSizes.TREE_ENTRY + StateSizes.of(click)));
+                    if (writeChangelog) {
+                        changelog.clickEvicted(click);
                     }
-                    if (set.isEmpty()) {
-                        clicksPerUser.remove(entry.getKey(), set);
+                }
+                if (set.isEmpty() && !userClicks.retired) {
+                    // Concurrent inserts that already hold this entry see the flag and retry
+                    userClicks.retired = true;
+                    // Unindexed first: a new entry for the user is only created, and indexed, after the removal
+                    usersOf(userClicks.partition).remove(userId);
+                    if (clicksPerUser.remove(userId, userClicks)) {
+                        bytesOf(userClicks.partition)
+                                .add(-(StateSizes.USER_CLICKS + StateSizes.of(userId)));
                     }
                 }
+            } finally {
+                userClicks.lock.unlock();
             }
         }
-        if (evicted > 0) {
-            log.debug("Evicted {} old clicks which happened before {}", evicted, cutoffTime);
-        }
         return evicted;
     }
 
+    /**
+     * Get the users which currently have clicks in state for a partition.
+     *
+     * @param partition the partition ID
+     * @return user ids with at least one click
+     */
+    public Set<String> getUserIds(int partition) {
+        return Set.copyOf(usersPerPartition.getOrDefault(partition, Set.of()));
+    }
+
+    /**
+     * Number of users with clicks in state for a partition, without copying them.
+     */
+    public int getUserCount(int partition) {
+        return usersPerPartition.getOrDefault(partition, Set.of()).size();
+    }
+
     /**
      * Get the total number of clicks currently in state.
      *
@@ -165,4 +377,42 @@ public class ClickStateStore {
     public long getTotalClickCount() {
         return totalClicks.get();
     }
+
+    /**
+     * Estimated retained bytes of all clicks in state.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Estimated retained bytes per partition with clicks in state.
+     */
+    public Map<Integer, Long> getRetainedBytesPerPartition() {
+        Map<Integer, Long> bytes = new HashMap<>();
+        retainedBytes.forEach((partition, adder) -> bytes.put(partition, adder.sum()));
+        return bytes;
+    }
+
+    private Set<String> usersOf(int partition) {
+        return usersPerPartition.computeIfAbsent(partition, p -> ConcurrentHashMap.newKeySet());
+    }
+
+    private LongAdder bytesOf(int partition) {
+        return retainedBytes.computeIfAbsent(partition, p -> new LongAdder());
+    }
+
+    /**
+     * Clicks of one user, most recent first, guarded by a per-user lock.
+     * Retired once eviction removed the entry from the map.
+     */
+    private static final class UserClicks {
+        final ReentrantLock lock = new ReentrantLock();
+        final TreeSet<AdClickEvent> clicks = new TreeSet<>(CLICKS_ORDER_MOST_RECENT_FIRST);
+        boolean retired;
+        /**
+         * Partition of the user's clicks, for memory accounting
+         */
+        int partition;
+    }
 }
@@ -0,0 +1,67 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch over string keys with conservative update.
+ *
+ * - DEPTH rows of `width` int counters, fixed memory (4 * DEPTH * width bytes)
+ * - an estimate never undercounts; it overcounts by at most e/width of all adds with probability
+ *   1 - e^-DEPTH (98%); conservative update (only the smallest counters of a key are incremented)
+ *   tightens it further
+ *
+ * Not thread-safe, the owner guards it.
+ */
+final class CountMinSketch {
+
+    static final int DEPTH = 4;
+
+    private final int width;
+    private final int[] counters;
+
+    CountMinSketch(int width) {
+        if (width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("Width must be a power of two: " + width);
+        }
+        this.width = width;
+        this.counters = new int[DEPTH * width];
+    }
+
+    /**
+     * @param hash 64-bit hash of the key ({@link BloomFilter#hash})
+     * @return the estimated count of the key after adding it
+     */
+    long add(long hash) {
+        long min = estimate(hash);
+        if (min == Integer.MAX_VALUE) {
+            return min;
+        }
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(row, h1, h2);
+            if (counters[index] == min) {
+                counters[index]++;
+            }
+        }
+        return min + 1;
+    }
+
+    long estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters[index(row, h1, h2)]);
+        }
+        return min;
+    }
+
+    void clear() {
+        Arrays.fill(counters, 0);
+    }
+
+    private int index(int row, int h1, int h2) {
+        return row * width + ((h1 + row * h2) & (width - 1));
+    }
+}
@@ -0,0 +1,160 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cuckoo filter over String keys with 16-bit fingerprints and 4 slots per bucket.
+ * <p>
+ * - About 2 bytes per key at 95% load, false positive rate about 8 / 2^16 (0.012%)
+ * - No false negatives for keys that were added successfully
+ * - {@link #add} fails once the filter is full; the caller then starts a new filter
+ * - {@link #remove} must only be called for keys that were added, or it may drop another key's fingerprint
+ * <p>
+ * Not thread-safe, the owner guards it.
+ */
+final class CuckooFilter {
+
+    private static final int SLOTS_PER_BUCKET = 4;
+    private static final int MAX_KICKS = 500;
+    private static final double MAX_LOAD = 0.95;
+
+    private final short[] slots;
+    private final int bucketMask;
+    private int size;
+
+    /**
+     * Set when a kick chain failed: the fingerprint displaced last, kept so it is not lost
+     */
+    private short victimFingerprint;
+    private int victimBucket;
+
+    CuckooFilter(long expectedKeys) {
+        long buckets = Math.max(1, (long) Math.ceil(expectedKeys / (SLOTS_PER_BUCKET * MAX_LOAD)));
+        // Power of two, so both bucket indexes are a mask
+        int bucketCount = buckets <= 1 ? 1 : Integer.highestOneBit((int) Math.min(1 << 28, buckets - 1)) << 1;
+        this.slots = new short[bucketCount * SLOTS_PER_BUCKET];
+        this.bucketMask = bucketCount - 1;
+    }
+
+    boolean mightContain(String key) {
+        long hash = BloomFilter.hash(key);
+        short fingerprint = fingerprintOf(hash);
+        int i1 = (int) hash & bucketMask;
+        int i2 = alternate(i1, fingerprint);
+        return contains(i1, fingerprint) || contains(i2, fingerprint)
+                || (victimFingerprint == fingerprint && (victimBucket == i1 || victimBucket == i2));
+    }
+
+    /**
+     * @return false if the filter is full and the key was not added
+     */
+    boolean add(String key) {
+        if (victimFingerprint != 0) {
+            return false;
+        }
+        long hash = BloomFilter.hash(key);
+        short fingerprint = fingerprintOf(hash);
+        int bucket = (int) hash & bucketMask;
+        if (insert(bucket, fingerprint) || insert(alternate(bucket, fingerprint), fingerprint)) {
+            size++;
+            return true;
+        }
+
+        // Both buckets full: move fingerprints to their alternate bucket until one fits
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextBoolean()) {
+            bucket = alternate(bucket, fingerprint);
+        }
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int slot = bucket * SLOTS_PER_BUCKET + random.nextInt(SLOTS_PER_BUCKET);
+            short displaced = slots[slot];
+            slots[slot] = fingerprint;
+            fingerprint = displaced;
+            bucket = alternate(bucket, fingerprint);
+            if (insert(bucket, fingerprint)) {
+                size++;
+                return true;
+            }
+        }
+        // The new key is in, but one older fingerprint has no slot: keep it aside, the filter is full
+        victimFingerprint = fingerprint;
+        victimBucket = bucket;
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove one fingerprint of a key that was added.
+     *
+     * @return false if the key's fingerprint was not found
+     */
+    boolean remove(String key) {
+        long hash = BloomFilter.hash(key);
+        short fingerprint = fingerprintOf(hash);
+        int i1 = (int) hash & bucketMask;
+        int i2 = alternate(i1, fingerprint);
+        if (delete(i1, fingerprint) || delete(i2, fingerprint)) {
+            size--;
+            return true;
+        }
+        if (victimFingerprint == fingerprint && (victimBucket == i1 || victimBucket == i2)) {
+            victimFingerprint = 0;
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private boolean delete(int bucket, short fingerprint) {
+        int base = bucket * SLOTS_PER_BUCKET;
+        for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+            if (slots[base + i] == fingerprint) {
+                slots[base + i] = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(int bucket, short fingerprint) {
+        int base = bucket * SLOTS_PER_BUCKET;
+        for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+            if (slots[base + i] == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean insert(int bucket, short fingerprint) {
+        int base = bucket * SLOTS_PER_BUCKET;
+        for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+            if (slots[base + i] == 0) {
+                slots[base + i] = fingerprint;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Partial-key cuckoo hashing: the alternate bucket depends only on the bucket and the fingerprint,
+     * so it can be computed for a displaced fingerprint without its key. Applying it twice is the identity.
+     */
+    private int alternate(int bucket, short fingerprint) {
+        int h = fingerprint * 0x5bd1e995;
+        return (bucket ^ (h ^ (h >>> 15))) & bucketMask;
+    }
+
+    /**
+     * Upper hash bits, 0 is reserved for empty slots
+     */
+    private static short fingerprintOf(long hash) {
+        short fingerprint = (short) (hash >>> 48);
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+}
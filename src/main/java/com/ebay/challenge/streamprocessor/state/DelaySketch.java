@@ -0,0 +1,99 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import java.util.Arrays;
+
+/**
+ * Streaming quantile sketch over delays in milliseconds (log-bucketed histogram, DDSketch-style).
+ *
+ * - Bucket boundaries grow by a constant factor, so any quantile is within 1% relative error
+ * - Fixed size (~900 buckets up to one day), adding is O(1)
+ * - Counts are kept for the current and the previous window of `windowSize` samples,
+ *   so old disorder ages out and the estimate follows the input
+ *
+ * Not thread-safe, the owner guards it.
+ */
+final class DelaySketch {
+
+    private static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final long MAX_DELAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * Bucket 0 holds delays <= 0, bucket i + 1 holds (GAMMA^(i-1), GAMMA^i]
+     */
+    private static final int BUCKETS = bucketOf(MAX_DELAY_MILLIS) + 1;
+
+    /**
+     * Estimated retained size of a sketch: the object and both windows
+     */
+    static final long RETAINED_BYTES = 48 + 2 * StateSizes.longArray(BUCKETS);
+
+    private final long windowSize;
+    private long[] current = new long[BUCKETS];
+    private long[] previous = new long[BUCKETS];
+    private long currentCount;
+    private long previousCount;
+
+    DelaySketch(long windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    void add(long delayMillis) {
+        if (currentCount == windowSize) {
+            long[] reused = previous;
+            Arrays.fill(reused, 0);
+            previous = current;
+            previousCount = currentCount;
+            current = reused;
+            currentCount = 0;
+        }
+        current[bucketOf(Math.min(delayMillis, MAX_DELAY_MILLIS))]++;
+        currentCount++;
+    }
+
+    long count() {
+        return currentCount + previousCount;
+    }
+
+    /**
+     * @param quantile in [0, 1]
+     * @return the estimated delay at the quantile, 0 if empty
+     */
+    long quantile(double quantile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += current[bucket] + previous[bucket];
+            if (seen >= rank) {
+                return valueOf(bucket);
+            }
+        }
+        return MAX_DELAY_MILLIS;
+    }
+
+    private static int bucketOf(long delayMillis) {
+        if (delayMillis <= 0) {
+            return 0;
+        }
+        return 1 + (int) Math.ceil(Math.log(delayMillis) / LOG_GAMMA);
+    }
+
+    /**
+     * Midpoint of the bucket (in relative terms), the upper bound rounded up for small delays
+     */
+    private static long valueOf(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+        double upper = Math.pow(GAMMA, bucket - 1);
+        return (long) Math.ceil(2 * upper / (GAMMA + 1));
+    }
+}
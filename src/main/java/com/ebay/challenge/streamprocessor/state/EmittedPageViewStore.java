@@ -4,16 +4,33 @@ import com.ebay.challenge.streamprocessor.model.AdClickEvent;
 import com.ebay.challenge.streamprocessor.model.AttributedPageView;
 import com.ebay.challenge.streamprocessor.model.PageViewEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 
 /**
  * Stores already-emitted page views `emit immediately, update later` mode.
  *
  * A page view can be updated by late clicks until it is finalized by the watermark.
+ * Page views are indexed per user by event time, so a late click only visits the page views
+ * of its user within its attribution window, and eviction stops at the first page view not yet finalized.
+ * Retained bytes are estimated per partition ({@link StateSizes}), updated on every put and removal.
  */
 @Slf4j
 @Component
@@ -25,17 +42,128 @@ public class EmittedPageViewStore {
     private final ConcurrentHashMap<String, PageViewState> state =
             new ConcurrentHashMap<>();
 
+    /**
+     * user_id -> emitted page views of the user, by event time
+     */
+    private final ConcurrentHashMap<String, UserPageViews> pageViewsPerUser = new ConcurrentHashMap<>();
+
+    /**
+     * partition -> users with pending page views
+     */
+    private final ConcurrentHashMap<Integer, Set<String>> usersPerPartition = new ConcurrentHashMap<>();
+
+    /**
+     * partition -> estimated retained bytes of its page views
+     */
+    private final ConcurrentHashMap<Integer, LongAdder> retainedBytes = new ConcurrentHashMap<>();
+
+    private final StateChangelog changelog;
+
+    public EmittedPageViewStore() {
+        this(StateChangelog.NO_OP);
+    }
+
+    public EmittedPageViewStore(StateChangelog changelog) {
+        this.changelog = changelog;
+    }
+
+    /**
+     * Changelog is only present when `state.changelog.enabled` is set.
+     */
+    @Autowired
+    public EmittedPageViewStore(ObjectProvider<StateChangelog> changelog) {
+        this(changelog.getIfAvailable(() -> StateChangelog.NO_OP));
+    }
+
     /**
      * Record a newly emitted page view.
      */
     public void recordEmittedPageView(PageViewEvent pageView, AdClickEvent click) {
-        state.put(
-                pageView.getEventId(),
-                new PageViewState(
-                        pageView,
-                        click != null ? click.getEventTime() : null
-                )
-        );
+        Instant attributedClickTime = click != null ? click.getEventTime() : null;
+        put(new PageViewState(pageView, attributedClickTime, click != null ? click.getClickId() : null));
+        changelog.pageViewRecorded(pageView, attributedClickTime);
+    }
+
+    /**
+     * Record a page view replayed from the state changelog. The change is not written back to the changelog.
+     */
+    public void restorePageView(PageViewEvent pageView, Instant attributedClickTime) {
+        put(new PageViewState(pageView, attributedClickTime, null));
+    }
+
+    private void put(PageViewState pageViewState) {
+        PageViewEvent pageView = pageViewState.pageView;
+        PageViewState previous = state.put(pageView.getEventId(), pageViewState);
+        if (previous != null) {
+            unindex(previous);
+            released(previous);
+        }
+        index(pageViewState);
+        bytesOf(pageView.getPartition()).add(StateSizes.PAGE_VIEW_STATE + StateSizes.of(pageView));
+    }
+
+    private void released(PageViewState pageViewState) {
+        PageViewEvent pageView = pageViewState.pageView;
+        bytesOf(pageView.getPartition()).add(-(StateSizes.PAGE_VIEW_STATE + StateSizes.of(pageView)));
+    }
+
+    /**
+     * Add a page view to the index of its user. The lock is taken outside of computeIfAbsent,
+     * as in {@link ClickStateStore#addClick}.
+     */
+    private void index(PageViewState pageViewState) {
+        PageViewEvent pageView = pageViewState.pageView;
+        while (true) {
+            UserPageViews userPageViews =
+                    pageViewsPerUser.computeIfAbsent(pageView.getUserId(), userId -> new UserPageViews());
+            userPageViews.lock.lock();
+            try {
+                if (userPageViews.retired) {
+                    // Eviction removed this entry after we looked it up, retry with a fresh one
+                    continue;
+                }
+                if (userPageViews.pageViews.add(pageViewState) && userPageViews.pageViews.size() == 1) {
+                    // New entry, the key is counted on its own: it outlives the page view it came from
+                    userPageViews.partition = pageView.getPartition();
+                    usersOf(pageView.getPartition()).add(pageView.getUserId());
+                    bytesOf(pageView.getPartition())
+                            .add(StateSizes.USER_PAGE_VIEWS + StateSizes.of(pageView.getUserId()));
+                }
+                return;
+            } finally {
+                userPageViews.lock.unlock();
+            }
+        }
+    }
+
+    private void unindex(PageViewState pageViewState) {
+        String userId = pageViewState.pageView.getUserId();
+        UserPageViews userPageViews = pageViewsPerUser.get(userId);
+        if (userPageViews == null) {
+            return;
+        }
+        userPageViews.lock.lock();
+        try {
+            userPageViews.pageViews.remove(pageViewState);
+            retireIfEmpty(userId, userPageViews);
+        } finally {
+            userPageViews.lock.unlock();
+        }
+    }
+
+    /**
+     * Called with the lock of the user held.
+     */
+    private void retireIfEmpty(String userId, UserPageViews userPageViews) {
+        if (userPageViews.pageViews.isEmpty()) {
+            // Concurrent puts that already hold this entry see the flag and retry
+            userPageViews.retired = true;
+            // Unindexed first: a new entry for the user is only created, and indexed, after the removal
+            usersOf(userPageViews.partition).remove(userId);
+            if (pageViewsPerUser.remove(userId, userPageViews)) {
+                bytesOf(userPageViews.partition).add(-(StateSizes.USER_PAGE_VIEWS + StateSizes.of(userId)));
+            }
+        }
     }
 
     /**
@@ -47,64 +175,158 @@ public class EmittedPageViewStore {
      * - click is within attribution window
      * - page view is not finalized by watermark
      * - click improves attribution
+     *
+     * Only the user's page views between the click and the end of its attribution window are visited.
      */
     public int tryUpdateWithClick(
             AdClickEvent click,
             Instant watermark,
             Consumer<AttributedPageView> onUpdate
     ) {
+        return tryUpdateWithClick(click, watermark, onUpdate, scanned -> { });
+    }
+
+    /**
+     * Same as {@link #tryUpdateWithClick(AdClickEvent, Instant, Consumer)}.
+     *
+     * @param onScanned receives how many page views were visited
+     */
+    public int tryUpdateWithClick(
+            AdClickEvent click,
+            Instant watermark,
+            Consumer<AttributedPageView> onUpdate,
+            IntConsumer onScanned
+    ) {
+        Instant windowEnd = click.getEventTime().plus(ClickStateStore.ATTRIBUTION_WINDOW);
+        List<PageViewState> pending = pendingPageViews(click.getUserId(), click.getEventTime(), windowEnd, watermark);
+        onScanned.accept(pending.size());
         int updates = 0;
-        for (PageViewState pageViewState : state.values()) {
+        for (PageViewState pageViewState : pending) {
             PageViewEvent pv = pageViewState.pageView;
-
-            // Must match user
-            if (!pv.getUserId().equals(click.getUserId())) {
-                continue;
+            // Click must be before page view, within attribution window
+            if (AttributionRule.isWithinWindow(click.getEventTime(), pv.getEventTime())
+                    && update(pageViewState, click, onUpdate)) {
+                updates++;
             }
+        }
+        return updates;
+    }
 
-            // Stop updates after finalization
-            if (isFinalizedByWatermark(pv.getEventTime(), watermark)) {
-                continue;
-            }
+    /**
+     * Bulk variant of {@link #tryUpdateWithClick} for several clicks of one user which arrived together.
+     * <p>
+     * - The user's page views (by event time) are merged once with the clicks (by event time)
+     * - Per page view the last click not after it, with ties going to the smallest click_id, is the only candidate
+     * - A page view is updated at most once, with the click it would end up with after all single updates
+     *
+     * @param clicks clicks of one user, in any order
+     */
+    public int tryUpdateWithClicks(
+            List<AdClickEvent> clicks,
+            Instant watermark,
+            Consumer<AttributedPageView> onUpdate
+    ) {
+        return tryUpdateWithClicks(clicks, watermark, onUpdate, scanned -> { });
+    }
 
-            // Click must be before page view
-            if (click.getEventTime().isAfter(pv.getEventTime())) {
-                continue;
+    /**
+     * Same as {@link #tryUpdateWithClicks(List, Instant, Consumer)}.
+     *
+     * @param onScanned receives how many page views were visited
+     */
+    public int tryUpdateWithClicks(
+            List<AdClickEvent> clicks,
+            Instant watermark,
+            Consumer<AttributedPageView> onUpdate,
+            IntConsumer onScanned
+    ) {
+        if (clicks.isEmpty()) {
+            onScanned.accept(0);
+            return 0;
+        }
+        // Least preferred first: the last click reached by the merge is the preferred one
+        List<AdClickEvent> byEventTime = clicks.stream().sorted(AttributionRule.PREFERENCE.reversed()).toList();
+        Instant from = byEventTime.getFirst().getEventTime();
+        Instant to = byEventTime.getLast().getEventTime().plus(ClickStateStore.ATTRIBUTION_WINDOW);
+        int next = 0;
+        AdClickEvent candidate = null;
+        List<PageViewState> pending = pendingPageViews(byEventTime.getFirst().getUserId(), from, to, watermark);
+        onScanned.accept(pending.size());
+        int updates = 0;
+        for (PageViewState pageViewState : pending) {
+            PageViewEvent pv = pageViewState.pageView;
+            while (next < byEventTime.size() && !byEventTime.get(next).getEventTime().isAfter(pv.getEventTime())) {
+                candidate = byEventTime.get(next++);
             }
-
-            // Click must be within attribution window
-            if (click.getEventTime().isBefore(
-                    pv.getEventTime().minus(ClickStateStore.ATTRIBUTION_WINDOW)
-            )) {
-                continue;
+            if (candidate != null
+                    && AttributionRule.isWithinWindow(candidate.getEventTime(), pv.getEventTime())
+                    && update(pageViewState, candidate, onUpdate)) {
+                updates++;
             }
+        }
+        return updates;
+    }
 
-            synchronized (pageViewState) {
-                // Update only if click is newer than the one we have in page_view
-                if (pageViewState.attributedClickTime == null
-                        || click.getEventTime().isAfter(pageViewState.attributedClickTime)) {
-
-                    AttributedPageView updated =
-                            AttributedPageView.builder()
-                                    .pageViewId(pv.getEventId())
-                                    .userId(pv.getUserId())
-                                    .eventTime(pv.getEventTime())
-                                    .url(pv.getUrl())
-                                    .attributedCampaignId(click.getCampaignId())
-                                    .attributedClickId(click.getClickId())
-                                    .build();
-
-                    pageViewState.attributedClickTime = click.getEventTime();
-                    onUpdate.accept(updated);
-                    updates++;
-                    log.info(
-                            "Updated page view {} with late click {}",
-                            pv.getEventId(), click.getClickId()
-                    );
+    /**
+     * Page views of a user in [from, to] which are not finalized, by event time.
+     * Copied under the user's lock, updates are applied without it.
+     */
+    private List<PageViewState> pendingPageViews(String userId, Instant from, Instant to, Instant watermark) {
+        UserPageViews userPageViews = pageViewsPerUser.get(userId);
+        if (userPageViews == null) {
+            return List.of();
+        }
+        List<PageViewState> pending = new ArrayList<>();
+        userPageViews.lock.lock();
+        try {
+            for (PageViewState pageViewState : userPageViews.pageViews.tailSet(PageViewState.first(from))) {
+                Instant eventTime = pageViewState.pageView.getEventTime();
+                if (eventTime.isAfter(to)) {
+                    break;
+                }
+                if (!isFinalizedByWatermark(eventTime, watermark)) {
+                    pending.add(pageViewState);
                 }
             }
+        } finally {
+            userPageViews.lock.unlock();
+        }
+        return pending;
+    }
+
+    private boolean update(PageViewState pageViewState, AdClickEvent click, Consumer<AttributedPageView> onUpdate) {
+        PageViewEvent pv = pageViewState.pageView;
+        pageViewState.lock.lock();
+        try {
+            // Update only if click is newer than the one we have in page_view (or wins the tie)
+            if (!AttributionRule.isPreferred(click.getEventTime(), click.getClickId(),
+                    pageViewState.attributedClickTime, pageViewState.attributedClickId)) {
+                return false;
+            }
+            AttributedPageView updated =
+                    AttributedPageView.builder()
+                            .pageViewId(pv.getEventId())
+                            .userId(pv.getUserId())
+                            .eventTime(pv.getEventTime())
+                            .url(pv.getUrl())
+                            .attributedCampaignId(click.getCampaignId())
+                            .attributedClickId(click.getClickId())
+                            .build();
+
+            // Written first: if the write fails, a retry of the click still finds the page view to improve
+            onUpdate.accept(updated);
+            pageViewState.attributedClickTime = click.getEventTime();
+            pageViewState.attributedClickId = click.getClickId();
+            pageViewState.updated = true;
+            changelog.pageViewRecorded(pv, pageViewState.attributedClickTime);
+            log.info(
+                    "Updated page view {} with late click {}",
+                    pv.getEventId(), click.getClickId()
+            );
+            return true;
+        } finally {
+            pageViewState.lock.unlock();
         }
-        return updates;
     }
 
     private boolean isFinalizedByWatermark(Instant eventTime, Instant watermark) {
@@ -118,12 +340,98 @@ public class EmittedPageViewStore {
      *   watermark >= pageView.eventTime
      */
     public int evictFinalizedPageViews(Instant watermark) {
-        int before = state.size();
-        state.entrySet().removeIf(entry ->
-                isFinalizedByWatermark(entry.getValue().pageView.getEventTime(), watermark)
+        return evictFinalizedPageViews(watermark, finalOnFirstWrite -> { });
+    }
+
+    /**
+     * Same as {@link #evictFinalizedPageViews(Instant)}.
+     *
+     * @param onFinalOnFirstWrite receives how many of the evicted page views were never updated,
+     *                            i.e. their first write already had the final attribution
+     */
+    public int evictFinalizedPageViews(Instant watermark, IntConsumer onFinalOnFirstWrite) {
+        int evicted = 0;
+        int[] finalOnFirstWrite = {0};
+        for (int partition : usersPerPartition.keySet()) {
+            evicted += evictFinalizedPageViews(partition, watermark, count -> finalOnFirstWrite[0] += count);
+        }
+        onFinalOnFirstWrite.accept(finalOnFirstWrite[0]);
+        return evicted;
+    }
+
+    /**
+     * Same as {@link #evictFinalizedPageViews(Instant, IntConsumer)}, limited to one partition
+     * (each partition has its own watermark).
+     */
+    public int evictFinalizedPageViews(int partition, Instant watermark, IntConsumer onFinalOnFirstWrite) {
+        return evict(
+                partition,
+                eventTime -> isFinalizedByWatermark(eventTime, watermark),
+                true,
+                onFinalOnFirstWrite
         );
+    }
+
+    /**
+     * Drop all page views of a partition which is no longer assigned to this instance.
+     * Not written to the changelog: the new owner restores the partition from it.
+     *
+     * @return number of page views removed
+     */
+    public int removePartition(int partition) {
+        int removed = evict(partition, eventTime -> true, false, finalOnFirstWrite -> { });
+        usersPerPartition.remove(partition);
+        retainedBytes.remove(partition);
+        return removed;
+    }
+
+    /**
+     * Only the users indexed for the partition are visited (and locked).
+     */
+    private int evict(
+            int partition,
+            Predicate<Instant> finalized,
+            boolean writeChangelog,
+            IntConsumer onFinalOnFirstWrite
+    ) {
+        int evicted = 0;
+        int finalOnFirstWrite = 0;
+        for (String userId : usersPerPartition.getOrDefault(partition, Set.of())) {
+            UserPageViews userPageViews = pageViewsPerUser.get(userId);
+            if (userPageViews == null) {
+                continue;
+            }
+            userPageViews.lock.lock();
+            try {
+                if (userPageViews.retired) {
+                    continue;
+                }
+                Iterator<PageViewState> it = userPageViews.pageViews.iterator();
+                while (it.hasNext()) {
+                    PageViewState pageViewState = it.next();
+                    PageViewEvent pv = pageViewState.pageView;
+                    // By event time, so the finalized page views come first
+                    if (!finalized.test(pv.getEventTime())) {
+                        break;
+                    }
+                    it.remove();
+                    state.remove(pv.getEventId(), pageViewState);
+                    released(pageViewState);
+                    evicted++;
+                    if (!pageViewState.updated) {
+                        finalOnFirstWrite++;
+                    }
+                    if (writeChangelog) {
+                        changelog.pageViewEvicted(pv);
+                    }
+                }
+                retireIfEmpty(userId, userPageViews);
+            } finally {
+                userPageViews.lock.unlock();
+            }
+        }
+        onFinalOnFirstWrite.accept(finalOnFirstWrite);
 
-        int evicted = before - state.size();
         if (evicted > 0) {
             log.debug("Evicted {} finalized page views", evicted);
         }
@@ -131,20 +439,85 @@ public class EmittedPageViewStore {
         return evicted;
     }
 
+    /**
+     * Get the users which currently have page views waiting for updates in a partition.
+     */
+    public Set<String> getUserIds(int partition) {
+        return Set.copyOf(usersPerPartition.getOrDefault(partition, Set.of()));
+    }
+
     public int size() {
         return state.size();
     }
 
+    /**
+     * Estimated retained bytes of all page views in state.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Estimated retained bytes per partition with page views in state.
+     */
+    public Map<Integer, Long> getRetainedBytesPerPartition() {
+        Map<Integer, Long> bytes = new HashMap<>();
+        retainedBytes.forEach((partition, adder) -> bytes.put(partition, adder.sum()));
+        return bytes;
+    }
+
+    private Set<String> usersOf(int partition) {
+        return usersPerPartition.computeIfAbsent(partition, p -> ConcurrentHashMap.newKeySet());
+    }
+
+    private LongAdder bytesOf(int partition) {
+        return retainedBytes.computeIfAbsent(partition, p -> new LongAdder());
+    }
+
+    /**
+     * Page views of one user, by event time, guarded by a per-user lock.
+     * Retired once eviction removed the entry from the map.
+     */
+    private static final class UserPageViews {
+        final ReentrantLock lock = new ReentrantLock();
+        final TreeSet<PageViewState> pageViews = new TreeSet<>(PageViewState.BY_EVENT_TIME);
+        boolean retired;
+        /**
+         * Partition of the user's page views
+         */
+        int partition;
+    }
+
     /**
      * Internal per-page-view state.
+     * The lock is held while an update is written to the sink, so it is a ReentrantLock:
+     * a virtual thread blocked on sink I/O or waiting for the lock does not pin its carrier.
      */
     private static final class PageViewState {
+        static final Comparator<PageViewState> BY_EVENT_TIME = Comparator
+                .comparing((PageViewState pageViewState) -> pageViewState.pageView.getEventTime())
+                .thenComparing(pageViewState -> pageViewState.pageView.getEventId());
+
+        final ReentrantLock lock = new ReentrantLock();
         final PageViewEvent pageView;
         volatile Instant attributedClickTime;
+        /**
+         * null if unknown (restored from the changelog, which only keeps the time)
+         */
+        volatile String attributedClickId;
+        volatile boolean updated;
 
-        PageViewState(PageViewEvent pageView, Instant attributedClickTime) {
+        PageViewState(PageViewEvent pageView, Instant attributedClickTime, String attributedClickId) {
             this.pageView = pageView;
             this.attributedClickTime = attributedClickTime;
+            this.attributedClickId = attributedClickId;
+        }
+
+        /**
+         * @return a key ordered before all page views at or after the given time
+         */
+        static PageViewState first(Instant eventTime) {
+            return new PageViewState(PageViewEvent.builder().eventId("").eventTime(eventTime).build(), null, null);
         }
     }
 }
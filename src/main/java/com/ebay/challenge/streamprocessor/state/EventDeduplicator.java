@@ -0,0 +1,69 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+
+import java.time.Instant;
+
+/**
+ * Input de-duplication on event_id / click_id, in front of all state and sink work.
+ * <p>
+ * Ids are only remembered until the watermark passes their event time: after that a
+ * duplicate is dropped as late anyway.
+ */
+public interface EventDeduplicator {
+
+    EventDeduplicator NONE = new EventDeduplicator() {
+        @Override
+        public boolean firstSeen(StreamType stream, int partition, String eventId, Instant eventTime) {
+            return true;
+        }
+
+        @Override
+        public void forget(StreamType stream, int partition, String eventId, Instant eventTime) {
+            // no-op
+        }
+
+        @Override
+        public void expire(int partition, Instant watermark) {
+            // no-op
+        }
+
+        @Override
+        public void removePartition(int partition) {
+            // no-op
+        }
+
+        @Override
+        public long size() {
+            return 0;
+        }
+    };
+
+    /**
+     * Record the id.
+     *
+     * @return false if the id was (or, for approximate implementations, may have been) seen before
+     */
+    boolean firstSeen(StreamType stream, int partition, String eventId, Instant eventTime);
+
+    /**
+     * Undo {@link #firstSeen} for an id it returned true for, e.g. when the batch of the event failed
+     * and is processed again.
+     */
+    void forget(StreamType stream, int partition, String eventId, Instant eventTime);
+
+    /**
+     * Forget the ids of a partition with event time before the watermark.
+     */
+    void expire(int partition, Instant watermark);
+
+    /**
+     * Forget all ids of a partition which is no longer assigned to this instance.
+     */
+    void removePartition(int partition);
+
+    /**
+     * Ids currently remembered, over all partitions.
+     */
+    long size();
+}
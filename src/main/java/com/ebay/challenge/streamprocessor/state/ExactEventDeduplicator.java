@@ -0,0 +1,35 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Exact de-duplication: every id is kept in a hash set until its bucket expires.
+ */
+public class ExactEventDeduplicator extends TimeBucketedDeduplicator<Set<String>> {
+
+    public ExactEventDeduplicator(Duration bucketWidth) {
+        super(bucketWidth);
+    }
+
+    @Override
+    Set<String> newBucket() {
+        return new HashSet<>();
+    }
+
+    @Override
+    boolean addIfAbsent(Set<String> bucket, String eventId) {
+        return bucket.add(eventId);
+    }
+
+    @Override
+    void remove(Set<String> bucket, String eventId) {
+        bucket.remove(eventId);
+    }
+
+    @Override
+    long sizeOf(Set<String> bucket) {
+        return bucket.size();
+    }
+}
@@ -0,0 +1,210 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.metrics.HotKey;
+import com.ebay.challenge.streamprocessor.metrics.HotKeysSnapshot;
+import com.ebay.challenge.streamprocessor.metrics.PartitionHotKeys;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Heavy hitters among the user ids of each stream partition (`state.hot-keys.enabled`).
+ * <p>
+ * Per stream and partition, a {@link CountMinSketch} estimates the events of any user and
+ * {@link TopKeys} keeps the `top-k` users with the highest estimates:
+ * - fixed memory: 2 windows * (16 * sketch-width bytes + top-k counters) per stream partition
+ * - an add hashes the user id once and takes one lock, uncontended as a partition is processed
+ *   by one thread at a time (keyed lanes share it)
+ * - counts cover the current and the previous window of `window-seconds`, so skew that went away ages out
+ * <p>
+ * With `max-clicks-per-user` set, the click estimate drives a cap on the clicks retained per user:
+ * the sketch never undercounts, so every user above the cap is seen, while users below it cost nothing.
+ */
+@Slf4j
+@Component
+public class HotKeyTracker {
+
+    private final boolean enabled;
+    private final int topK;
+    private final int sketchWidth;
+    private final long maxClicksPerUser;
+
+    private final Map<StreamType, Map<Integer, PartitionSketch>> sketches = new EnumMap<>(StreamType.class);
+    private final LongAdder clicksCapped = new LongAdder();
+
+    public HotKeyTracker(
+            @Value("${state.hot-keys.enabled:false}") boolean enabled,
+            @Value("${state.hot-keys.top-k:32}") int topK,
+            @Value("${state.hot-keys.sketch-width:1024}") int sketchWidth,
+            @Value("${state.hot-keys.max-clicks-per-user:0}") long maxClicksPerUser
+    ) {
+        this.enabled = enabled;
+        this.topK = topK;
+        this.sketchWidth = sketchWidth;
+        this.maxClicksPerUser = maxClicksPerUser;
+        for (StreamType stream : StreamType.values()) {
+            sketches.put(stream, new ConcurrentHashMap<>());
+        }
+        if (enabled) {
+            // Fail at startup, not on the first event
+            new CountMinSketch(sketchWidth);
+            new TopKeys(topK);
+        } else if (maxClicksPerUser > 0) {
+            log.warn("state.hot-keys.max-clicks-per-user is ignored while state.hot-keys.enabled is false");
+        }
+        log.info(
+                "Initialized HotKeyTracker (enabled={}, top-k={}, sketch width={}, max clicks per user={})",
+                enabled, topK, sketchWidth, maxClicksPerUser
+        );
+    }
+
+    /**
+     * @return true if the user may have more than `max-clicks-per-user` clicks in the window
+     * (never false for a user who has)
+     */
+    public boolean recordClick(int partition, String userId) {
+        if (!enabled) {
+            return false;
+        }
+        long estimate = sketchFor(StreamType.AD_CLICKS, partition).add(userId);
+        return maxClicksPerUser > 0 && estimate > maxClicksPerUser;
+    }
+
+    public void recordPageView(int partition, String userId) {
+        if (enabled) {
+            sketchFor(StreamType.PAGE_VIEWS, partition).add(userId);
+        }
+    }
+
+    public long getMaxClicksPerUser() {
+        return maxClicksPerUser;
+    }
+
+    public void onClicksCapped(int capped) {
+        if (capped > 0) {
+            clicksCapped.add(capped);
+        }
+    }
+
+    /**
+     * Starts a new window, the previous one is dropped.
+     */
+    @Scheduled(fixedRateString = "${state.hot-keys.window-seconds:300}", timeUnit = TimeUnit.SECONDS)
+    public void rotateWindow() {
+        sketches.values().forEach(partitions -> partitions.values().forEach(PartitionSketch::rotate));
+    }
+
+    /**
+     * Forget a partition which is no longer assigned to this instance.
+     */
+    public void removePartition(int partition) {
+        sketches.values().forEach(partitions -> partitions.remove(partition));
+    }
+
+    public HotKeysSnapshot snapshot() {
+        List<PartitionHotKeys> partitions = new ArrayList<>();
+        sketches.forEach((stream, byPartition) -> byPartition.forEach(
+                (partition, sketch) -> partitions.add(sketch.top(stream, partition, topK))));
+        partitions.sort(Comparator.comparingInt(PartitionHotKeys::partition)
+                .thenComparing(PartitionHotKeys::stream));
+        return new HotKeysSnapshot(enabled, enabled ? maxClicksPerUser : 0, clicksCapped.sum(), partitions);
+    }
+
+    private PartitionSketch sketchFor(StreamType stream, int partition) {
+        return sketches.get(stream).computeIfAbsent(partition, p -> new PartitionSketch(sketchWidth, topK));
+    }
+
+    /**
+     * Sketch and top-K of the current and the previous window, guarded by one lock.
+     */
+    private static final class PartitionSketch {
+        private final ReentrantLock lock = new ReentrantLock();
+        private CountMinSketch counts;
+        private CountMinSketch previousCounts;
+        private TopKeys top;
+        private TopKeys previousTop;
+        private long events;
+        private long previousEvents;
+
+        PartitionSketch(int sketchWidth, int topK) {
+            counts = new CountMinSketch(sketchWidth);
+            previousCounts = new CountMinSketch(sketchWidth);
+            top = new TopKeys(topK);
+            previousTop = new TopKeys(topK);
+        }
+
+        /**
+         * @return the estimated events of the user over both windows, including this one
+         */
+        long add(String userId) {
+            long hash = BloomFilter.hash(userId);
+            lock.lock();
+            try {
+                events++;
+                long estimate = counts.add(hash);
+                top.add(userId, estimate);
+                return estimate + previousCounts.estimate(hash);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void rotate() {
+            lock.lock();
+            try {
+                CountMinSketch reusedCounts = previousCounts;
+                reusedCounts.clear();
+                previousCounts = counts;
+                counts = reusedCounts;
+
+                TopKeys reusedTop = previousTop;
+                reusedTop.clear();
+                previousTop = top;
+                top = reusedTop;
+
+                previousEvents = events;
+                events = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Candidates of both windows, ranked by their sketch estimate over both.
+         */
+        PartitionHotKeys top(StreamType stream, int partition, int topK) {
+            lock.lock();
+            try {
+                Set<String> candidates = new LinkedHashSet<>();
+                top.top().forEach(counter -> candidates.add(counter.key()));
+                previousTop.top().forEach(counter -> candidates.add(counter.key()));
+                long total = events + previousEvents;
+                List<HotKey> hotKeys = new ArrayList<>(candidates.size());
+                for (String userId : candidates) {
+                    long hash = BloomFilter.hash(userId);
+                    long estimate = Math.min(total, counts.estimate(hash) + previousCounts.estimate(hash));
+                    hotKeys.add(new HotKey(userId, estimate, total == 0 ? 0 : (double) estimate / total));
+                }
+                hotKeys.sort(Comparator.comparingLong(HotKey::estimatedCount).reversed());
+                return new PartitionHotKeys(
+                        stream, partition, total, List.copyOf(hotKeys.subList(0, Math.min(topK, hotKeys.size()))));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes state mutations to a compacted changelog topic.
+ * <p>
+ * The changelog is co-partitioned with the input topics: a mutation caused by an event from
+ * partition N is written to changelog partition N, so a partition can be restored on its own.
+ * Sends are asynchronous - the listener thread only pays for serialization.
+ * <p>
+ * Input offsets are committed only after {@link #flush()} (see KafkaConsumerConfig). A failed send is kept:
+ * every later flush fails, so no offset past the lost change is committed and a restart replays from there.
+ */
+@Slf4j
+public class KafkaStateChangelog implements StateChangelog {
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final String topic;
+
+    /**
+     * First failed send, null while all sends succeeded
+     */
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public KafkaStateChangelog(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper, String topic) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.topic = topic;
+    }
+
+    @Override
+    public void clickAdded(AdClickEvent click) {
+        send(click.getPartition(), StateChangelogRecord.clickKey(click), StateChangelogRecord.ofClick(click));
+    }
+
+    @Override
+    public void clickEvicted(AdClickEvent click) {
+        send(click.getPartition(), StateChangelogRecord.clickKey(click), null);
+    }
+
+    @Override
+    public void pageViewRecorded(PageViewEvent pageView, Instant attributedClickTime) {
+        send(
+                pageView.getPartition(),
+                StateChangelogRecord.pageViewKey(pageView),
+                StateChangelogRecord.ofPageView(pageView, attributedClickTime)
+        );
+    }
+
+    @Override
+    public void pageViewEvicted(PageViewEvent pageView) {
+        send(pageView.getPartition(), StateChangelogRecord.pageViewKey(pageView), null);
+    }
+
+    @Override
+    public void flush() {
+        kafkaTemplate.flush();
+        Throwable failed = failure.get();
+        if (failed != null) {
+            throw new IllegalStateException("Changelog write to " + topic + " failed, offsets are not committed", failed);
+        }
+    }
+
+    private void send(int partition, String key, StateChangelogRecord record) {
+        String value;
+        try {
+            value = record != null ? objectMapper.writeValueAsString(record) : null;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize changelog record " + key, e);
+        }
+        kafkaTemplate.send(topic, partition, key, value)
+                .whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        failure.compareAndSet(null, ex);
+                        log.error("Failed to write changelog record {} to {}-{}", key, topic, partition, ex);
+                    }
+                });
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+}
@@ -0,0 +1,23 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import java.util.Collection;
+
+/**
+ * Prepares the join state of partitions which were just assigned to this instance.
+ * <p>
+ * Called from the rebalance listener on the consumer thread, so the partitions are not consumed
+ * until initialize returns. Both listener containers are assigned partition N, implementations
+ * must make sure partition N is only initialized once.
+ */
+public interface PartitionStateInitializer {
+
+    /**
+     * @param partitions partition numbers of the input topics
+     */
+    void initialize(Collection<Integer> partitions);
+
+    /**
+     * The partitions were revoked and their state released: initialize them again when they come back.
+     */
+    void release(Collection<Integer> partitions);
+}
@@ -0,0 +1,50 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Drops the join state of partitions which moved to another instance.
+ *
+ * - flush: before offsets of a revoked partition are committed, pending changelog writes are completed,
+ *   so the new owner restores everything this instance saw
+ * - release: clicks, page views, watermarks, user filters and dedup ids of the partition are removed
+ *   without changelog writes (the state is not evicted, only no longer ours)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PartitionStateReleaser {
+
+    private final ClickStateStore clickStore;
+    private final EmittedPageViewStore emittedPageViewStore;
+    private final WatermarkTracker watermarkTracker;
+    private final UserKeyFilter userKeyFilter;
+    private final HotKeyTracker hotKeyTracker;
+    private final EventDeduplicator deduplicator;
+
+    /**
+     * Only present when `state.changelog.enabled` is set
+     */
+    private final ObjectProvider<StateChangelog> changelog;
+
+    public void flush() {
+        changelog.ifAvailable(StateChangelog::flush);
+    }
+
+    public void release(Collection<Integer> partitions) {
+        for (int partition : partitions) {
+            int clicks = clickStore.removePartition(partition);
+            int pageViews = emittedPageViewStore.removePartition(partition);
+            watermarkTracker.removePartition(partition);
+            userKeyFilter.removePartition(partition);
+            hotKeyTracker.removePartition(partition);
+            deduplicator.removePartition(partition);
+            log.info("Released state of partition {}: {} clicks, {} page views", partition, clicks, pageViews);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+
+import java.time.Instant;
+
+/**
+ * Receives every mutation of the join state (ClickStateStore, EmittedPageViewStore),
+ * so the state can be rebuilt after a restart.
+ * <p>
+ * Calls happen on the listener threads, so implementations should only hand the change off
+ * (e.g. an async Kafka send) and never block for long.
+ */
+public interface StateChangelog {
+
+    StateChangelog NO_OP = new StateChangelog() {
+        @Override
+        public void clickAdded(AdClickEvent click) {
+            // no-op
+        }
+
+        @Override
+        public void clickEvicted(AdClickEvent click) {
+            // no-op
+        }
+
+        @Override
+        public void pageViewRecorded(PageViewEvent pageView, Instant attributedClickTime) {
+            // no-op
+        }
+
+        @Override
+        public void pageViewEvicted(PageViewEvent pageView) {
+            // no-op
+        }
+    };
+
+    void clickAdded(AdClickEvent click);
+
+    void clickEvicted(AdClickEvent click);
+
+    /**
+     * Called when a page view is first recorded and every time its attribution improves.
+     */
+    void pageViewRecorded(PageViewEvent pageView, Instant attributedClickTime);
+
+    void pageViewEvicted(PageViewEvent pageView);
+
+    /**
+     * Block until changes handed off so far are written (before input offsets are committed,
+     * and before a partition moves to another instance).
+     *
+     * @throws IllegalStateException if a change could not be written
+     */
+    default void flush() {
+        // nothing buffered
+    }
+}
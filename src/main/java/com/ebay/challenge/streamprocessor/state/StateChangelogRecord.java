@@ -0,0 +1,42 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+
+import java.time.Instant;
+
+/**
+ * Value written to the state changelog topic.
+ * <p>
+ * Key format:
+ *   click|<click_id>      -> clicks kept in ClickStateStore
+ *   pv|<page_view_id>     -> page views kept in EmittedPageViewStore
+ * <p>
+ * Evictions are written as tombstones (null value), so log compaction keeps
+ * only the entries which are still part of the state.
+ */
+public record StateChangelogRecord(
+        AdClickEvent click,
+        PageViewEvent pageView,
+        Instant attributedClickTime
+) {
+
+    static final String CLICK_KEY_PREFIX = "click|";
+    static final String PAGE_VIEW_KEY_PREFIX = "pv|";
+
+    static StateChangelogRecord ofClick(AdClickEvent click) {
+        return new StateChangelogRecord(click, null, null);
+    }
+
+    static StateChangelogRecord ofPageView(PageViewEvent pageView, Instant attributedClickTime) {
+        return new StateChangelogRecord(null, pageView, attributedClickTime);
+    }
+
+    static String clickKey(AdClickEvent click) {
+        return CLICK_KEY_PREFIX + click.getClickId();
+    }
+
+    static String pageViewKey(PageViewEvent pageView) {
+        return PAGE_VIEW_KEY_PREFIX + pageView.getEventId();
+    }
+}
@@ -0,0 +1,221 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Rebuilds ClickStateStore and EmittedPageViewStore from the state changelog topic.
+ * <p>
+ * Restore is called when partitions are assigned and blocks the calling consumer thread until the
+ * state for all its partitions is rebuilt, so no event is joined against incomplete state.
+ * <p>
+ * - Partitions are restored in parallel on a dedicated pool
+ * - Each partition is replayed in large batches with its own consumer (no consumer group)
+ * - Records are folded by key first, so entries which were evicted later are never applied
+ * - Both listener containers are assigned partition N, but partition N is restored only once
+ * - Restored ids are recorded in the EventDeduplicator, so redelivered events already in state are dropped
+ * - A failed restore drops the partially replayed state of its partition and is retried on the next call
+ */
+@Slf4j
+public class StateRestorer implements PartitionStateInitializer, AutoCloseable {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final ClickStateStore clickStore;
+    private final EmittedPageViewStore pageViewStore;
+    private final UserKeyFilter userKeyFilter;
+    private final EventDeduplicator deduplicator;
+    private final ConsumerFactory<String, String> consumerFactory;
+    private final ObjectMapper objectMapper;
+    private final Metrics metrics;
+    private final String topic;
+    private final ExecutorService restorePool;
+
+    /**
+     * partition -> restore in progress or done
+     */
+    private final Map<Integer, CompletableFuture<Void>> restores = new ConcurrentHashMap<>();
+
+    public StateRestorer(
+            ClickStateStore clickStore,
+            EmittedPageViewStore pageViewStore,
+            UserKeyFilter userKeyFilter,
+            EventDeduplicator deduplicator,
+            ConsumerFactory<String, String> consumerFactory,
+            ObjectMapper objectMapper,
+            Metrics metrics,
+            String topic,
+            int restoreThreads
+    ) {
+        this.clickStore = clickStore;
+        this.pageViewStore = pageViewStore;
+        this.userKeyFilter = userKeyFilter;
+        this.deduplicator = deduplicator;
+        this.consumerFactory = consumerFactory;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.topic = topic;
+        this.restorePool = Executors.newFixedThreadPool(restoreThreads, r -> {
+            Thread t = new Thread(r, "state-restore");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Restore state for the given partitions, in parallel, and wait until all of them are done.
+     * Partitions which were already restored by this instance are skipped.
+     *
+     * @param partitions partition numbers of the input topics
+     * @throws java.util.concurrent.CompletionException if a partition could not be restored
+     */
+    public void restore(Collection<Integer> partitions) {
+        List<CompletableFuture<Void>> pending = partitions.stream()
+                .map(this::restoreOnce)
+                .toList();
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * @return completes once the partition is restored and, if that failed, forgotten
+     */
+    private CompletableFuture<Void> restoreOnce(int partition) {
+        CompletableFuture<Void> restore = restores.computeIfAbsent(
+                partition,
+                p -> CompletableFuture.runAsync(() -> restorePartition(p), restorePool)
+        );
+        // Not cached when failed, so the next assignment retries it
+        return restore.whenComplete((v, e) -> {
+            if (e != null) {
+                restores.remove(partition, restore);
+            }
+        });
+    }
+
+    @Override
+    public void initialize(Collection<Integer> partitions) {
+        restore(partitions);
+    }
+
+    @Override
+    public void release(Collection<Integer> partitions) {
+        partitions.forEach(restores::remove);
+    }
+
+    public Set<Integer> getRestoredPartitions() {
+        return Set.copyOf(restores.keySet());
+    }
+
+    private void restorePartition(int partition) {
+        try {
+            replay(partition);
+        } catch (RuntimeException e) {
+            clearPartition(partition);
+            log.error("Failed to restore partition {} from {}", partition, topic, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop what was applied before a failure, the retry replays the partition from the beginning.
+     */
+    private void clearPartition(int partition) {
+        clickStore.removePartition(partition);
+        pageViewStore.removePartition(partition);
+        userKeyFilter.removePartition(partition);
+        deduplicator.removePartition(partition);
+    }
+
+    private void replay(int partition) {
+        long startNanos = System.nanoTime();
+        TopicPartition changelogPartition = new TopicPartition(topic, partition);
+
+        // key -> latest value; null marks an evicted entry
+        Map<String, String> latestByKey = new LinkedHashMap<>();
+        long recordsRead = 0;
+
+        try (Consumer<String, String> consumer = consumerFactory.createConsumer()) {
+            consumer.assign(List.of(changelogPartition));
+            consumer.seekToBeginning(List.of(changelogPartition));
+            long endOffset = consumer.endOffsets(List.of(changelogPartition)).get(changelogPartition);
+
+            while (consumer.position(changelogPartition) < endOffset) {
+                ConsumerRecords<String, String> batch = consumer.poll(POLL_TIMEOUT);
+                for (ConsumerRecord<String, String> record : batch) {
+                    if (record.offset() >= endOffset) {
+                        break;
+                    }
+                    latestByKey.put(record.key(), record.value());
+                    recordsRead++;
+                }
+            }
+        }
+
+        int applied = 0;
+        for (Map.Entry<String, String> entry : latestByKey.entrySet()) {
+            if (entry.getValue() != null) {
+                apply(partition, entry.getKey(), entry.getValue());
+                applied++;
+            }
+        }
+
+        Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+        metrics.onStateRestored(partition, recordsRead, duration.toMillis());
+        log.info(
+                "Restored partition {} from {}: {} changelog records read, {} state entries applied in {} ms",
+                partition, topic, recordsRead, applied, duration.toMillis()
+        );
+    }
+
+    private void apply(int partition, String key, String value) {
+        StateChangelogRecord record;
+        try {
+            record = objectMapper.readValue(value, StateChangelogRecord.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read changelog record " + key, e);
+        }
+
+        if (key.startsWith(StateChangelogRecord.CLICK_KEY_PREFIX) && record.click() != null) {
+            record.click().setPartition(partition);
+            clickStore.restoreClick(record.click());
+            userKeyFilter.recordClick(partition, record.click().getUserId());
+            deduplicator.firstSeen(StreamType.AD_CLICKS, partition,
+                    record.click().getClickId(), record.click().getEventTime());
+        } else if (key.startsWith(StateChangelogRecord.PAGE_VIEW_KEY_PREFIX) && record.pageView() != null) {
+            record.pageView().setPartition(partition);
+            Instant attributedClickTime = record.attributedClickTime();
+            pageViewStore.restorePageView(record.pageView(), attributedClickTime);
+            userKeyFilter.recordPageView(partition, record.pageView().getUserId());
+            deduplicator.firstSeen(StreamType.PAGE_VIEWS, partition,
+                    record.pageView().getEventId(), record.pageView().getEventTime());
+        } else {
+            log.warn("Skipping unknown changelog record {}", key);
+        }
+    }
+
+    @Override
+    public void close() {
+        restorePool.shutdownNow();
+    }
+}
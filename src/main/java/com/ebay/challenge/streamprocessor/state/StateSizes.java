@@ -0,0 +1,78 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+
+/**
+ * Estimated retained sizes of state objects, for incremental memory accounting without heap walking.
+ *
+ * Layout of a 64-bit HotSpot JVM with compressed oops and class pointers (heaps below 32 GB):
+ * 12-byte object headers, 4-byte references, objects aligned to 8 bytes.
+ * Strings are assumed Latin-1 (ids and urls), one byte per char.
+ * Calibrated against JOL in StateSizesTest.
+ */
+final class StateSizes {
+
+    private StateSizes() {
+    }
+
+    /**
+     * ConcurrentHashMap.Node, plus ~1.5 table slots: the table is a power of two, between 1.33 and 2.67 slots per entry
+     */
+    static final long MAP_ENTRY = 32 + 6;
+
+    /**
+     * TreeMap.Entry of a TreeSet
+     */
+    static final long TREE_ENTRY = 40;
+
+    /**
+     * ReentrantLock with its NonfairSync
+     */
+    static final long LOCK = 48;
+
+    static final long INSTANT = 24;
+
+    private static final long STRING = 24;
+    private static final long ARRAY_HEADER = 16;
+    private static final long EVENT = 40;
+
+    /**
+     * A user in ClickStateStore without its key: map entry, UserClicks, its lock, TreeSet, TreeMap,
+     * the key set view created by the first iteration and the entry in the per-partition user set
+     */
+    static final long USER_CLICKS = MAP_ENTRY + 24 + LOCK + 80 + MAP_ENTRY;
+
+    /**
+     * A user in EmittedPageViewStore without its key, same layout as {@link #USER_CLICKS}
+     */
+    static final long USER_PAGE_VIEWS = USER_CLICKS;
+
+    /**
+     * A page view in EmittedPageViewStore without the event: map entry, PageViewState, its lock
+     * and its entry in the user's TreeSet
+     */
+    static final long PAGE_VIEW_STATE = MAP_ENTRY + 32 + LOCK + TREE_ENTRY;
+
+    static long of(String value) {
+        return value == null ? 0 : STRING + align(ARRAY_HEADER + value.length());
+    }
+
+    static long of(AdClickEvent click) {
+        return EVENT + of(click.getUserId()) + of(click.getCampaignId()) + of(click.getClickId())
+                + (click.getEventTime() == null ? 0 : INSTANT);
+    }
+
+    static long of(PageViewEvent pageView) {
+        return EVENT + of(pageView.getUserId()) + of(pageView.getUrl()) + of(pageView.getEventId())
+                + (pageView.getEventTime() == null ? 0 : INSTANT);
+    }
+
+    static long longArray(int length) {
+        return align(ARRAY_HEADER + 8L * length);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,147 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ids per stream and partition, grouped in event-time buckets of `bucketWidth`.
+ * <p>
+ * - A duplicate has the same event time as the original, so only one bucket is looked at
+ * - A bucket is dropped as a whole once the watermark passes its end, which bounds memory
+ *   by the disorder the watermark allows rather than by the input rate
+ *
+ * @param <B> the per-bucket id set
+ */
+@Slf4j
+abstract class TimeBucketedDeduplicator<B> implements EventDeduplicator {
+
+    private final long bucketMillis;
+
+    /**
+     * logicalPartitionId -> buckets
+     */
+    private final Map<String, PartitionIds> partitions = new ConcurrentHashMap<>();
+
+    TimeBucketedDeduplicator(Duration bucketWidth) {
+        if (bucketWidth.toMillis() < 1) {
+            throw new IllegalArgumentException("Bucket width must be at least 1 ms: " + bucketWidth);
+        }
+        this.bucketMillis = bucketWidth.toMillis();
+    }
+
+    /**
+     * @return a new, empty id set
+     */
+    abstract B newBucket();
+
+    /**
+     * @return false if the id is (or may be) already in the bucket
+     */
+    abstract boolean addIfAbsent(B bucket, String eventId);
+
+    /**
+     * Remove an id added by {@link #addIfAbsent}.
+     */
+    abstract void remove(B bucket, String eventId);
+
+    abstract long sizeOf(B bucket);
+
+    @Override
+    public boolean firstSeen(StreamType stream, int partition, String eventId, Instant eventTime) {
+        if (eventId == null) {
+            return true;
+        }
+        PartitionIds ids = partitions.computeIfAbsent(stream.logicalPartition(partition), p -> new PartitionIds());
+        ids.lock.lock();
+        try {
+            return addIfAbsent(ids.buckets.computeIfAbsent(bucketStart(eventTime), start -> newBucket()), eventId);
+        } finally {
+            ids.lock.unlock();
+        }
+    }
+
+    @Override
+    public void forget(StreamType stream, int partition, String eventId, Instant eventTime) {
+        if (eventId == null) {
+            return;
+        }
+        PartitionIds ids = partitions.get(stream.logicalPartition(partition));
+        if (ids == null) {
+            return;
+        }
+        ids.lock.lock();
+        try {
+            B bucket = ids.buckets.get(bucketStart(eventTime));
+            if (bucket != null) {
+                remove(bucket, eventId);
+            }
+        } finally {
+            ids.lock.unlock();
+        }
+    }
+
+    @Override
+    public void expire(int partition, Instant watermark) {
+        long watermarkMillis = watermark.toEpochMilli();
+        for (StreamType stream : StreamType.values()) {
+            PartitionIds ids = partitions.get(stream.logicalPartition(partition));
+            if (ids == null) {
+                continue;
+            }
+            ids.lock.lock();
+            try {
+                Iterator<Long> starts = ids.buckets.keySet().iterator();
+                // Every event in the bucket is before its end, so before the watermark: late
+                while (starts.hasNext() && starts.next() + bucketMillis <= watermarkMillis) {
+                    starts.remove();
+                }
+            } finally {
+                ids.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void removePartition(int partition) {
+        for (StreamType stream : StreamType.values()) {
+            partitions.remove(stream.logicalPartition(partition));
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (PartitionIds ids : partitions.values()) {
+            ids.lock.lock();
+            try {
+                for (B bucket : ids.buckets.values()) {
+                    size += sizeOf(bucket);
+                }
+            } finally {
+                ids.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private long bucketStart(Instant eventTime) {
+        return Math.floorDiv(eventTime.toEpochMilli(), bucketMillis) * bucketMillis;
+    }
+
+    private final class PartitionIds {
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * bucket start (epoch millis) -> ids
+         */
+        final TreeMap<Long, B> buckets = new TreeMap<>();
+    }
+}
@@ -0,0 +1,122 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Top-K keys by their {@link CountMinSketch} estimate (Space-Saving style, admission by the sketch).
+ *
+ * - `capacity` monitored keys in an indexed min-heap by count
+ * - a key which is not monitored replaces the smallest one once its estimate is larger,
+ *   so cold keys cost one map lookup and never touch the heap
+ * - every key with more than events / capacity occurrences is monitored: its estimate exceeds the minimum
+ *
+ * Not thread-safe, the owner guards it.
+ */
+final class TopKeys {
+
+    record Counter(String key, long count) {}
+
+    private final int capacity;
+    private final String[] keys;
+    private final long[] counts;
+    private final Map<String, Integer> positions;
+    private int size;
+
+    TopKeys(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * @param estimate estimated count of the key including this occurrence, non-decreasing per key
+     */
+    void add(String key, long estimate) {
+        Integer position = positions.get(key);
+        if (position != null) {
+            counts[position] = Math.max(counts[position], estimate);
+            siftDown(position);
+        } else if (size < capacity) {
+            keys[size] = key;
+            counts[size] = estimate;
+            positions.put(key, size);
+            siftUp(size++);
+        } else if (estimate > counts[0]) {
+            // Replace the minimum at the root
+            positions.remove(keys[0]);
+            keys[0] = key;
+            counts[0] = estimate;
+            positions.put(key, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return monitored keys, highest count first
+     */
+    List<Counter> top() {
+        List<Counter> top = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            top.add(new Counter(keys[i], counts[i]));
+        }
+        top.sort(Comparator.comparingLong(Counter::count).reversed());
+        return top;
+    }
+
+    void clear() {
+        positions.clear();
+        for (int i = 0; i < size; i++) {
+            keys[i] = null;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (counts[parent] <= counts[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        String key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        long count = counts[a];
+        counts[a] = counts[b];
+        counts[b] = count;
+        positions.put(keys[a], a);
+        positions.put(keys[b], b);
+    }
+}
@@ -0,0 +1,144 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Per-partition Bloom filters over the user ids which currently have clicks (ClickStateStore)
+ * or pending page views (EmittedPageViewStore).
+ * <p>
+ * Most page views belong to users who never clicked an ad. A definite negative from the filter
+ * lets JoinEngine skip the click lookup (and for clicks, the emitted page view scan) entirely.
+ * <p>
+ * Bloom filters cannot remove keys, so they are rotated: after each eviction run the filters of a
+ * partition are rebuilt from the user ids still in state, and users whose state was evicted drop out.
+ * The stores keep the users per partition, so a rebuild does not visit the users of other partitions.
+ * <p>
+ * Off by default (`state.user-filter.enabled`): it pays off when most lookups are for users without state.
+ * <p>
+ * No false negatives, also during a rebuild:
+ * - stores are updated before the filter is (record* is called after the store write)
+ * - the new filter is published before the stores are scanned, and record* writes to both
+ *   the current and the new filter
+ * So a user is either seen by the scan or written to the new filter directly.
+ */
+@Slf4j
+@Component
+public class UserKeyFilter {
+
+    private final boolean enabled;
+    private final double falsePositiveRate;
+    private final long expectedUsersPerPartition;
+
+    private final ConcurrentHashMap<Integer, PartitionFilters> filters = new ConcurrentHashMap<>();
+
+    public UserKeyFilter(
+            @Value("${state.user-filter.enabled:false}") boolean enabled,
+            @Value("${state.user-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${state.user-filter.expected-users-per-partition:100000}") long expectedUsersPerPartition
+    ) {
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+        this.expectedUsersPerPartition = expectedUsersPerPartition;
+        log.info(
+                "Initialized UserKeyFilter (enabled={}, fpp={}, expected users per partition={})",
+                enabled, falsePositiveRate, expectedUsersPerPartition
+        );
+    }
+
+    public void recordClick(int partition, String userId) {
+        if (enabled) {
+            filtersFor(partition).clicks.put(userId);
+        }
+    }
+
+    public void recordPageView(int partition, String userId) {
+        if (enabled) {
+            filtersFor(partition).pageViews.put(userId);
+        }
+    }
+
+    /**
+     * @return false if the user definitely has no clicks in state for this partition
+     */
+    public boolean mightHaveClicks(int partition, String userId) {
+        return !enabled || filtersFor(partition).clicks.mightContain(userId);
+    }
+
+    /**
+     * @return false if the user definitely has no pending page views for this partition
+     */
+    public boolean mightHavePageViews(int partition, String userId) {
+        return !enabled || filtersFor(partition).pageViews.mightContain(userId);
+    }
+
+    /**
+     * Replace the filters of a partition with fresh ones containing only the users still in state.
+     * The suppliers are called after the new filters are published, see class comment.
+     */
+    public void rebuild(int partition, Supplier<Set<String>> clickUsers, Supplier<Set<String>> pageViewUsers) {
+        if (!enabled) {
+            return;
+        }
+        PartitionFilters partitionFilters = filtersFor(partition);
+        partitionFilters.clicks.rebuild(clickUsers);
+        partitionFilters.pageViews.rebuild(pageViewUsers);
+    }
+
+    /**
+     * Drop the filters of a partition which is no longer assigned to this instance.
+     */
+    public void removePartition(int partition) {
+        filters.remove(partition);
+    }
+
+    private PartitionFilters filtersFor(int partition) {
+        return filters.computeIfAbsent(partition, p -> new PartitionFilters());
+    }
+
+    private final class PartitionFilters {
+        final RotatingFilter clicks = new RotatingFilter();
+        final RotatingFilter pageViews = new RotatingFilter();
+    }
+
+    private final class RotatingFilter {
+        private volatile BloomFilter current = new BloomFilter(expectedUsersPerPartition, falsePositiveRate);
+        private volatile BloomFilter next;
+        private int lastLiveUsers;
+
+        void put(String userId) {
+            // next must be read before current: if next is already cleared, current is the rebuilt one
+            BloomFilter rebuilding = next;
+            current.put(userId);
+            if (rebuilding != null) {
+                rebuilding.put(userId);
+            }
+        }
+
+        boolean mightContain(String userId) {
+            return current.mightContain(userId);
+        }
+
+        /**
+         * Only called from the eviction run, never concurrently for the same filter
+         */
+        void rebuild(Supplier<Set<String>> liveUsers) {
+            // Leave headroom when state outgrows the configured size, so the fpp holds
+            BloomFilter rebuilt = new BloomFilter(
+                    Math.max(expectedUsersPerPartition, 2L * lastLiveUsers),
+                    falsePositiveRate
+            );
+            next = rebuilt;
+            Set<String> users = liveUsers.get();
+            users.forEach(rebuilt::put);
+            current = rebuilt;
+            next = null;
+            lastLiveUsers = users.size();
+        }
+    }
+}
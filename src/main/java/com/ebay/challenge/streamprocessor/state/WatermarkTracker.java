@@ -2,6 +2,8 @@ package com.ebay.challenge.streamprocessor.state;
 
 import com.ebay.challenge.streamprocessor.model.StreamType;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -26,6 +28,11 @@ import java.util.concurrent.ConcurrentHashMap;
  *     maxEventTime(ad_clicks_<partition>),
  *     maxEventTime(page_views_<partition>)
  *   ) - allowedLateness
+ *
+ * allowedLateness is static (`watermark.allowed-lateness-minutes`), or per partition
+ * from {@link AdaptiveLateness} when `watermark.adaptive.enabled` is set.
+ * A growing adaptive lateness would move the value above backward; the join watermark is held
+ * at its highest value instead, as state was already evicted and finalized against it.
  */
 @Slf4j
 @Component
@@ -33,6 +40,11 @@ public class WatermarkTracker {
 
     private final Duration allowedLateness;
 
+    /**
+     * null unless adaptive lateness is enabled
+     */
+    private final AdaptiveLateness adaptiveLateness;
+
     /**
      * logicalPartitionId -> maxEventTimeSeen
      * Example key: "ad_clicks_0" - we need to know which stream it is, not to mix partitions together
@@ -42,16 +54,35 @@ public class WatermarkTracker {
 
     private final Set<Integer> activePartitions = ConcurrentHashMap.newKeySet();
 
-    public WatermarkTracker(
-            @Value("${watermark.allowed-lateness-minutes:2}") int allowedLatenessMinutes
-    ) {
+    /**
+     * partition -> highest join watermark returned so far, only kept with adaptive lateness
+     */
+    private final ConcurrentHashMap<Integer, Instant> joinWatermarks = new ConcurrentHashMap<>();
+
+    public WatermarkTracker(int allowedLatenessMinutes) {
+        this(allowedLatenessMinutes, (AdaptiveLateness) null);
+    }
+
+    public WatermarkTracker(int allowedLatenessMinutes, AdaptiveLateness adaptiveLateness) {
         this.allowedLateness = Duration.ofMinutes(allowedLatenessMinutes);
+        this.adaptiveLateness = adaptiveLateness;
         log.info(
-                "Initialized WatermarkTracker with allowed lateness: {} minutes",
-                allowedLatenessMinutes
+                "Initialized WatermarkTracker with allowed lateness: {} minutes (adaptive={})",
+                allowedLatenessMinutes, adaptiveLateness != null
         );
     }
 
+    /**
+     * AdaptiveLateness is only present when `watermark.adaptive.enabled` is set.
+     */
+    @Autowired
+    public WatermarkTracker(
+            @Value("${watermark.allowed-lateness-minutes:2}") int allowedLatenessMinutes,
+            ObjectProvider<AdaptiveLateness> adaptiveLateness
+    ) {
+        this(allowedLatenessMinutes, adaptiveLateness.getIfAvailable());
+    }
+
     /**
      * Update watermark for a partition based on observed event time.
      * Watermark advances monotonically (never goes backward).
@@ -68,6 +99,13 @@ public class WatermarkTracker {
         activePartitions.add(partition);
         String logicalPartitionId = stream.logicalPartition(partition);
         log.debug("Updating watermark for partition {} with event time {}", logicalPartitionId, eventTime);
+        if (adaptiveLateness != null) {
+            Instant maxSeen = partitionMaxEventTimeSeen.get(logicalPartitionId);
+            long delayMillis = maxSeen != null && eventTime.isBefore(maxSeen)
+                    ? Duration.between(eventTime, maxSeen).toMillis()
+                    : 0;
+            adaptiveLateness.recordDelay(stream, partition, delayMillis);
+        }
         partitionMaxEventTimeSeen.merge(
                 logicalPartitionId,
                 eventTime,
@@ -102,7 +140,21 @@ public class WatermarkTracker {
         Instant minMax =
                 clickMax.isBefore(viewMax) ? clickMax : viewMax;
 
-        return minMax.minus(allowedLateness);
+        Instant watermark = minMax.minus(getAllowedLateness(partition));
+        if (adaptiveLateness == null) {
+            // Static lateness: monotonic with the max event times
+            return watermark;
+        }
+        return joinWatermarks.merge(partition, watermark, this::chooseLaterInstant);
+    }
+
+    /**
+     * Max event time seen on one stream of a partition.
+     *
+     * @return the max event time, or null if nothing was seen yet
+     */
+    public Instant getMaxEventTime(StreamType stream, int partition) {
+        return partitionMaxEventTimeSeen.get(stream.logicalPartition(partition));
     }
 
     /**
@@ -121,8 +173,24 @@ public class WatermarkTracker {
         return incoming.isAfter(existing) ? incoming : existing;
     }
 
+    /**
+     * Upper bound of the allowed lateness over all partitions (e.g. for how far back to replay).
+     */
     public Duration getAllowedLateness() {
-        return allowedLateness;
+        if (adaptiveLateness == null) {
+            return allowedLateness;
+        }
+        Duration max = adaptiveLateness.getMaxLateness();
+        return max.compareTo(allowedLateness) > 0 ? max : allowedLateness;
+    }
+
+    /**
+     * Allowed lateness currently in effect for a partition.
+     */
+    public Duration getAllowedLateness(int partition) {
+        return adaptiveLateness == null
+                ? allowedLateness
+                : adaptiveLateness.getLateness(partition, allowedLateness);
     }
 
     public ConcurrentHashMap<String, Instant> getPartitionMaxEventTimeSeen(){
@@ -132,4 +200,38 @@ public class WatermarkTracker {
     public Set<Integer> getActivePartitions() {
         return Set.copyOf(activePartitions);
     }
+
+    /**
+     * Estimated retained bytes of the watermark state of a partition, computed from fixed sizes:
+     * max event time per stream, the active partition entry, the held join watermark
+     * and the adaptive lateness sketches.
+     */
+    public long getRetainedBytes(int partition) {
+        // Integer keys of partitions below 128 are cached, only the entry is counted
+        long bytes = activePartitions.contains(partition) ? StateSizes.MAP_ENTRY : 0;
+        if (joinWatermarks.containsKey(partition)) {
+            bytes += StateSizes.MAP_ENTRY + StateSizes.INSTANT;
+        }
+        for (StreamType stream : StreamType.values()) {
+            String logicalPartition = stream.logicalPartition(partition);
+            if (partitionMaxEventTimeSeen.containsKey(logicalPartition)) {
+                bytes += StateSizes.MAP_ENTRY + StateSizes.of(logicalPartition) + StateSizes.INSTANT;
+            }
+        }
+        return adaptiveLateness == null ? bytes : bytes + adaptiveLateness.getRetainedBytes(partition);
+    }
+
+    /**
+     * Forget a partition which is no longer assigned to this instance.
+     */
+    public void removePartition(int partition) {
+        activePartitions.remove(partition);
+        joinWatermarks.remove(partition);
+        for (StreamType stream : StreamType.values()) {
+            partitionMaxEventTimeSeen.remove(stream.logicalPartition(partition));
+        }
+        if (adaptiveLateness != null) {
+            adaptiveLateness.removePartition(partition);
+        }
+    }
 }
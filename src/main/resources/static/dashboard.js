@@ -14,11 +14,27 @@ function formatTimestamp(ts) {
     return `${yyyy}-${mm}-${dd} ${hh}:${min}:${ss}`;
 }
 
-async function loadMetrics() {
-    try {
-        const response = await fetch('/metrics');
-        const data = await response.json();
+function formatMicros(micros) {
+    if (micros == null) return '—';
+    if (micros < 1000) return micros + ' µs';
+    if (micros < 1000000) return (micros / 1000).toFixed(1) + ' ms';
+    return (micros / 1000000).toFixed(2) + ' s';
+}
 
+function formatMillis(millis) {
+    if (millis == null) return '—';
+    return (millis / 1000).toFixed(1) + ' s';
+}
+
+function formatBytes(bytes) {
+    if (bytes == null) return '—';
+    if (bytes < 1024) return bytes + ' B';
+    if (bytes < 1024 * 1024) return (bytes / 1024).toFixed(1) + ' KB';
+    return (bytes / (1024 * 1024)).toFixed(1) + ' MB';
+}
+
+function render(data) {
+    try {
         /* -------- Counters -------- */
         document.getElementById('clicksReceived').textContent =
             data.clicksReceived ?? 0;
@@ -26,12 +42,42 @@ async function loadMetrics() {
         document.getElementById('pageViewsReceived').textContent =
             data.pageViewsReceived ?? 0;
 
+        document.getElementById('lateClicksDropped').textContent =
+            data.lateClicksDropped ?? 0;
+
+        document.getElementById('latePageViewsDropped').textContent =
+            data.latePageViewsDropped ?? 0;
+
+        document.getElementById('lateEventsPersisted').textContent =
+            data.lateEventsPersisted ?? 0;
+
+        document.getElementById('lateEventsDiscarded').textContent =
+            data.lateEventsDiscarded ?? 0;
+
+        document.getElementById('duplicateClicksDropped').textContent =
+            data.duplicateClicksDropped ?? 0;
+
+        document.getElementById('duplicatePageViewsDropped').textContent =
+            data.duplicatePageViewsDropped ?? 0;
+
+        document.getElementById('failedClicksSkipped').textContent =
+            data.failedClicksSkipped ?? 0;
+
+        document.getElementById('failedPageViewsSkipped').textContent =
+            data.failedPageViewsSkipped ?? 0;
+
         document.getElementById('pageViewsEmitted').textContent =
             data.pageViewsEmitted ?? 0;
 
         document.getElementById('pageViewsUpdated').textContent =
             data.pageViewsUpdated ?? 0;
 
+        document.getElementById('pageViewsFinalized').textContent =
+            data.pageViewsFinalized ?? 0;
+
+        document.getElementById('pageViewsFinalOnFirstWrite').textContent =
+            data.pageViewsFinalOnFirstWrite ?? 0;
+
         /* -------- State sizes -------- */
         document.getElementById('clickStateSize').textContent =
             data.clickStateSize ?? 0;
@@ -39,6 +85,37 @@ async function loadMetrics() {
         document.getElementById('pageViewStateSize').textContent =
             data.pageViewStateSize ?? 0;
 
+        document.getElementById('clickStateBytes').textContent =
+            formatBytes(data.clickStateBytes ?? 0);
+
+        document.getElementById('pageViewStateBytes').textContent =
+            formatBytes(data.pageViewStateBytes ?? 0);
+
+        document.getElementById('watermarkStateBytes').textContent =
+            formatBytes(data.watermarkStateBytes ?? 0);
+
+        /* -------- Load shedding -------- */
+        const shedding = data.loadShedding || {};
+
+        document.getElementById('loadSheddingActive').textContent =
+            shedding.active ? 'yes' : 'no';
+
+        document.getElementById('loadSheddingTime').textContent =
+            ((shedding.sheddingMillis ?? 0) / 1000).toFixed(1) + ' s';
+
+        document.getElementById('clickUpdatesSkipped').textContent =
+            shedding.clickUpdatesSkipped ?? 0;
+
+        document.getElementById('pageViewsNotTracked').textContent =
+            shedding.pageViewsNotTracked ?? 0;
+
+        /* -------- User filter -------- */
+        document.getElementById('userFilterHits').textContent =
+            data.userFilterHits ?? 0;
+
+        document.getElementById('userFilterMisses').textContent =
+            data.userFilterMisses ?? 0;
+
         /* -------- Last updated -------- */
         document.getElementById('lastUpdatedAt').textContent =
             data.lastUpdatedAt
@@ -78,16 +155,95 @@ async function loadMetrics() {
                     : '—'
             ));
 
+            row.appendChild(cell((wm.allowedLatenessMillis / 1000).toFixed(1) + ' s'));
+
+            row.appendChild(cell(
+                (wm.pageViewsOffsetLag ?? '—') + ' / ' + (wm.adClicksOffsetLag ?? '—')
+            ));
+
+            row.appendChild(cell(
+                formatMillis(wm.pageViewsEventTimeLagMillis) + ' / ' + formatMillis(wm.adClicksEventTimeLagMillis)
+            ));
+
+            row.appendChild(cell(formatMillis(wm.crossTopicSkewMillis)));
+
             table.appendChild(row);
         });
 
+        /* -------- Partition Pauses -------- */
+        const pauseTable = document.getElementById('partitionPauseTable');
+        pauseTable.innerHTML = '';
+
+        (data.partitionPauses || []).forEach(pause => {
+            const row = document.createElement('tr');
+
+            const cell = value => {
+                const td = document.createElement('td');
+                td.textContent = value ?? '—';
+                return td;
+            };
+
+            row.appendChild(cell(pause.partition));
+            row.appendChild(cell(pause.pauseCount));
+            row.appendChild(cell((pause.pausedMillis / 1000).toFixed(1) + ' s'));
+            row.appendChild(cell(pause.paused ? 'yes' : 'no'));
+
+            pauseTable.appendChild(row);
+        });
+
+        /* -------- Late Events -------- */
+        const lateTable = document.getElementById('lateEventTable');
+        lateTable.innerHTML = '';
+
+        (data.lateEventsPerPartition || []).forEach(late => {
+            const row = document.createElement('tr');
+
+            const cell = value => {
+                const td = document.createElement('td');
+                td.textContent = value ?? '—';
+                return td;
+            };
+
+            row.appendChild(cell(late.partition));
+            row.appendChild(cell(late.lateClicks));
+            row.appendChild(cell(late.latePageViews));
+
+            lateTable.appendChild(row);
+        });
+
+        /* -------- Latency -------- */
+        const latencyTable = document.getElementById('latencyTable');
+        latencyTable.innerHTML = '';
+
+        (data.latencies || []).forEach(latency => {
+            const row = document.createElement('tr');
+
+            const cell = value => {
+                const td = document.createElement('td');
+                td.textContent = value ?? '—';
+                return td;
+            };
+
+            row.appendChild(cell(latency.stage));
+            row.appendChild(cell(latency.partition < 0 ? 'all' : latency.partition));
+            row.appendChild(cell(latency.count));
+            row.appendChild(cell(formatMicros(latency.p50Micros)));
+            row.appendChild(cell(formatMicros(latency.p99Micros)));
+            row.appendChild(cell(formatMicros(latency.p999Micros)));
+            row.appendChild(cell(formatMicros(latency.maxMicros)));
+
+            latencyTable.appendChild(row);
+        });
+
     } catch (err) {
-        console.error('Failed to load metrics', err);
+        console.error('Failed to render metrics', err);
     }
 }
 
-/* Initial load */
-loadMetrics();
-
-/* Refresh every second */
-setInterval(loadMetrics, 1000);
+/*
+ * Snapshots are pushed by the server, one per interval shared by all open dashboards.
+ * EventSource reconnects by itself after an interruption.
+ */
+const metricsStream = new EventSource('/metrics/stream');
+metricsStream.addEventListener('metrics', event => render(JSON.parse(event.data)));
+metricsStream.onerror = () => console.warn('Metrics stream interrupted, reconnecting');
@@ -0,0 +1,106 @@
+package com.ebay.challenge.streamprocessor.backfill;
+
+import com.ebay.challenge.streamprocessor.consumer.StreamConsumer;
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.source.EventSourceRunner;
+import com.ebay.challenge.streamprocessor.source.InMemoryEventSource;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BackfillTest {
+
+    private static final int USERS = 20;
+    private static final int EVENTS = 2000;
+    private static final Instant BASE = Instant.parse("2024-01-01T12:00:00Z");
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testBackfillMatchesStreamingOutput() throws Exception {
+        Random random = new Random(42);
+        List<String> clicks = new ArrayList<>();
+        List<String> pageViews = new ArrayList<>();
+        List<Map.Entry<StreamType, String>> events = new ArrayList<>();
+        for (int i = 0; i < EVENTS; i++) {
+            int user = random.nextInt(USERS);
+            // 10s steps over 3 hours: same-time clicks of a user are common
+            Instant time = BASE.plusSeconds(10L * random.nextInt(1080));
+            String click = """
+                    {"user_id": "user_%d", "event_time": "%s", "campaign_id": "c_%d", "click_id": "click_%d"}"""
+                    .formatted(user, format(time), i % 5, i);
+            clicks.add(click);
+            events.add(Map.entry(StreamType.AD_CLICKS, click));
+
+            user = random.nextInt(USERS);
+            time = BASE.plusSeconds(10L * random.nextInt(1080));
+            String pageView = """
+                    {"user_id": "user_%d", "event_time": "%s", "url": "/%d", "event_id": "pv_%d"}"""
+                    .formatted(user, format(time), i, i);
+            pageViews.add(pageView);
+            events.add(Map.entry(StreamType.PAGE_VIEWS, pageView));
+        }
+
+        // Streaming: arbitrary arrival order, lateness above the span so nothing is dropped
+        Collections.shuffle(events, random);
+        InMemoryEventSource source = new InMemoryEventSource(3);
+        for (Map.Entry<StreamType, String> event : events) {
+            String key = objectMapper.readTree(event.getValue()).get("user_id").asText();
+            source.add(event.getKey(), key, event.getValue());
+        }
+        InMemoryOutputSink streamed = new InMemoryOutputSink();
+        StreamConsumer consumer = new StreamConsumer(
+                TestFactory.createJoinEngine(streamed, 240), objectMapper,
+                Optional.empty(), Optional.empty(), Optional.empty(), new NoOpMetrics()
+        );
+        new EventSourceRunner(consumer, 2, 64).run(source);
+
+        InMemoryOutputSink backfilled = new InMemoryOutputSink();
+        BackfillStats stats = new Backfill(objectMapper, 7, 4, 100).run(
+                Files.write(tempDir.resolve("ad_clicks.jsonl"), clicks),
+                Files.write(tempDir.resolve("page_views.jsonl"), pageViews),
+                backfilled
+        );
+
+        Map<String, AttributedPageView> streamedRows = finalRows(streamed);
+        Map<String, AttributedPageView> backfilledRows = finalRows(backfilled);
+        assertThat(stats.pageViews()).isEqualTo(EVENTS);
+        assertThat(backfilled.records()).hasSize(EVENTS);
+        assertThat(stats.attributed()).isPositive().isLessThan(EVENTS);
+        assertThat(backfilledRows).isEqualTo(streamedRows);
+    }
+
+    /**
+     * Row per page_view_id as left by INSERT OR REPLACE
+     */
+    private static Map<String, AttributedPageView> finalRows(InMemoryOutputSink sink) {
+        Map<String, AttributedPageView> rows = new LinkedHashMap<>();
+        sink.records().forEach(view -> rows.put(view.getPageViewId(), view));
+        return rows;
+    }
+
+    private static String format(Instant time) {
+        return time.toString().replace("Z", "");
+    }
+}
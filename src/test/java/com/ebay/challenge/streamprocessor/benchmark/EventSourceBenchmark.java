@@ -0,0 +1,87 @@
+package com.ebay.challenge.streamprocessor.benchmark;
+
+import com.ebay.challenge.streamprocessor.consumer.PartitionFlowControl;
+import com.ebay.challenge.streamprocessor.consumer.StreamConsumer;
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.ebay.challenge.streamprocessor.pipeline.EventPipeline;
+import com.ebay.challenge.streamprocessor.source.EventSourceRunner;
+import com.ebay.challenge.streamprocessor.source.InMemoryEventSource;
+import com.ebay.challenge.streamprocessor.source.SourceRunStats;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Engine and SQLite sink at full speed without a broker: an in-memory source through EventSourceRunner,
+ * the same StreamConsumer path as the listeners, inline versus pipeline.
+ *
+ * Not part of the default build, run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class EventSourceBenchmark {
+
+    private static final int PARTITIONS = 3;
+    private static final int USERS = 1000;
+    private static final int EVENTS_PER_USER = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void benchmarkInMemorySource() throws Exception {
+        InMemoryEventSource source = new InMemoryEventSource(PARTITIONS);
+        for (int user = 0; user < USERS; user++) {
+            String userId = "user_" + user;
+            for (int i = 0; i < EVENTS_PER_USER; i++) {
+                source.add(StreamType.AD_CLICKS, userId, """
+                        {"user_id": "%s", "event_time": "2024-01-01T12:00:%02d", "campaign_id": "c", "click_id": "c_%d_%d"}
+                        """.formatted(userId, i, user, i));
+                source.add(StreamType.PAGE_VIEWS, userId, """
+                        {"user_id": "%s", "event_time": "2024-01-01T12:01:%02d", "url": "/", "event_id": "pv_%d_%d"}
+                        """.formatted(userId, i, user, i));
+            }
+        }
+        run("inline", source, false);
+        run("pipeline", source, true);
+    }
+
+    private void run(String name, InMemoryEventSource source, boolean pipelined) throws Exception {
+        OutputSink sink = new OutputSink();
+        ReflectionTestUtils.setField(sink, "databasePath", tempDir.resolve(name + ".db").toString());
+        sink.initialize();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 60);
+        EventPipeline pipeline = new EventPipeline(
+                engine, sink, objectMapper,
+                new PartitionFlowControl(new KafkaListenerEndpointRegistry(), new NoOpMetrics()),
+                new NoOpMetrics(), 8192, 4, PARTITIONS, 500, false
+        );
+        if (pipelined) {
+            pipeline.start();
+        }
+        StreamConsumer consumer = new StreamConsumer(
+                engine, objectMapper, Optional.empty(), pipelined ? Optional.of(pipeline) : Optional.empty(),
+                Optional.empty(), new NoOpMetrics()
+        );
+        try {
+            SourceRunStats stats = new EventSourceRunner(consumer, PARTITIONS, 10_000).run(source);
+            System.out.printf("%-10s %8d events in %6d ms (%,d events/s)%n",
+                    name, stats.records(), stats.durationMillis(), Math.round(stats.recordsPerSecond()));
+        } finally {
+            pipeline.close();
+            sink.close();
+        }
+    }
+}
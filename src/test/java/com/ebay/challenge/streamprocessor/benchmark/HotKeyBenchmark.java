@@ -0,0 +1,118 @@
+package com.ebay.challenge.streamprocessor.benchmark;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.state.HotKeyTracker;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cost and benefit of HotKeyTracker:
+ * - overhead per event, one thread per partition, skewed user ids (one bot user is 10% of the events)
+ * - a bot user with 100k clicks, page views of the bot with and without `max-clicks-per-user`
+ *
+ * Not part of the default build, run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class HotKeyBenchmark {
+
+    private static final int PARTITIONS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int EVENTS_PER_PARTITION = 2_000_000;
+    private static final int SKETCH_WIDTH = 1024;
+    private static final int TOP_K = 32;
+
+    @Test
+    void benchmarkOverheadPerEvent() throws Exception {
+        String[] userIds = new String[100_000];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = i % 10 == 0 ? "bot" : "user_" + i;
+        }
+
+        // Warm-up
+        record(new HotKeyTracker(true, TOP_K, SKETCH_WIDTH, 0), userIds);
+
+        long disabled = record(new HotKeyTracker(false, TOP_K, SKETCH_WIDTH, 0), userIds);
+        HotKeyTracker tracker = new HotKeyTracker(true, TOP_K, SKETCH_WIDTH, 0);
+        long enabled = record(tracker, userIds);
+
+        long events = (long) PARTITIONS * EVENTS_PER_PARTITION;
+        System.out.printf("%d partitions, %,d events: disabled %.1f ns/event, enabled %.1f ns/event (CPU time)%n",
+                PARTITIONS, events, (double) disabled / events, (double) enabled / events);
+        // Two windows of counters and top-K per stream partition
+        System.out.printf("memory per stream partition: ~%d KB%n",
+                2 * (4 * 4 * SKETCH_WIDTH + TOP_K * 64) / 1024);
+
+        assertThat(tracker.snapshot().partitions()).allSatisfy(
+                partition -> assertThat(partition.topKeys().getFirst().userId()).isEqualTo("bot"));
+    }
+
+    @Test
+    void benchmarkBotUserWithAndWithoutClickCap() {
+        lookups("no cap", new HotKeyTracker(false, TOP_K, SKETCH_WIDTH, 0));
+        long uncapped = lookups("no cap", new HotKeyTracker(false, TOP_K, SKETCH_WIDTH, 0));
+        long capped = lookups("cap 1000", new HotKeyTracker(true, TOP_K, SKETCH_WIDTH, 1000));
+
+        assertThat(capped).isLessThan(uncapped);
+    }
+
+    /**
+     * @return CPU nanos of all partition threads
+     */
+    private static long record(HotKeyTracker tracker, String[] userIds) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<Future<Long>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(PARTITIONS)) {
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                int p = partition;
+                futures.add(executor.submit(() -> {
+                    long begin = threads.getCurrentThreadCpuTime();
+                    for (int i = 0; i < EVENTS_PER_PARTITION; i++) {
+                        tracker.recordClick(p, userIds[i % userIds.length]);
+                    }
+                    return threads.getCurrentThreadCpuTime() - begin;
+                }));
+            }
+            long cpuNanos = 0;
+            for (Future<Long> future : futures) {
+                cpuNanos += future.get();
+            }
+            return cpuNanos;
+        }
+    }
+
+    /**
+     * 100k clicks of the bot over 1000s, then page views of the bot spread over the same time:
+     * each lookup skips the bot's clicks after the page view (most recent first).
+     */
+    private static long lookups(String name, HotKeyTracker hotKeys) {
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 60, hotKeys);
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+        for (int i = 0; i < 100_000; i++) {
+            engine.processClick(click("bot_click_" + i, "bot", base.plusMillis(i * 10L), 0));
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < 5_000; i++) {
+            engine.processPageView(pageView("pv_" + i, "bot", base.plusMillis(i * 200L), 0));
+        }
+        long millis = (System.nanoTime() - begin) / 1_000_000;
+        System.out.printf("%-8s 5k bot page views against 100k bot clicks in %d ms, clicks capped: %d%n",
+                name, millis, hotKeys.snapshot().clicksCapped());
+        return millis;
+    }
+}
@@ -0,0 +1,121 @@
+package com.ebay.challenge.streamprocessor.benchmark;
+
+import com.ebay.challenge.streamprocessor.metrics.Metrics;
+import com.ebay.challenge.streamprocessor.metrics.MetricsRegistry;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Metrics callbacks of the join hot path from many threads at once: MetricsRegistry (striped counters,
+ * no clock reads) versus shared AtomicLongs with an Instant.now() "last updated" write per event.
+ *
+ * Not part of the default build, run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class MetricsContentionBenchmark {
+
+    private static final int THREADS = Math.max(16, Runtime.getRuntime().availableProcessors());
+    private static final int EVENTS_PER_THREAD = 2_000_000;
+
+    @Test
+    void benchmarkStripedCountersVersusSharedAtomics() throws Exception {
+        // Warm-up run of both, so JIT does not favour the second configuration
+        run("warm-up shared", new SharedAtomicCounters());
+        run("warm-up striped", registry());
+
+        run("shared atomics", new SharedAtomicCounters());
+        MetricsRegistry registry = registry();
+        run("striped", registry);
+
+        assertThat(registry.snapshot().clicksReceived()).isEqualTo((long) THREADS * EVENTS_PER_THREAD);
+    }
+
+    private static MetricsRegistry registry() {
+        return new MetricsRegistry(new WatermarkTracker(2), new ClickStateStore(), new EmittedPageViewStore());
+    }
+
+    private void run(String name, Metrics metrics) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(THREADS + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // Callbacks of one click and one page view through JoinEngine
+                    for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                        metrics.onClickReceived();
+                        metrics.onUserFilterLookup(true);
+                        metrics.onPageViewReceived();
+                        metrics.onUserFilterLookup(false);
+                        metrics.onPageViewEmitted();
+                    }
+                    return null;
+                }));
+            }
+            start.await();
+            long begin = System.nanoTime();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long millis = (System.nanoTime() - begin) / 1_000_000;
+            long calls = 5L * THREADS * EVENTS_PER_THREAD;
+            System.out.printf("%-16s %d threads, %,d callbacks in %6d ms (%,d callbacks/s)%n",
+                    name, THREADS, calls, millis, calls * 1000 / Math.max(1, millis));
+        }
+    }
+
+    /**
+     * The previous MetricsRegistry hot path: one shared AtomicLong per counter and a clock read
+     * plus shared write on every event.
+     */
+    private static final class SharedAtomicCounters extends MetricsRegistry {
+        private final AtomicLong clicksReceived = new AtomicLong();
+        private final AtomicLong pageViewsReceived = new AtomicLong();
+        private final AtomicLong pageViewsEmitted = new AtomicLong();
+        private final AtomicLong userFilterHits = new AtomicLong();
+        private final AtomicLong userFilterMisses = new AtomicLong();
+        private final AtomicReference<Instant> lastUpdatedAt = new AtomicReference<>(Instant.now());
+
+        SharedAtomicCounters() {
+            super(new WatermarkTracker(2), new ClickStateStore(), new EmittedPageViewStore());
+        }
+
+        @Override
+        public void onClickReceived() {
+            clicksReceived.incrementAndGet();
+            lastUpdatedAt.set(Instant.now());
+        }
+
+        @Override
+        public void onPageViewReceived() {
+            pageViewsReceived.incrementAndGet();
+            lastUpdatedAt.set(Instant.now());
+        }
+
+        @Override
+        public void onPageViewEmitted() {
+            pageViewsEmitted.incrementAndGet();
+            lastUpdatedAt.set(Instant.now());
+        }
+
+        @Override
+        public void onUserFilterLookup(boolean mightContain) {
+            (mightContain ? userFilterHits : userFilterMisses).incrementAndGet();
+        }
+    }
+}
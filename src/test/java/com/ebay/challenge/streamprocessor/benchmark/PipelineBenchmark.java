@@ -0,0 +1,116 @@
+package com.ebay.challenge.streamprocessor.benchmark;
+
+import com.ebay.challenge.streamprocessor.consumer.PartitionFlowControl;
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.ebay.challenge.streamprocessor.pipeline.EventPipeline;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Inline processing (decode, join and a per-row SQLite commit on the consumer thread) versus
+ * the staged pipeline with batched sink writes. One producer thread per partition, like the containers.
+ *
+ * Not part of the default build, run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class PipelineBenchmark {
+
+    private static final int PARTITIONS = 3;
+    private static final int USERS = 1000;
+    private static final int EVENTS_PER_USER = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void benchmarkInlineVersusPipeline() throws Exception {
+        run("inline", false);
+        run("pipeline", true);
+    }
+
+    private void run(String name, boolean pipelined) throws Exception {
+        OutputSink sink = new OutputSink();
+        ReflectionTestUtils.setField(sink, "databasePath", tempDir.resolve(name + ".db").toString());
+        sink.initialize();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 60);
+        EventPipeline pipeline = new EventPipeline(
+                engine, sink, objectMapper,
+                new PartitionFlowControl(new KafkaListenerEndpointRegistry(), new NoOpMetrics()),
+                new NoOpMetrics(), 8192, 4, PARTITIONS, 500, false
+        );
+        pipeline.start();
+
+        long start = System.nanoTime();
+        try (ExecutorService consumers = Executors.newFixedThreadPool(PARTITIONS)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < PARTITIONS; p++) {
+                int partition = p;
+                futures.add(consumers.submit(() -> consume(partition, engine, pipeline, pipelined)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            while (pipeline.getInFlight() > 0) {
+                LockSupport.parkNanos(100_000);
+            }
+        } finally {
+            pipeline.close();
+            sink.close();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long events = 2L * USERS * EVENTS_PER_USER;
+        System.out.printf("%-10s %8d events in %6d ms (%,d events/s)%n",
+                name, events, millis, events * 1000 / Math.max(1, millis));
+    }
+
+    private Void consume(int partition, JoinEngine engine, EventPipeline pipeline, boolean pipelined) throws Exception {
+        long offset = 0;
+        for (int user = partition; user < USERS; user += PARTITIONS) {
+            String userId = "user_" + user;
+            for (int i = 0; i < EVENTS_PER_USER; i++) {
+                String click = """
+                        {"user_id": "%s", "event_time": "2024-01-01T12:00:%02d", "campaign_id": "c", "click_id": "c_%d_%d"}
+                        """.formatted(userId, i, user, i);
+                String pageView = """
+                        {"user_id": "%s", "event_time": "2024-01-01T12:01:%02d", "url": "/", "event_id": "pv_%d_%d"}
+                        """.formatted(userId, i, user, i);
+                if (pipelined) {
+                    pipeline.submit(StreamType.AD_CLICKS,
+                            new ConsumerRecord<>("ad_clicks", partition, offset++, userId, click), () -> { });
+                    pipeline.submit(StreamType.PAGE_VIEWS,
+                            new ConsumerRecord<>("page_views", partition, offset++, userId, pageView), () -> { });
+                } else {
+                    AdClickEvent clickEvent = objectMapper.readValue(click, AdClickEvent.class);
+                    clickEvent.setPartition(partition);
+                    engine.processClick(clickEvent);
+                    PageViewEvent pageViewEvent = objectMapper.readValue(pageView, PageViewEvent.class);
+                    pageViewEvent.setPartition(partition);
+                    engine.processPageView(pageViewEvent);
+                }
+            }
+        }
+        return null;
+    }
+}
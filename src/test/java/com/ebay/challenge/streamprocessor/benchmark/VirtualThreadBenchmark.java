@@ -0,0 +1,82 @@
+package com.ebay.challenge.streamprocessor.benchmark;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+
+/**
+ * Join + SQLite sink throughput on platform threads (one per partition, like the listener
+ * containers) versus one virtual thread per user.
+ *
+ * Not part of the default build, run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class VirtualThreadBenchmark {
+
+    private static final int PARTITIONS = 3;
+    private static final int USERS = 1000;
+    private static final int EVENTS_PER_USER = 10;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void benchmarkPlatformVersusVirtualThreads() throws Exception {
+        // Warm-up run, so JIT and SQLite page cache do not favour the second configuration
+        run("warm-up", () -> Executors.newFixedThreadPool(PARTITIONS), PARTITIONS);
+
+        run("platform threads", () -> Executors.newFixedThreadPool(PARTITIONS), PARTITIONS);
+        run("virtual threads", Executors::newVirtualThreadPerTaskExecutor, USERS);
+    }
+
+    private void run(String name, Supplier<ExecutorService> executorFactory, int tasks) throws Exception {
+        OutputSink sink = new OutputSink();
+        ReflectionTestUtils.setField(sink, "databasePath", tempDir.resolve(name + ".db").toString());
+        sink.initialize();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 60);
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = executorFactory.get()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int task = 0; task < tasks; task++) {
+                int first = task;
+                futures.add(executor.submit(() -> {
+                    for (int user = first; user < USERS; user += tasks) {
+                        String userId = "user_" + user;
+                        int partition = user % PARTITIONS;
+                        for (int i = 0; i < EVENTS_PER_USER; i++) {
+                            engine.processClick(click("c_" + user + "_" + i, userId, base.plusSeconds(i), partition));
+                            engine.processPageView(pageView("pv_" + user + "_" + i, userId, base.plusSeconds(i + 1), partition));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            sink.close();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long events = 2L * USERS * EVENTS_PER_USER;
+        System.out.printf("%-16s %8d events in %6d ms (%,d events/s)%n",
+                name, events, millis, events * 1000 / Math.max(1, millis));
+    }
+}
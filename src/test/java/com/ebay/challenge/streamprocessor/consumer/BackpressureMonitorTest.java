@@ -0,0 +1,104 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.metrics.MetricsRegistry;
+import com.ebay.challenge.streamprocessor.metrics.PartitionPauseStats;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+
+import java.time.Instant;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class BackpressureMonitorTest {
+
+    private final Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+    private final ClickStateStore clickStore = new ClickStateStore();
+    private final EmittedPageViewStore pageViewStore = new EmittedPageViewStore();
+    private final WatermarkTracker watermarkTracker = new WatermarkTracker(2);
+    private final MetricsRegistry metrics = new MetricsRegistry(watermarkTracker, clickStore, pageViewStore);
+    private final PartitionFlowControl flowControl =
+            new PartitionFlowControl(new KafkaListenerEndpointRegistry(), metrics);
+
+    private final BackpressureMonitor monitor = new BackpressureMonitor(
+            clickStore, pageViewStore, watermarkTracker, flowControl,
+            3, 1,
+            100, 50
+    );
+
+    @Test
+    void testPausesOnlyTheStreamAheadInEventTime() {
+        // Partition 0: clicks ahead, partition 1: page views ahead
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 0, base.plusSeconds(3600));
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base);
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 1, base);
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 1, base.plusSeconds(3600));
+
+        addClicks(3);
+        monitor.check();
+
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isTrue();
+        assertThat(flowControl.isPaused(StreamType.PAGE_VIEWS, 0)).isFalse();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 1)).isFalse();
+        assertThat(flowControl.isPaused(StreamType.PAGE_VIEWS, 1)).isTrue();
+        assertThat(metrics.snapshot().partitionPauses())
+                .extracting(PartitionPauseStats::partition, PartitionPauseStats::paused)
+                .containsExactly(
+                        tuple("ad_clicks_0", true),
+                        tuple("page_views_1", true)
+                );
+    }
+
+    @Test
+    void testResumesOnlyBelowTheLowWatermark() {
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 0, base.plusSeconds(3600));
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base);
+
+        addClicks(3);
+        monitor.check();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isTrue();
+
+        // Between low and high: stays paused
+        clickStore.evictOldClicks(base.plusSeconds(1));
+        assertThat(clickStore.getTotalClickCount()).isEqualTo(2);
+        monitor.check();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isTrue();
+
+        clickStore.evictOldClicks(base.plusSeconds(2));
+        monitor.check();
+        assertThat(flowControl.isPaused()).isFalse();
+        assertThat(metrics.snapshot().partitionPauses())
+                .singleElement()
+                .satisfies(stats -> {
+                    assertThat(stats.pauseCount()).isEqualTo(1);
+                    assertThat(stats.paused()).isFalse();
+                });
+    }
+
+    @Test
+    void testSwitchesPauseWhenTheOtherStreamGetsAhead() {
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 0, base.plusSeconds(60));
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base);
+        addClicks(3);
+        monitor.check();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isTrue();
+
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base.plusSeconds(120));
+        monitor.check();
+
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isFalse();
+        assertThat(flowControl.isPaused(StreamType.PAGE_VIEWS, 0)).isTrue();
+    }
+
+    private void addClicks(int count) {
+        for (int i = 0; i < count; i++) {
+            clickStore.addClick(click("click_" + i, "user_" + i, base.plusSeconds(i), 0));
+        }
+    }
+}
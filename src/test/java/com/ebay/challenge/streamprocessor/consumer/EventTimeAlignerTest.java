@@ -0,0 +1,108 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventTimeAlignerTest {
+
+    private final Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+    private final WatermarkTracker watermarkTracker = new WatermarkTracker(2);
+    private final PartitionFlowControl flowControl =
+            new PartitionFlowControl(new KafkaListenerEndpointRegistry(), new NoOpMetrics());
+    private final MutableClock clock = new MutableClock(base);
+
+    private final EventTimeAligner aligner = new EventTimeAligner(
+            watermarkTracker, flowControl, Duration.ofMinutes(10), Duration.ofSeconds(30), clock);
+
+    @Test
+    void testPausesTheStreamAheadUntilTheOtherCatchesUp() {
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 0, base);
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base.plus(Duration.ofHours(2)));
+        // Within the skew on partition 1
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 1, base);
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 1, base.plus(Duration.ofMinutes(9)));
+
+        aligner.check();
+
+        assertThat(flowControl.isPaused(StreamType.PAGE_VIEWS, 0)).isTrue();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isFalse();
+        assertThat(flowControl.isPaused(StreamType.PAGE_VIEWS, 1)).isFalse();
+
+        // Closer, but still more than half the skew behind: stays paused
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 0, base.plus(Duration.ofMinutes(110)));
+        aligner.check();
+        assertThat(flowControl.isPaused(StreamType.PAGE_VIEWS, 0)).isTrue();
+
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 0, base.plus(Duration.ofMinutes(115)));
+        aligner.check();
+        assertThat(flowControl.isPaused()).isFalse();
+    }
+
+    @Test
+    void testReleasesThePauseWhenTheLaggingStreamIsIdle() {
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 0, base.plus(Duration.ofHours(1)));
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base);
+        aligner.check();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isTrue();
+
+        // Progress resets the idle timer
+        clock.advance(Duration.ofSeconds(20));
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base.plusSeconds(1));
+        aligner.check();
+        clock.advance(Duration.ofSeconds(20));
+        aligner.check();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isTrue();
+
+        clock.advance(Duration.ofSeconds(10));
+        aligner.check();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isFalse();
+
+        // Not paused again while page views stay idle
+        aligner.check();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isFalse();
+
+        // Page views move again, still far behind: paused again
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base.plusSeconds(2));
+        aligner.check();
+        assertThat(flowControl.isPaused(StreamType.AD_CLICKS, 0)).isTrue();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyedLaneExecutorTest {
+
+    @Test
+    void testPerKeyOrderIsPreserved() {
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+
+        try (KeyedLaneExecutor lanes = new KeyedLaneExecutor(4, 100)) {
+            for (int i = 0; i < 1000; i++) {
+                String user = "user_" + (i % 20);
+                int sequence = i;
+                lanes.execute(user, () -> seen
+                        .computeIfAbsent(user, u -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(sequence));
+            }
+        }
+
+        assertThat(seen).hasSize(20);
+        seen.values().forEach(sequences -> assertThat(sequences).isSorted().hasSize(50));
+    }
+
+    @Test
+    void testDifferentKeysRunInParallel() throws Exception {
+        try (KeyedLaneExecutor lanes = new KeyedLaneExecutor(2, 10)) {
+            String first = "user_a";
+            String second = findKeyOnOtherLane(lanes, first);
+
+            // Both tasks must be running at the same time to pass the latch
+            CountDownLatch bothRunning = new CountDownLatch(2);
+            AtomicInteger completed = new AtomicInteger();
+            Runnable task = () -> {
+                bothRunning.countDown();
+                try {
+                    if (bothRunning.await(5, TimeUnit.SECONDS)) {
+                        completed.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            lanes.execute(first, task);
+            lanes.execute(second, task);
+            lanes.close();
+
+            assertThat(completed.get()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void testStreamConsumerAcknowledgesEveryRecordFromLanes() {
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 5);
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        AtomicInteger acks = new AtomicInteger();
+        Acknowledgment acknowledgment = acks::incrementAndGet;
+
+        try (KeyedLaneExecutor lanes = new KeyedLaneExecutor(4, 100)) {
+            StreamConsumer consumer = new StreamConsumer(engine, objectMapper, Optional.of(lanes), Optional.empty(),
+                    Optional.empty(), new NoOpMetrics());
+
+            for (int i = 0; i < 10; i++) {
+                String user = "user_" + i;
+                consumer.consumeAdClick(new ConsumerRecord<>("ad_clicks", 0, i, user, """
+                        {"user_id": "%s", "event_time": "2024-01-01T12:00:00", "campaign_id": "c", "click_id": "click_%d"}
+                        """.formatted(user, i)), acknowledgment);
+                consumer.consumePageView(new ConsumerRecord<>("page_views", 0, i, user, """
+                        {"user_id": "%s", "event_time": "2024-01-01T12:01:00", "url": "/", "event_id": "pv_%d"}
+                        """.formatted(user, i)), acknowledgment);
+            }
+        }
+
+        assertThat(acks.get()).isEqualTo(20);
+        // Per-user order: every page view was processed after the click of its user
+        assertThat(sink.records())
+                .hasSize(10)
+                .allSatisfy(pv -> assertThat(pv.getAttributedClickId())
+                        .isEqualTo(pv.getPageViewId().replace("pv_", "click_")));
+        assertThat(sink.records()).extracting(AttributedPageView::getUserId).doesNotHaveDuplicates();
+    }
+
+    private static String findKeyOnOtherLane(KeyedLaneExecutor lanes, String key) {
+        for (int i = 0; ; i++) {
+            String candidate = "user_" + i;
+            if (lanes.laneOf(candidate) != lanes.laneOf(key)) {
+                return candidate;
+            }
+        }
+    }
+}
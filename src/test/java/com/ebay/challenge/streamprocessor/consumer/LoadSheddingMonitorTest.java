@@ -0,0 +1,98 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.engine.LoadShedding;
+import com.ebay.challenge.streamprocessor.metrics.LoadSheddingStats;
+import com.ebay.challenge.streamprocessor.metrics.MetricsRegistry;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.output.LateEventSink;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.EventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.UserKeyFilter;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadSheddingMonitorTest {
+
+    private final Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+    private final ClickStateStore clickStore = new ClickStateStore();
+    private final EmittedPageViewStore pageViewStore = new EmittedPageViewStore();
+    private final WatermarkTracker watermarkTracker = new WatermarkTracker(2);
+    private final MetricsRegistry metrics = new MetricsRegistry(watermarkTracker, clickStore, pageViewStore);
+    private final LoadShedding loadShedding = new LoadShedding(metrics);
+    private final InMemoryOutputSink sink = new InMemoryOutputSink();
+    private final JoinEngine engine = new JoinEngine(
+            clickStore, pageViewStore, watermarkTracker, new UserKeyFilter(true, 0.01, 1000),
+            TestFactory.disabledHotKeys(), EventDeduplicator.NONE, loadShedding, sink, LateEventSink.NONE, metrics
+    );
+
+    private final AtomicLong lag = new AtomicLong();
+    private final AtomicLong queue = new AtomicLong();
+    private final LoadSheddingMonitor monitor = new LoadSheddingMonitor(
+            loadShedding, lag::get, queue::get,
+            1000, 100,
+            50, 10
+    );
+
+    @Test
+    void testShedsAboveEitherHighMarkAndRecoversBelowBothLowMarks() {
+        lag.set(1000);
+        monitor.check();
+        assertThat(loadShedding.isActive()).isTrue();
+
+        // Lag recovered, but the queue is between its marks
+        lag.set(0);
+        queue.set(20);
+        monitor.check();
+        assertThat(loadShedding.isActive()).isTrue();
+
+        queue.set(10);
+        monitor.check();
+        assertThat(loadShedding.isActive()).isFalse();
+
+        queue.set(50);
+        monitor.check();
+        assertThat(metrics.snapshot().loadShedding())
+                .extracting(LoadSheddingStats::active, LoadSheddingStats::activations)
+                .containsExactly(true, 2L);
+    }
+
+    @Test
+    void testSheddingKeepsFirstEmitsAndSkipsCorrections() {
+        // Tracked before the overload
+        engine.processPageView(pageView("pv1", "u1", base, 0));
+        loadShedding.activate("test");
+
+        engine.processPageView(pageView("pv2", "u1", base.plusSeconds(10), 0));
+        engine.processClick(click("click1", "u1", base.minusSeconds(60), 0));
+        engine.processPageView(pageView("pv3", "u1", base.plusSeconds(60), 0));
+
+        // Emitted immediately, pv3 attributed to the stored click, no update of pv1
+        assertThat(sink.records())
+                .extracting(view -> view.getPageViewId() + ":" + view.getAttributedClickId())
+                .containsExactly("pv1:null", "pv2:null", "pv3:click1");
+        assertThat(pageViewStore.size()).isEqualTo(1);
+
+        LoadSheddingStats stats = metrics.snapshot().loadShedding();
+        assertThat(stats.pageViewsNotTracked()).isEqualTo(2);
+        assertThat(stats.clickUpdatesSkipped()).isEqualTo(1);
+
+        // Full mode again: the click updates pv1
+        loadShedding.deactivate();
+        engine.processClick(click("click2", "u1", base.minusSeconds(30), 0));
+        assertThat(sink.records()).hasSize(4);
+        assertThat(sink.records().getLast())
+                .extracting(view -> view.getPageViewId() + ":" + view.getAttributedClickId())
+                .isEqualTo("pv1:click2");
+    }
+}
@@ -0,0 +1,232 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.engine.LoadShedding;
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.output.LateEventSink;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.EventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.HotKeyTracker;
+import com.ebay.challenge.streamprocessor.state.PartitionStateInitializer;
+import com.ebay.challenge.streamprocessor.state.PartitionStateReleaser;
+import com.ebay.challenge.streamprocessor.state.StateChangelog;
+import com.ebay.challenge.streamprocessor.state.UserKeyFilter;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+
+@EmbeddedKafka(partitions = PartitionRebalanceTest.PARTITIONS,
+        topics = {PartitionRebalanceTest.CLICKS_TOPIC, PartitionRebalanceTest.PAGE_VIEWS_TOPIC})
+public class PartitionRebalanceTest {
+
+    static final int PARTITIONS = 4;
+    static final String CLICKS_TOPIC = "rebalance_ad_clicks";
+    static final String PAGE_VIEWS_TOPIC = "rebalance_page_views";
+    private static final String GROUP = "rebalance-group";
+    private static final int EVENTS_PER_PARTITION = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void testStateOfRevokedPartitionsIsReleased(EmbeddedKafkaBroker broker) {
+        produce(broker);
+
+        try (Instance a = new Instance("a", broker)) {
+            await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+                assertThat(a.clickStore.getTotalClickCount()).isEqualTo(PARTITIONS * EVENTS_PER_PARTITION);
+                assertThat(a.pageViewStore.size()).isEqualTo(PARTITIONS * EVENTS_PER_PARTITION);
+            });
+
+            try (Instance b = new Instance("b", broker)) {
+                await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+                    Set<Integer> ownedByA = a.assignedPartitions();
+                    Set<Integer> ownedByB = b.assignedPartitions();
+                    assertThat(ownedByB).isNotEmpty();
+                    assertThat(ownedByA).isNotEmpty().doesNotContainAnyElementsOf(ownedByB);
+
+                    for (int partition : ownedByB) {
+                        assertThat(a.clickStore.getUserIds(partition)).isEmpty();
+                        assertThat(a.pageViewStore.getUserIds(partition)).isEmpty();
+                    }
+                    assertThat(a.watermarkTracker.getActivePartitions()).isSubsetOf(ownedByA);
+                    assertThat(a.clickStore.getTotalClickCount())
+                            .isEqualTo((long) ownedByA.size() * EVENTS_PER_PARTITION);
+                    assertThat(a.pageViewStore.size()).isEqualTo(ownedByA.size() * EVENTS_PER_PARTITION);
+                });
+            }
+        }
+    }
+
+    @Test
+    void testStateIsKeptWhileThePartitionIsOwnedByEitherTopic() {
+        Instance.Stores stores = new Instance.Stores();
+        PartitionRebalanceListener listener = stores.rebalanceListener();
+        Consumer<?, ?> clicksConsumer = mock(Consumer.class);
+        Consumer<?, ?> pageViewsConsumer = mock(Consumer.class);
+        TopicPartition clicks0 = new TopicPartition(CLICKS_TOPIC, 0);
+        TopicPartition pageViews0 = new TopicPartition(PAGE_VIEWS_TOPIC, 0);
+
+        listener.onPartitionsAssigned(clicksConsumer, List.of(clicks0));
+        listener.onPartitionsAssigned(pageViewsConsumer, List.of(pageViews0));
+        stores.joinEngine.processClick(click("click_1", "user_1", Instant.parse("2024-01-01T12:00:00Z"), 0));
+
+        // Eager rebalance: revoked and assigned again
+        listener.onPartitionsRevokedAfterCommit(clicksConsumer, List.of(clicks0));
+        listener.onPartitionsAssigned(clicksConsumer, List.of(clicks0));
+        assertThat(stores.clickStore.getTotalClickCount()).isEqualTo(1);
+
+        // ad_clicks_0 moved away, page_views_0 still needs the clicks for its joins
+        listener.onPartitionsRevokedAfterCommit(clicksConsumer, List.of(clicks0));
+        listener.onPartitionsAssigned(clicksConsumer, List.of());
+        assertThat(stores.clickStore.getTotalClickCount()).isEqualTo(1);
+
+        listener.onPartitionsLost(pageViewsConsumer, List.of(pageViews0));
+        listener.onPartitionsAssigned(pageViewsConsumer, List.of());
+        assertThat(stores.clickStore.getTotalClickCount()).isZero();
+        assertThat(stores.watermarkTracker.getActivePartitions()).isEmpty();
+    }
+
+    private void produce(EmbeddedKafkaBroker broker) {
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+        try (Producer<String, String> producer = new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new StringSerializer()
+        ).createProducer()) {
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                for (int i = 0; i < EVENTS_PER_PARTITION; i++) {
+                    String user = "user_" + partition + "_" + i;
+                    Instant eventTime = base.plusSeconds(i);
+                    producer.send(new ProducerRecord<>(CLICKS_TOPIC, partition, user, """
+                            {"user_id": "%s", "event_time": "%s", "campaign_id": "campaign_1", "click_id": "click_%s"}
+                            """.formatted(user, format(eventTime.minusSeconds(30)), user)));
+                    producer.send(new ProducerRecord<>(PAGE_VIEWS_TOPIC, partition, user, """
+                            {"user_id": "%s", "event_time": "%s", "url": "/page", "event_id": "pv_%s"}
+                            """.formatted(user, format(eventTime), user)));
+                }
+            }
+            producer.flush();
+        }
+    }
+
+    private static String format(Instant eventTime) {
+        return eventTime.toString().replace("Z", "");
+    }
+
+    /**
+     * One application instance: its own state, join engine and a listener container per topic, in one group.
+     */
+    private final class Instance implements AutoCloseable {
+
+        private final ClickStateStore clickStore;
+        private final EmittedPageViewStore pageViewStore;
+        private final WatermarkTracker watermarkTracker;
+        private final List<ConcurrentMessageListenerContainer<String, String>> containers;
+
+        Instance(String name, EmbeddedKafkaBroker broker) {
+            Stores stores = new Stores();
+            clickStore = stores.clickStore;
+            pageViewStore = stores.pageViewStore;
+            watermarkTracker = stores.watermarkTracker;
+            PartitionRebalanceListener rebalanceListener = stores.rebalanceListener();
+            StreamConsumer consumer = new StreamConsumer(
+                    stores.joinEngine, objectMapper, Optional.empty(), Optional.empty(), Optional.empty(),
+                    new NoOpMetrics());
+
+            DefaultKafkaConsumerFactory<String, String> consumerFactory = new DefaultKafkaConsumerFactory<>(
+                    KafkaTestUtils.consumerProps(GROUP, "false", broker),
+                    new StringDeserializer(), new StringDeserializer()
+            );
+            containers = List.of(
+                    container(consumerFactory, rebalanceListener, name + "-clicks", CLICKS_TOPIC,
+                            (AcknowledgingMessageListener<String, String>) consumer::consumeAdClick),
+                    container(consumerFactory, rebalanceListener, name + "-page-views", PAGE_VIEWS_TOPIC,
+                            (AcknowledgingMessageListener<String, String>) consumer::consumePageView)
+            );
+            containers.forEach(ConcurrentMessageListenerContainer::start);
+        }
+
+        Set<Integer> assignedPartitions() {
+            return containers.stream()
+                    .flatMap(container -> container.getAssignedPartitions().stream())
+                    .map(TopicPartition::partition)
+                    .collect(Collectors.toSet());
+        }
+
+        @Override
+        public void close() {
+            containers.forEach(ConcurrentMessageListenerContainer::stop);
+        }
+
+        private static ConcurrentMessageListenerContainer<String, String> container(
+                DefaultKafkaConsumerFactory<String, String> consumerFactory,
+                PartitionRebalanceListener rebalanceListener,
+                String clientId,
+                String topic,
+                AcknowledgingMessageListener<String, String> messageListener
+        ) {
+            ContainerProperties properties = new ContainerProperties(topic);
+            properties.setGroupId(GROUP);
+            properties.setClientId(clientId);
+            properties.setAckMode(ContainerProperties.AckMode.MANUAL);
+            properties.setConsumerRebalanceListener(rebalanceListener);
+            properties.setMessageListener(messageListener);
+            return new ConcurrentMessageListenerContainer<>(consumerFactory, properties);
+        }
+
+        private static final class Stores {
+            private final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+            private final ClickStateStore clickStore = new ClickStateStore();
+            private final EmittedPageViewStore pageViewStore = new EmittedPageViewStore();
+            private final WatermarkTracker watermarkTracker = new WatermarkTracker(2);
+            private final UserKeyFilter userKeyFilter = new UserKeyFilter(true, 0.01, 1000);
+            private final HotKeyTracker hotKeyTracker = TestFactory.disabledHotKeys();
+            private final JoinEngine joinEngine = new JoinEngine(
+                    clickStore, pageViewStore, watermarkTracker, userKeyFilter, hotKeyTracker, EventDeduplicator.NONE,
+                    new LoadShedding(new NoOpMetrics()), new InMemoryOutputSink(), LateEventSink.NONE, new NoOpMetrics()
+            );
+
+            PartitionRebalanceListener rebalanceListener() {
+                PartitionStateReleaser releaser = new PartitionStateReleaser(
+                        clickStore, pageViewStore, watermarkTracker, userKeyFilter, hotKeyTracker, EventDeduplicator.NONE,
+                        beanFactory.getBeanProvider(StateChangelog.class)
+                );
+                return new PartitionRebalanceListener(
+                        beanFactory.getBeanProvider(PartitionStateInitializer.class),
+                        releaser,
+                        beanFactory.getBeanProvider(ReorderBuffer.class)
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.state.ExactEventDeduplicator;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@EmbeddedKafka(partitions = 1, topics = ReorderBufferTest.TOPIC)
+public class ReorderBufferTest {
+
+    static final String TOPIC = "test-reorder-page-views";
+
+    private final Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+    private final InMemoryOutputSink sink = new InMemoryOutputSink();
+    private final JoinEngine engine = TestFactory.createJoinEngine(sink, 5);
+
+    /**
+     * Event ids whose record was acknowledged, in order
+     */
+    private final List<String> acked = new CopyOnWriteArrayList<>();
+
+    @Test
+    void testPageViewBeforeItsClickIsEmittedOnceWithFinalAttribution() {
+        ReorderBuffer buffer = new ReorderBuffer(engine, Duration.ofMinutes(1), 100);
+
+        // Page view consumed before the click that precedes it in event time
+        add(buffer, pageView("pv_1", "user_1", base.plusSeconds(10), 0), 0);
+        add(buffer, click("click_1", "user_1", base, 0), 0);
+        assertThat(sink.records()).isEmpty();
+        assertThat(acked).isEmpty();
+
+        // A later event moves the partition past the delay
+        add(buffer, click("click_2", "user_2", base.plus(Duration.ofMinutes(2)), 0), 1);
+
+        assertThat(sink.records())
+                .singleElement()
+                .extracting(AttributedPageView::getAttributedClickId)
+                .isEqualTo("click_1");
+        assertThat(acked).containsExactlyInAnyOrder("pv_1", "click_1");
+        assertThat(buffer.size()).isEqualTo(1);
+    }
+
+    @Test
+    void testReleasesOldestWhenFull() {
+        ReorderBuffer buffer = new ReorderBuffer(engine, Duration.ofHours(1), 2);
+
+        add(buffer, pageView("pv_2", "user_1", base.plusSeconds(2), 0), 0);
+        add(buffer, pageView("pv_1", "user_1", base.plusSeconds(1), 0), 1);
+        add(buffer, pageView("pv_3", "user_1", base.plusSeconds(3), 0), 2);
+
+        assertThat(sink.records()).extracting(AttributedPageView::getPageViewId).containsExactly("pv_1");
+        // pv_2 has the lower offset and is still buffered
+        assertThat(acked).isEmpty();
+
+        buffer.flushPartition(0);
+
+        // Only the highest offset, which commits the lower ones too
+        assertThat(acked).containsExactly("pv_3");
+    }
+
+    @Test
+    void testFlushReleasesEventsHeldLongerThanTheDelay() throws Exception {
+        ReorderBuffer buffer = new ReorderBuffer(engine, Duration.ofMillis(50), 100);
+        add(buffer, pageView("pv_1", "user_1", base, 0), 0);
+        add(buffer, pageView("pv_2", "user_1", base, 1), 0);
+
+        buffer.flushExpired();
+        assertThat(sink.records()).isEmpty();
+
+        Thread.sleep(100);
+        buffer.flushExpired();
+        assertThat(sink.records()).hasSize(2);
+        assertThat(acked).containsExactlyInAnyOrder("pv_1", "pv_2");
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void testFailingEventInBatchDoesNotDropTheOthersWithDeduplication() {
+        InMemoryOutputSink failingSink = new InMemoryOutputSink() {
+            @Override
+            public void write(AttributedPageView attributedPageView) {
+                if (attributedPageView.getPageViewId().equals("pv_2")) {
+                    throw new IllegalStateException("sink rejected pv_2");
+                }
+                super.write(attributedPageView);
+            }
+        };
+        JoinEngine dedupEngine = TestFactory.createJoinEngine(
+                failingSink, 5, new ExactEventDeduplicator(Duration.ofMinutes(1)));
+        ReorderBuffer buffer = new ReorderBuffer(dedupEngine, Duration.ofHours(1), 100);
+
+        add(buffer, pageView("pv_1", "user_1", base, 0), 0);
+        add(buffer, pageView("pv_2", "user_2", base.plusSeconds(1), 0), 1);
+        add(buffer, pageView("pv_3", "user_3", base.plusSeconds(2), 0), 2);
+        // Released as one batch, which fails in the middle, then one by one
+        buffer.flushPartition(0);
+
+        // pv_1 is written again by the retry, sink writes are upserts
+        assertThat(failingSink.records()).extracting(AttributedPageView::getPageViewId)
+                .containsOnly("pv_1", "pv_3");
+        assertThat(acked).containsExactly("pv_3");
+    }
+
+    @Test
+    void testTransientFailureIsRetriedBeforeAcknowledging() {
+        AtomicInteger failures = new AtomicInteger(2);
+        InMemoryOutputSink flakySink = new InMemoryOutputSink() {
+            @Override
+            public void write(AttributedPageView attributedPageView) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("database is locked");
+                }
+                super.write(attributedPageView);
+            }
+        };
+        ReorderBuffer buffer = new ReorderBuffer(
+                TestFactory.createJoinEngine(flakySink, 5, new ExactEventDeduplicator(Duration.ofMinutes(1))),
+                Duration.ofHours(1), 100);
+
+        add(buffer, pageView("pv_1", "user_1", base, 0), 0);
+        buffer.flushPartition(0);
+
+        assertThat(flakySink.records()).extracting(AttributedPageView::getPageViewId).containsExactly("pv_1");
+        assertThat(acked).containsExactly("pv_1");
+    }
+
+    @Test
+    void testContainerKeepsPollingWhileEventsAreBuffered(EmbeddedKafkaBroker broker) throws Exception {
+        ReorderBuffer buffer = new ReorderBuffer(engine, Duration.ofHours(1), 1000);
+        int records = 50;
+
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("test-reorder", "false", broker);
+        consumerProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 10);
+        // Same acknowledgment settings as the page view container with the reorder buffer
+        ContainerProperties containerProperties = new ContainerProperties(TOPIC);
+        containerProperties.setAckMode(ContainerProperties.AckMode.MANUAL);
+        containerProperties.setPollTimeout(100);
+        AtomicInteger received = new AtomicInteger();
+        containerProperties.setMessageListener((AcknowledgingMessageListener<String, String>) (record, ack) -> {
+            PageViewEvent pv = pageView(
+                    record.value(), "user_" + record.offset(), base.plusMillis(record.offset()), record.partition());
+            pv.setOffset(record.offset());
+            buffer.add(pv, ack);
+            received.incrementAndGet();
+        });
+        KafkaMessageListenerContainer<String, String> container = new KafkaMessageListenerContainer<>(
+                new DefaultKafkaConsumerFactory<>(consumerProps, new StringDeserializer(), new StringDeserializer()),
+                containerProperties);
+        container.start();
+        try {
+            ContainerTestUtils.waitForAssignment(container, 1);
+
+            KafkaTemplate<String, String> template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                    KafkaTestUtils.producerProps(broker), new StringSerializer(), new StringSerializer()));
+            for (int i = 0; i < records; i++) {
+                template.send(TOPIC, 0, "user_" + i, "pv_" + i);
+            }
+            template.flush();
+
+            // Several polls while all events stay in the buffer (1 h event-time delay, no wall-clock flush)
+            await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> assertThat(received.get()).isEqualTo(records));
+            assertThat(buffer.size()).isEqualTo(records);
+            assertThat(sink.records()).isEmpty();
+            assertThat(KafkaTestUtils.getCurrentOffset(broker.getBrokersAsString(), "test-reorder", TOPIC, 0))
+                    .isNull();
+
+            buffer.flushPartition(0);
+
+            await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> assertThat(
+                    KafkaTestUtils.getCurrentOffset(broker.getBrokersAsString(), "test-reorder", TOPIC, 0))
+                    .extracting(OffsetAndMetadata::offset)
+                    .isEqualTo((long) records));
+            assertThat(sink.records()).hasSize(records);
+        } finally {
+            container.stop();
+        }
+    }
+
+    private void add(ReorderBuffer buffer, PageViewEvent pageView, long offset) {
+        pageView.setOffset(offset);
+        buffer.add(pageView, () -> acked.add(pageView.getEventId()));
+    }
+
+    private void add(ReorderBuffer buffer, AdClickEvent click, long offset) {
+        click.setOffset(offset);
+        buffer.add(click, () -> acked.add(click.getClickId()));
+    }
+}
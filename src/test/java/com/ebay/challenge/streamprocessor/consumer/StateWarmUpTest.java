@@ -0,0 +1,217 @@
+package com.ebay.challenge.streamprocessor.consumer;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.engine.LoadShedding;
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.output.LateEventSink;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.EventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.HotKeyTracker;
+import com.ebay.challenge.streamprocessor.state.PartitionStateReleaser;
+import com.ebay.challenge.streamprocessor.state.StateChangelog;
+import com.ebay.challenge.streamprocessor.state.UserKeyFilter;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@EmbeddedKafka(partitions = 1, topics = {StateWarmUpTest.CLICKS_TOPIC, StateWarmUpTest.PAGE_VIEWS_TOPIC})
+public class StateWarmUpTest {
+
+    static final String CLICKS_TOPIC = "warmup_ad_clicks";
+    static final String PAGE_VIEWS_TOPIC = "warmup_page_views";
+    private static final String GROUP = "warmup-group";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private final ClickStateStore clickStore = new ClickStateStore();
+    private final EmittedPageViewStore pageViewStore = new EmittedPageViewStore();
+    private final WatermarkTracker watermarkTracker = new WatermarkTracker(5);
+    private final UserKeyFilter userKeyFilter = new UserKeyFilter(true, 0.01, 1000);
+    private final HotKeyTracker hotKeyTracker = TestFactory.disabledHotKeys();
+    private final PartitionStateReleaser stateReleaser = new PartitionStateReleaser(
+            clickStore, pageViewStore, watermarkTracker, userKeyFilter, hotKeyTracker, EventDeduplicator.NONE,
+            new DefaultListableBeanFactory().getBeanProvider(StateChangelog.class)
+    );
+
+    @Test
+    void testWarmUpRebuildsStateWithoutWritingToSink(EmbeddedKafkaBroker broker) {
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+        try (Producer<String, String> producer = new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new StringSerializer()
+        ).createProducer()) {
+            // Offset 0: far outside of the rewind window
+            sendClick(producer, CLICKS_TOPIC, "click_ancient", "user_1", base.minusSeconds(7200));
+            // Offset 1: inside the attribution window of the committed event time
+            sendClick(producer, CLICKS_TOPIC, "click_1", "user_1", base.minusSeconds(600));
+            // Offset 0: not finalized yet when the instance stopped
+            sendPageView(producer, PAGE_VIEWS_TOPIC, "pv_1", "user_2", base);
+            producer.flush();
+        }
+
+        // Everything above was processed and committed before the restart
+        commit(broker, Map.of(
+                new TopicPartition(CLICKS_TOPIC, 0), 2L,
+                new TopicPartition(PAGE_VIEWS_TOPIC, 0), 1L
+        ));
+
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        JoinEngine engine = joinEngine(sink);
+
+        try (StateWarmUp warmUp = new StateWarmUp(
+                engine,
+                stateReleaser,
+                warmUpConsumerFactory(broker),
+                objectMapper,
+                new NoOpMetrics(),
+                Duration.ofMinutes(5),
+                CLICKS_TOPIC,
+                PAGE_VIEWS_TOPIC,
+                2
+        )) {
+            warmUp.initialize(List.of(0));
+            assertThat(warmUp.getWarmedUpPartitions()).containsExactly(0);
+        }
+
+        // Sink writes are suppressed during warm-up
+        assertThat(sink.records()).isEmpty();
+
+        // Live page view joins with a click from before the restart
+        engine.processPageView(pageView("pv_2", "user_1", base.plusSeconds(60), 0));
+        // Live click improves a page view emitted before the restart
+        engine.processClick(click("click_2", "user_2", base.minusSeconds(60), 0));
+
+        assertThat(sink.records())
+                .extracting(AttributedPageView::getPageViewId, AttributedPageView::getAttributedClickId)
+                .containsExactly(
+                        tuple("pv_2", "click_1"),
+                        tuple("pv_1", "click_2")
+                );
+    }
+
+    @Test
+    void testFailedWarmUpIsRetriedFromCleanState(EmbeddedKafkaBroker broker) {
+        String clicksTopic = "warmup_failing_ad_clicks";
+        String pageViewsTopic = "warmup_failing_page_views";
+        broker.addTopics(clicksTopic, pageViewsTopic);
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+        try (Producer<String, String> producer = new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new StringSerializer()
+        ).createProducer()) {
+            sendClick(producer, clicksTopic, "click_1", "user_1", base.minusSeconds(600));
+            sendPageView(producer, pageViewsTopic, "pv_1", "user_2", base);
+            producer.flush();
+        }
+        commit(broker, Map.of(
+                new TopicPartition(clicksTopic, 0), 1L,
+                new TopicPartition(pageViewsTopic, 0), 1L
+        ));
+
+        // Reads: last committed click and page view, then the replay of click_1, then of pv_1 - which fails once
+        AtomicInteger reads = new AtomicInteger();
+        ObjectMapper failingOnce = new ObjectMapper() {
+            @Override
+            public <T> T readValue(String content, Class<T> valueType) throws JsonProcessingException {
+                if (reads.incrementAndGet() == 4) {
+                    throw new JsonParseException(null, "broken record");
+                }
+                return objectMapper.readValue(content, valueType);
+            }
+        };
+
+        try (StateWarmUp warmUp = new StateWarmUp(
+                joinEngine(new InMemoryOutputSink()),
+                stateReleaser,
+                warmUpConsumerFactory(broker),
+                failingOnce,
+                new NoOpMetrics(),
+                Duration.ofMinutes(5),
+                clicksTopic,
+                pageViewsTopic,
+                1
+        )) {
+            assertThatThrownBy(() -> warmUp.initialize(List.of(0))).isInstanceOf(CompletionException.class);
+            assertThat(warmUp.getWarmedUpPartitions()).isEmpty();
+            // click_1 was replayed before the failure
+            assertThat(clickStore.getTotalClickCount()).isZero();
+
+            warmUp.initialize(List.of(0));
+            assertThat(warmUp.getWarmedUpPartitions()).containsExactly(0);
+        }
+
+        assertThat(clickStore.getTotalClickCount()).isEqualTo(1);
+        assertThat(pageViewStore.size()).isEqualTo(1);
+    }
+
+    private JoinEngine joinEngine(InMemoryOutputSink sink) {
+        return new JoinEngine(
+                clickStore, pageViewStore, watermarkTracker, userKeyFilter, hotKeyTracker, EventDeduplicator.NONE,
+                new LoadShedding(new NoOpMetrics()), sink, LateEventSink.NONE, new NoOpMetrics()
+        );
+    }
+
+    private void sendClick(
+            Producer<String, String> producer, String topic, String clickId, String user, Instant eventTime) {
+        String value = """
+                {"user_id": "%s", "event_time": "%s", "campaign_id": "campaign_%s", "click_id": "%s"}
+                """.formatted(user, format(eventTime), clickId, clickId);
+        producer.send(new ProducerRecord<>(topic, 0, eventTime.plusSeconds(1).toEpochMilli(), user, value));
+    }
+
+    private void sendPageView(
+            Producer<String, String> producer, String topic, String eventId, String user, Instant eventTime) {
+        String value = """
+                {"user_id": "%s", "event_time": "%s", "url": "/page", "event_id": "%s"}
+                """.formatted(user, format(eventTime), eventId);
+        producer.send(new ProducerRecord<>(topic, 0, eventTime.plusSeconds(1).toEpochMilli(), user, value));
+    }
+
+    private static String format(Instant eventTime) {
+        return eventTime.toString().replace("Z", "");
+    }
+
+    private void commit(EmbeddedKafkaBroker broker, Map<TopicPartition, Long> offsets) {
+        try (Consumer<String, String> consumer = warmUpConsumerFactory(broker).createConsumer()) {
+            consumer.assign(offsets.keySet());
+            offsets.forEach((tp, offset) -> consumer.commitSync(Map.of(tp, new OffsetAndMetadata(offset))));
+        }
+    }
+
+    private DefaultKafkaConsumerFactory<String, String> warmUpConsumerFactory(EmbeddedKafkaBroker broker) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps(GROUP, "false", broker);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new StringDeserializer());
+    }
+}
@@ -1,15 +1,21 @@
 package com.ebay.challenge.streamprocessor.engine;
 
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
 import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
 import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.state.ExactEventDeduplicator;
 import com.ebay.challenge.streamprocessor.testutil.TestFactory;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
 import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class JoinEngineTest {
 
@@ -102,4 +108,35 @@ public class JoinEngineTest {
         assertThat(sink.records()).hasSize(1);
         assertThat(sink.records().getFirst().getAttributedClickId()).isNull();
     }
+
+    @Test
+    void testFailedEventIsNotADuplicateWhenProcessedAgain() {
+        AtomicInteger failures = new AtomicInteger(1);
+        InMemoryOutputSink sink = new InMemoryOutputSink() {
+            @Override
+            public void write(AttributedPageView attributedPageView) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("database is locked");
+                }
+                super.write(attributedPageView);
+            }
+        };
+        JoinEngine engine = TestFactory.createJoinEngine(
+                sink, 5, new ExactEventDeduplicator(Duration.ofMinutes(10)));
+        Instant base = Instant.parse("2026-01-24T12:00:00Z");
+
+        PageViewEvent pageView = pageView("pv1", "u1", base.plusSeconds(600), 0);
+        assertThatThrownBy(() -> engine.processPageView(pageView)).isInstanceOf(IllegalStateException.class);
+        engine.processPageView(pageView);
+        assertThat(sink.records()).singleElement()
+                .extracting(AttributedPageView::getAttributedClickId).isNull();
+
+        // The late click's update write fails, the redelivered click still updates the page view
+        failures.set(1);
+        AdClickEvent click = click("click1", "u1", base.plusSeconds(300), 0);
+        assertThatThrownBy(() -> engine.processClick(click)).isInstanceOf(IllegalStateException.class);
+        engine.processClick(click);
+        assertThat(sink.records()).hasSize(2);
+        assertThat(sink.records().get(1).getAttributedClickId()).isEqualTo("click1");
+    }
 }
@@ -0,0 +1,82 @@
+package com.ebay.challenge.streamprocessor.engine;
+
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the join and the SQLite sink on contended virtual threads and checks with JFR
+ * that none of our code pins a carrier thread while blocking.
+ * With monitors in the sink / stores this workload can starve all carriers, hence the timeout.
+ */
+public class VirtualThreadPinningTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @Timeout(60)
+    void testNoPinningInJoinAndSink() throws Exception {
+        OutputSink sink = new OutputSink();
+        ReflectionTestUtils.setField(sink, "databasePath", tempDir.resolve("out.db").toString());
+        sink.initialize();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 60);
+
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+        Path recordingFile = tempDir.resolve("pinning.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    // Few users, so threads contend on the same per-user and per-page-view locks
+                    String user = "user_" + (i % 5);
+                    int n = i;
+                    futures.add(executor.submit(() -> {
+                        engine.processPageView(pageView("pv_" + n, user, base.plusSeconds(600), 0));
+                        // Late click updates the emitted page views, writing to the sink under the page view lock
+                        engine.processClick(click("click_" + n, user, base.plusSeconds(n), 0));
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+
+            recording.stop();
+            recording.dump(recordingFile);
+        } finally {
+            sink.close();
+        }
+
+        List<RecordedEvent> pinnedInOurCode = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getStackTrace() != null)
+                .filter(event -> event.getStackTrace().getFrames().stream()
+                        .anyMatch(frame -> frame.getMethod().getType().getName()
+                                .startsWith("com.ebay.challenge.streamprocessor")))
+                .toList();
+        assertThat(pinnedInOurCode).isEmpty();
+    }
+}
@@ -0,0 +1,159 @@
+package com.ebay.challenge.streamprocessor.jfr;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.output.OutputSink;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JfrEventsTest {
+
+    private static final Instant BASE = Instant.parse("2024-01-01T12:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private OutputSink sink;
+    private JoinEngine engine;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sink = new OutputSink();
+        ReflectionTestUtils.setField(sink, "databasePath", tempDir.resolve("out.db").toString());
+        sink.initialize();
+        engine = TestFactory.createJoinEngine(sink, 60);
+    }
+
+    @Test
+    void testBundledSettingsRecordJoinEngineEvents() throws Exception {
+        List<RecordedEvent> events = record(bundledSettings());
+
+        // Threshold 0 ms for these two; the per-event paths are mostly below their 100 us threshold here
+        assertThat(events).extracting(event -> event.getEventType().getName())
+                .contains(SinkCommitEvent.NAME, EvictionEvent.NAME);
+        RecordedEvent eviction = first(events, EvictionEvent.NAME);
+        assertThat(eviction.getInt("partition")).isZero();
+        assertThat(eviction.getInt("users")).isEqualTo(2);
+        assertThat(eviction.getDuration()).isPositive();
+
+        RecordedEvent batchCommit = events.stream()
+                .filter(event -> event.getEventType().getName().equals(SinkCommitEvent.NAME))
+                .filter(event -> event.getInt("rows") == 3)
+                .findFirst()
+                .orElseThrow();
+        assertThat(batchCommit.getInt("users")).isEqualTo(2);
+    }
+
+    @Test
+    void testEventFieldsWithoutThreshold() throws Exception {
+        Map<String, String> settings = new HashMap<>(bundledSettings());
+        settings.replaceAll((name, value) -> name.endsWith("#threshold") ? "0 ms" : value);
+        List<RecordedEvent> events = record(settings);
+
+        RecordedEvent click = first(events, ClickProcessingEvent.NAME);
+        assertThat(click.getInt("partition")).isZero();
+        assertThat(click.getInt("clicks")).isEqualTo(1);
+        assertThat(click.getInt("users")).isEqualTo(1);
+
+        RecordedEvent lookup = first(events, AttributionLookupEvent.NAME);
+        assertThat(lookup.getInt("partition")).isZero();
+        assertThat(lookup.getInt("users")).isEqualTo(1);
+        assertThat(lookup.getInt("pageViews")).isEqualTo(1);
+        assertThat(lookup.getInt("attributed")).isEqualTo(1);
+
+        // The late click improves the attribution of the emitted page view
+        RecordedEvent fanOut = events.stream()
+                .filter(event -> event.getEventType().getName().equals(UpdateFanOutEvent.NAME))
+                .filter(event -> event.getInt("updates") > 0)
+                .findFirst()
+                .orElseThrow();
+        assertThat(fanOut.getInt("clicks")).isEqualTo(1);
+        assertThat(fanOut.getInt("pageViewsScanned")).isEqualTo(1);
+        // Only the user's page views are visited, not the three in state
+        RecordedEvent lastFanOut = events.stream()
+                .filter(event -> event.getEventType().getName().equals(UpdateFanOutEvent.NAME))
+                .reduce((a, b) -> b)
+                .orElseThrow();
+        assertThat(lastFanOut.getInt("updates")).isEqualTo(1);
+        assertThat(lastFanOut.getInt("pageViewsScanned")).isEqualTo(1);
+
+        RecordedEvent batch = events.stream()
+                .filter(event -> event.getEventType().getName().equals(PageViewProcessingEvent.NAME))
+                .filter(event -> event.getInt("pageViews") == 2)
+                .findFirst()
+                .orElseThrow();
+        assertThat(batch.getInt("users")).isEqualTo(2);
+    }
+
+    @Test
+    void testDisabledInJdkConfigurations() throws Exception {
+        List<RecordedEvent> events = record(Configuration.getConfiguration("profile").getSettings());
+
+        assertThat(events).noneMatch(event -> event.getEventType().getName().startsWith("streamprocessor."));
+    }
+
+    private static Map<String, String> bundledSettings() throws Exception {
+        return Configuration.create(Path.of("jfr/stream-processor.jfc")).getSettings();
+    }
+
+    private List<RecordedEvent> record(Map<String, String> settings) throws Exception {
+        Path file = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.setSettings(settings);
+            recording.start();
+
+            engine.processClick(click("click_1", "user_1", BASE, 0));
+            engine.processPageView(pageView("pv_1", "user_1", BASE.plusSeconds(60), 0));
+            // Late click, closer to the page view
+            engine.processClick(click("click_2", "user_1", BASE.plusSeconds(30), 0));
+            engine.processPageViews(List.of(
+                    pageView("pv_2", "user_1", BASE.plusSeconds(90), 0),
+                    pageView("pv_3", "user_2", BASE.plusSeconds(90), 0)
+            ));
+            engine.processClick(click("click_3", "user_2", BASE.plusSeconds(80), 0));
+            engine.evictFinalizedState();
+            sink.writeAll(List.of(
+                    attributed("pv_4", "user_1"),
+                    attributed("pv_5", "user_1"),
+                    attributed("pv_6", "user_2")
+            ));
+
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static RecordedEvent first(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static AttributedPageView attributed(String pageViewId, String userId) {
+        return AttributedPageView.builder()
+                .pageViewId(pageViewId)
+                .userId(userId)
+                .eventTime(BASE)
+                .url("/page")
+                .build();
+    }
+}
@@ -0,0 +1,44 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyRecorderTest {
+
+    @Test
+    void testQuantilesAreWithinRelativeErrorAndResetPerInterval() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            recorder.record(micros);
+        }
+
+        LatencyStats stats = recorder.flip(LatencyStage.PROCESS_CLICK, 0);
+
+        assertThat(stats.count()).isEqualTo(100_000);
+        assertThat((double) stats.p50Micros()).isCloseTo(50_000, within(50_000 * 0.016));
+        assertThat((double) stats.p99Micros()).isCloseTo(99_000, within(99_000 * 0.016));
+        assertThat((double) stats.p999Micros()).isCloseTo(99_900, within(99_900 * 0.016));
+        assertThat((double) stats.maxMicros()).isCloseTo(100_000, within(100_000 * 0.016));
+
+        // Next interval starts empty, values beyond the range are clamped
+        assertThat(recorder.flip(LatencyStage.PROCESS_CLICK, 0)).isNull();
+        recorder.record(5);
+        recorder.record(Long.MAX_VALUE);
+        stats = recorder.flip(LatencyStage.PROCESS_CLICK, 0);
+        assertThat(stats.count()).isEqualTo(2);
+        assertThat(stats.p50Micros()).isEqualTo(5);
+        assertThat((double) stats.maxMicros())
+                .isCloseTo(LatencyRecorder.MAX_MICROS, within(LatencyRecorder.MAX_MICROS * 0.016));
+    }
+
+    @Test
+    void testBucketsCoverEveryValueOnce() {
+        for (long micros = 0; micros < 1_000_000; micros++) {
+            int index = LatencyRecorder.indexOf(micros);
+            assertThat(LatencyRecorder.valueOf(index)).isGreaterThanOrEqualTo(micros);
+            assertThat(index == 0 || LatencyRecorder.valueOf(index - 1) < micros).isTrue();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsRegistryTest {
+
+    @Test
+    void testOffsetLagEventTimeLagAndSkewPerPartition() {
+        WatermarkTracker watermarkTracker = new WatermarkTracker(2);
+        MetricsRegistry registry = new MetricsRegistry(
+                watermarkTracker, new ClickStateStore(), new EmittedPageViewStore());
+        Instant now = Instant.now();
+
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 0, now.minusSeconds(90));
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 0, now.minusSeconds(30));
+        // Processed out of order (lanes), the highest offset counts
+        registry.onOffsetProcessed(StreamType.PAGE_VIEWS, 0, 41);
+        registry.onOffsetProcessed(StreamType.PAGE_VIEWS, 0, 39);
+        registry.onOffsetProcessed(StreamType.AD_CLICKS, 0, 7);
+        registry.onLogEndOffset(StreamType.PAGE_VIEWS, 0, 100);
+
+        JoinPartitionWatermark wm = registry.snapshot().joinWatermarks().getFirst();
+
+        assertThat(wm.pageViewsOffsetLag()).isEqualTo(58);
+        // No log-end offset sampled yet
+        assertThat(wm.adClicksOffsetLag()).isNull();
+        assertThat(wm.pageViewsEventTimeLagMillis()).isBetween(30_000L, 31_000L);
+        assertThat(wm.adClicksEventTimeLagMillis()).isBetween(90_000L, 91_000L);
+        // Clicks are behind
+        assertThat(wm.crossTopicSkewMillis()).isEqualTo(-60_000);
+    }
+}
@@ -0,0 +1,105 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+public class MetricsStreamTest {
+
+    private final AtomicInteger snapshots = new AtomicInteger();
+    private MetricsStream stream;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        Metrics metrics = new NoOpMetrics() {
+            @Override
+            public MetricsSnapshot snapshot() {
+                snapshots.incrementAndGet();
+                return super.snapshot();
+            }
+        };
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        // Published by the test, not on a schedule
+        stream = new MetricsStream(metrics, objectMapper, 60_000);
+        mvc = MockMvcBuilders.standaloneSetup(new StreamController(stream)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stream.close();
+    }
+
+    @Test
+    void testOneSnapshotPerIntervalForAllSubscribers() throws Exception {
+        MvcResult first = subscribe();
+        MvcResult second = subscribe();
+        MvcResult third = subscribe();
+        assertThat(stream.getSubscriberCount()).isEqualTo(3);
+
+        stream.publish();
+
+        assertThat(snapshots.get()).isEqualTo(1);
+        for (MvcResult result : new MvcResult[]{first, second, third}) {
+            String body = result.getResponse().getContentAsString();
+            assertThat(body).startsWith("event:metrics\ndata:{");
+            assertThat(body).contains("\"clicksReceived\":0");
+        }
+    }
+
+    @Test
+    void testNoSnapshotWithoutSubscribers() {
+        stream.publish();
+        stream.publish();
+
+        assertThat(snapshots.get()).isZero();
+    }
+
+    @Test
+    void testNewSubscriberGetsLastSnapshotWithoutBuildingOne() throws Exception {
+        subscribe();
+        stream.publish();
+
+        MvcResult late = subscribe();
+
+        assertThat(snapshots.get()).isEqualTo(1);
+        assertThat(late.getResponse().getContentAsString()).startsWith("event:metrics\ndata:{");
+    }
+
+    private MvcResult subscribe() throws Exception {
+        return mvc.perform(get("/metrics/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    @RestController
+    static class StreamController {
+        private final MetricsStream stream;
+
+        StreamController(MetricsStream stream) {
+            this.stream = stream;
+        }
+
+        @GetMapping("/metrics/stream")
+        SseEmitter stream() {
+            return stream.subscribe();
+        }
+    }
+}
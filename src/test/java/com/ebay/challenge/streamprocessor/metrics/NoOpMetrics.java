@@ -1,5 +1,7 @@
 package com.ebay.challenge.streamprocessor.metrics;
 
+import com.ebay.challenge.streamprocessor.model.StreamType;
+
 import java.time.Instant;
 import java.util.ArrayList;
 
@@ -33,16 +35,97 @@ public class NoOpMetrics implements Metrics {
         // no-op
     }
 
+    @Override
+    public void onPageViewsFinalized(int finalized) {
+        // no-op
+    }
+
+    @Override
+    public void onPageViewsFinalOnFirstWrite(int finalOnFirstWrite) {
+        // no-op
+    }
+
+
+    @Override
+    public void onLateEventDropped(StreamType stream, int partition) {
+        // no-op
+    }
+
+    @Override
+    public void onLateEventsPersisted(int persisted) {
+        // no-op
+    }
+
+    @Override
+    public void onLateEventsDiscarded(int discarded) {
+        // no-op
+    }
+
+    @Override
+    public void onDuplicateDropped(StreamType stream) {
+        // no-op
+    }
+
+    @Override
+    public void onFailedEventSkipped(StreamType stream) {
+        // no-op
+    }
+
+    /* -------- Load shedding -------- */
+
+    @Override
+    public void onLoadSheddingChanged(boolean active) {
+        // no-op
+    }
+
+    @Override
+    public void onCorrectionSkipped(StreamType stream) {
+        // no-op
+    }
+
+    /* -------- User filter -------- */
+
+    @Override
+    public void onUserFilterLookup(boolean mightContain) {
+        // no-op
+    }
+
+    /* -------- Latency -------- */
 
-    /* -------- State -------- */
+    @Override
+    public void onLatency(LatencyStage stage, int partition, long nanos) {
+        // no-op
+    }
 
     @Override
-    public void onClickStateSizeUpdated(long size) {
+    public void onOffsetProcessed(StreamType stream, int partition, long offset) {
         // no-op
     }
 
     @Override
-    public void onPageViewStateSizeUpdated(long size) {
+    public void onLogEndOffset(StreamType stream, int partition, long logEndOffset) {
+        // no-op
+    }
+
+    @Override
+    public void onStateRestored(int partition, long records, long durationMillis) {
+        // no-op
+    }
+
+    @Override
+    public void onWarmUpProgress(int partition, long replayed, long total, boolean completed) {
+        // no-op
+    }
+
+    /* -------- Backpressure -------- */
+
+    @Override
+    public void onPartitionPaused(String logicalPartition) {
+        // no-op
+    }
+
+    @Override
+    public void onPartitionResumed(String logicalPartition) {
         // no-op
     }
 
@@ -55,8 +138,30 @@ public class NoOpMetrics implements Metrics {
                 0,          // pageViewsReceived
                 0,          // pageViewsEmitted
                 0,          // pageViewsUpdated
+                0,          // pageViewsFinalized
+                0,          // pageViewsFinalOnFirstWrite
+                0,          // lateClicksDropped
+                0,          // latePageViewsDropped
+                0,          // lateEventsPersisted
+                0,          // lateEventsDiscarded
+                0,          // duplicateClicksDropped
+                0,          // duplicatePageViewsDropped
+                0,          // failedClicksSkipped
+                0,          // failedPageViewsSkipped
+                new LoadSheddingStats(false, 0, 0, 0, 0),
+                0,          // userFilterHits
+                0,          // userFilterMisses
                 0,          // clickStateSize
                 0,          // pageViewStateSize
+                0,          // clickStateBytes
+                0,          // pageViewStateBytes
+                0,          // watermarkStateBytes
+                new ArrayList<>(),
+                new ArrayList<>(),
+                new ArrayList<>(),
+                new ArrayList<>(),
+                new ArrayList<>(),
+                new ArrayList<>(),
                 new ArrayList<>(),
                 Instant.now()
         );
@@ -0,0 +1,57 @@
+package com.ebay.challenge.streamprocessor.metrics;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.state.ClickStateStore;
+import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrometheusWriterTest {
+
+    @Test
+    void testCountersAndPerPartitionWatermarksAreLabeledSeries() {
+        WatermarkTracker watermarkTracker = new WatermarkTracker(2);
+        MetricsRegistry registry = new MetricsRegistry(
+                watermarkTracker, new ClickStateStore(), new EmittedPageViewStore());
+        Instant base = Instant.parse("2024-01-01T12:00:00.005Z");
+
+        registry.onClickReceived();
+        registry.onPageViewReceived();
+        registry.onPageViewReceived();
+        registry.onLateEventDropped(StreamType.AD_CLICKS, 1);
+        registry.onPartitionPaused("ad_clicks_1");
+        watermarkTracker.updateWatermark(StreamType.AD_CLICKS, 1, base);
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 1, base.plusSeconds(60));
+        watermarkTracker.updateWatermark(StreamType.PAGE_VIEWS, 2, base);
+
+        PrometheusWriter writer = new PrometheusWriter();
+        MetricsSnapshot snapshot = registry.snapshot();
+        String text = writer.write(snapshot);
+
+        assertThat(text).contains(
+                "# TYPE stream_processor_events_received_total counter\n",
+                "stream_processor_events_received_total{stream=\"ad_clicks\"} 1\n",
+                "stream_processor_events_received_total{stream=\"page_views\"} 2\n",
+                "stream_processor_partition_late_events_total{partition=\"1\",stream=\"ad_clicks\"} 1\n",
+                "stream_processor_partition_paused{partition=\"ad_clicks_1\"} 1\n",
+                "stream_processor_max_event_time_seconds{partition=\"1\",stream=\"ad_clicks\"} 1704110400.005\n",
+                "stream_processor_max_event_time_seconds{partition=\"2\",stream=\"page_views\"} 1704110400.005\n",
+                // min of both streams minus 2 minutes
+                "stream_processor_join_watermark_seconds{partition=\"1\"} 1704110280.005\n",
+                "stream_processor_allowed_lateness_seconds{partition=\"2\"} 120.000\n"
+        );
+        // No join watermark until both streams were seen
+        assertThat(text).doesNotContain("stream_processor_join_watermark_seconds{partition=\"2\"}");
+        // Every sample line is "name{labels} value"
+        text.lines()
+                .filter(line -> !line.startsWith("#"))
+                .forEach(line -> assertThat(line).matches("stream_processor_[a-z_0-9]+(\\{.*})? -?[0-9.]+"));
+
+        // The buffer is reused, a second scrape renders the same text
+        assertThat(writer.write(snapshot)).isEqualTo(text);
+    }
+}
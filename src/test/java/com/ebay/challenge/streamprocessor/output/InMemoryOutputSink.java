@@ -16,6 +16,11 @@ public class InMemoryOutputSink extends OutputSink {
         outputs.add(attributedPageView);
     }
 
+    @Override
+    public void writeAll(List<AttributedPageView> attributedPageViews) {
+        outputs.addAll(attributedPageViews);
+    }
+
     public List<AttributedPageView> records() {
         return outputs;
     }
@@ -0,0 +1,210 @@
+package com.ebay.challenge.streamprocessor.pipeline;
+
+import com.ebay.challenge.streamprocessor.consumer.PartitionFlowControl;
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.state.EventDeduplicator;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+public class EventPipelineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final PartitionFlowControl flowControl = new PartitionFlowControl(new KafkaListenerEndpointRegistry(), new NoOpMetrics());
+
+    @Test
+    void testRecordsAreJoinedWrittenAndAcknowledgedInOrder() {
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 60);
+        Map<Integer, List<Long>> ackedOffsets = new ConcurrentHashMap<>();
+
+        // Ring much smaller than the input, so slots are reused many times
+        EventPipeline pipeline = new EventPipeline(engine, sink, objectMapper, flowControl, new NoOpMetrics(), 16, 3, 2, 4, false);
+        pipeline.start();
+        try {
+            long[] offsets = new long[3];
+            for (int user = 0; user < 300; user++) {
+                int partition = user % 3;
+                submit(pipeline, StreamType.AD_CLICKS, partition, offsets[partition]++, "user_" + user,
+                        click("user_" + user, "click_" + user), ackedOffsets);
+                submit(pipeline, StreamType.PAGE_VIEWS, partition, offsets[partition]++, "user_" + user,
+                        pageView("user_" + user, "pv_" + user), ackedOffsets);
+            }
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> pipeline.getInFlight() == 0);
+        } finally {
+            pipeline.close();
+        }
+
+        // Every record acknowledged once, in offset order per partition
+        assertThat(ackedOffsets).hasSize(3);
+        ackedOffsets.values().forEach(offsets -> assertThat(offsets).hasSize(200).isSorted());
+
+        // Clicks were joined before the page views that came after them
+        assertThat(sink.records())
+                .hasSize(300)
+                .allSatisfy(pv -> assertThat(pv.getAttributedClickId())
+                        .isEqualTo(pv.getPageViewId().replace("pv_", "click_")));
+    }
+
+    @Test
+    void testUndecodableRecordIsSkippedButAcknowledged() {
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 60);
+        Map<Integer, List<Long>> ackedOffsets = new ConcurrentHashMap<>();
+
+        EventPipeline pipeline = new EventPipeline(engine, sink, objectMapper, flowControl, new NoOpMetrics(), 8, 1, 1, 8, false);
+        pipeline.start();
+        try {
+            submit(pipeline, StreamType.PAGE_VIEWS, 0, 0, "user_1", "not json", ackedOffsets);
+            submit(pipeline, StreamType.PAGE_VIEWS, 0, 1, "user_1", pageView("user_1", "pv_1"), ackedOffsets);
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> pipeline.getInFlight() == 0);
+        } finally {
+            pipeline.close();
+        }
+
+        assertThat(ackedOffsets.get(0)).containsExactly(0L, 1L);
+        assertThat(sink.records()).extracting(AttributedPageView::getPageViewId).containsExactly("pv_1");
+    }
+
+    @Test
+    void testFailingJoinIsRetriedThenSkippedAndCounted() {
+        // pv_1 fails twice, pv_broken always
+        AtomicInteger transientFailures = new AtomicInteger(2);
+        EventDeduplicator failingStage = new EventDeduplicator() {
+            @Override
+            public boolean firstSeen(StreamType stream, int partition, String eventId, Instant eventTime) {
+                if (eventId.equals("pv_broken") || transientFailures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("dedup store unavailable");
+                }
+                return true;
+            }
+
+            @Override
+            public void forget(StreamType stream, int partition, String eventId, Instant eventTime) {
+            }
+
+            @Override
+            public void expire(int partition, Instant watermark) {
+            }
+
+            @Override
+            public void removePartition(int partition) {
+            }
+
+            @Override
+            public long size() {
+                return 0;
+            }
+        };
+        AtomicInteger skipped = new AtomicInteger();
+        NoOpMetrics metrics = new NoOpMetrics() {
+            @Override
+            public void onFailedEventSkipped(StreamType stream) {
+                skipped.incrementAndGet();
+            }
+        };
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 60, failingStage);
+        Map<Integer, List<Long>> ackedOffsets = new ConcurrentHashMap<>();
+
+        EventPipeline pipeline = new EventPipeline(engine, sink, objectMapper, flowControl, metrics, 8, 1, 1, 8, false);
+        pipeline.start();
+        try {
+            submit(pipeline, StreamType.PAGE_VIEWS, 0, 0, "user_1", pageView("user_1", "pv_1"), ackedOffsets);
+            submit(pipeline, StreamType.PAGE_VIEWS, 0, 1, "user_1", pageView("user_1", "pv_broken"), ackedOffsets);
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> pipeline.getInFlight() == 0);
+        } finally {
+            pipeline.close();
+        }
+
+        assertThat(sink.records()).extracting(AttributedPageView::getPageViewId).containsExactly("pv_1");
+        assertThat(ackedOffsets.get(0)).containsExactly(0L, 1L);
+        assertThat(skipped).hasValue(1);
+    }
+
+    @Test
+    void testConsumptionIsPausedWhileTheSinkIsBlocked() throws Exception {
+        CountDownLatch sinkReleased = new CountDownLatch(1);
+        InMemoryOutputSink blockingSink = new InMemoryOutputSink() {
+            @Override
+            public void writeAll(List<AttributedPageView> attributedPageViews) {
+                try {
+                    sinkReleased.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.writeAll(attributedPageViews);
+            }
+        };
+        JoinEngine engine = TestFactory.createJoinEngine(blockingSink, 60);
+        Map<Integer, List<Long>> ackedOffsets = new ConcurrentHashMap<>();
+
+        EventPipeline pipeline = new EventPipeline(engine, blockingSink, objectMapper, flowControl, new NoOpMetrics(), 16, 1, 1, 1, false);
+        pipeline.start();
+        try {
+            // Fills 12 of 16 slots: above the 3/4 mark, but submit does not block yet
+            for (int i = 0; i < 12; i++) {
+                submit(pipeline, StreamType.PAGE_VIEWS, 0, i, "user_" + i, pageView("user_" + i, "pv_" + i), ackedOffsets);
+            }
+            assertThat(flowControl.isPaused()).isTrue();
+
+            sinkReleased.countDown();
+            await().atMost(Duration.ofSeconds(10)).until(() -> pipeline.getInFlight() == 0);
+            assertThat(flowControl.isPaused()).isFalse();
+        } finally {
+            pipeline.close();
+        }
+        assertThat(blockingSink.records()).hasSize(12);
+    }
+
+    private static void submit(
+            EventPipeline pipeline,
+            StreamType type,
+            int partition,
+            long offset,
+            String key,
+            String value,
+            Map<Integer, List<Long>> ackedOffsets
+    ) {
+        String topic = type == StreamType.AD_CLICKS ? "ad_clicks" : "page_views";
+        pipeline.submit(type, new ConsumerRecord<>(topic, partition, offset, key, value), () -> ackedOffsets
+                .computeIfAbsent(partition, p -> Collections.synchronizedList(new ArrayList<>()))
+                .add(offset));
+    }
+
+    private static String click(String user, String clickId) {
+        return """
+                {"user_id": "%s", "event_time": "2024-01-01T12:00:00", "campaign_id": "c", "click_id": "%s"}
+                """.formatted(user, clickId);
+    }
+
+    private static String pageView(String user, String eventId) {
+        return """
+                {"user_id": "%s", "event_time": "2024-01-01T12:01:00", "url": "/", "event_id": "%s"}
+                """.formatted(user, eventId);
+    }
+}
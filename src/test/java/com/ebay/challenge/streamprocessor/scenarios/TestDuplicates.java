@@ -3,10 +3,14 @@ package com.ebay.challenge.streamprocessor.scenarios;
 import com.ebay.challenge.streamprocessor.engine.JoinEngine;
 import com.ebay.challenge.streamprocessor.model.AdClickEvent;
 import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.state.ApproximateEventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.EventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.ExactEventDeduplicator;
 import com.ebay.challenge.streamprocessor.testutil.TestFactory;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.time.Instant;
 
 import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
@@ -42,4 +46,24 @@ public class TestDuplicates {
         // Assert: NO additional update
         Assertions.assertEquals(2, sink.records().size(), "Duplicate click must not cause another update");
     }
+
+    @Test
+    public void testReplayedPageViewIsDroppedBeforeAnyWork(){
+        assertReplayedPageViewIsDropped(new ExactEventDeduplicator(Duration.ofMinutes(1)));
+        assertReplayedPageViewIsDropped(new ApproximateEventDeduplicator(Duration.ofMinutes(1), 1000));
+    }
+
+    private static void assertReplayedPageViewIsDropped(EventDeduplicator deduplicator) {
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 15, deduplicator);
+
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+        engine.processPageView(pageView("pv1", "user_1", base, 0));
+        // Redelivered after a rebalance
+        engine.processPageView(pageView("pv1", "user_1", base, 0));
+
+        Assertions.assertEquals(1, sink.records().size(), "Replayed page view must not be emitted again");
+        Assertions.assertEquals(1, deduplicator.size());
+    }
 }
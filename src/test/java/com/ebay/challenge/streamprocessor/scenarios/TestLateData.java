@@ -1,16 +1,23 @@
 package com.ebay.challenge.streamprocessor.scenarios;
 
 import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
 import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.output.AsyncLateEventSink;
 import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.output.LateEvent;
 import com.ebay.challenge.streamprocessor.testutil.TestFactory;
 import org.junit.jupiter.api.Test;
 
 import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
 import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TestLateData {
 
@@ -74,4 +81,29 @@ public class TestLateData {
         assertThat(result.getPageViewId()).isEqualTo("pv_on_time");
     }
 
+
+    @Test
+    void testLateEventsGoToTheSideOutput() throws Exception {
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        List<LateEvent> written = new CopyOnWriteArrayList<>();
+        Instant base = Instant.parse("2026-01-27T12:00:00Z");
+
+        try (AsyncLateEventSink lateEvents = new AsyncLateEventSink(written::addAll, new NoOpMetrics(), 100, 10)) {
+            JoinEngine engine = TestFactory.createJoinEngine(sink, 1, lateEvents);
+            engine.processClick(click("click_new", "user1", base.plusSeconds(600), 0));
+            engine.processPageView(pageView("pv_on_time", "user1", base.plusSeconds(660), 0));
+
+            // Both behind the join watermark T + 9
+            engine.processClick(click("click_late", "user1", base.plusSeconds(300), 0));
+            engine.processPageView(pageView("pv_late", "user1", base.plusSeconds(310), 0));
+        }
+
+        assertThat(written)
+                .extracting(LateEvent::stream, LateEvent::eventId, LateEvent::watermark)
+                .containsExactly(
+                        tuple(StreamType.AD_CLICKS, "click_late", base.plusSeconds(540)),
+                        tuple(StreamType.PAGE_VIEWS, "pv_late", base.plusSeconds(540))
+                );
+        assertThat(sink.records()).hasSize(1);
+    }
 }
@@ -0,0 +1,107 @@
+package com.ebay.challenge.streamprocessor.source;
+
+import com.ebay.challenge.streamprocessor.consumer.StreamConsumer;
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.model.AttributedPageView;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class EventSourceTest {
+
+    private static final int PARTITIONS = 3;
+    private static final int USERS = 20;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testInMemorySourceIsPartitionedByUserAndJoined() throws Exception {
+        InMemoryEventSource source = new InMemoryEventSource(PARTITIONS);
+        for (int user = 0; user < USERS; user++) {
+            source.add(StreamType.AD_CLICKS, "user_" + user, click(user));
+            source.add(StreamType.PAGE_VIEWS, "user_" + user, pageView(user));
+        }
+
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        source.run((stream, record) -> records.add(record));
+        assertThat(records).allSatisfy(record ->
+                assertThat(record.partition()).isEqualTo(PartitionedRecords.partitionFor(record.key(), PARTITIONS)));
+        assertThat(records).extracting(ConsumerRecord::partition).contains(0, 1, 2);
+
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        SourceRunStats stats = runner(sink).run(source);
+
+        assertThat(stats.records()).isEqualTo(2 * USERS);
+        assertThat(stats.failed()).isZero();
+        assertThat(sink.records())
+                .hasSize(USERS)
+                .allSatisfy(view -> assertThat(view.getAttributedClickId())
+                        .isEqualTo("click_" + view.getUserId()));
+    }
+
+    @Test
+    void testFileSourceMatchesInMemorySource() throws Exception {
+        InMemoryEventSource memory = new InMemoryEventSource(PARTITIONS);
+        List<String> lines = new ArrayList<>();
+        for (int user = 0; user < USERS; user++) {
+            // Page view first: emitted unattributed, then updated by the click
+            memory.add(StreamType.PAGE_VIEWS, "user_" + user, pageView(user));
+            memory.add(StreamType.AD_CLICKS, "user_" + user, click(user));
+            lines.add("{\"topic\": \"page_views\", \"value\": " + pageView(user).strip() + "}");
+            lines.add("{\"topic\": \"ad_clicks\", \"key\": \"user_" + user + "\", \"value\": " + click(user).strip() + "}");
+        }
+        Path file = Files.write(tempDir.resolve("events.jsonl"), lines);
+
+        InMemoryOutputSink fromMemory = new InMemoryOutputSink();
+        runner(fromMemory).run(memory);
+        InMemoryOutputSink fromFile = new InMemoryOutputSink();
+        try (FileEventSource source = new FileEventSource(file, PARTITIONS, objectMapper)) {
+            runner(fromFile).run(source);
+        }
+
+        assertThat(fromFile.records()).hasSize(2 * USERS);
+        assertThat(fromFile.records())
+                .extracting(AttributedPageView::getPageViewId, AttributedPageView::getAttributedClickId)
+                .containsExactlyInAnyOrderElementsOf(fromMemory.records().stream()
+                        .map(view -> tuple(
+                                view.getPageViewId(), view.getAttributedClickId()))
+                        .toList());
+    }
+
+    private EventSourceRunner runner(InMemoryOutputSink sink) {
+        StreamConsumer consumer = new StreamConsumer(
+                TestFactory.createJoinEngine(sink, 5), objectMapper,
+                Optional.empty(), Optional.empty(), Optional.empty(), new NoOpMetrics()
+        );
+        return new EventSourceRunner(consumer, 2, 16);
+    }
+
+    private static String click(int user) {
+        return """
+                {"user_id": "user_%d", "event_time": "2024-01-01T12:00:00", "campaign_id": "c", "click_id": "click_user_%d"}
+                """.formatted(user, user);
+    }
+
+    private static String pageView(int user) {
+        return """
+                {"user_id": "user_%d", "event_time": "2024-01-01T12:01:00", "url": "/", "event_id": "pv_%d"}
+                """.formatted(user, user);
+    }
+}
@@ -0,0 +1,109 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class AdaptiveLatenessTest {
+
+    @Test
+    public void testSketchQuantileIsWithinRelativeError() {
+        DelaySketch sketch = new DelaySketch(1_000_000);
+        for (long delay = 1; delay <= 100_000; delay++) {
+            sketch.add(delay);
+        }
+
+        assertThat((double) sketch.quantile(0.5)).isCloseTo(50_000, within(50_000 * 0.02));
+        assertThat((double) sketch.quantile(0.999)).isCloseTo(99_900, within(99_900 * 0.02));
+    }
+
+    @Test
+    public void testSketchForgetsOldWindows() {
+        DelaySketch sketch = new DelaySketch(1000);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(60_000);
+        }
+        // Two more windows of small delays push the large ones out
+        for (int i = 0; i < 2000; i++) {
+            sketch.add(10);
+        }
+
+        assertThat(sketch.quantile(1.0)).isLessThan(20);
+    }
+
+    @Test
+    public void testLatenessFollowsObservedDisorderWithinBounds() {
+        AdaptiveLateness adaptive = new AdaptiveLateness(
+                0.99, Duration.ofSeconds(5), Duration.ofMinutes(10), 1000, 100_000);
+        WatermarkTracker tracker = new WatermarkTracker(2, adaptive);
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+        // Static lateness until enough samples
+        assertThat(tracker.getAllowedLateness(0)).isEqualTo(Duration.ofMinutes(2));
+
+        // Every 10th event is 30s behind, the rest in order
+        for (int i = 0; i < 2000; i++) {
+            Instant eventTime = base.plusSeconds(i);
+            tracker.updateWatermark(StreamType.AD_CLICKS, 0, i % 10 == 0 ? eventTime.minusSeconds(30) : eventTime);
+            tracker.updateWatermark(StreamType.PAGE_VIEWS, 0, eventTime);
+        }
+
+        // 29s behind the previous max, within the sketch's 1% error
+        Duration lateness = tracker.getAllowedLateness(0);
+        assertThat(lateness).isBetween(Duration.ofMillis(28_700), Duration.ofMillis(29_300));
+        assertThat(tracker.getWatermark(0)).isEqualTo(base.plusSeconds(1999).minus(lateness));
+
+        // In-order input is clamped to the minimum
+        for (int i = 0; i < 2000; i++) {
+            tracker.updateWatermark(StreamType.AD_CLICKS, 1, base.plusSeconds(i));
+            tracker.updateWatermark(StreamType.PAGE_VIEWS, 1, base.plusSeconds(i));
+        }
+        assertThat(tracker.getAllowedLateness(1)).isEqualTo(Duration.ofSeconds(5));
+
+        // Upper bound for replay
+        assertThat(tracker.getAllowedLateness()).isEqualTo(Duration.ofMinutes(10));
+    }
+
+    @Test
+    public void testGrowingLatenessDoesNotMoveJoinWatermarkBack() {
+        AdaptiveLateness adaptive = new AdaptiveLateness(
+                0.99, Duration.ofSeconds(5), Duration.ofMinutes(10), 1000, 100_000);
+        WatermarkTracker tracker = new WatermarkTracker(2, adaptive);
+        ClickStateStore clickStore = new ClickStateStore();
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+        // In-order input: lateness clamped to the minimum
+        for (int i = 0; i < 2000; i++) {
+            tracker.updateWatermark(StreamType.AD_CLICKS, 0, base.plusSeconds(i));
+            tracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base.plusSeconds(i));
+        }
+        clickStore.addClick(TestFactory.click("click_1", "user_1", base.plusSeconds(1990), 0));
+        Instant watermark = tracker.getWatermark(0);
+        assertThat(watermark).isEqualTo(base.plusSeconds(1999 - 5));
+        // State is evicted against it
+        assertThat(clickStore.evictOldClicks(0, watermark)).isEqualTo(1);
+
+        // Then a burst of clicks a minute behind grows the lateness
+        for (int i = 0; i < 400; i++) {
+            tracker.updateWatermark(StreamType.AD_CLICKS, 0, base.plusSeconds(1999 - 60));
+        }
+        assertThat(tracker.getAllowedLateness(0)).isGreaterThan(Duration.ofSeconds(55));
+
+        // Held: an event behind it would be joined against evicted state
+        assertThat(tracker.getWatermark(0)).isEqualTo(watermark);
+        assertThat(tracker.isTooLate(0, base.plusSeconds(1990))).isTrue();
+
+        // Moves on once the event times pass it with the larger lateness
+        for (int i = 2000; i < 2100; i++) {
+            tracker.updateWatermark(StreamType.AD_CLICKS, 0, base.plusSeconds(i));
+            tracker.updateWatermark(StreamType.PAGE_VIEWS, 0, base.plusSeconds(i));
+        }
+        assertThat(tracker.getWatermark(0)).isAfter(watermark);
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.time.Instant;
+import java.util.List;
 
 public class ClickStateStoreTest {
 
@@ -107,4 +108,65 @@ public class ClickStateStoreTest {
         assertThat(result).isNotNull();
         assertThat(result.getClickId()).isEqualTo("click3");
     }
+
+    /**
+     * Bulk lookup for a session burst gives the same clicks as one lookup per page view.
+     */
+    @Test
+    public void testBulkLookupMatchesSingleLookups() {
+        ClickStateStore store = new ClickStateStore();
+
+        Instant base = Instant.parse("2026-01-24T12:00:00Z");
+        store.addClick(click("click1", "user1", base));
+        store.addClick(click("click2", "user1", base.plusSeconds(600)));
+        // Same time: the smallest click_id wins
+        store.addClick(click("click4", "user1", base.plusSeconds(900)));
+        store.addClick(click("click3", "user1", base.plusSeconds(900)));
+
+        List<Instant> pageViewTimes = List.of(
+                base.minusSeconds(1),     // before any click
+                base,                     // same time as click1
+                base.plusSeconds(300),
+                base.plusSeconds(900),
+                base.plusSeconds(900 + 1800),
+                base.plusSeconds(900 + 1801) // window passed
+        );
+
+        List<AdClickEvent> bulk = store.findAttributableClicks("user1", pageViewTimes);
+
+        assertThat(bulk).extracting(c -> c == null ? null : c.getClickId())
+                .containsExactly(null, "click1", "click1", "click3", "click3", null);
+        for (int i = 0; i < pageViewTimes.size(); i++) {
+            assertThat(bulk.get(i)).isEqualTo(store.findAttributableClick("user1", pageViewTimes.get(i)));
+        }
+        assertThat(store.findAttributableClicks("user2", pageViewTimes)).containsOnlyNulls();
+    }
+
+    @Test
+    public void testUsersAreTrackedPerPartition() {
+        ClickStateStore store = new ClickStateStore();
+        Instant base = Instant.parse("2026-01-24T12:00:00Z");
+        AdClickEvent old = click("click1", "user1", base);
+        AdClickEvent recent = click("click2", "user2", base.plusSeconds(3600));
+        recent.setPartition(1);
+        AdClickEvent other = click("click3", "user3", base);
+        other.setPartition(1);
+        store.addClick(old);
+        store.addClick(recent);
+        store.addClick(other);
+
+        assertThat(store.getUserIds(0)).containsExactly("user1");
+        assertThat(store.getUserIds(1)).containsExactlyInAnyOrder("user2", "user3");
+
+        // Users drop out once their last click is evicted
+        store.evictOldClicks(base.plusSeconds(60));
+        assertThat(store.getUserIds(0)).isEmpty();
+        assertThat(store.getUserIds(1)).containsExactly("user2");
+
+        store.addClick(click("click4", "user1", base.plusSeconds(3600)));
+        assertThat(store.getUserIds(0)).containsExactly("user1");
+
+        store.removePartition(1);
+        assertThat(store.getUserIds(1)).isEmpty();
+    }
 }
@@ -5,9 +5,13 @@ import com.ebay.challenge.streamprocessor.model.PageViewEvent;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
 
 
 public class EmittedPageViewStoreTest {
@@ -57,5 +61,99 @@ public class EmittedPageViewStoreTest {
         assertThat(store.size()).isEqualTo(0);
     }
 
+    @Test
+    public void evictionCountsPageViewsFinalOnFirstWrite() {
+        EmittedPageViewStore store = new EmittedPageViewStore();
+        Instant pvTime = Instant.parse("2024-01-01T12:10:00Z");
+
+        store.recordEmittedPageView(PageViewEvent.builder()
+                .eventId("pv_final").userId("user_1").eventTime(pvTime).url("/").build(), null);
+        store.recordEmittedPageView(PageViewEvent.builder()
+                .eventId("pv_updated").userId("user_2").eventTime(pvTime).url("/").build(), null);
+
+        store.tryUpdateWithClick(AdClickEvent.builder()
+                        .clickId("click_1").userId("user_2").campaignId("c")
+                        .eventTime(pvTime.minusSeconds(60)).build(),
+                Instant.MIN,
+                apv -> { });
+
+        AtomicInteger finalOnFirstWrite = new AtomicInteger();
+        int evicted = store.evictFinalizedPageViews(pvTime.plusSeconds(60), finalOnFirstWrite::set);
 
+        assertThat(evicted).isEqualTo(2);
+        assertThat(finalOnFirstWrite.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void bulkUpdateEndsWithTheSameAttributionAsSingleUpdates() {
+        EmittedPageViewStore bulk = new EmittedPageViewStore();
+        EmittedPageViewStore single = new EmittedPageViewStore();
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+        for (int i = 0; i < 4; i++) {
+            PageViewEvent pv = PageViewEvent.builder()
+                    .eventId("pv_" + i).userId("user_1").eventTime(base.plusSeconds(600L * i)).url("/").build();
+            bulk.recordEmittedPageView(pv, null);
+            single.recordEmittedPageView(pv, null);
+        }
+        bulk.recordEmittedPageView(PageViewEvent.builder()
+                .eventId("pv_other").userId("user_2").eventTime(base).url("/").build(), null);
+
+        List<AdClickEvent> clicks = List.of(
+                click("click_b", base.plusSeconds(900)),
+                click("click_early", base.minusSeconds(3600)),
+                click("click_a", base.plusSeconds(900)),
+                click("click_first", base)
+        );
+
+        List<String> bulkUpdates = new ArrayList<>();
+        int updated = bulk.tryUpdateWithClicks(clicks, Instant.MIN, apv -> bulkUpdates.add(
+                apv.getPageViewId() + "=" + apv.getAttributedClickId()));
+        List<String> singleUpdates = new ArrayList<>();
+        clicks.forEach(click -> single.tryUpdateWithClick(click, Instant.MIN, apv -> singleUpdates.add(
+                apv.getPageViewId() + "=" + apv.getAttributedClickId())));
+
+        // One update per page view, with the attribution the single updates end with
+        assertThat(updated).isEqualTo(4);
+        assertThat(bulkUpdates).containsExactlyInAnyOrder("pv_0=click_first", "pv_1=click_first",
+                "pv_2=click_a", "pv_3=click_a");
+        Map<String, String> singleFinal = new HashMap<>();
+        singleUpdates.forEach(update -> singleFinal.put(update.split("=")[0], update));
+        assertThat(singleUpdates.size()).isGreaterThan(4);
+        assertThat(singleFinal.values()).containsExactlyInAnyOrderElementsOf(bulkUpdates);
+    }
+
+    @Test
+    public void clickUpdatesOnlyPageViewsOfItsUserWithinTheWindow() {
+        EmittedPageViewStore store = new EmittedPageViewStore();
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+        for (String pvId : List.of("pv_before", "pv_in_window", "pv_window_end", "pv_after_window")) {
+            long offset = switch (pvId) {
+                case "pv_before" -> -60;
+                case "pv_in_window" -> 600;
+                case "pv_window_end" -> 1800;
+                default -> 1801;
+            };
+            store.recordEmittedPageView(PageViewEvent.builder()
+                    .eventId(pvId).userId("user_1").eventTime(base.plusSeconds(offset)).url("/").build(), null);
+        }
+        store.recordEmittedPageView(PageViewEvent.builder()
+                .eventId("pv_other_user").userId("user_2").eventTime(base.plusSeconds(600)).url("/").build(), null);
+
+        List<String> updated = new ArrayList<>();
+        int updates = store.tryUpdateWithClick(click("click_1", base), Instant.MIN,
+                apv -> updated.add(apv.getPageViewId()));
+
+        assertThat(updates).isEqualTo(2);
+        assertThat(updated).containsExactly("pv_in_window", "pv_window_end");
+
+        // Eviction of a user's page views stops at the first one not finalized
+        assertThat(store.evictFinalizedPageViews(base.plusSeconds(600))).isEqualTo(3);
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.tryUpdateWithClick(click("click_2", base.plusSeconds(1)), Instant.MIN, apv -> { }))
+                .isEqualTo(2);
+    }
+
+    private static AdClickEvent click(String clickId, Instant eventTime) {
+        return AdClickEvent.builder().clickId(clickId).userId("user_1").campaignId("c").eventTime(eventTime).build();
+    }
 }
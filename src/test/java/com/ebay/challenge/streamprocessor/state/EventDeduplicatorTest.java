@@ -0,0 +1,74 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventDeduplicatorTest {
+
+    private final Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+    @Test
+    public void testIdsAreScopedPerStreamAndPartition() {
+        EventDeduplicator deduplicator = new ExactEventDeduplicator(Duration.ofMinutes(1));
+
+        assertThat(deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "id_1", base)).isTrue();
+        assertThat(deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "id_1", base)).isFalse();
+        assertThat(deduplicator.firstSeen(StreamType.PAGE_VIEWS, 1, "id_1", base)).isTrue();
+        assertThat(deduplicator.firstSeen(StreamType.AD_CLICKS, 0, "id_1", base)).isTrue();
+    }
+
+    @Test
+    public void testBucketsExpireWithTheWatermark() {
+        EventDeduplicator deduplicator = new ExactEventDeduplicator(Duration.ofMinutes(1));
+        deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "early", base);
+        deduplicator.firstSeen(StreamType.AD_CLICKS, 0, "early_click", base.plusSeconds(30));
+        deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "later", base.plusSeconds(90));
+
+        // Watermark inside the second bucket: only the first one is complete
+        deduplicator.expire(0, base.plusSeconds(100));
+
+        assertThat(deduplicator.size()).isEqualTo(1);
+        assertThat(deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "later", base.plusSeconds(90))).isFalse();
+    }
+
+    @Test
+    public void testForgottenIdIsFirstSeenAgain() {
+        for (EventDeduplicator deduplicator : new EventDeduplicator[]{
+                new ExactEventDeduplicator(Duration.ofMinutes(1)),
+                new ApproximateEventDeduplicator(Duration.ofMinutes(1), 1000)}) {
+            deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "kept", base);
+            deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "forgotten", base);
+
+            deduplicator.forget(StreamType.PAGE_VIEWS, 0, "forgotten", base);
+
+            assertThat(deduplicator.size()).isEqualTo(1);
+            assertThat(deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "forgotten", base)).isTrue();
+            assertThat(deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "kept", base)).isFalse();
+        }
+    }
+
+    @Test
+    public void testApproximateHasNoFalseNegativesAndFewFalsePositives() {
+        // Sized for 1000 per bucket, so filters are chained
+        EventDeduplicator deduplicator = new ApproximateEventDeduplicator(Duration.ofMinutes(1), 1000);
+
+        long falsePositivesWhileFilling = IntStream.range(0, 20_000)
+                .filter(i -> !deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "pv_" + i, base))
+                .count();
+        assertThat(falsePositivesWhileFilling).isLessThan(20);
+
+        IntStream.range(0, 20_000).forEach(i ->
+                assertThat(deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "pv_" + i, base)).isFalse());
+
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> !deduplicator.firstSeen(StreamType.PAGE_VIEWS, 0, "other_" + i, base.plusSeconds(60)))
+                .count();
+        assertThat(falsePositives).isLessThan(100);
+    }
+}
@@ -0,0 +1,96 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.metrics.HotKey;
+import com.ebay.challenge.streamprocessor.metrics.HotKeysSnapshot;
+import com.ebay.challenge.streamprocessor.metrics.PartitionHotKeys;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import com.ebay.challenge.streamprocessor.output.InMemoryOutputSink;
+import com.ebay.challenge.streamprocessor.testutil.TestFactory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HotKeyTrackerTest {
+
+    @Test
+    public void testSketchNeverUndercountsAndOvercountIsBounded() {
+        CountMinSketch sketch = new CountMinSketch(1024);
+        // Zipf-like: user_i appears 1000 / (i + 1) times, ~7500 events over 1000 users
+        for (int i = 0; i < 1000; i++) {
+            for (int n = 0; n < 1000 / (i + 1); n++) {
+                sketch.add(BloomFilter.hash("user_" + i));
+            }
+        }
+
+        int aboveBound = 0;
+        for (int i = 0; i < 1000; i++) {
+            long actual = 1000 / (i + 1);
+            long estimate = sketch.estimate(BloomFilter.hash("user_" + i));
+            assertThat(estimate).isGreaterThanOrEqualTo(actual);
+            if (estimate - actual > Math.E * 7500 / 1024) {
+                aboveBound++;
+            }
+        }
+        // Within e / width of all events with probability 1 - e^-depth (98%)
+        assertThat(aboveBound).isLessThanOrEqualTo(20);
+    }
+
+    @Test
+    public void testTopKeysKeepsHeavyHittersAmongManyColdKeys() {
+        CountMinSketch sketch = new CountMinSketch(1024);
+        TopKeys top = new TopKeys(16);
+        for (int i = 0; i < 100_000; i++) {
+            String key = i % 5 == 0 ? "bot" : i % 10 == 1 ? "heavy" : "user_" + i;
+            top.add(key, sketch.add(BloomFilter.hash(key)));
+        }
+
+        List<TopKeys.Counter> counters = top.top();
+        assertThat(counters).hasSize(16);
+        assertThat(counters.get(0).key()).isEqualTo("bot");
+        // Overcounted by the sketch, bounded by e / width of the events
+        assertThat(counters.get(0).count()).isBetween(20_000L, 20_000L + 266);
+        assertThat(counters.get(1).key()).isEqualTo("heavy");
+    }
+
+    @Test
+    public void testBotUserIsReportedPerPartitionAndItsClicksAreCapped() {
+        HotKeyTracker hotKeys = new HotKeyTracker(true, 4, 1024, 100);
+        InMemoryOutputSink sink = new InMemoryOutputSink();
+        JoinEngine engine = TestFactory.createJoinEngine(sink, 2, hotKeys);
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+        IntStream.range(0, 1000).forEach(i -> engine.processClick(
+                click("bot_click_" + i, "bot", base.plusMillis(i), 1)));
+        IntStream.range(0, 50).forEach(i -> engine.processClick(
+                click("click_" + i, "user_" + i, base.plusMillis(i), 1)));
+        engine.processPageView(pageView("pv_1", "bot", base.plusSeconds(1), 1));
+
+        HotKeysSnapshot snapshot = hotKeys.snapshot();
+        assertThat(snapshot.clicksCapped()).isEqualTo(900);
+        PartitionHotKeys clicks = snapshot.partitions().stream()
+                .filter(p -> p.stream() == StreamType.AD_CLICKS)
+                .findFirst()
+                .orElseThrow();
+        assertThat(clicks.partition()).isEqualTo(1);
+        assertThat(clicks.events()).isEqualTo(1050);
+        HotKey top = clicks.topKeys().getFirst();
+        assertThat(top.userId()).isEqualTo("bot");
+        assertThat(top.estimatedCount()).isGreaterThanOrEqualTo(1000);
+        assertThat(top.share()).isGreaterThan(0.9);
+
+        // The most recent clicks are kept, so attribution of new page views is unchanged
+        assertThat(sink.records().getLast().getAttributedClickId()).isEqualTo("bot_click_999");
+
+        // Counts age out after two windows
+        hotKeys.rotateWindow();
+        hotKeys.rotateWindow();
+        assertThat(hotKeys.snapshot().partitions()).allSatisfy(p -> assertThat(p.events()).isZero());
+    }
+}
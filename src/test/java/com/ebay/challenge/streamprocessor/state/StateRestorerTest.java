@@ -0,0 +1,207 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.click;
+import static com.ebay.challenge.streamprocessor.testutil.TestFactory.pageView;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@EmbeddedKafka(partitions = 2, topics = StateRestorerTest.CHANGELOG_TOPIC)
+public class StateRestorerTest {
+
+    static final String CHANGELOG_TOPIC = "test-state-changelog";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void testStateIsRestoredFromChangelog(EmbeddedKafkaBroker broker) {
+        KafkaTemplate<String, String> template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new StringSerializer()
+        ));
+        StateChangelog changelog = new KafkaStateChangelog(template, objectMapper, CHANGELOG_TOPIC);
+
+        ClickStateStore clickStore = new ClickStateStore(changelog);
+        EmittedPageViewStore pageViewStore = new EmittedPageViewStore(changelog);
+
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+
+        // partition 0: one click survives, one is evicted
+        clickStore.addClick(click("old_click", "user_1", base.minusSeconds(3600), 0));
+        clickStore.addClick(click("click_1", "user_1", base, 0));
+        clickStore.evictOldClicks(base.minusSeconds(1800));
+
+        // partition 1: page view emitted without click, then improved by a late click
+        PageViewEvent pv = pageView("pv_1", "user_2", base.plusSeconds(600), 1);
+        pageViewStore.recordEmittedPageView(pv, null);
+        AdClickEvent lateClick = click("click_2", "user_2", base.plusSeconds(300), 1);
+        clickStore.addClick(lateClick);
+        pageViewStore.tryUpdateWithClick(lateClick, Instant.MIN, apv -> { });
+
+        template.flush();
+
+        // Restart: empty stores, restored from the changelog
+        ClickStateStore restoredClicks = new ClickStateStore();
+        EmittedPageViewStore restoredPageViews = new EmittedPageViewStore();
+
+        try (StateRestorer restorer = new StateRestorer(
+                restoredClicks,
+                restoredPageViews,
+                new UserKeyFilter(true, 0.01, 1000),
+                EventDeduplicator.NONE,
+                restoreConsumerFactory(broker),
+                objectMapper,
+                new NoOpMetrics(),
+                CHANGELOG_TOPIC,
+                2
+        )) {
+            restorer.restore(List.of(0, 1));
+            assertThat(restorer.getRestoredPartitions()).containsExactlyInAnyOrder(0, 1);
+        }
+
+        assertThat(restoredClicks.getTotalClickCount()).isEqualTo(2);
+        assertThat(restoredClicks.findAttributableClick("user_1", base.plusSeconds(60)).getClickId())
+                .isEqualTo("click_1");
+        assertThat(restoredClicks.findAttributableClick("user_1", base.minusSeconds(3500)))
+                .isNull();
+
+        assertThat(restoredPageViews.size()).isEqualTo(1);
+
+        // Restored attribution is click_2, so an older click must not update the page view
+        AtomicInteger updates = new AtomicInteger();
+        restoredPageViews.tryUpdateWithClick(
+                click("click_older", "user_2", base.plusSeconds(120), 1),
+                Instant.MIN,
+                apv -> updates.incrementAndGet()
+        );
+        assertThat(updates.get()).isZero();
+    }
+
+    @Test
+    void testEmptyChangelogRestoresNothing(EmbeddedKafkaBroker broker) {
+        ClickStateStore clickStore = new ClickStateStore();
+        EmittedPageViewStore pageViewStore = new EmittedPageViewStore();
+
+        try (StateRestorer restorer = new StateRestorer(
+                clickStore,
+                pageViewStore,
+                new UserKeyFilter(true, 0.01, 1000),
+                EventDeduplicator.NONE,
+                restoreConsumerFactory(broker),
+                objectMapper,
+                new NoOpMetrics(),
+                "test-empty-changelog",
+                1
+        )) {
+            broker.addTopics("test-empty-changelog");
+            restorer.restore(List.of(0));
+        }
+
+        assertThat(clickStore.getTotalClickCount()).isZero();
+        assertThat(pageViewStore.size()).isZero();
+    }
+
+    @Test
+    void testFailedRestoreIsRetriedFromCleanState(EmbeddedKafkaBroker broker) {
+        KafkaTemplate<String, String> template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new StringSerializer()
+        ));
+        broker.addTopics("test-failing-changelog");
+        ClickStateStore changelogged = new ClickStateStore(
+                new KafkaStateChangelog(template, objectMapper, "test-failing-changelog"));
+        Instant base = Instant.parse("2024-01-01T12:00:00Z");
+        changelogged.addClick(click("click_1", "user_1", base, 0));
+        changelogged.addClick(click("click_2", "user_2", base, 0));
+        template.flush();
+
+        // The second changelog record can't be read on the first attempt
+        AtomicInteger reads = new AtomicInteger();
+        ObjectMapper failingOnce = new ObjectMapper() {
+            @Override
+            public <T> T readValue(String content, Class<T> valueType) throws JsonProcessingException {
+                if (reads.incrementAndGet() == 2) {
+                    throw new JsonParseException(null, "broken record");
+                }
+                return objectMapper.readValue(content, valueType);
+            }
+        };
+        ClickStateStore clickStore = new ClickStateStore();
+
+        try (StateRestorer restorer = new StateRestorer(
+                clickStore,
+                new EmittedPageViewStore(),
+                new UserKeyFilter(true, 0.01, 1000),
+                EventDeduplicator.NONE,
+                restoreConsumerFactory(broker),
+                failingOnce,
+                new NoOpMetrics(),
+                "test-failing-changelog",
+                1
+        )) {
+            assertThatThrownBy(() -> restorer.restore(List.of(0))).isInstanceOf(CompletionException.class);
+            assertThat(restorer.getRestoredPartitions()).isEmpty();
+            assertThat(clickStore.getTotalClickCount()).isZero();
+
+            restorer.restore(List.of(0));
+            assertThat(restorer.getRestoredPartitions()).containsExactly(0);
+        }
+
+        assertThat(clickStore.getTotalClickCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testFailedChangelogWriteFailsEveryLaterFlush(EmbeddedKafkaBroker broker) {
+        // Every send fails after it was handed off, like a broker timeout
+        KafkaTemplate<String, String> template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new StringSerializer()
+        )) {
+            @Override
+            public CompletableFuture<SendResult<String, String>> send(
+                    String topic, Integer partition, String key, String data) {
+                return CompletableFuture.failedFuture(new TimeoutException("expired"));
+            }
+        };
+        StateChangelog changelog = new KafkaStateChangelog(template, objectMapper, CHANGELOG_TOPIC);
+        changelog.flush();
+
+        new ClickStateStore(changelog).addClick(click("click_1", "user_1", Instant.parse("2024-01-01T12:00:00Z"), 0));
+
+        assertThatThrownBy(changelog::flush).isInstanceOf(IllegalStateException.class);
+        // Offsets must not be committed past the lost change, also not by a later commit
+        assertThatThrownBy(changelog::flush).isInstanceOf(IllegalStateException.class);
+    }
+
+    private DefaultKafkaConsumerFactory<String, String> restoreConsumerFactory(EmbeddedKafkaBroker broker) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("unused", "false", broker);
+        props.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new StringDeserializer());
+    }
+}
@@ -0,0 +1,117 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import com.ebay.challenge.streamprocessor.model.AdClickEvent;
+import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.ebay.challenge.streamprocessor.model.StreamType;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * The incremental state size estimates against the retained sizes measured by JOL (heap walk).
+ * Events get their own strings, as when deserialized from Kafka.
+ */
+public class StateSizesTest {
+
+    private static final Instant BASE = Instant.parse("2024-01-01T12:00:00Z");
+    private static final double TOLERANCE = 0.10;
+
+    @Test
+    public void testClickStateEstimateMatchesMeasuredSize() {
+        ClickStateStore store = new ClickStateStore();
+        long empty = measure(new ClickStateStore());
+
+        for (int i = 0; i < 20_000; i++) {
+            store.addClick(click(i, "user_" + (i % 4000), i % 4));
+        }
+        assertThat(store.getRetainedBytes()).isCloseTo(measure(store) - empty, withinTolerance(store));
+        assertThat(store.getRetainedBytesPerPartition()).hasSize(4);
+
+        // Removals: half of the clicks by time, then a whole partition
+        store.evictOldClicks(BASE.plusSeconds(10_000));
+        assertThat(store.getRetainedBytes()).isCloseTo(measure(store) - empty, withinTolerance(store));
+
+        store.removePartition(1);
+        assertThat(store.getRetainedBytesPerPartition()).doesNotContainKey(1);
+        assertThat(store.getRetainedBytes()).isCloseTo(measure(store) - empty, withinTolerance(store));
+    }
+
+    @Test
+    public void testPageViewStateEstimateMatchesMeasuredSize() {
+        EmittedPageViewStore store = new EmittedPageViewStore();
+        long empty = measure(new EmittedPageViewStore());
+
+        for (int i = 0; i < 20_000; i++) {
+            store.recordEmittedPageView(pageView(i, "user_" + (i % 4000), i % 4), null);
+        }
+        // Replaced, not added twice
+        store.restorePageView(pageView(0, "user_0", 0), null);
+        assertThat(store.getRetainedBytes()).isCloseTo(measure(store) - empty, withinTolerance(store));
+
+        store.evictFinalizedPageViews(BASE.plusSeconds(10_000));
+        assertThat(store.getRetainedBytes()).isCloseTo(measure(store) - empty, withinTolerance(store));
+
+        store.removePartition(2);
+        assertThat(store.getRetainedBytesPerPartition()).doesNotContainKey(2);
+        assertThat(store.getRetainedBytes()).isCloseTo(measure(store) - empty, withinTolerance(store));
+    }
+
+    @Test
+    public void testWatermarkEstimateMatchesMeasuredSize() {
+        AdaptiveLateness adaptive = new AdaptiveLateness(0.99, Duration.ZERO, Duration.ofMinutes(10), 1, 10_000);
+        WatermarkTracker tracker = new WatermarkTracker(2, adaptive);
+        long empty = measure(new WatermarkTracker(2, new AdaptiveLateness(
+                0.99, Duration.ZERO, Duration.ofMinutes(10), 1, 10_000)));
+
+        for (int i = 0; i < 4_000; i++) {
+            StreamType stream = i % 2 == 0 ? StreamType.AD_CLICKS : StreamType.PAGE_VIEWS;
+            tracker.updateWatermark(stream, i % 8 / 2, BASE.plusMillis(i % 100 * 1000L));
+        }
+        long estimate = 0;
+        for (int partition = 0; partition < 4; partition++) {
+            estimate += tracker.getRetainedBytes(partition);
+        }
+        assertThat(estimate).isCloseTo(measure(tracker) - empty, within((long) (estimate * TOLERANCE)));
+
+        tracker.removePartition(3);
+        assertThat(tracker.getRetainedBytes(3)).isZero();
+    }
+
+    private static Offset<Long> withinTolerance(ClickStateStore store) {
+        return within((long) (store.getRetainedBytes() * TOLERANCE));
+    }
+
+    private static Offset<Long> withinTolerance(EmittedPageViewStore store) {
+        return within((long) (store.getRetainedBytes() * TOLERANCE));
+    }
+
+    private static long measure(Object root) {
+        return GraphLayout.parseInstance(root).totalSize();
+    }
+
+    private static AdClickEvent click(int i, String userId, int partition) {
+        AdClickEvent click = new AdClickEvent();
+        click.setClickId(new String("click_" + i));
+        click.setUserId(new String(userId));
+        click.setCampaignId(new String("campaign_" + i % 50));
+        click.setEventTime(BASE.plusSeconds(i));
+        click.setPartition(partition);
+        return click;
+    }
+
+    private static PageViewEvent pageView(int i, String userId, int partition) {
+        PageViewEvent pageView = new PageViewEvent();
+        pageView.setEventId(new String("pv_" + i));
+        pageView.setUserId(new String(userId));
+        pageView.setUrl(new String("/products/" + i % 500));
+        pageView.setEventTime(BASE.plusSeconds(i));
+        pageView.setPartition(partition);
+        return pageView;
+    }
+}
@@ -0,0 +1,76 @@
+package com.ebay.challenge.streamprocessor.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UserKeyFilterTest {
+
+    @Test
+    public void testNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.put("user_" + i));
+
+        assertThat(IntStream.range(0, 10_000).allMatch(i -> filter.mightContain("user_" + i))).isTrue();
+    }
+
+    @Test
+    public void testFalsePositiveRateIsBounded() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.put("user_" + i));
+
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> filter.mightContain("other_" + i))
+                .count();
+        // 1% configured, allow some slack for hash quality
+        assertThat(falsePositives).isLessThan(2_000);
+    }
+
+    @Test
+    public void testPartitionsAreIndependent() {
+        UserKeyFilter filter = new UserKeyFilter(true, 0.01, 1000);
+        filter.recordClick(0, "user_1");
+
+        assertThat(filter.mightHaveClicks(0, "user_1")).isTrue();
+        assertThat(filter.mightHaveClicks(1, "user_1")).isFalse();
+        assertThat(filter.mightHavePageViews(0, "user_1")).isFalse();
+    }
+
+    @Test
+    public void testRebuildDropsEvictedUsers() {
+        UserKeyFilter filter = new UserKeyFilter(true, 0.01, 1000);
+        filter.recordClick(0, "user_evicted");
+        filter.recordClick(0, "user_live");
+        filter.recordPageView(0, "user_pending");
+
+        filter.rebuild(0, () -> Set.of("user_live"), Set::of);
+
+        assertThat(filter.mightHaveClicks(0, "user_live")).isTrue();
+        assertThat(filter.mightHaveClicks(0, "user_evicted")).isFalse();
+        assertThat(filter.mightHavePageViews(0, "user_pending")).isFalse();
+    }
+
+    @Test
+    public void testRecordDuringRebuildIsKept() {
+        UserKeyFilter filter = new UserKeyFilter(true, 0.01, 1000);
+
+        // A click added while the stores are scanned, after the scan passed its user
+        filter.rebuild(0, () -> {
+            filter.recordClick(0, "user_concurrent");
+            return Set.of();
+        }, Set::of);
+
+        assertThat(filter.mightHaveClicks(0, "user_concurrent")).isTrue();
+    }
+
+    @Test
+    public void testDisabledFilterAlwaysMightContain() {
+        UserKeyFilter filter = new UserKeyFilter(false, 0.01, 1000);
+
+        assertThat(filter.mightHaveClicks(0, "user_1")).isTrue();
+        assertThat(filter.mightHavePageViews(0, "user_1")).isTrue();
+    }
+}
@@ -1,12 +1,17 @@
 package com.ebay.challenge.streamprocessor.testutil;
 
 import com.ebay.challenge.streamprocessor.engine.JoinEngine;
+import com.ebay.challenge.streamprocessor.engine.LoadShedding;
 import com.ebay.challenge.streamprocessor.metrics.NoOpMetrics;
 import com.ebay.challenge.streamprocessor.model.AdClickEvent;
 import com.ebay.challenge.streamprocessor.model.PageViewEvent;
+import com.ebay.challenge.streamprocessor.output.LateEventSink;
 import com.ebay.challenge.streamprocessor.output.OutputSink;
 import com.ebay.challenge.streamprocessor.state.ClickStateStore;
 import com.ebay.challenge.streamprocessor.state.EmittedPageViewStore;
+import com.ebay.challenge.streamprocessor.state.EventDeduplicator;
+import com.ebay.challenge.streamprocessor.state.HotKeyTracker;
+import com.ebay.challenge.streamprocessor.state.UserKeyFilter;
 import com.ebay.challenge.streamprocessor.state.WatermarkTracker;
 
 import java.time.Instant;
@@ -19,6 +24,36 @@ public final class TestFactory {
     }
 
     public static JoinEngine createJoinEngine(OutputSink sink, int allowedLatenessMinutes){
+        return createJoinEngine(sink, allowedLatenessMinutes, EventDeduplicator.NONE);
+    }
+
+    public static JoinEngine createJoinEngine(OutputSink sink, int allowedLatenessMinutes,
+                                              EventDeduplicator deduplicator){
+        return createJoinEngine(sink, allowedLatenessMinutes, deduplicator, LateEventSink.NONE);
+    }
+
+    public static JoinEngine createJoinEngine(OutputSink sink, int allowedLatenessMinutes,
+                                              LateEventSink lateEventSink){
+        return createJoinEngine(sink, allowedLatenessMinutes, EventDeduplicator.NONE, lateEventSink);
+    }
+
+    private static JoinEngine createJoinEngine(OutputSink sink, int allowedLatenessMinutes,
+                                               EventDeduplicator deduplicator, LateEventSink lateEventSink){
+        return createJoinEngine(sink, allowedLatenessMinutes, deduplicator, lateEventSink, disabledHotKeys());
+    }
+
+    public static JoinEngine createJoinEngine(OutputSink sink, int allowedLatenessMinutes,
+                                              HotKeyTracker hotKeyTracker){
+        return createJoinEngine(sink, allowedLatenessMinutes, EventDeduplicator.NONE, LateEventSink.NONE, hotKeyTracker);
+    }
+
+    public static HotKeyTracker disabledHotKeys() {
+        return new HotKeyTracker(false, 32, 1024, 0);
+    }
+
+    private static JoinEngine createJoinEngine(OutputSink sink, int allowedLatenessMinutes,
+                                               EventDeduplicator deduplicator, LateEventSink lateEventSink,
+                                               HotKeyTracker hotKeyTracker){
         ClickStateStore clickStore = new ClickStateStore();
         EmittedPageViewStore pageViewStore = new EmittedPageViewStore();
 
@@ -28,7 +63,12 @@ public final class TestFactory {
                 clickStore,
                 pageViewStore,
                 watermarkTracker,
+                new UserKeyFilter(true, 0.01, 1000),
+                hotKeyTracker,
+                deduplicator,
+                new LoadShedding(new NoOpMetrics()),
                 sink,
+                lateEventSink,
                 new NoOpMetrics()
         );
     }